@@ -7,9 +7,11 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
@@ -17,6 +19,10 @@ import com.verifico.server.auth.dto.AuthResponse;
 import com.verifico.server.auth.dto.LoginRequest;
 import com.verifico.server.auth.dto.LoginResponse;
 import com.verifico.server.auth.dto.RegisterRequest;
+import com.verifico.server.auth.ratelimit.AuthRateLimiter;
+import com.verifico.server.auth.ratelimit.ClientIpResolver;
+import com.verifico.server.user.UserAvailabilityService;
+import com.verifico.server.user.dto.AvailabilityResponse;
 import com.verifico.server.user.dto.UserResponse;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -31,6 +37,9 @@ import jakarta.validation.Valid;
 public class AuthController {
 
         private final AuthService authService;
+        private final AuthRateLimiter authRateLimiter;
+        private final ClientIpResolver clientIpResolver;
+        private final UserAvailabilityService userAvailabilityService;
         @Value("${JWT_EXPIRY}")
         private int accessTokenMins;
         @Value("${REFRESH_TOKEN_DAYS}")
@@ -38,8 +47,12 @@ public class AuthController {
         @Value("${SPRING_PROFILES_ACTIVE}")
         private String activeProfile;
 
-        public AuthController(AuthService authService) {
+        public AuthController(AuthService authService, AuthRateLimiter authRateLimiter,
+                        ClientIpResolver clientIpResolver, UserAvailabilityService userAvailabilityService) {
                 this.authService = authService;
+                this.authRateLimiter = authRateLimiter;
+                this.clientIpResolver = clientIpResolver;
+                this.userAvailabilityService = userAvailabilityService;
         }
 
         @Operation(summary = "Register new user")
@@ -48,9 +61,22 @@ public class AuthController {
                 return authService.register(request);
         };
 
+        @Operation(summary = "Check if a username and/or email is still available")
+        @GetMapping("/availability")
+        public AvailabilityResponse availability(@RequestParam(required = false) String username,
+                        @RequestParam(required = false) String email, HttpServletRequest httpRequest) {
+                authRateLimiter.checkAvailability(clientIpResolver.resolve(httpRequest));
+                return userAvailabilityService.checkAvailability(username, email);
+        }
+
         @Operation(summary = "User Login")
         @PostMapping("/login")
-        public ResponseEntity<AuthResponse> login(@Valid @RequestBody LoginRequest request) {
+        public ResponseEntity<AuthResponse> login(@Valid @RequestBody LoginRequest request,
+                        HttpServletRequest httpRequest) {
+
+                // throttle before we do any db lookup or password hashing
+                authRateLimiter.checkLogin(clientIpResolver.resolve(httpRequest),
+                                request.getUsername() != null ? request.getUsername() : request.getEmail());
 
                 LoginResponse response = authService.login(request);
 
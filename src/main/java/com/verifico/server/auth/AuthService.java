@@ -2,11 +2,11 @@ package com.verifico.server.auth;
 
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.List;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
@@ -16,8 +16,11 @@ import com.verifico.server.auth.jwt.JWTService;
 import com.verifico.server.auth.token.RefreshToken;
 import com.verifico.server.auth.token.RefreshTokenService;
 import com.verifico.server.email.EmailService;
+import com.verifico.server.security.PasswordHashingService;
 import com.verifico.server.auth.dto.LoginResponse;
 import com.verifico.server.user.User;
+import com.verifico.server.user.UserAvailabilityService;
+import com.verifico.server.user.UserIdentityView;
 import com.verifico.server.user.UserRepository;
 import com.verifico.server.user.dto.UserResponse;
 
@@ -26,28 +29,34 @@ import jakarta.servlet.http.HttpServletRequest;
 
 import org.springframework.util.StringUtils;
 
+import lombok.extern.slf4j.Slf4j;
+
 import org.springframework.transaction.annotation.Transactional;
 
 @Service
+@Slf4j
 public class AuthService {
 
   private final UserRepository userRepository;
-  private final BCryptPasswordEncoder passwordEncoder;
+  private final PasswordHashingService passwordHashingService;
   private final JWTService jwtService;
   private final RefreshTokenService refreshTokenService;
   private final EmailService emailService;
+  private final UserAvailabilityService userAvailabilityService;
   @Value("${JWT_EXPIRY}")
   private int accessTokenMins;
   @Value("${REFRESH_TOKEN_DAYS}")
   private long RefreshTokenDays;
 
-  public AuthService(UserRepository userRepository, BCryptPasswordEncoder passwordEncoder, JWTService jwtService,
-      RefreshTokenService refreshTokenService, EmailService emailService) {
+  public AuthService(UserRepository userRepository, PasswordHashingService passwordHashingService, JWTService jwtService,
+      RefreshTokenService refreshTokenService, EmailService emailService,
+      UserAvailabilityService userAvailabilityService) {
     this.userRepository = userRepository;
-    this.passwordEncoder = passwordEncoder;
+    this.passwordHashingService = passwordHashingService;
     this.jwtService = jwtService;
     this.refreshTokenService = refreshTokenService;
     this.emailService = emailService;
+    this.userAvailabilityService = userAvailabilityService;
   }
 
   @Transactional
@@ -57,12 +66,19 @@ public class AuthService {
     String firstName = request.getFirstName().strip();
     String lastName = request.getLastName().strip();
 
-    if (userRepository.findByUsername(username).isPresent()) {
-      throw new ResponseStatusException(HttpStatus.CONFLICT, "Username already in use");
-    }
+    // bloom filter says definitely free for most new signups, otherwise one
+    // query covers both unique columns. The unique constraints below are still
+    // the real guard against races.
+    if (userAvailabilityService.mightBeTaken(username, email)) {
+      List<UserIdentityView> clashes = userRepository.findIdentitiesByUsernameOrEmail(username, email);
+
+      if (clashes.stream().anyMatch(clash -> username.equals(clash.getUsername()))) {
+        throw new ResponseStatusException(HttpStatus.CONFLICT, "Username already in use");
+      }
 
-    if (userRepository.findByEmail(email).isPresent()) {
-      throw new ResponseStatusException(HttpStatus.CONFLICT, "Email already in use");
+      if (!clashes.isEmpty()) {
+        throw new ResponseStatusException(HttpStatus.CONFLICT, "Email already in use");
+      }
     }
 
     User user = new User();
@@ -72,7 +88,7 @@ public class AuthService {
     user.setEmail(email);
     user.setBio(request.getBio() != null ? request.getBio() : "");
     user.setAvatarUrl(request.getAvatarUrl());
-    user.setPassword(passwordEncoder.encode(request.getPassword()));
+    user.setPassword(passwordHashingService.encode(request.getPassword()));
 
     User savedUser;
     try {
@@ -81,6 +97,8 @@ public class AuthService {
       throw new ResponseStatusException(HttpStatus.CONFLICT, "Username or email already in use");
     }
 
+    userAvailabilityService.recordTaken(savedUser.getUsername(), savedUser.getEmail());
+
     emailService.sendWelcomeEmailForv1(savedUser);
 
     return new UserResponse(savedUser.getId(), savedUser.getUsername(), savedUser.getEmail(), savedUser.getFirstName(),
@@ -111,10 +129,12 @@ public class AuthService {
       user = userRepository.findByUsername(username).orElse(null);
     }
 
-    if (user == null || !passwordEncoder.matches(request.getPassword(), user.getPassword())) {
+    if (user == null || !passwordHashingService.matches(request.getPassword(), user.getPassword())) {
       throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid credentials");
     }
 
+    upgradePasswordHashIfNeeded(user, request.getPassword());
+
     String accessToken = jwtService.generateAccessToken(user.getId(), user.getUsername());
 
     RefreshToken refreshToken = refreshTokenService.createToken(user);
@@ -127,6 +147,22 @@ public class AuthService {
         refreshToken.getToken()); // this cannot be sent as a json response to client in prod
   }
 
+  // if we've raised the bcrypt cost since this user's hash was made, re-hash
+  // now while we have their raw password. Best effort only, a busy hashing pool
+  // shouldn't fail an otherwise valid login, we'll just try again next time.
+  private void upgradePasswordHashIfNeeded(User user, String rawPassword) {
+    if (!passwordHashingService.needsUpgrade(user.getPassword())) {
+      return;
+    }
+
+    try {
+      user.setPassword(passwordHashingService.encode(rawPassword));
+      userRepository.save(user);
+    } catch (ResponseStatusException exception) {
+      log.warn("Skipping password hash upgrade for user {}: {}", user.getId(), exception.getReason());
+    }
+  }
+
   public LoginResponse refresh(String refreshToken) {
     // check access token has expired is already done in our other auth logic, so we
     // just need to validate the refresh token (check it exists in db + isn't
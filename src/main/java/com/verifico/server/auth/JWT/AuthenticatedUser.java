@@ -0,0 +1,26 @@
+package com.verifico.server.auth.jwt;
+
+import java.security.Principal;
+
+import org.springframework.security.core.Authentication;
+
+// What JWTAuthFilter puts in the SecurityContext as the principal. Built once
+// per request straight from the access token claims (sub = user id, username
+// claim) so services can get the current user's id without going to the db.
+// getName() still returns the username, so auth.getName() keeps working.
+public record AuthenticatedUser(Long userId, String username) implements Principal {
+
+  @Override
+  public String getName() {
+    return username;
+  }
+
+  // null when nobody is logged in (or the request wasn't authenticated by our
+  // jwt filter)
+  public static AuthenticatedUser from(Authentication authentication) {
+    if (authentication != null && authentication.getPrincipal() instanceof AuthenticatedUser user) {
+      return user;
+    }
+    return null;
+  }
+}
@@ -3,6 +3,7 @@ package com.verifico.server.auth.jwt;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -10,6 +11,8 @@ import org.springframework.security.web.authentication.WebAuthenticationDetailsS
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.Cookie;
@@ -33,7 +36,7 @@ import jakarta.servlet.http.HttpServletResponse;
 // Validate JWT: Valid, username = "johndoe"
 //  ↓
 // Create Spring Security object:
-// UsernamePasswordAuthenticationToken("johndoe", null, null)
+// UsernamePasswordAuthenticationToken(AuthenticatedUser(42, "johndoe"), null, null)
 //  ↓
 // Store in SecurityContext (Springs memory)
 //  ↓
@@ -44,17 +47,31 @@ import jakarta.servlet.http.HttpServletResponse;
 //  ↓
 // Returns the UsernamePasswordAuthenticationToken
 //  ↓
-// getName() → "johndoe" 
+// getName() → "johndoe", AuthenticatedUser.from(auth).userId() → 42
 
 @Component
 public class JWTAuthFilter extends OncePerRequestFilter {
 
   private final JWTService jwtService;
 
+  // time spent validating the access token cookie, by outcome. built once here
+  // since this runs on every authenticated request
+  private final Timer validTokens = validationTimer("valid");
+  private final Timer rejectedTokens = validationTimer("rejected");
+  private final Timer failedTokens = validationTimer("error");
+
   public JWTAuthFilter(JWTService jwtService) {
     this.jwtService = jwtService;
   }
 
+  private static Timer validationTimer(String outcome) {
+    return Timer.builder("auth.jwt.validation")
+        .description("Access token validation in the jwt filter")
+        .tag("outcome", outcome)
+        .publishPercentileHistogram()
+        .register(Metrics.globalRegistry);
+  }
+
   @Override
   public void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
       throws ServletException, IOException {
@@ -85,6 +102,7 @@ public class JWTAuthFilter extends OncePerRequestFilter {
       return;
     }
 
+    long start = System.nanoTime();
     try {
 
       if (SecurityContextHolder.getContext().getAuthentication() != null) {
@@ -94,20 +112,25 @@ public class JWTAuthFilter extends OncePerRequestFilter {
       // validate JWT/token and get username as well as converting to Spring Security
       // format (`UsernamePasswordAuthenticationToken`) &
       // Store it in `SecurityContext` so Spring knows the user is authenticated
-      if (jwtService.validateAccessToken(jwt)) {
-
-        String username = jwtService.getUsernameFromToken(jwt);
+      // token is only parsed once here, and the principal carries the user id so
+      // services don't need a findByUsername just to work out who's calling
+      AuthenticatedUser principal = jwtService.parseAccessToken(jwt);
+      if (principal != null) {
 
-        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(username, null,
+        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(principal, null,
             List.of());
 
         authentication.setDetails(
             new WebAuthenticationDetailsSource().buildDetails(request));
 
         SecurityContextHolder.getContext().setAuthentication(authentication);
+        validTokens.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      } else {
+        rejectedTokens.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
       }
     } catch (Exception e) {
       SecurityContextHolder.clearContext();
+      failedTokens.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
       logger.error("JWT validation failed", e);
     }
     filterChain.doFilter(request, response);
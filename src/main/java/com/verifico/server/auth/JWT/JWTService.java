@@ -22,9 +22,18 @@ public class JWTService {
   @Value("${JWT_EXPIRY}")
   private int accessTokenMins;
 
+  // decoding the secret on every token parse adds up when every request goes
+  // through the filter, so we only build the key once
+  private volatile SecretKey signingKey;
+
   private SecretKey getSigningKey() {
-    byte[] keyBytes = Decoders.BASE64.decode(jwtSecret);
-    return Keys.hmacShaKeyFor(keyBytes);
+    SecretKey key = signingKey;
+    if (key == null) {
+      byte[] keyBytes = Decoders.BASE64.decode(jwtSecret);
+      key = Keys.hmacShaKeyFor(keyBytes);
+      signingKey = key;
+    }
+    return key;
   }
 
   private Claims extractAllClaims(String token) {
@@ -50,6 +59,18 @@ public class JWTService {
     }
   }
 
+  // validates the token and reads the principal out of it in a single parse,
+  // returns null if the token is invalid/expired
+  public AuthenticatedUser parseAccessToken(String token) {
+    Claims claims;
+    try {
+      claims = extractAllClaims(token);
+    } catch (Exception e) {
+      return null;
+    }
+    return new AuthenticatedUser(Long.parseLong(claims.getSubject()), claims.get("username", String.class));
+  }
+
   public Long getUserIdFromToken(String token) {
     Claims claims = extractAllClaims(token);
     return Long.parseLong(claims.getSubject());
@@ -0,0 +1,161 @@
+package com.verifico.server.auth.ratelimit;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Throttles login + password reset requests per client ip and per account so
+// nobody can make us burn bcrypt cpu or smtp quota for free. The public
+// availability check is throttled per ip too, otherwise it's a free way to
+// enumerate which usernames/emails have accounts.
+//
+// How it works (fixed window counters, default 1 min windows):
+// - fast path is fully in-process: one atomic counter per key per window in a
+// concurrent map, so checking a request is a map lookup + an increment, no
+// network hop, no db, no hashing.
+// - every second we push the hits we've counted locally to redis (INCRBY on a
+// key per window) and read back the total across all replicas, so each
+// replica also knows how many hits the other replicas have seen.
+// - if redis is down we just keep enforcing the local limits.
+//
+// Controllers call this BEFORE touching the service layer so a throttled
+// request never reaches a db lookup or a password hash.
+@Component
+@Slf4j
+public class AuthRateLimiter {
+
+  private static final String REDIS_KEY_PREFIX = "rate_limit:";
+
+  private final StringRedisTemplate redisTemplate;
+  private final Map<String, WindowCounter> counters = new ConcurrentHashMap<>();
+
+  private final long windowMillis;
+  private final int loginPerIp;
+  private final int loginPerAccount;
+  private final int resetPerIp;
+  private final int resetPerAccount;
+  private final int availabilityPerIp;
+
+  public AuthRateLimiter(StringRedisTemplate redisTemplate,
+      @Value("${app.rate-limit.window-seconds:60}") long windowSeconds,
+      @Value("${app.rate-limit.login.per-ip:20}") int loginPerIp,
+      @Value("${app.rate-limit.login.per-account:5}") int loginPerAccount,
+      @Value("${app.rate-limit.password-reset.per-ip:5}") int resetPerIp,
+      @Value("${app.rate-limit.password-reset.per-account:3}") int resetPerAccount,
+      @Value("${app.rate-limit.availability.per-ip:30}") int availabilityPerIp) {
+    this.redisTemplate = redisTemplate;
+    this.windowMillis = windowSeconds * 1000;
+    this.loginPerIp = loginPerIp;
+    this.loginPerAccount = loginPerAccount;
+    this.resetPerIp = resetPerIp;
+    this.resetPerAccount = resetPerAccount;
+    this.availabilityPerIp = availabilityPerIp;
+  }
+
+  public void checkLogin(String clientIp, String account) {
+    check("login:ip:" + clientIp, loginPerIp);
+    if (account != null && !account.isBlank()) {
+      check("login:account:" + normalise(account), loginPerAccount);
+    }
+  }
+
+  public void checkPasswordReset(String clientIp, String email) {
+    check("reset:ip:" + clientIp, resetPerIp);
+    if (email != null && !email.isBlank()) {
+      check("reset:account:" + normalise(email), resetPerAccount);
+    }
+  }
+
+  public void checkAvailability(String clientIp) {
+    check("availability:ip:" + clientIp, availabilityPerIp);
+  }
+
+  private void check(String key, int limit) {
+    if (!tryAcquire(key, limit)) {
+      throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+          "Too many attempts, please wait a minute and try again");
+    }
+  }
+
+  private boolean tryAcquire(String key, int limit) {
+    long window = System.currentTimeMillis() / windowMillis;
+
+    WindowCounter counter = counters.get(key);
+    if (counter == null || counter.window != window) {
+      counter = counters.compute(key,
+          (k, existing) -> existing != null && existing.window == window ? existing : new WindowCounter(window));
+    }
+
+    // rejected attempts don't count towards the limit, otherwise a client that
+    // keeps hammering us would never get out of the penalty box
+    if (counter.local.incrementAndGet() + counter.remote > limit) {
+      counter.local.decrementAndGet();
+      return false;
+    }
+
+    counter.unsynced.incrementAndGet();
+    return true;
+  }
+
+  // pushes local hits to redis + pulls back the cluster wide totals, also drops
+  // counters from old windows so the map doesn't grow forever
+  @Scheduled(fixedDelayString = "${app.rate-limit.sync-interval-ms:1000}")
+  public void syncWithRedis() {
+    long currentWindow = System.currentTimeMillis() / windowMillis;
+
+    counters.forEach((key, counter) -> {
+      if (counter.window != currentWindow) {
+        counters.remove(key, counter);
+        return;
+      }
+
+      int delta = counter.unsynced.getAndSet(0);
+      if (delta == 0) {
+        return;
+      }
+
+      try {
+        String redisKey = REDIS_KEY_PREFIX + key + ":" + counter.window;
+        Long clusterTotal = redisTemplate.opsForValue().increment(redisKey, delta);
+        redisTemplate.expire(redisKey, Duration.ofMillis(windowMillis * 2));
+
+        if (clusterTotal != null) {
+          int syncedLocally = counter.local.get() - counter.unsynced.get();
+          counter.remote = (int) Math.max(0, clusterTotal - syncedLocally);
+        }
+      } catch (Exception e) {
+        // redis being unavailable shouldn't break logins, local limits still apply
+        log.debug("Unable to sync rate limit counter {} with redis: {}", key, e.getMessage());
+      }
+    });
+  }
+
+  private String normalise(String account) {
+    return account.strip().toLowerCase(Locale.ROOT);
+  }
+
+  private static final class WindowCounter {
+    private final long window;
+    // hits seen by this replica in this window
+    private final AtomicInteger local = new AtomicInteger();
+    // hits not pushed to redis yet
+    private final AtomicInteger unsynced = new AtomicInteger();
+    // hits seen by the other replicas, as of the last sync
+    private volatile int remote;
+
+    private WindowCounter(long window) {
+      this.window = window;
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package com.verifico.server.auth.ratelimit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.web.util.matcher.IpAddressMatcher;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+// The client ip the per-ip rate limits are keyed on.
+//
+// The k8s service uses externalTrafficPolicy: Local, so the remote address is
+// the real client and that's all we need by default. If a proxy/ingress ever
+// sits in front of us, list its ranges in
+// app.rate-limit.trusted-proxies=10.0.0.0/8,172.16.0.0/12
+// and we take the client from X-Forwarded-For instead: walk it right to left
+// (each proxy appends who it got the request from) and stop at the first
+// address that isn't one of our proxies. Anything left of that is whatever the
+// client sent, so it's never trusted. A request that doesn't come from a
+// trusted proxy keeps its remote address no matter what headers it sends.
+@Component
+public class ClientIpResolver {
+
+  private static final String FORWARDED_FOR = "X-Forwarded-For";
+  // ip literals only, anything else would make the matcher do a dns lookup
+  private static final Pattern IP_LITERAL = Pattern.compile("[0-9a-fA-F:.]+");
+
+  private final List<IpAddressMatcher> trustedProxies = new ArrayList<>();
+
+  public ClientIpResolver(@Value("${app.rate-limit.trusted-proxies:}") String trustedProxies) {
+    for (String range : StringUtils.commaDelimitedListToStringArray(trustedProxies)) {
+      if (StringUtils.hasText(range)) {
+        this.trustedProxies.add(new IpAddressMatcher(range.strip()));
+      }
+    }
+  }
+
+  public String resolve(HttpServletRequest request) {
+    String remoteAddress = request.getRemoteAddr();
+    String forwardedFor = request.getHeader(FORWARDED_FOR);
+    if (!isTrustedProxy(remoteAddress) || !StringUtils.hasText(forwardedFor)) {
+      return remoteAddress;
+    }
+
+    String client = remoteAddress;
+    String[] hops = forwardedFor.split(",");
+    for (int i = hops.length - 1; i >= 0; i--) {
+      String hop = hops[i].strip();
+      if (!IP_LITERAL.matcher(hop).matches()) {
+        // garbage/"unknown", the last address we could read is as far as we get
+        break;
+      }
+      client = hop;
+      if (!isTrustedProxy(hop)) {
+        break;
+      }
+    }
+    return client;
+  }
+
+  private boolean isTrustedProxy(String address) {
+    if (address == null || !IP_LITERAL.matcher(address).matches()) {
+      return false;
+    }
+    for (IpAddressMatcher proxy : trustedProxies) {
+      try {
+        if (proxy.matches(address)) {
+          return true;
+        }
+      } catch (IllegalArgumentException e) {
+        // e.g. "1.2.3.4:5678", not an address we know
+        return false;
+      }
+    }
+    return false;
+  }
+}
@@ -10,10 +10,13 @@ import org.springframework.web.bind.annotation.RestController;
 
 import com.verifico.server.auth.dto.ResetPasswordRequest;
 import com.verifico.server.auth.dto.ResetRequest;
+import com.verifico.server.auth.ratelimit.AuthRateLimiter;
+import com.verifico.server.auth.ratelimit.ClientIpResolver;
 import com.verifico.server.common.dto.APIResponse;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
 
@@ -24,10 +27,16 @@ import lombok.AllArgsConstructor;
 public class PasswordResetController {
 
   private final PasswordResetService passwordResetService;
+  private final AuthRateLimiter authRateLimiter;
+  private final ClientIpResolver clientIpResolver;
 
   @Operation(summary = "Request password reset email")
   @PostMapping("/reset-password")
-  public ResponseEntity<APIResponse<String>> requestPassReset(@Valid @RequestBody ResetRequest request) {
+  public ResponseEntity<APIResponse<String>> requestPassReset(@Valid @RequestBody ResetRequest request,
+      HttpServletRequest httpRequest) {
+    // throttled before any lookup so nobody can use this to spam inboxes/burn
+    // our smtp quota
+    authRateLimiter.checkPasswordReset(clientIpResolver.resolve(httpRequest), request.getEmail());
     passwordResetService.passResetRequest(request.getEmail());
     return ResponseEntity.ok()
         .body(new APIResponse<>("If the email is associated with an account, you'll get a reset link", null));
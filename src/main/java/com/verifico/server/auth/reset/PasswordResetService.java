@@ -6,12 +6,12 @@ import java.util.Base64;
 import java.util.Optional;
 
 import org.springframework.http.HttpStatus;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
 import com.verifico.server.auth.dto.ResetPasswordRequest;
 import com.verifico.server.email.EmailService;
+import com.verifico.server.security.PasswordHashingService;
 import com.verifico.server.user.User;
 import com.verifico.server.user.UserRepository;
 
@@ -35,7 +35,7 @@ public class PasswordResetService {
 
   private final UserRepository userRepository;
   private final ResetTokenRepository resetTokenRepository;
-  private final PasswordEncoder passwordEncoder;
+  private final PasswordHashingService passwordHashingService;
   private final EmailService emailService;
   private static final SecureRandom secureRandom = new SecureRandom();
   private static final Base64.Encoder base64Encoder = Base64.getUrlEncoder().withoutPadding();
@@ -88,7 +88,7 @@ public class PasswordResetService {
     ResetToken fetchedToken = tokenOpt.get();
     User user = fetchedToken.getUser();
 
-    user.setPassword(passwordEncoder.encode(request.getNewPassword()));
+    user.setPassword(passwordHashingService.encode(request.getNewPassword()));
     userRepository.save(user);
     resetTokenRepository.delete(fetchedToken);
 
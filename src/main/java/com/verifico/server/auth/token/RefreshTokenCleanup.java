@@ -0,0 +1,51 @@
+package com.verifico.server.auth.token;
+
+import java.time.Instant;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+// Same idea as ResetTokenCleanup but for refresh tokens. revoke() only flips the
+// revoked flag, and expired tokens just sit there, so without this the
+// refresh_tokens table + its unique index keep growing forever.
+// We purge in small batches (one DELETE ... LIMIT per transaction) instead of
+// one giant delete so we never lock a big chunk of the table while users are
+// trying to refresh their sessions.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RefreshTokenCleanup {
+
+  private final RefreshTokenRepository refreshTokenRepository;
+
+  @Value("${app.auth.refresh-token-cleanup.batch-size:1000}")
+  private int batchSize;
+
+  // upper bound per run so one run can't hog a connection forever, whatever is
+  // left just gets picked up on the next run
+  @Value("${app.auth.refresh-token-cleanup.max-batches:100}")
+  private int maxBatches;
+
+  @Scheduled(fixedRate = 3_600_000, initialDelay = 60_000)
+  public void purgeExpiredAndRevokedTokens() {
+    Instant now = Instant.now();
+    int totalDeleted = 0;
+
+    for (int batch = 0; batch < maxBatches; batch++) {
+      int deleted = refreshTokenRepository.deleteExpiredOrRevokedBatch(now, batchSize);
+      totalDeleted += deleted;
+
+      if (deleted < batchSize) {
+        break;
+      }
+    }
+
+    if (totalDeleted > 0) {
+      log.info("Purged {} expired/revoked refresh tokens", totalDeleted);
+    }
+  }
+}
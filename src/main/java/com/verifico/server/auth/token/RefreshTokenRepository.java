@@ -4,9 +4,11 @@ import org.springframework.stereotype.Repository;
 
 import jakarta.transaction.Transactional;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -14,6 +16,8 @@ import org.springframework.data.repository.query.Param;;
 
 @Repository
 public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+  // refresh reads the user after the lookup's transaction is over
+  @EntityGraph(attributePaths = "user")
   Optional<RefreshToken> findByToken(String token);
 
   List<RefreshToken> findByUser_Username(String username);
@@ -22,4 +26,25 @@ public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long
   @Modifying
   @Query("DELETE FROM RefreshToken rt WHERE rt.user.id = :userId")
   void deleteByUserId(@Param("userId") Long userId);
+
+  // single UPDATE instead of loading every token and saving it back one by one
+  @Transactional
+  @Modifying
+  @Query("UPDATE RefreshToken rt SET rt.revoked = true WHERE rt.user.id = :userId AND rt.revoked = false")
+  int revokeAllByUserId(@Param("userId") Long userId);
+
+  @Transactional
+  @Modifying
+  @Query("UPDATE RefreshToken rt SET rt.revoked = true WHERE rt.token = :token AND rt.revoked = false")
+  int revokeByToken(@Param("token") String token);
+
+  // used in cleanup scheduler, deletes at most batchSize rows per statement so
+  // each batch is its own short transaction and we never hold long locks on the
+  // table/unique index:
+  @Transactional
+  @Modifying
+  @Query(value = "DELETE FROM refresh_tokens WHERE id IN ("
+      + "SELECT id FROM refresh_tokens WHERE expiry_date < :now OR revoked = true "
+      + "ORDER BY id LIMIT :batchSize)", nativeQuery = true)
+  int deleteExpiredOrRevokedBatch(@Param("now") Instant now, @Param("batchSize") int batchSize);
 }
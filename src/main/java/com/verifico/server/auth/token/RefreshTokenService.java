@@ -79,19 +79,11 @@ public class RefreshTokenService {
 
   @Transactional
   public void revokeAllForUser(User user) {
-    refreshTokenRepository.findByUser_Username(user.getUsername())
-        .forEach(token -> {
-          token.setRevoked(true);
-          refreshTokenRepository.save(token);
-        });
+    refreshTokenRepository.revokeAllByUserId(user.getId());
   }
 
   @Transactional
   public void revokeByToken(String request){
-    refreshTokenRepository.findByToken(request)
-    .ifPresent(token -> {
-      token.setRevoked(true);
-      refreshTokenRepository.save(token);
-    });
+    refreshTokenRepository.revokeByToken(request);
   }
 }
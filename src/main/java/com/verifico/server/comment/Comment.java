@@ -2,6 +2,7 @@ package com.verifico.server.comment;
 
 import java.time.Instant;
 
+import org.hibernate.annotations.ColumnDefault;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
@@ -26,7 +27,12 @@ import lombok.Setter;
 @Entity
 @EntityListeners(AuditingEntityListener.class)
 @Table(name = "comments", indexes = {
-    @Index(name = "idx_post_created", columnList = "post_id,createdAt"),
+    // id as tie breaker so the (createdAt, id) cursor is fully index ordered
+    @Index(name = "idx_post_created", columnList = "post_id,createdAt,id"),
+    // threads/subtrees are range scans on the materialized path, see CommentPaths
+    @Index(name = "idx_post_path", columnList = "post_id,path"),
+    // per author counts for UserStatsRepair
+    @Index(name = "idx_comment_user", columnList = "user_id"),
 // @Index(name = "idx_author_created", columnList = "author,createdAt")
 })
 @Getter
@@ -46,6 +52,22 @@ public class Comment {
   @JoinColumn(name = "user_id", nullable = false)
   private User author;
 
+  // null for top level comments
+  @ManyToOne(fetch = FetchType.LAZY)
+  @JoinColumn(name = "parent_id")
+  private Comment parent;
+
+  // root -> this comment as fixed width ids (CommentPaths). needs our own id,
+  // so it's set right after the insert in the same transaction. comments from
+  // before threading get theirs from CommentPathBackfill on startup
+  @Column(length = 255)
+  private String path;
+
+  // 0 = top level
+  @ColumnDefault("0")
+  @Column(nullable = false)
+  private int depth = 0;
+
   @Column(nullable = false, columnDefinition = "TEXT")
   private String content;
 
@@ -0,0 +1,10 @@
+package com.verifico.server.comment;
+
+// comments + helpful comments per author in a subtree
+public interface CommentAuthorCount {
+  Long getAuthorId();
+
+  long getComments();
+
+  long getHelpful();
+}
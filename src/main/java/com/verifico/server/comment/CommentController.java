@@ -1,7 +1,7 @@
 package com.verifico.server.comment;
 
-import org.springframework.data.domain.Page;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -11,9 +11,12 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import com.verifico.server.comment.dto.CommentPageResponse;
 import com.verifico.server.comment.dto.CommentRequest;
 import com.verifico.server.comment.dto.CommentResponse;
+import com.verifico.server.comment.dto.CommentThreadResponse;
 import com.verifico.server.common.dto.APIResponse;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -39,25 +42,63 @@ public class CommentController {
         .body(new APIResponse<>("Comment Successfully Posted!", response));
   }
 
-  @Operation(summary = "Get all comments for a post with pagination")
+  // pass back the nextCursor from the previous response to get the next page,
+  // no cursor = newest comments
+  @Operation(summary = "Get top level comments for a post, newest first, with cursor pagination")
   @GetMapping("/posts/{id}/comments")
-  public ResponseEntity<APIResponse<Page<CommentResponse>>> fetchAllCommentsForPost(@PathVariable("id") Long id,
-      @RequestParam(value = "page", defaultValue = "0") int page) {
+  public ResponseEntity<APIResponse<CommentPageResponse>> fetchAllCommentsForPost(@PathVariable("id") Long id,
+      @RequestParam(value = "cursor", required = false) String cursor,
+      @RequestParam(value = "size", defaultValue = "15") int size) {
 
-    if (page < 0 || page > 20) {
-      page = 0;
+    if (size < 1 || size > 30) {
+      size = 15;
     }
 
-    int size = 15;
-
-    Page<CommentResponse> response = commentService.getAllCommentsForPost(id, page, size);
+    CommentPageResponse response = commentService.getAllCommentsForPost(id, cursor, size);
 
     return ResponseEntity.ok()
         .body(new APIResponse<>("All comments fecthed!", response));
 
   }
 
-  @Operation(summary = "Delete a comment by ID")
+  // server-sent events: comment-created, comment-deleted and
+  // comment-marked-helpful as they happen, plus a keepalive comment line every
+  // ~25s
+  @Operation(summary = "Stream live comment events for a post")
+  @GetMapping(value = "/posts/{id}/comments/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter streamComments(@PathVariable("id") Long id) {
+    return commentService.streamComments(id);
+  }
+
+  @Operation(summary = "Reply to a comment")
+  @PostMapping("/comments/{id}/replies")
+  public ResponseEntity<APIResponse<CommentResponse>> replyToComment(@Valid @RequestBody CommentRequest request,
+      @PathVariable("id") Long id) {
+    CommentResponse response = commentService.replyToComment(request, id);
+
+    return ResponseEntity.status(HttpStatus.CREATED.value())
+        .body(new APIResponse<>("Reply Successfully Posted!", response));
+  }
+
+  // the comment + all its replies as a tree, pass nextCursor back for the rest
+  // of a big thread
+  @Operation(summary = "Get a comment and its replies as a thread, with cursor pagination")
+  @GetMapping("/comments/{id}/thread")
+  public ResponseEntity<APIResponse<CommentThreadResponse>> fetchThread(@PathVariable("id") Long id,
+      @RequestParam(value = "cursor", required = false) String cursor,
+      @RequestParam(value = "size", defaultValue = "50") int size) {
+
+    if (size < 1 || size > 200) {
+      size = 50;
+    }
+
+    CommentThreadResponse response = commentService.getThread(id, cursor, size);
+
+    return ResponseEntity.ok()
+        .body(new APIResponse<>("Thread fetched!", response));
+  }
+
+  @Operation(summary = "Delete a comment and its replies by ID")
   @DeleteMapping("/comments/{id}")
   public ResponseEntity<Void> deleteComment(@PathVariable("id") Long id) {
     commentService.deleteMyComment(id);
@@ -0,0 +1,33 @@
+package com.verifico.server.comment;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+// Position of the last comment a client has seen. Handed out as an opaque
+// base64 string so clients don't start building their own.
+public record CommentCursor(Instant createdAt, Long id) {
+
+  public static CommentCursor of(CommentRow comment) {
+    return new CommentCursor(comment.createdAt(), comment.id());
+  }
+
+  public String encode() {
+    String raw = createdAt.toString() + "|" + id;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static CommentCursor decode(String cursor) {
+    try {
+      String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      int separator = raw.indexOf('|');
+      return new CommentCursor(Instant.parse(raw.substring(0, separator)), Long.parseLong(raw.substring(separator + 1)));
+    } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+    }
+  }
+}
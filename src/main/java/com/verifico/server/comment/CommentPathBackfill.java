@@ -0,0 +1,44 @@
+package com.verifico.server.comment;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+// Comments written before threading have no path. They're all top level so
+// their path is just their own id, we fill those in once on startup in small
+// batches. New comments always get a path when they're created, so after the
+// first run this is a single no-op query.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CommentPathBackfill {
+
+  private final CommentRepository commentRepository;
+
+  @Value("${app.comments.path-backfill.batch-size:1000}")
+  private int batchSize;
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void backfillPaths() {
+    int total = 0;
+    try {
+      int updated;
+      do {
+        updated = commentRepository.backfillRootPaths(batchSize);
+        total += updated;
+      } while (updated == batchSize);
+    } catch (Exception e) {
+      // not fatal, threads on old comments just show the top level comment
+      log.error("Failed to backfill comment paths after {} comments", total, e);
+      return;
+    }
+
+    if (total > 0) {
+      log.info("Backfilled paths for {} comments", total);
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package com.verifico.server.comment;
+
+// Materialized paths for threaded comments.
+// A comment's path is the ids from the thread root down to itself, each one
+// zero padded to SEGMENT_WIDTH digits and just glued together, e.g. reply 42
+// to comment 7 is "000000000007000000000042".
+// - digits only, so ordering is the same under any db collation (no
+// separators that a locale collation might ignore)
+// - sorting by path gives a thread depth first in reply order, parents always
+// before their replies
+// - a whole subtree is the range [path, upperBound(path)), which is one range
+// scan on idx_post_path
+public final class CommentPaths {
+
+  public static final int SEGMENT_WIDTH = 12;
+
+  // replies nested deeper than this are rejected, keeps paths well inside the
+  // column length
+  public static final int MAX_DEPTH = 8;
+
+  private CommentPaths() {
+  }
+
+  public static String segment(long id) {
+    String digits = Long.toString(id);
+    if (digits.length() > SEGMENT_WIDTH) {
+      throw new IllegalArgumentException("Comment id too large for path segment: " + id);
+    }
+    return "0".repeat(SEGMENT_WIDTH - digits.length()) + digits;
+  }
+
+  public static String childPath(String parentPath, long id) {
+    return parentPath + segment(id);
+  }
+
+  // smallest path that is past every path in the subtree: the same path with
+  // its last segment bumped by one. everything in between starts with path
+  public static String upperBound(String path) {
+    int lastSegment = path.length() - SEGMENT_WIDTH;
+    long lastId = Long.parseLong(path.substring(lastSegment));
+    return path.substring(0, lastSegment) + segment(lastId + 1);
+  }
+
+  // smallest path that comes after `path` in thread order, used to continue a
+  // subtree page after the last comment returned
+  public static String after(String path) {
+    return path + "0";
+  }
+
+  public static boolean isValid(String path) {
+    return path != null && !path.isEmpty() && path.length() % SEGMENT_WIDTH == 0 && path.chars().allMatch(
+        Character::isDigit);
+  }
+}
@@ -1,13 +1,81 @@
 package com.verifico.server.comment;
 
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
 
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import jakarta.transaction.Transactional;
 
 public interface CommentRepository extends JpaRepository<Comment, Long> {
 
-  @EntityGraph(attributePaths = "author")
-  Page<Comment> findAllByPostIdOrderByCreatedAtDesc(Long id,Pageable pageable);
+  // list/thread pages select straight into CommentRow, only the author columns
+  // the response actually shows
+  String COMMENT_ROW = "SELECT new com.verifico.server.comment.CommentRow(c.id, c.content, c.post.id, c.parent.id, "
+      + "c.depth, c.path, c.createdAt, a.id, a.username, a.firstName, a.lastName, a.avatarUrl) "
+      + "FROM Comment c JOIN c.author a ";
+
+  // top level comments only, replies are fetched per thread below.
+  // keyset pagination on idx_post_created, newest first. no OFFSET and no count
+  // query, the pageable is only used for the LIMIT
+  @Query(COMMENT_ROW + "WHERE c.post.id = :postId AND c.parent IS NULL ORDER BY c.createdAt DESC, c.id DESC")
+  List<CommentRow> findLatestByPostId(@Param("postId") Long postId, Pageable pageable);
+
+  @Query(COMMENT_ROW + "WHERE c.post.id = :postId AND c.parent IS NULL "
+      + "AND (c.createdAt < :createdAt OR (c.createdAt = :createdAt AND c.id < :id)) "
+      + "ORDER BY c.createdAt DESC, c.id DESC")
+  List<CommentRow> findByPostIdBefore(@Param("postId") Long postId, @Param("createdAt") Instant createdAt,
+      @Param("id") Long id, Pageable pageable);
+
+  // a page of a thread in depth first order, from <= path < to is the subtree
+  // (see CommentPaths), one range scan on idx_post_path
+  @Query(COMMENT_ROW + "WHERE c.post.id = :postId AND c.path >= :from AND c.path < :to ORDER BY c.path ASC")
+  List<CommentRow> findSubtreePage(@Param("postId") Long postId, @Param("from") String from, @Param("to") String to,
+      Pageable pageable);
+
+  // removes a comment and all replies under it: unlink the subtree from its
+  // parents first, so the range delete doesn't depend on the db checking the
+  // parent fk per statement rather than per row (postgres does, h2/mysql don't)
+  @Modifying
+  @Transactional
+  @Query("UPDATE Comment c SET c.parent = null WHERE c.post.id = :postId AND c.path >= :from AND c.path < :to")
+  int detachSubtree(@Param("postId") Long postId, @Param("from") String from, @Param("to") String to);
+
+  // who wrote what in a subtree, so deleting it can take the right amount off
+  // each author's profile counters. same range scan as the delete
+  @Query("SELECT c.author.id AS authorId, COUNT(c) AS comments, "
+      + "SUM(CASE WHEN c.isMarkedHelpful = TRUE THEN 1 ELSE 0 END) AS helpful "
+      + "FROM Comment c WHERE c.post.id = :postId AND c.path >= :from AND c.path < :to GROUP BY c.author.id")
+  List<CommentAuthorCount> countSubtreeByAuthor(@Param("postId") Long postId, @Param("from") String from,
+      @Param("to") String to);
+
+  @Modifying
+  @Transactional
+  @Query("DELETE FROM Comment c WHERE c.post.id = :postId AND c.path >= :from AND c.path < :to")
+  int deleteSubtree(@Param("postId") Long postId, @Param("from") String from, @Param("to") String to);
+
+  @Query("SELECT c.id AS id, p.id AS postId, pa.id AS postAuthorId, pa.username AS postAuthorUsername, "
+      + "c.author.id AS commentAuthorId, c.isMarkedHelpful AS markedHelpful "
+      + "FROM Comment c JOIN c.post p JOIN p.author pa WHERE c.id = :id")
+  Optional<HelpfulCommentView> findHelpfulViewById(@Param("id") Long id);
+
+  // only flips the flag if nobody got there first, 0 rows = already helpful.
+  // this is the real guard against double awarding on concurrent clicks
+  @Modifying
+  @Transactional
+  @Query("UPDATE Comment c SET c.isMarkedHelpful = true WHERE c.id = :id AND c.isMarkedHelpful = false")
+  int markHelpfulIfNotAlready(@Param("id") Long id);
+
+  // comments from before threading are all top level, their path is just their
+  // own id
+  @Modifying
+  @Transactional
+  @Query(value = "UPDATE comments SET path = LPAD(CAST(id AS VARCHAR(12)), 12, '0') "
+      + "WHERE id IN (SELECT id FROM comments WHERE path IS NULL ORDER BY id LIMIT :limit)", nativeQuery = true)
+  int backfillRootPaths(@Param("limit") int limit);
 }
@@ -0,0 +1,22 @@
+package com.verifico.server.comment;
+
+import java.time.Instant;
+
+// a comment + only the author columns a comment card shows, selected straight
+// into this by the list/thread queries. no User entity (password hash, email,
+// bio, ...) gets loaded or put in the persistence context for a page of
+// comments
+public record CommentRow(
+    Long id,
+    String content,
+    Long postId,
+    Long parentId,
+    int depth,
+    String path,
+    Instant createdAt,
+    Long authorId,
+    String authorUsername,
+    String authorFirstName,
+    String authorLastName,
+    String authorAvatarUrl) {
+}
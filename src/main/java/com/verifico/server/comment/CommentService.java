@@ -1,29 +1,49 @@
 package com.verifico.server.comment;
 
-import org.springframework.data.domain.Page;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import com.verifico.server.auth.jwt.AuthenticatedUser;
+import com.verifico.server.comment.dto.CommentPageResponse;
 import com.verifico.server.comment.dto.CommentRequest;
 import com.verifico.server.comment.dto.CommentResponse;
+import com.verifico.server.comment.dto.CommentThreadNode;
+import com.verifico.server.comment.dto.CommentThreadResponse;
+import com.verifico.server.comment.stream.CommentEvent;
+import com.verifico.server.comment.stream.CommentEventBroadcaster;
+import com.verifico.server.comment.stream.CommentEventType;
 import com.verifico.server.credit.CreditService;
 import com.verifico.server.credit.TransactionType;
 import com.verifico.server.post.Post;
 import com.verifico.server.post.PostRepository;
 import com.verifico.server.user.User;
 import com.verifico.server.user.UserRepository;
+import com.verifico.server.user.UserStatsService;
 import com.verifico.server.user.dto.AuthorResponse;
 
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 
 // Create, read, delete operations only for now.
 // We won't feature edit/update comments initially.
+// Comments are threaded: replies point at their parent and every comment keeps
+// a materialized path (CommentPaths), so a thread loads with one range scan
+// instead of one query per level.
+// Every change is also published as a CommentEvent, CommentEventBroadcaster
+// pushes it to clients watching the post once the transaction commits.
 @Service
 @RequiredArgsConstructor
 public class CommentService {
@@ -32,22 +52,32 @@ public class CommentService {
   private final UserRepository userRepository;
   private final PostRepository postRepository;
   private final CreditService creditService;
+  private final CommentSpamGuard commentSpamGuard;
+  private final UserStatsService userStatsService;
+  private final ApplicationEventPublisher eventPublisher;
+  private final CommentEventBroadcaster commentEventBroadcaster;
 
   @Transactional
   public CommentResponse postComment(CommentRequest request, Long id) {
-    Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-    if (auth == null) {
+    AuthenticatedUser currentUser = AuthenticatedUser.from(SecurityContextHolder.getContext().getAuthentication());
+    if (currentUser == null) {
       throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Authenticated user not found!");
     }
-    String username = auth.getName();
 
-    // check post exists
-    Post post = postRepository.findById(id)
-        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Post not found"));
+    // in memory, so duplicate floods never reach the db
+    commentSpamGuard.check(currentUser.userId(), id, request.getContent());
+    releaseOnRollback(currentUser.userId(), id, request.getContent());
+
+    // bumping the counter is also the existence check, 0 rows = no such post.
+    // rolled back with everything else if the insert fails
+    if (postRepository.incrementCommentCount(id) == 0) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Post not found");
+    }
 
-    // is person trying to comment authenticated?
-    User author = userRepository.findByUsername(username).orElseThrow(
-        () -> new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "User data inconsistency detected"));
+    // we already know who's commenting from the token and which post, only the
+    // fks are needed
+    Post post = postRepository.getReferenceById(id);
+    User author = userRepository.getReferenceById(currentUser.userId());
 
     Comment comment = new Comment();
     comment.setPost(post);
@@ -55,80 +85,274 @@ public class CommentService {
     comment.setAuthor(author);
 
     Comment savedComment = commentRepository.save(comment);
-    return toCommentResponse(savedComment);
+    // path needs the generated id, flushed with the insert's transaction
+    savedComment.setPath(CommentPaths.segment(savedComment.getId()));
+    userStatsService.commentsChanged(currentUser.userId(), 1, 0);
+
+    CommentResponse response = toCommentResponse(savedComment);
+    publishCreated(response);
+    return response;
+  }
+
+  @Transactional
+  public CommentResponse replyToComment(CommentRequest request, Long parentId) {
+    AuthenticatedUser currentUser = AuthenticatedUser.from(SecurityContextHolder.getContext().getAuthentication());
+    if (currentUser == null) {
+      throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Authenticated user not found!");
+    }
+
+    Comment parent = commentRepository.findById(parentId)
+        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Comment not found"));
+
+    if (parent.getDepth() >= CommentPaths.MAX_DEPTH) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Replies can't be nested any deeper");
+    }
+
+    Long postId = parent.getPost().getId();
+    commentSpamGuard.check(currentUser.userId(), postId, request.getContent());
+    releaseOnRollback(currentUser.userId(), postId, request.getContent());
+
+    if (postRepository.incrementCommentCount(postId) == 0) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Post not found");
+    }
+
+    Comment reply = new Comment();
+    reply.setPost(parent.getPost());
+    reply.setParent(parent);
+    reply.setDepth(parent.getDepth() + 1);
+    reply.setContent(request.getContent().strip());
+    reply.setAuthor(userRepository.getReferenceById(currentUser.userId()));
+
+    Comment savedReply = commentRepository.save(reply);
+    savedReply.setPath(CommentPaths.childPath(pathOf(parent), savedReply.getId()));
+    userStatsService.commentsChanged(currentUser.userId(), 1, 0);
+
+    CommentResponse response = toCommentResponse(savedReply);
+    publishCreated(response);
+    return response;
+  }
+
+  // live comment events for a post, see CommentEventBroadcaster
+  public SseEmitter streamComments(Long postId) {
+    if (!postRepository.existsById(postId)) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Post not found");
+    }
+
+    return commentEventBroadcaster.subscribe(postId);
+  }
+
+  // a comment and its replies, depth first, paged by path. the whole page is one
+  // range scan and the tree is put together in a single pass
+  @Transactional(readOnly = true)
+  public CommentThreadResponse getThread(Long commentId, String cursor, int size) {
+    Comment root = commentRepository.findById(commentId)
+        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Comment not found"));
+
+    String rootPath = root.getPath();
+    if (rootPath == null) {
+      // from before threading and not backfilled yet, can't have replies
+      return new CommentThreadResponse(List.of(new CommentThreadNode(toCommentResponse(root), new ArrayList<>())),
+          null);
+    }
+
+    String from = rootPath;
+    if (cursor != null && !cursor.isBlank()) {
+      if (!CommentPaths.isValid(cursor) || !cursor.startsWith(rootPath)) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+      }
+      from = CommentPaths.after(cursor);
+    }
+
+    List<CommentRow> comments = commentRepository.findSubtreePage(root.getPost().getId(), from,
+        CommentPaths.upperBound(rootPath), PageRequest.of(0, size + 1));
+
+    boolean hasMore = comments.size() > size;
+    if (hasMore) {
+      comments = comments.subList(0, size);
+    }
+
+    String nextCursor = hasMore ? comments.get(comments.size() - 1).path() : null;
+    return new CommentThreadResponse(assembleThread(comments), nextCursor);
+  }
+
+  // comments come sorted by path so a parent is always seen before its replies,
+  // one pass + one map lookup per comment is enough
+  private List<CommentThreadNode> assembleThread(List<CommentRow> comments) {
+    Map<Long, CommentThreadNode> nodes = new HashMap<>(comments.size() * 4 / 3 + 1);
+    List<CommentThreadNode> roots = new ArrayList<>();
+
+    for (CommentRow comment : comments) {
+      CommentThreadNode node = new CommentThreadNode(toCommentResponse(comment), new ArrayList<>());
+      nodes.put(comment.id(), node);
+
+      CommentThreadNode parent = comment.parentId() != null ? nodes.get(comment.parentId()) : null;
+      if (parent != null) {
+        parent.replies().add(node);
+      } else {
+        roots.add(node);
+      }
+    }
+
+    return roots;
   }
 
-  public Page<CommentResponse> getAllCommentsForPost(Long id, int page, int size) {
-    // check post exists:
-    postRepository.findById(id)
+  // comments from before threading are top level, their path is just their id
+  private String pathOf(Comment comment) {
+    if (comment.getPath() == null) {
+      comment.setPath(CommentPaths.segment(comment.getId()));
+    }
+    return comment.getPath();
+  }
+
+  // cursor based so page 50 costs the same as page 1, cursor is null for the
+  // first page. the total comes from the post's counter, which is also the
+  // existence check
+  @Transactional(readOnly = true)
+  public CommentPageResponse getAllCommentsForPost(Long id, String cursor, int size) {
+    long totalComments = postRepository.findCommentCountById(id)
         .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Post not found"));
 
-    Pageable pageable = PageRequest.of(page, size);
-    // find all comments by post id {raw response}:
-    Page<Comment> allComments = commentRepository.findAllByPostIdOrderByCreatedAtDesc(id, pageable);
+    // one extra row tells us if there's another page without a count query
+    Pageable limit = PageRequest.of(0, size + 1);
+    List<CommentRow> comments;
+    if (cursor == null || cursor.isBlank()) {
+      comments = commentRepository.findLatestByPostId(id, limit);
+    } else {
+      CommentCursor after = CommentCursor.decode(cursor);
+      comments = commentRepository.findByPostIdBefore(id, after.createdAt(), after.id(), limit);
+    }
+
+    boolean hasMore = comments.size() > size;
+    if (hasMore) {
+      comments = comments.subList(0, size);
+    }
 
-    return allComments.map(this::toCommentResponse);
+    String nextCursor = hasMore ? CommentCursor.of(comments.get(comments.size() - 1)).encode() : null;
+    return new CommentPageResponse(comments.stream().map(this::toCommentResponse).toList(), nextCursor,
+        totalComments);
   }
 
   @Transactional
   public void deleteMyComment(Long id) {
-    Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+    AuthenticatedUser currentUser = AuthenticatedUser.from(SecurityContextHolder.getContext().getAuthentication());
 
-    if (auth == null) {
+    if (currentUser == null) {
       throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not authenticated");
     }
 
-    String username = auth.getName();
-
     // check if post exists
     Comment comment = commentRepository.findById(id)
         .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Comment not found!"));
 
     // check if current user authenticated is the user who commented
-    if (!username.equals(comment.getAuthor().getUsername())) {
+    if (!currentUser.userId().equals(comment.getAuthor().getId())) {
       throw new ResponseStatusException(HttpStatus.FORBIDDEN,
           "You are not authorised to make changes to this comment!");
     }
 
-    // delete comment
-    commentRepository.delete(comment);
+    // replies go with it, the whole subtree is one range on the path
+    Long postId = comment.getPost().getId();
+    int deleted;
+    if (comment.getPath() == null) {
+      // from before threading, can't have replies
+      commentRepository.delete(comment);
+      deleted = 1;
+      userStatsService.commentsChanged(currentUser.userId(), -1, comment.isMarkedHelpful() ? -1 : 0);
+    } else {
+      String end = CommentPaths.upperBound(comment.getPath());
+      // replies can be from other people, their profile counts go down too
+      for (CommentAuthorCount count : commentRepository.countSubtreeByAuthor(postId, comment.getPath(), end)) {
+        userStatsService.commentsChanged(count.getAuthorId(), -count.getComments(), -count.getHelpful());
+      }
+      commentRepository.detachSubtree(postId, comment.getPath(), end);
+      deleted = commentRepository.deleteSubtree(postId, comment.getPath(), end);
+    }
+    postRepository.decrementCommentCount(postId, deleted);
+    String content = comment.getContent();
+    afterCommit(() -> commentSpamGuard.release(currentUser.userId(), postId, content));
+
+    eventPublisher.publishEvent(new CommentEvent(CommentEventType.COMMENT_DELETED, postId, id, null));
+  }
+
+  // check reserved the fingerprint, a comment that doesn't make it (404, failed
+  // insert) mustn't block the retry
+  private void releaseOnRollback(Long userId, Long postId, String content) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      return;
+    }
+
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCompletion(int status) {
+        if (status == STATUS_ROLLED_BACK) {
+          commentSpamGuard.release(userId, postId, content);
+        }
+      }
+    });
+  }
+
+  // spam guard bookkeeping only once the change is really in the db
+  private void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        action.run();
+      }
+    });
   }
 
   @Transactional
   public void markCommentHelpful(Long commentId) {
-    Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+    AuthenticatedUser currentUser = AuthenticatedUser.from(SecurityContextHolder.getContext().getAuthentication());
 
-    if (auth == null) {
+    if (currentUser == null) {
       throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not authenticated");
     }
 
-    String username = auth.getName();
-
-    Comment comment = commentRepository.findById(commentId)
+    // one projection row instead of comment -> post -> post author -> comment
+    // author
+    HelpfulCommentView comment = commentRepository.findHelpfulViewById(commentId)
         .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Comment not found"));
 
-    Post post = comment.getPost();
-
-    if (!username.equals(post.getAuthor().getUsername())) {
+    if (!currentUser.userId().equals(comment.getPostAuthorId())) {
       throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only post author can mark comments as helpful");
     }
 
-    User commentAuthor = comment.getAuthor();
-
-    if (comment.isMarkedHelpful()) {
+    // the flag check is just the cheap early exit, the conditional update is what
+    // stops two concurrent clicks from both awarding credits
+    if (comment.isMarkedHelpful() || commentRepository.markHelpfulIfNotAlready(commentId) == 0) {
       throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Comment already marked helpful");
     }
 
-    creditService.addCredits(commentAuthor.getId(), TransactionType.COMMENT_MARKED_HELPFUL, commentId, post.getId());
+    creditService.addCredits(comment.getCommentAuthorId(), TransactionType.COMMENT_MARKED_HELPFUL, commentId,
+        comment.getPostId());
+    userStatsService.commentMarkedHelpful(comment.getCommentAuthorId());
 
-    comment.setMarkedHelpful(true);
-    commentRepository.save(comment);
+    eventPublisher.publishEvent(
+        new CommentEvent(CommentEventType.COMMENT_MARKED_HELPFUL, comment.getPostId(), commentId, null));
+  }
 
+  private void publishCreated(CommentResponse comment) {
+    eventPublisher.publishEvent(
+        new CommentEvent(CommentEventType.COMMENT_CREATED, comment.postId(), comment.id(), comment));
   }
 
   private CommentResponse toCommentResponse(Comment comment) {
     return new CommentResponse(comment.getId(), comment.getContent(), toAuthorResponse(comment.getAuthor()),
-        comment.getPost().getId(), comment.getCreatedAt());
+        comment.getPost().getId(), comment.getCreatedAt(),
+        comment.getParent() != null ? comment.getParent().getId() : null, comment.getDepth());
+  }
+
+  private CommentResponse toCommentResponse(CommentRow comment) {
+    return new CommentResponse(comment.id(), comment.content(),
+        new AuthorResponse(comment.authorId(), comment.authorUsername(), comment.authorFirstName(),
+            comment.authorLastName(), comment.authorAvatarUrl()),
+        comment.postId(), comment.createdAt(), comment.parentId(), comment.depth());
   }
 
   private AuthorResponse toAuthorResponse(User user) {
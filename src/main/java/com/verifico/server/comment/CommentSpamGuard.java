@@ -0,0 +1,171 @@
+package com.verifico.server.comment;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+// Rejects duplicate / copy-pasted comments before they cost us a db write.
+//
+// Every user gets a small ring of their latest comment fingerprints
+// (ContentFingerprint, 64 bit simhash) for the last `window-seconds`. A new
+// comment is compared to each of them with a xor + bitCount:
+// - near-identical to a recent comment on the same post -> 409, it's a double
+// submit or someone spamming one thread
+// - near-identical to recent comments on `cross-post-limit` other posts -> 429,
+// that's the same text being sprayed across posts
+// Checking is a map lookup + up to `ring-size` comparisons under the user's own
+// lock, so it's microseconds and users never wait on each other.
+//
+// A comment that passes is added to the ring under that same lock, before we
+// touch the db, so of N identical submits racing each other only the first gets
+// through. CommentService releases it again if the comment rolls back (404,
+// failed insert) and when it's deleted, so those never block the user. Comments
+// with too little text to fingerprint ("👍", "?!") aren't tracked at all.
+//
+// This is per replica and in memory, it's there to stop floods cheaply, not to
+// be a perfect dedup.
+@Component
+public class CommentSpamGuard {
+
+  private final Map<Long, FingerprintRing> rings = new ConcurrentHashMap<>();
+
+  private final long windowMillis;
+  private final int ringSize;
+  private final int maxDistance;
+  private final int crossPostLimit;
+
+  public CommentSpamGuard(
+      @Value("${app.comments.spam.window-seconds:600}") long windowSeconds,
+      @Value("${app.comments.spam.ring-size:16}") int ringSize,
+      @Value("${app.comments.spam.max-distance:3}") int maxDistance,
+      @Value("${app.comments.spam.cross-post-limit:3}") int crossPostLimit) {
+    this.windowMillis = windowSeconds * 1000;
+    this.ringSize = ringSize;
+    this.maxDistance = maxDistance;
+    this.crossPostLimit = crossPostLimit;
+  }
+
+  // throws if the comment looks like spam, otherwise reserves its fingerprint
+  // so the same text can't get through again until it's released
+  public void check(Long userId, Long postId, String content) {
+    if (!ContentFingerprint.hasEnoughText(content)) {
+      return;
+    }
+
+    long fingerprint = ContentFingerprint.simHash(content);
+    long now = System.currentTimeMillis();
+
+    while (true) {
+      FingerprintRing ring = rings.computeIfAbsent(userId, id -> new FingerprintRing(ringSize));
+      synchronized (ring) {
+        // swept between the lookup and the lock, go again with a fresh one
+        if (ring.evicted) {
+          continue;
+        }
+        checkRing(ring, postId, fingerprint, now);
+        ring.add(postId, fingerprint, now);
+        return;
+      }
+    }
+  }
+
+  // the comment never made it (rolled back) or was deleted, posting it again
+  // (e.g. fixed up) is fine
+  public void release(Long userId, Long postId, String content) {
+    if (!ContentFingerprint.hasEnoughText(content)) {
+      return;
+    }
+
+    FingerprintRing ring = rings.get(userId);
+    if (ring == null) {
+      return;
+    }
+
+    long fingerprint = ContentFingerprint.simHash(content);
+    synchronized (ring) {
+      ring.remove(postId, fingerprint);
+    }
+  }
+
+  private void checkRing(FingerprintRing ring, long postId, long fingerprint, long now) {
+    long cutoff = now - windowMillis;
+    int otherPosts = 0;
+
+    for (int i = 0; i < ring.count; i++) {
+      if (ring.recordedAt[i] < cutoff
+          || ContentFingerprint.distance(ring.fingerprints[i], fingerprint) > maxDistance) {
+        continue;
+      }
+
+      if (ring.postIds[i] == postId) {
+        throw new ResponseStatusException(HttpStatus.CONFLICT, "You've already posted this comment");
+      }
+      otherPosts++;
+    }
+
+    if (otherPosts >= crossPostLimit) {
+      throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+          "You've posted this comment too many times, please try again later");
+    }
+  }
+
+  // drops users with nothing inside the window so the map only holds recently
+  // active commenters
+  @Scheduled(fixedDelayString = "${app.comments.spam.sweep-interval-ms:60000}")
+  public void evictExpired() {
+    long cutoff = System.currentTimeMillis() - windowMillis;
+    rings.forEach((userId, ring) -> {
+      synchronized (ring) {
+        if (ring.lastRecordedAt < cutoff) {
+          ring.evicted = true;
+          rings.remove(userId, ring);
+        }
+      }
+    });
+  }
+
+  public int getTrackedUsers() {
+    return rings.size();
+  }
+
+  // fixed size, oldest entry gets overwritten. parallel arrays so a check is a
+  // scan over primitives
+  private static final class FingerprintRing {
+    private final long[] fingerprints;
+    private final long[] postIds;
+    private final long[] recordedAt;
+    private int count;
+    private int next;
+    private long lastRecordedAt;
+    private boolean evicted;
+
+    private FingerprintRing(int size) {
+      this.fingerprints = new long[size];
+      this.postIds = new long[size];
+      this.recordedAt = new long[size];
+    }
+
+    private void add(long postId, long fingerprint, long now) {
+      fingerprints[next] = fingerprint;
+      postIds[next] = postId;
+      recordedAt[next] = now;
+      next = (next + 1) % fingerprints.length;
+      count = Math.min(count + 1, fingerprints.length);
+      lastRecordedAt = now;
+    }
+
+    // expires the entry in place, the slot gets reused like any other
+    private void remove(long postId, long fingerprint) {
+      for (int i = 0; i < count; i++) {
+        if (postIds[i] == postId && fingerprints[i] == fingerprint) {
+          recordedAt[i] = Long.MIN_VALUE;
+        }
+      }
+    }
+  }
+}
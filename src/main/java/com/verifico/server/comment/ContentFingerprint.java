@@ -0,0 +1,98 @@
+package com.verifico.server.comment;
+
+import java.text.Normalizer;
+
+// 64 bit SimHash of a comment's text. Near-identical comments ("Great idea!!"
+// vs "great idea") end up a couple of bits apart, so comparing two comments is
+// a xor + bitCount instead of a string diff.
+//
+// text is normalized first (case, accents, punctuation, whitespace), then every
+// 3 char shingle votes on each of the 64 bits
+public final class ContentFingerprint {
+
+  private static final int SHINGLE = 3;
+
+  private ContentFingerprint() {
+  }
+
+  public static long simHash(String content) {
+    String text = normalize(content);
+    if (text.isEmpty()) {
+      return 0L;
+    }
+
+    int[] votes = new int[64];
+    if (text.length() <= SHINGLE) {
+      vote(votes, hash(text, 0, text.length()));
+    } else {
+      for (int i = 0; i + SHINGLE <= text.length(); i++) {
+        vote(votes, hash(text, i, i + SHINGLE));
+      }
+    }
+
+    long fingerprint = 0L;
+    for (int bit = 0; bit < 64; bit++) {
+      if (votes[bit] > 0) {
+        fingerprint |= 1L << bit;
+      }
+    }
+    return fingerprint;
+  }
+
+  // emoji/punctuation only comments normalize to (almost) nothing, they'd all
+  // get the same fingerprint and look like duplicates of each other
+  public static boolean hasEnoughText(String content) {
+    return normalize(content).length() >= SHINGLE;
+  }
+
+  public static int distance(long a, long b) {
+    return Long.bitCount(a ^ b);
+  }
+
+  // lowercase letters + digits separated by single spaces
+  static String normalize(String content) {
+    if (content == null) {
+      return "";
+    }
+
+    String decomposed = Normalizer.normalize(content, Normalizer.Form.NFKD);
+    StringBuilder builder = new StringBuilder(decomposed.length());
+    boolean pendingSpace = false;
+
+    for (int i = 0; i < decomposed.length(); i++) {
+      char c = decomposed.charAt(i);
+      if (Character.isLetterOrDigit(c)) {
+        if (pendingSpace && !builder.isEmpty()) {
+          builder.append(' ');
+        }
+        builder.append(Character.toLowerCase(c));
+        pendingSpace = false;
+      } else if (Character.getType(c) != Character.NON_SPACING_MARK) {
+        pendingSpace = true;
+      }
+    }
+
+    return builder.toString();
+  }
+
+  private static void vote(int[] votes, long hash) {
+    for (int bit = 0; bit < 64; bit++) {
+      votes[bit] += ((hash >>> bit) & 1L) != 0 ? 1 : -1;
+    }
+  }
+
+  // fnv-1a + a murmur finalizer so neighbouring shingles spread over all bits
+  private static long hash(String text, int from, int to) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = from; i < to; i++) {
+      h ^= text.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -0,0 +1,17 @@
+package com.verifico.server.comment;
+
+// everything markCommentHelpful needs in one row, instead of loading the
+// comment, its post, the post author and the comment author one by one
+public interface HelpfulCommentView {
+  Long getId();
+
+  Long getPostId();
+
+  Long getPostAuthorId();
+
+  String getPostAuthorUsername();
+
+  Long getCommentAuthorId();
+
+  boolean isMarkedHelpful();
+}
@@ -0,0 +1,11 @@
+package com.verifico.server.comment.dto;
+
+import java.util.List;
+
+// nextCursor is null on the last page, totalComments comes from the post's
+// comment counter so it costs nothing extra
+public record CommentPageResponse(
+    List<CommentResponse> comments,
+    String nextCursor,
+    long totalComments) {
+}
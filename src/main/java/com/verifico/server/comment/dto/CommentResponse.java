@@ -9,5 +9,7 @@ public record CommentResponse(
     String content,
     AuthorResponse author,
     Long postId,
-    Instant createdAt) {
+    Instant createdAt,
+    Long parentId,
+    int depth) {
 }
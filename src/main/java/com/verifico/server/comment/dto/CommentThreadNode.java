@@ -0,0 +1,8 @@
+package com.verifico.server.comment.dto;
+
+import java.util.List;
+
+public record CommentThreadNode(
+    CommentResponse comment,
+    List<CommentThreadNode> replies) {
+}
@@ -0,0 +1,11 @@
+package com.verifico.server.comment.dto;
+
+import java.util.List;
+
+// one page of a thread, depth first. on later pages a reply whose parent was on
+// an earlier page shows up at the top level (its parentId says where it goes).
+// nextCursor is null on the last page
+public record CommentThreadResponse(
+    List<CommentThreadNode> thread,
+    String nextCursor) {
+}
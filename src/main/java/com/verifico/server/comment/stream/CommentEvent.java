@@ -0,0 +1,13 @@
+package com.verifico.server.comment.stream;
+
+import com.verifico.server.comment.dto.CommentResponse;
+
+// published by CommentService inside its transaction, only pushed to clients
+// once that transaction commits. comment is only set for COMMENT_CREATED, a
+// deleted comment takes its replies with it
+public record CommentEvent(
+    CommentEventType type,
+    Long postId,
+    Long commentId,
+    CommentResponse comment) {
+}
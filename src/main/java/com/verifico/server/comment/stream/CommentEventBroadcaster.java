@@ -0,0 +1,289 @@
+package com.verifico.server.comment.stream;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import tools.jackson.databind.ObjectMapper;
+
+// Pushes comment changes to everyone watching a post over SSE, so clients can
+// stop polling the comments endpoint.
+//
+// How an event gets out:
+// - CommentService publishes a CommentEvent, we only see it AFTER_COMMIT so a
+// rolled back comment is never pushed
+// - we serialize it once and PUBLISH it on a redis channel, every replica
+// (including us) is subscribed and fans it out to its own local connections
+// - if redis is down we deliver to our own connections directly, clients on
+// other replicas just miss it until their next reload
+//
+// Back-pressure: every connection has a small bounded queue and at most one
+// drain task on the shared pool, so a slow client never blocks the publisher or
+// the other clients. If a client's queue fills up we drop the connection, the
+// browser's EventSource reconnects and refetches the comments.
+@Component
+@Slf4j
+public class CommentEventBroadcaster {
+
+  public static final String CHANNEL = "comments:events";
+
+  private final StringRedisTemplate redisTemplate;
+  private final ObjectMapper objectMapper;
+  private final int queueCapacity;
+  private final int maxSubscribers;
+  private final long timeoutMillis;
+  private final ThreadPoolExecutor executor;
+
+  private final Map<Long, Set<Subscriber>> subscribersByPost = new ConcurrentHashMap<>();
+  private final AtomicInteger subscriberCount = new AtomicInteger();
+
+  public CommentEventBroadcaster(StringRedisTemplate redisTemplate, ObjectMapper objectMapper,
+      @Value("${app.comments.stream.threads:4}") int threads,
+      @Value("${app.comments.stream.queue-capacity:64}") int queueCapacity,
+      @Value("${app.comments.stream.max-subscribers:10000}") int maxSubscribers,
+      @Value("${app.comments.stream.timeout-ms:1800000}") long timeoutMillis) {
+    this.redisTemplate = redisTemplate;
+    this.objectMapper = objectMapper;
+    this.queueCapacity = queueCapacity;
+    this.maxSubscribers = maxSubscribers;
+    this.timeoutMillis = timeoutMillis;
+
+    // the task queue doesn't need a bound, there's at most one pending drain
+    // per connection
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+        runnable -> {
+          Thread thread = new Thread(runnable, "comment-stream-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    new ExecutorServiceMetrics(executor, "comment-stream", List.of()).bindTo(Metrics.globalRegistry);
+  }
+
+  public SseEmitter subscribe(Long postId) {
+    SseEmitter emitter = new SseEmitter(timeoutMillis);
+    Subscriber subscriber = register(postId, new SseEventSink(emitter));
+
+    emitter.onCompletion(() -> unregister(subscriber));
+    emitter.onTimeout(() -> unregister(subscriber));
+    emitter.onError(error -> unregister(subscriber));
+    return emitter;
+  }
+
+  public Subscriber register(Long postId, CommentEventSink sink) {
+    if (subscriberCount.incrementAndGet() > maxSubscribers) {
+      subscriberCount.decrementAndGet();
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many live connections, try again later");
+    }
+
+    Subscriber subscriber = new Subscriber(postId, sink, new ArrayBlockingQueue<>(queueCapacity));
+    subscribersByPost.computeIfAbsent(postId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+    return subscriber;
+  }
+
+  @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+  public void onCommentEvent(CommentEvent event) {
+    String message;
+    try {
+      message = event.postId() + "\n" + event.type().getEventName() + "\n" + objectMapper.writeValueAsString(event);
+    } catch (Exception e) {
+      log.error("Unable to serialize comment event {} for post {}", event.type(), event.postId(), e);
+      return;
+    }
+
+    try {
+      redisTemplate.convertAndSend(CHANNEL, message);
+    } catch (Exception e) {
+      // our own clients still get it
+      log.debug("Unable to publish comment event to redis, delivering locally: {}", e.getMessage());
+      deliverLocally(message);
+    }
+  }
+
+  // subscribed to CHANNEL in CommentEventSubscription
+  public void onRedisMessage(Message message, byte[] pattern) {
+    deliverLocally(new String(message.getBody(), StandardCharsets.UTF_8));
+  }
+
+  // message is "<postId>\n<event name>\n<json>"
+  private void deliverLocally(String message) {
+    int first = message.indexOf('\n');
+    int second = first < 0 ? -1 : message.indexOf('\n', first + 1);
+    if (second < 0) {
+      log.warn("Ignoring malformed comment event message");
+      return;
+    }
+
+    Long postId;
+    try {
+      postId = Long.valueOf(message.substring(0, first));
+    } catch (NumberFormatException e) {
+      log.warn("Ignoring comment event with bad post id");
+      return;
+    }
+
+    Set<Subscriber> subscribers = subscribersByPost.get(postId);
+    if (subscribers == null || subscribers.isEmpty()) {
+      return;
+    }
+
+    Frame frame = new Frame(message.substring(first + 1, second), message.substring(second + 1));
+    for (Subscriber subscriber : subscribers) {
+      enqueue(subscriber, frame);
+    }
+  }
+
+  // proxies / load balancers drop idle connections, an sse comment line every
+  // so often keeps them open and lets us notice clients that went away
+  @Scheduled(fixedDelayString = "${app.comments.stream.heartbeat-ms:25000}")
+  public void sendHeartbeats() {
+    subscribersByPost.values().forEach(subscribers -> subscribers.forEach(subscriber -> enqueue(subscriber,
+        Frame.HEARTBEAT)));
+  }
+
+  public int getSubscriberCount() {
+    return subscriberCount.get();
+  }
+
+  private void enqueue(Subscriber subscriber, Frame frame) {
+    if (subscriber.closed.get()) {
+      return;
+    }
+
+    if (!subscriber.queue.offer(frame)) {
+      // not keeping up, drop it rather than buffer without limit
+      log.debug("Dropping slow comment stream client on post {}", subscriber.postId);
+      disconnect(subscriber);
+      return;
+    }
+
+    scheduleDrain(subscriber);
+  }
+
+  private void scheduleDrain(Subscriber subscriber) {
+    if (subscriber.draining.compareAndSet(false, true)) {
+      executor.execute(() -> drain(subscriber));
+    }
+  }
+
+  private void drain(Subscriber subscriber) {
+    try {
+      Frame frame;
+      while (!subscriber.closed.get() && (frame = subscriber.queue.poll()) != null) {
+        if (frame == Frame.HEARTBEAT) {
+          subscriber.sink.sendHeartbeat();
+        } else {
+          subscriber.sink.send(frame.eventName(), frame.json());
+        }
+      }
+    } catch (Exception e) {
+      // client went away
+      disconnect(subscriber);
+    } finally {
+      subscriber.draining.set(false);
+    }
+
+    // something may have been queued between the last poll and the flag reset
+    if (!subscriber.closed.get() && !subscriber.queue.isEmpty()) {
+      scheduleDrain(subscriber);
+    }
+  }
+
+  private void disconnect(Subscriber subscriber) {
+    if (unregister(subscriber)) {
+      subscriber.sink.close();
+    }
+  }
+
+  // true the first time, emitter callbacks + our own disconnects can race
+  private boolean unregister(Subscriber subscriber) {
+    if (!subscriber.closed.compareAndSet(false, true)) {
+      return false;
+    }
+
+    subscriberCount.decrementAndGet();
+    subscribersByPost.computeIfPresent(subscriber.postId, (postId, subscribers) -> {
+      subscribers.remove(subscriber);
+      return subscribers.isEmpty() ? null : subscribers;
+    });
+    subscriber.queue.clear();
+    return true;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    subscribersByPost.values().forEach(subscribers -> subscribers.forEach(this::disconnect));
+    executor.shutdownNow();
+  }
+
+  public static final class Subscriber {
+    private final Long postId;
+    private final CommentEventSink sink;
+    private final BlockingQueue<Frame> queue;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private Subscriber(Long postId, CommentEventSink sink, BlockingQueue<Frame> queue) {
+      this.postId = postId;
+      this.sink = sink;
+      this.queue = queue;
+    }
+
+    public boolean isClosed() {
+      return closed.get();
+    }
+  }
+
+  private record Frame(String eventName, String json) {
+    private static final Frame HEARTBEAT = new Frame(null, null);
+  }
+
+  private static final class SseEventSink implements CommentEventSink {
+    private final SseEmitter emitter;
+
+    private SseEventSink(SseEmitter emitter) {
+      this.emitter = emitter;
+    }
+
+    @Override
+    public void send(String eventName, String json) throws IOException {
+      emitter.send(SseEmitter.event().name(eventName).data(json, MediaType.APPLICATION_JSON));
+    }
+
+    @Override
+    public void sendHeartbeat() throws IOException {
+      emitter.send(SseEmitter.event().comment("keepalive"));
+    }
+
+    @Override
+    public void close() {
+      emitter.complete();
+    }
+  }
+}
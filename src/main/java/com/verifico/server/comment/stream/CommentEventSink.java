@@ -0,0 +1,13 @@
+package com.verifico.server.comment.stream;
+
+import java.io.IOException;
+
+// one connected client. only ever called from one thread at a time
+public interface CommentEventSink {
+
+  void send(String eventName, String json) throws IOException;
+
+  void sendHeartbeat() throws IOException;
+
+  void close();
+}
@@ -0,0 +1,56 @@
+package com.verifico.server.comment.stream;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+// Keeps this replica subscribed to the comment events channel so it can fan
+// events out to its own sse connections (see CommentEventBroadcaster).
+// Not a lifecycle bean on purpose: a listener container that can't reach redis
+// fails the whole startup, and live comments aren't worth refusing to boot
+// over. We subscribe once the app is up and keep retrying until it works.
+@Component
+@Slf4j
+public class CommentEventSubscription {
+
+  private final RedisMessageListenerContainer container;
+
+  public CommentEventSubscription(RedisConnectionFactory connectionFactory, CommentEventBroadcaster broadcaster) {
+    this.container = new RedisMessageListenerContainer();
+    this.container.setConnectionFactory(connectionFactory);
+    this.container.addMessageListener(broadcaster::onRedisMessage, new ChannelTopic(CommentEventBroadcaster.CHANNEL));
+    this.container.afterPropertiesSet();
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void subscribeOnStartup() {
+    ensureSubscribed();
+  }
+
+  @Scheduled(fixedDelayString = "${app.comments.stream.resubscribe-ms:30000}", initialDelay = 30_000)
+  public void ensureSubscribed() {
+    if (container.isRunning()) {
+      return;
+    }
+
+    try {
+      container.start();
+      log.info("Subscribed to {}", CommentEventBroadcaster.CHANNEL);
+    } catch (Exception e) {
+      container.stop();
+      log.warn("Unable to subscribe to comment events, live updates only reach this replica: {}", e.getMessage());
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() throws Exception {
+    container.destroy();
+  }
+}
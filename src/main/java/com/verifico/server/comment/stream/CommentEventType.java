@@ -0,0 +1,18 @@
+package com.verifico.server.comment.stream;
+
+public enum CommentEventType {
+  COMMENT_CREATED("comment-created"),
+  COMMENT_DELETED("comment-deleted"),
+  COMMENT_MARKED_HELPFUL("comment-marked-helpful");
+
+  // the sse event name clients listen for
+  private final String eventName;
+
+  CommentEventType(String eventName) {
+    this.eventName = eventName;
+  }
+
+  public String getEventName() {
+    return eventName;
+  }
+}
@@ -0,0 +1,114 @@
+package com.verifico.server.common.datasource;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.autoconfigure.DataSourceProperties;
+import org.springframework.boot.jdbc.health.DataSourceHealthIndicator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import io.micrometer.core.instrument.Metrics;
+
+// Replaces boot's single pool with one hikari pool per workload (see
+// WorkloadRoutingDataSource). Every pool starts from spring.datasource.* +
+// spring.datasource.hikari.*, then gets its own size and connection timeout:
+// app.datasource.pools.request-write.max-size=10
+// app.datasource.pools.request-read.max-size=10
+// app.datasource.pools.background.max-size=5
+// Request pools fail fast (3s) so a user gets an error instead of a hung page,
+// background jobs can afford to wait.
+//
+// Read replicas are optional, e.g.
+// app.datasource.replicas.urls=jdbc:postgresql://replica-1:5432/verifico,jdbc:postgresql://replica-2:5432/verifico
+// they reuse the primary's credentials unless
+// app.datasource.replicas.username/password are set.
+//
+// Every pool exports the hikaricp.connections.* meters (acquire = time spent
+// waiting for a connection, usage, timeouts, active/idle/pending) tagged with
+// its pool name, on the global registry like the payment metrics.
+@Configuration
+public class DataSourceConfig {
+
+  @Bean
+  public WorkloadRoutingDataSource workloadRoutingDataSource(DataSourceProperties properties, Environment environment,
+      StringRedisTemplate redisTemplate,
+      @Value("${app.datasource.pools.request-write.max-size:10}") int requestWriteSize,
+      @Value("${app.datasource.pools.request-write.connection-timeout-ms:3000}") long requestWriteTimeout,
+      @Value("${app.datasource.pools.request-read.max-size:10}") int requestReadSize,
+      @Value("${app.datasource.pools.request-read.connection-timeout-ms:3000}") long requestReadTimeout,
+      @Value("${app.datasource.pools.background.max-size:5}") int backgroundSize,
+      @Value("${app.datasource.pools.background.connection-timeout-ms:30000}") long backgroundTimeout,
+      @Value("${app.datasource.replicas.urls:}") String replicaUrls,
+      @Value("${app.datasource.replicas.username:}") String replicaUsername,
+      @Value("${app.datasource.replicas.password:}") String replicaPassword,
+      @Value("${app.datasource.replicas.pool-size:10}") int replicaSize,
+      @Value("${app.datasource.replicas.max-lag-ms:5000}") long maxLagMillis,
+      @Value("${app.datasource.read-your-writes-ms:5000}") long readYourWritesMillis) {
+    Binder binder = Binder.get(environment);
+
+    HikariDataSource requestWrites = pool("request-write", properties, binder, requestWriteSize, requestWriteTimeout);
+    HikariDataSource requestReads = pool("request-read", properties, binder, requestReadSize, requestReadTimeout);
+    HikariDataSource background = pool("background", properties, binder, backgroundSize, backgroundTimeout);
+
+    Map<String, DataSource> replicas = new LinkedHashMap<>();
+    for (String url : StringUtils.commaDelimitedListToStringArray(replicaUrls)) {
+      if (!StringUtils.hasText(url)) {
+        continue;
+      }
+      String name = "replica-" + (replicas.size() + 1);
+      HikariDataSource replica = pool(name, properties, binder, replicaSize, requestReadTimeout);
+      replica.setJdbcUrl(url.strip());
+      if (StringUtils.hasText(replicaUsername)) {
+        replica.setUsername(replicaUsername);
+        replica.setPassword(replicaPassword);
+      }
+      replica.setReadOnly(true);
+      // don't block startup on a replica that's down, the health check will
+      // keep it out of rotation until it answers
+      replica.setInitializationFailTimeout(-1);
+      replicas.put(name, replica);
+    }
+
+    return new WorkloadRoutingDataSource(requestWrites, requestReads, background, replicas,
+        new ReadYourWritesTracker(redisTemplate, readYourWritesMillis), maxLagMillis);
+  }
+
+  @Bean
+  @Primary
+  public DataSource dataSource(WorkloadRoutingDataSource workloadRoutingDataSource) {
+    return new LazyConnectionDataSourceProxy(workloadRoutingDataSource);
+  }
+
+  // boot would add a db check for both DataSource beans, they're the same
+  // primary. replicas aren't part of it on purpose, a replica being down just
+  // sends reads to the primary and shouldn't fail readiness
+  @Bean
+  public DataSourceHealthIndicator dbHealthIndicator(DataSource dataSource) {
+    return new DataSourceHealthIndicator(dataSource);
+  }
+
+  private HikariDataSource pool(String name, DataSourceProperties properties, Binder binder, int maxSize,
+      long connectionTimeoutMillis) {
+    HikariDataSource pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    binder.bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+    pool.setPoolName(name);
+    pool.setMaximumPoolSize(maxSize);
+    pool.setConnectionTimeout(connectionTimeoutMillis);
+    pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(Metrics.globalRegistry));
+    return pool;
+  }
+}
@@ -0,0 +1,96 @@
+package com.verifico.server.common.datasource;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.verifico.server.auth.jwt.AuthenticatedUser;
+import com.verifico.server.common.util.CircuitBreaker;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Remembers who wrote something in the last `windowMillis` so their reads skip
+// the replicas for a bit, otherwise you'd post a comment, reload and not see it
+// because the replica hasn't replayed it yet.
+// Keyed by the authenticated user id, anonymous requests don't get this (they
+// can't have written anything of their own, and the login/register lookups
+// read the primary anyway, see UserRepository).
+//
+// The next request usually lands on another instance, so the marker lives in
+// redis ("read_your_writes:<user id>" with the window as its ttl). Writes made
+// through this instance are also kept locally so those reads don't need the
+// round trip. If redis is unavailable we can't tell whether the user wrote
+// through another instance, so their reads go to the primary until it's back.
+@Slf4j
+public class ReadYourWritesTracker {
+
+  private static final String KEY_PREFIX = "read_your_writes:";
+
+  private final Map<Long, Long> lastWrites = new ConcurrentHashMap<>();
+  private final StringRedisTemplate redisTemplate;
+  private final Duration window;
+  private final long windowNanos;
+  // stops every read paying for a redis timeout while it's down
+  private final CircuitBreaker redisBreaker = new CircuitBreaker(5, 30_000);
+
+  public ReadYourWritesTracker(StringRedisTemplate redisTemplate, long windowMillis) {
+    this.redisTemplate = redisTemplate;
+    this.window = Duration.ofMillis(windowMillis);
+    this.windowNanos = windowMillis * 1_000_000;
+  }
+
+  public void recordWrite(Long userId) {
+    lastWrites.put(userId, System.nanoTime());
+
+    if (!redisBreaker.tryAcquirePermission()) {
+      return;
+    }
+    try {
+      redisTemplate.opsForValue().set(KEY_PREFIX + userId, "1", window);
+      redisBreaker.onSuccess();
+    } catch (Exception e) {
+      redisBreaker.onFailure();
+      log.debug("Unable to record write for user {} in redis: {}", userId, e.getMessage());
+    }
+  }
+
+  public boolean wroteRecently(Long userId) {
+    Long writtenAt = lastWrites.get(userId);
+    if (writtenAt != null && System.nanoTime() - writtenAt < windowNanos) {
+      return true;
+    }
+
+    // unknown counts as "wrote", the primary is never stale
+    if (!redisBreaker.tryAcquirePermission()) {
+      return true;
+    }
+    try {
+      boolean wrote = Boolean.TRUE.equals(redisTemplate.hasKey(KEY_PREFIX + userId));
+      redisBreaker.onSuccess();
+      return wrote;
+    } catch (Exception e) {
+      redisBreaker.onFailure();
+      log.debug("Unable to check recent writes for user {} in redis: {}", userId, e.getMessage());
+      return true;
+    }
+  }
+
+  // only the local copies, redis expires its own
+  public void evictExpired() {
+    long now = System.nanoTime();
+    lastWrites.values().removeIf(writtenAt -> now - writtenAt >= windowNanos);
+  }
+
+  public int size() {
+    return lastWrites.size();
+  }
+
+  // null for anonymous requests and scheduled jobs
+  public static Long currentUserId() {
+    AuthenticatedUser user = AuthenticatedUser.from(SecurityContextHolder.getContext().getAuthentication());
+    return user != null ? user.userId() : null;
+  }
+}
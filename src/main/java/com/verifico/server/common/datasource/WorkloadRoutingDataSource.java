@@ -0,0 +1,254 @@
+package com.verifico.server.common.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Hands out connections from a separate pool per kind of work, so one slow
+// workload can only exhaust its own pool instead of starving everyone:
+// - background: anything not running on a web request thread (webhook worker,
+// outbox relay, email delivery, cleanups, repair jobs...)
+// - request writes: read-write transactions on request threads
+// - request reads: @Transactional(readOnly = true) on request threads, these
+// go to the read replicas when there are any, the primary read pool is for
+// when there aren't or none are healthy
+//
+// Has to sit behind a LazyConnectionDataSourceProxy, that way the connection is
+// only fetched on the first statement, after spring has marked the transaction
+// read only, instead of when the transaction begins.
+// Routing is decided per physical connection, so every transaction has to
+// fetch its own. That's why spring.jpa.open-in-view is off, with it hibernate
+// keeps the first transaction's connection for the whole request and a write
+// after a read only transaction would end up on a replica.
+//
+// Replicas are picked round robin, skipping any the health check marked down.
+// A replica that fails to hand out a connection is marked down straight away
+// and we try the next one. Anyone who committed a write in the last few
+// seconds reads from the primary (see ReadYourWritesTracker). A transaction
+// only counts as a write once it runs an INSERT/UPDATE/DELETE, plenty of
+// non read only work (derived queries outside a transaction, lookups before a
+// 404) never changes anything.
+@Slf4j
+public class WorkloadRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+
+  // 0 when the replica has replayed everything it received, otherwise how far
+  // behind the last replayed transaction is. also 0 when pointed at a primary
+  private static final String REPLICATION_LAG_SQL = """
+      SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+        ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END
+      """;
+
+  private static final List<String> WRITE_KEYWORDS = List.of("insert", "update", "delete", "merge", "with");
+
+  private final DataSource requestWrites;
+  private final DataSource requestReads;
+  private final DataSource background;
+  private final List<Replica> replicas = new ArrayList<>();
+  private final ReadYourWritesTracker readYourWrites;
+  private final long maxLagMillis;
+  private final AtomicInteger nextReplica = new AtomicInteger();
+
+  public WorkloadRoutingDataSource(DataSource requestWrites, DataSource requestReads, DataSource background,
+      Map<String, DataSource> replicas, ReadYourWritesTracker readYourWrites, long maxLagMillis) {
+    this.requestWrites = requestWrites;
+    this.requestReads = requestReads;
+    this.background = background;
+    replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+    this.readYourWrites = readYourWrites;
+    this.maxLagMillis = maxLagMillis;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    // spring binds the request attributes for the whole request, nothing else
+    // (schedulers, our own executors, @Async) has them
+    if (RequestContextHolder.getRequestAttributes() == null) {
+      return background.getConnection();
+    }
+
+    if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+      Connection connection = requestWrites.getConnection();
+      Long userId = ReadYourWritesTracker.currentUserId();
+      return userId != null ? trackingWrites(connection, userId) : connection;
+    }
+
+    Long userId = ReadYourWritesTracker.currentUserId();
+    if (userId != null && readYourWrites.wroteRecently(userId)) {
+      return requestReads.getConnection();
+    }
+
+    int start = nextReplica.getAndIncrement();
+    for (int i = 0; i < replicas.size(); i++) {
+      Replica replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+      if (!replica.healthy) {
+        continue;
+      }
+      try {
+        return replica.dataSource.getConnection();
+      } catch (SQLException e) {
+        markDown(replica, e.getMessage());
+      }
+    }
+
+    return requestReads.getConnection();
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    throw new UnsupportedOperationException("Connections are routed with the pool credentials");
+  }
+
+  // records the write the first time a statement that changes something is
+  // prepared on this connection. hibernate and our native queries always go
+  // through prepareStatement
+  private Connection trackingWrites(Connection target, Long userId) {
+    AtomicBoolean tracked = new AtomicBoolean();
+    InvocationHandler handler = (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "getTargetConnection" -> {
+          return target;
+        }
+        case "equals" -> {
+          return proxy == args[0];
+        }
+        case "hashCode" -> {
+          return System.identityHashCode(proxy);
+        }
+        case "unwrap", "isWrapperFor" -> {
+          if (((Class<?>) args[0]).isInstance(proxy)) {
+            return method.getName().equals("unwrap") ? proxy : true;
+          }
+        }
+        case "prepareStatement", "prepareCall" -> {
+          if (isWrite((String) args[0]) && tracked.compareAndSet(false, true)) {
+            trackWrite(userId);
+          }
+        }
+        default -> {
+        }
+      }
+      try {
+        return method.invoke(target, args);
+      } catch (InvocationTargetException e) {
+        throw e.getTargetException();
+      }
+    };
+    return (Connection) Proxy.newProxyInstance(ConnectionProxy.class.getClassLoader(),
+        new Class<?>[] { ConnectionProxy.class }, handler);
+  }
+
+  // CTEs count as writes, we don't have read only ones and guessing wrong the
+  // other way would show someone stale data
+  private static boolean isWrite(String sql) {
+    String statement = sql.stripLeading();
+    for (String keyword : WRITE_KEYWORDS) {
+      if (statement.regionMatches(true, 0, keyword, 0, keyword.length())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // only counts once the write actually commits, a rolled back transaction
+  // didn't change anything the replicas could be missing
+  private void trackWrite(Long userId) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          readYourWrites.recordWrite(userId);
+        }
+      });
+    } else {
+      readYourWrites.recordWrite(userId);
+    }
+  }
+
+  // replicas that stopped answering or fell too far behind stop getting reads
+  // until they catch up again
+  @Scheduled(fixedDelayString = "${app.datasource.replicas.health-check-ms:5000}")
+  public void checkReplicas() {
+    for (Replica replica : replicas) {
+      String problem = probe(replica);
+      if (problem != null) {
+        markDown(replica, problem);
+      } else if (!replica.healthy) {
+        replica.healthy = true;
+        log.info("Replica {} is back, routing reads to it again", replica.name);
+      }
+    }
+    readYourWrites.evictExpired();
+  }
+
+  // null when the replica is fine to read from
+  private String probe(Replica replica) {
+    try (Connection connection = replica.dataSource.getConnection()) {
+      if (!connection.isValid(2)) {
+        return "connection not valid";
+      }
+      if (maxLagMillis <= 0) {
+        return null;
+      }
+      try (Statement statement = connection.createStatement();
+          ResultSet resultSet = statement.executeQuery(REPLICATION_LAG_SQL)) {
+        long lagMillis = resultSet.next() ? resultSet.getLong(1) : 0;
+        return lagMillis > maxLagMillis ? "replication lag " + lagMillis + "ms" : null;
+      }
+    } catch (SQLException e) {
+      return e.getMessage();
+    }
+  }
+
+  private void markDown(Replica replica, String reason) {
+    if (replica.healthy) {
+      replica.healthy = false;
+      log.warn("Replica {} marked down, reads fall back to the other replicas/primary: {}", replica.name, reason);
+    }
+  }
+
+  public int getHealthyReplicaCount() {
+    return (int) replicas.stream().filter(replica -> replica.healthy).count();
+  }
+
+  @Override
+  public void close() throws Exception {
+    List<DataSource> pools = new ArrayList<>(List.of(requestWrites, requestReads, background));
+    replicas.forEach(replica -> pools.add(replica.dataSource));
+    for (DataSource pool : pools) {
+      if (pool instanceof AutoCloseable closeable) {
+        closeable.close();
+      }
+    }
+  }
+
+  private static final class Replica {
+    private final String name;
+    private final DataSource dataSource;
+    private volatile boolean healthy = true;
+
+    private Replica(String name, DataSource dataSource) {
+      this.name = name;
+      this.dataSource = dataSource;
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package com.verifico.server.common.util;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Retry delays for the background workers (email delivery, outbox relay, stripe
+// webhooks).
+public final class Backoff {
+
+  private static final double JITTER = 0.2;
+
+  private Backoff() {
+  }
+
+  // base, 2x base, 4x base ... capped at max, +/- 20% jitter so a batch that
+  // failed together (e.g. db blip) doesn't all retry in the same instant.
+  // `attempts` is how many have failed so far, starting at 1
+  public static Duration exponentialWithJitter(Duration base, Duration max, int attempts) {
+    long baseMillis = base.toMillis() << Math.min(Math.max(attempts - 1, 0), 20);
+    long cappedMillis = Math.min(baseMillis, max.toMillis());
+    long jitter = (long) (cappedMillis * JITTER * (ThreadLocalRandom.current().nextDouble() * 2 - 1));
+    return Duration.ofMillis(Math.max(0, cappedMillis + jitter));
+  }
+}
@@ -0,0 +1,85 @@
+package com.verifico.server.common.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Minimal thread safe bloom filter for strings.
+// mightContain() == false means the value was DEFINITELY never added,
+// true means "probably added" (false positive rate ~= the fpp we size it with).
+// Values can't be removed, which is fine for the "is this taken" type checks we
+// use it for, a stale entry only ever costs us an extra db lookup.
+public class BloomFilter {
+
+  private final AtomicLongArray bits;
+  private final long bitCount;
+  private final int hashFunctions;
+
+  public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+    long n = Math.max(1, expectedInsertions);
+    // standard sizing: m = -n*ln(p) / ln(2)^2, k = m/n * ln(2)
+    long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+    this.bitCount = Math.max(64, m);
+    this.hashFunctions = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    this.bits = new AtomicLongArray((int) ((bitCount + 63) / 64));
+  }
+
+  public void put(String value) {
+    long hash = hash64(value);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+
+    for (int i = 1; i <= hashFunctions; i++) {
+      setBit(index(h1 + i * h2));
+    }
+  }
+
+  public boolean mightContain(String value) {
+    long hash = hash64(value);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+
+    for (int i = 1; i <= hashFunctions; i++) {
+      if (!getBit(index(h1 + i * h2))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private long index(int combinedHash) {
+    // flip negative hashes so the modulo stays in range
+    return (combinedHash < 0 ? ~combinedHash : combinedHash) % bitCount;
+  }
+
+  private void setBit(long index) {
+    int word = (int) (index >>> 6);
+    long mask = 1L << index;
+    long current;
+    do {
+      current = bits.get(word);
+      if ((current & mask) != 0) {
+        return;
+      }
+    } while (!bits.compareAndSet(word, current, current | mask));
+  }
+
+  private boolean getBit(long index) {
+    return (bits.get((int) (index >>> 6)) & (1L << index)) != 0;
+  }
+
+  // FNV-1a over the utf-8 bytes followed by a murmur3 style finaliser so both
+  // halves of the result are well mixed for the double hashing above
+  private static long hash64(String value) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b;
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
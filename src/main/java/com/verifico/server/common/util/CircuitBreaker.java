@@ -0,0 +1,91 @@
+package com.verifico.server.common.util;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Minimal thread safe circuit breaker for calls to an external dependency.
+// - CLOSED: calls go through, after `failureThreshold` failures in a row we open
+// - OPEN: calls are rejected straight away (no network hop) for `openMillis`
+// - HALF_OPEN: once that's passed exactly one probe call is let through, if it
+// works we close again, if it fails we go back to OPEN for another `openMillis`
+//
+// Callers do: tryAcquirePermission() -> make the call -> onSuccess()/onFailure(),
+// or releasePermission() if they got a permission but never made the call.
+public class CircuitBreaker {
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final int failureThreshold;
+  private final long openNanos;
+
+  private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+  private final AtomicInteger consecutiveFailures = new AtomicInteger();
+  private final AtomicBoolean probeInFlight = new AtomicBoolean();
+  private volatile long openedAt;
+
+  public CircuitBreaker(int failureThreshold, long openMillis) {
+    this.failureThreshold = Math.max(1, failureThreshold);
+    this.openNanos = openMillis * 1_000_000;
+  }
+
+  public boolean tryAcquirePermission() {
+    switch (state.get()) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (System.nanoTime() - openedAt < openNanos) {
+          return false;
+        }
+        // first caller after the cool down becomes the probe
+        if (state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+          probeInFlight.set(true);
+          return true;
+        }
+        return false;
+      case HALF_OPEN:
+      default:
+        return probeInFlight.compareAndSet(false, true);
+    }
+  }
+
+  public void releasePermission() {
+    if (state.get() == State.HALF_OPEN) {
+      probeInFlight.set(false);
+    }
+  }
+
+  public void onSuccess() {
+    State current = state.get();
+    if (current == State.HALF_OPEN) {
+      consecutiveFailures.set(0);
+      probeInFlight.set(false);
+      state.set(State.CLOSED);
+    } else if (current == State.CLOSED) {
+      consecutiveFailures.set(0);
+    }
+    // late success from a call that started before we opened, ignore it
+  }
+
+  public void onFailure() {
+    State current = state.get();
+    if (current == State.HALF_OPEN) {
+      open();
+      probeInFlight.set(false);
+    } else if (current == State.CLOSED && consecutiveFailures.incrementAndGet() >= failureThreshold) {
+      open();
+    }
+  }
+
+  public State getState() {
+    return state.get();
+  }
+
+  private void open() {
+    openedAt = System.nanoTime();
+    consecutiveFailures.set(0);
+    state.set(State.OPEN);
+  }
+}
@@ -4,15 +4,20 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.server.ResponseStatusException;
 
+import com.verifico.server.auth.jwt.AuthenticatedUser;
 import com.verifico.server.user.User;
 import com.verifico.server.user.UserRepository;
+import com.verifico.server.user.UserStatsService;
 
-import jakarta.transaction.Transactional;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
 import lombok.RequiredArgsConstructor;
 
 @Service
@@ -20,22 +25,29 @@ import lombok.RequiredArgsConstructor;
 public class CreditService {
   private final CreditTransactionRepository transactionRepository;
   private final UserRepository userRepository;
+  private final UserStatsService userStatsService;
 
+  // atomic ledger: one UPDATE credits = credits + n, read the new balance back
+  // (our update holds the row lock so it can't move under us) and log it. the
+  // user is never loaded, the transaction only needs the fk
   @Transactional
   public CreditTransaction addCredits(Long userId, TransactionType type, Long relatedCommentId, Long relatedPostId) {
-    User user = checkForUserById(userId);
-
     int amount = getAmountforType(type);
 
     if (amount <= 0) {
       throw new IllegalArgumentException("addCredits cannot be used for negative transactions");
     }
 
-    user.setCredits(user.getCredits() + amount);
+    if (userRepository.addToCredits(userId, amount) == 0) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found");
+    }
 
-    userRepository.save(user);
+    int balanceAfter = userRepository.findCreditsById(userId)
+        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
+    userStatsService.creditsEarned(userId, amount);
 
-    return logTransaction(user, amount, type, relatedPostId, relatedCommentId);
+    return logTransaction(userRepository.getReferenceById(userId), amount, type, relatedPostId, relatedCommentId,
+        balanceAfter);
   }
 
   @Transactional
@@ -50,6 +62,11 @@ public class CreditService {
 
     // checking if user has enough to spend
     if (user.getCredits() < Math.abs(amount)) {
+      Counter.builder("credits.ledger.rejected")
+          .description("Credit spends rejected for insufficient balance")
+          .tag("type", type.name())
+          .register(Metrics.globalRegistry)
+          .increment();
       throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
           "Insufficient credits. You have " + user.getCredits() + " but need " + Math.abs(amount)
               + "Either buy more or contribute to the community");
@@ -77,32 +94,28 @@ public class CreditService {
     return logTransaction(user, amount, TransactionType.PURCHASE_CREDITS, null, null);
   }
 
+  @Transactional(readOnly = true)
   public int checkBalance() {
-    Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-    if (auth == null) {
+    AuthenticatedUser currentUser = AuthenticatedUser.from(SecurityContextHolder.getContext().getAuthentication());
+    if (currentUser == null) {
       throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Authenticated user not found!");
     }
-    String username = auth.getName();
 
-    User user = userRepository.findByUsername(username)
+    return userRepository.findCreditsById(currentUser.userId())
         .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
-
-    return user.getCredits();
   }
 
+  @Transactional(readOnly = true)
   public Page<CreditTransaction> getTransactions(int page, int size) {
-    Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-    if (auth == null) {
+    AuthenticatedUser currentUser = AuthenticatedUser.from(SecurityContextHolder.getContext().getAuthentication());
+    if (currentUser == null) {
       throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Authenticated user not found!");
     }
-    String username = auth.getName();
-
-    User user = userRepository.findByUsername(username)
-        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
 
     Pageable pageable = PageRequest.of(page, size);
 
-    return transactionRepository.findByUserIdOrderByCreatedAtDesc(user.getId(),
+    // transactions are keyed by user id which we already have from the token
+    return transactionRepository.findByUserIdOrderByCreatedAtDesc(currentUser.userId(),
         pageable);
   }
 
@@ -119,19 +132,53 @@ public class CreditService {
 
   private CreditTransaction logTransaction(User user, int amount, TransactionType type,
       Long relatedPostId, Long relatedCommentId) {
+    return logTransaction(user, amount, type, relatedPostId, relatedCommentId, user.getCredits());
+  }
+
+  private CreditTransaction logTransaction(User user, int amount, TransactionType type,
+      Long relatedPostId, Long relatedCommentId, int balanceAfter) {
     CreditTransaction transaction = new CreditTransaction();
     transaction.setUser(user);
     transaction.setAmount(amount);
     transaction.setTransactionType(type);
     transaction.setRelatedPostId(relatedPostId);
     transaction.setRelatedCommentId(relatedCommentId);
-    transaction.setBalanceAfter(user.getCredits());
+    transaction.setBalanceAfter(balanceAfter);
 
     transactionRepository.save(transaction);
+    recordLedgerMetrics(type, amount);
 
     return transaction;
   }
 
+  // ledger entries + credits moved per type, only counted once the transaction
+  // commits so rolled back awards/spends don't show up
+  private void recordLedgerMetrics(TransactionType type, int amount) {
+    Runnable record = () -> {
+      Counter.builder("credits.ledger.transactions")
+          .description("Credit ledger entries written")
+          .tag("type", type.name())
+          .register(Metrics.globalRegistry)
+          .increment();
+      Counter.builder("credits.ledger.credits")
+          .description("Credits moved through the ledger")
+          .tag("type", type.name())
+          .register(Metrics.globalRegistry)
+          .increment(Math.abs(amount));
+    };
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          record.run();
+        }
+      });
+    } else {
+      record.run();
+    }
+  }
+
   private User checkForUserById(Long userId) {
     return userRepository.findById(userId)
         .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
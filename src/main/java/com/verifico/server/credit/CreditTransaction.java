@@ -5,6 +5,7 @@ import java.time.Instant;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.verifico.server.user.User;
 
 import jakarta.persistence.Column;
@@ -39,7 +40,9 @@ public class CreditTransaction {
   @GeneratedValue(strategy = GenerationType.IDENTITY)
   private Long id;
 
-  // many transactions/credits to one user
+  // many transactions/credits to one user. not serialized, the list only ever
+  // shows the caller's own transactions and it's lazy
+  @JsonIgnore
   @ManyToOne(fetch = FetchType.LAZY)
   @JoinColumn(name = "user_id", nullable = false)
   private User user;
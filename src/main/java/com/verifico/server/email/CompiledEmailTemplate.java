@@ -0,0 +1,75 @@
+package com.verifico.server.email;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// An email template split once into literal segments + {{placeholder}} names,
+// so rendering is just appends into one builder instead of a full copy of the
+// document per String.replace.
+// segments always has one more entry than placeholders:
+// segments[0] {{placeholders[0]}} segments[1] ... segments[n]
+public final class CompiledEmailTemplate {
+
+  private static final String OPEN = "{{";
+  private static final String CLOSE = "}}";
+
+  private final String[] segments;
+  private final String[] placeholders;
+  // placeholders exactly as written in the template, used when no value is given
+  private final String[] rawPlaceholders;
+  private final int literalLength;
+
+  private CompiledEmailTemplate(String[] segments, String[] placeholders, String[] rawPlaceholders) {
+    this.segments = segments;
+    this.placeholders = placeholders;
+    this.rawPlaceholders = rawPlaceholders;
+
+    int length = 0;
+    for (String segment : segments) {
+      length += segment.length();
+    }
+    this.literalLength = length;
+  }
+
+  public static CompiledEmailTemplate parse(String source) {
+    List<String> segments = new ArrayList<>();
+    List<String> placeholders = new ArrayList<>();
+    List<String> rawPlaceholders = new ArrayList<>();
+
+    int position = 0;
+    while (true) {
+      int open = source.indexOf(OPEN, position);
+      int close = open < 0 ? -1 : source.indexOf(CLOSE, open + OPEN.length());
+      if (close < 0) {
+        // no more (complete) placeholders, rest is plain text
+        segments.add(source.substring(position));
+        break;
+      }
+
+      segments.add(source.substring(position, open));
+      placeholders.add(source.substring(open + OPEN.length(), close).strip());
+      rawPlaceholders.add(source.substring(open, close + CLOSE.length()));
+      position = close + CLOSE.length();
+    }
+
+    return new CompiledEmailTemplate(segments.toArray(String[]::new), placeholders.toArray(String[]::new),
+        rawPlaceholders.toArray(String[]::new));
+  }
+
+  // same output as chaining String.replace("{{name}}", value) for every entry,
+  // placeholders without a value are left as they are
+  public void renderInto(StringBuilder out, Map<String, String> values) {
+    out.ensureCapacity(out.length() + literalLength + placeholders.length * 16);
+    out.append(segments[0]);
+    for (int i = 0; i < placeholders.length; i++) {
+      String value = values.get(placeholders[i]);
+      out.append(value != null ? value : rawPlaceholders[i]);
+      out.append(segments[i + 1]);
+    }
+  }
+
+  public int getPlaceholderCount() {
+    return placeholders.length;
+  }
+}
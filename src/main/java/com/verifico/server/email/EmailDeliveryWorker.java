@@ -0,0 +1,280 @@
+package com.verifico.server.email;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.verifico.server.common.util.Backoff;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+
+// Sends what EmailService queued in outbound_emails.
+// - polls for due emails and claims up to `batch-size` of them with one
+// conditional UPDATE (lease, safe across replicas)
+// - each batch is sent on a small dedicated pool with ONE mailSender.send(...)
+// call, which opens a single smtp connection and sends every message in the
+// batch over it instead of a new connection + handshake + auth per email
+// - never more batches in flight than the pool has threads, the rest wait in
+// the table, not in memory
+// - messages the server rejected are retried with exponential backoff + jitter
+// and marked FAILED after `max-attempts`
+@Component
+@Slf4j
+public class EmailDeliveryWorker {
+
+  private final OutboundEmailRepository outboundEmailRepository;
+  private final JavaMailSender mailSender;
+
+  private final ThreadPoolExecutor executor;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final String workerId = "email-worker-" + UUID.randomUUID();
+
+  private final String fromEmail;
+  private final String fromName;
+  private final int threads;
+  private final int batchSize;
+  private final int maxAttempts;
+  private final Duration lease;
+  private final Duration baseBackoff;
+  private final Duration maxBackoff;
+  private final Duration retention;
+
+  public EmailDeliveryWorker(OutboundEmailRepository outboundEmailRepository, JavaMailSender mailSender,
+      @Value("${app.email.from}") String fromEmail,
+      @Value("${app.email.from-name}") String fromName,
+      @Value("${app.email.delivery.threads:2}") int threads,
+      @Value("${app.email.delivery.batch-size:50}") int batchSize,
+      @Value("${app.email.delivery.max-attempts:6}") int maxAttempts,
+      @Value("${app.email.delivery.lease-seconds:120}") long leaseSeconds,
+      @Value("${app.email.delivery.base-backoff-seconds:30}") long baseBackoffSeconds,
+      @Value("${app.email.delivery.max-backoff-seconds:3600}") long maxBackoffSeconds,
+      @Value("${app.email.delivery.retention-hours:24}") long retentionHours) {
+    this.outboundEmailRepository = outboundEmailRepository;
+    this.mailSender = mailSender;
+    this.fromEmail = fromEmail;
+    this.fromName = fromName;
+    this.threads = threads;
+    this.batchSize = batchSize;
+    this.maxAttempts = maxAttempts;
+    this.lease = Duration.ofSeconds(leaseSeconds);
+    this.baseBackoff = Duration.ofSeconds(baseBackoffSeconds);
+    this.maxBackoff = Duration.ofSeconds(maxBackoffSeconds);
+    this.retention = Duration.ofHours(retentionHours);
+
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(threads),
+        runnable -> {
+          Thread thread = new Thread(runnable, "email-delivery-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    new ExecutorServiceMetrics(executor, "email-delivery", List.of()).bindTo(Metrics.globalRegistry);
+  }
+
+  @Scheduled(fixedDelayString = "${app.email.delivery.poll-interval-ms:1000}")
+  public void pollQueue() {
+    while (inFlight.get() < threads) {
+      Instant now = Instant.now();
+      List<Long> dueIds = outboundEmailRepository.findDueIds(now, PageRequest.of(0, batchSize));
+      if (dueIds.isEmpty()) {
+        return;
+      }
+
+      String token = workerId + ":" + UUID.randomUUID();
+      if (outboundEmailRepository.claim(dueIds, token, now, now.plus(lease)) == 0) {
+        continue; // another replica beat us to all of them
+      }
+      List<OutboundEmail> batch = outboundEmailRepository.findByLockedByOrderByIdAsc(token);
+
+      inFlight.incrementAndGet();
+      executor.execute(() -> {
+        try {
+          deliver(batch, token);
+        } finally {
+          inFlight.decrementAndGet();
+        }
+      });
+
+      if (dueIds.size() < batchSize) {
+        return;
+      }
+    }
+  }
+
+  private void deliver(List<OutboundEmail> batch, String token) {
+    // kept in claim order, messages.get(i) is queued.get(i)
+    List<MimeMessage> messages = new ArrayList<>();
+    List<OutboundEmail> queued = new ArrayList<>();
+    List<OutboundEmail> unbuildable = new ArrayList<>();
+
+    for (OutboundEmail email : batch) {
+      try {
+        messages.add(buildMessage(email));
+        queued.add(email);
+      } catch (Exception e) {
+        // bad address etc, retrying won't fix it
+        unbuildable.add(email);
+        markFailed(email, token, "Unable to build message: " + e.getMessage());
+      }
+    }
+
+    List<OutboundEmail> failed = new ArrayList<>();
+    Map<Long, String> errors = new HashMap<>();
+
+    if (!messages.isEmpty()) {
+      long start = System.nanoTime();
+      try {
+        mailSender.send(messages.toArray(MimeMessage[]::new));
+        recordSend("success", start);
+      } catch (MailSendException e) {
+        recordSend("failure", start);
+        // per message failures if the connection worked, otherwise the whole
+        // batch failed (connect/auth error)
+        Map<Object, Exception> failedMessages = e.getFailedMessages();
+        for (int i = 0; i < messages.size(); i++) {
+          Exception cause = failedMessages.isEmpty() ? e : failedMessages.get(messages.get(i));
+          if (cause != null) {
+            failed.add(queued.get(i));
+            errors.put(queued.get(i).getId(), cause.getMessage());
+          }
+        }
+      } catch (Exception e) {
+        recordSend("failure", start);
+        queued.forEach(email -> {
+          failed.add(email);
+          errors.put(email.getId(), e.getMessage());
+        });
+      }
+    }
+
+    List<Long> sent = queued.stream()
+        .filter(email -> !errors.containsKey(email.getId()))
+        .map(OutboundEmail::getId)
+        .toList();
+    countMessages("sent", sent.size());
+    countMessages("unbuildable", unbuildable.size());
+
+    try {
+      if (!sent.isEmpty()) {
+        outboundEmailRepository.markSent(sent, token, Instant.now());
+      }
+      for (OutboundEmail email : failed) {
+        handleFailure(email, token, errors.get(email.getId()));
+      }
+    } catch (Exception e) {
+      // db is down, the lease runs out and the batch is sent again, better a
+      // duplicate email than a lost one
+      log.error("Unable to record delivery result for {} emails", batch.size(), e);
+    }
+
+    if (!failed.isEmpty() || !unbuildable.isEmpty()) {
+      log.warn("Email batch: {} sent, {} failed, {} unbuildable", sent.size(), failed.size(), unbuildable.size());
+    }
+  }
+
+  private MimeMessage buildMessage(OutboundEmail email) throws Exception {
+    MimeMessage message = mailSender.createMimeMessage();
+    MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+    helper.setFrom(new InternetAddress(fromEmail, fromName));
+    helper.setTo(email.getRecipient());
+    helper.setSubject(email.getSubject());
+    helper.setText(email.getHtmlBody(), true);
+    return message;
+  }
+
+  private void handleFailure(OutboundEmail email, String token, String error) {
+    int attempts = email.getAttempts() + 1;
+    countMessages(attempts >= maxAttempts ? "failed" : "retry", 1);
+    if (attempts >= maxAttempts) {
+      log.error("Email {} to {} failed {} times, giving up: {}", email.getId(), email.getRecipient(), attempts,
+          error);
+      outboundEmailRepository.markFailed(email.getId(), token, attempts, truncate(error), Instant.now());
+      return;
+    }
+    Instant nextAttemptAt = Instant.now().plus(Backoff.exponentialWithJitter(baseBackoff, maxBackoff, attempts));
+    outboundEmailRepository.scheduleRetry(email.getId(), token, attempts, nextAttemptAt, truncate(error));
+  }
+
+  // one smtp session per batch, so this is the time for the whole batch
+  private void recordSend(String outcome, long startNanos) {
+    Timer.builder("email.delivery.send")
+        .description("Smtp sends, one per batch")
+        .tag("outcome", outcome)
+        .publishPercentileHistogram()
+        .register(Metrics.globalRegistry)
+        .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private void countMessages(String outcome, int count) {
+    if (count > 0) {
+      Counter.builder("email.delivery.messages")
+          .description("Emails by delivery outcome")
+          .tag("outcome", outcome)
+          .register(Metrics.globalRegistry)
+          .increment(count);
+    }
+  }
+
+  private void markFailed(OutboundEmail email, String token, String error) {
+    try {
+      outboundEmailRepository.markFailed(email.getId(), token, email.getAttempts() + 1, truncate(error),
+          Instant.now());
+    } catch (Exception e) {
+      log.error("Unable to mark email {} as failed", email.getId(), e);
+    }
+  }
+
+  // bodies can contain password reset links, don't keep them around longer
+  // than we have to, whether they went out or not
+  @Scheduled(fixedRate = 3_600_000, initialDelay = 240_000)
+  public void purgeFinishedEmails() {
+    Instant before = Instant.now().minus(retention);
+    int deleted;
+    int total = 0;
+    do {
+      deleted = outboundEmailRepository.deleteFinishedBefore(before, 1000);
+      total += deleted;
+    } while (deleted == 1000);
+
+    if (total > 0) {
+      log.info("Purged {} sent/failed emails", total);
+    }
+  }
+
+  public int getBatchesInFlight() {
+    return inFlight.get();
+  }
+
+  private String truncate(String message) {
+    return message != null && message.length() > 1000 ? message.substring(0, 1000) : message;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+}
@@ -1,103 +1,92 @@
 package com.verifico.server.email;
 
 import com.verifico.server.user.User;
-import jakarta.mail.internet.InternetAddress;
-import jakarta.mail.internet.MimeMessage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
 
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ClassPathResource;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+// Renders emails and puts them on the outbound_emails queue, that's all. The
+// smtp side (connection reuse, batching, retries) is EmailDeliveryWorker's job,
+// so callers never wait on smtp and an email queued inside a transaction only
+// goes out if that transaction commits.
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class EmailService {
 
-    private final JavaMailSender mailSender;
+    // month is MMM, "mmm" (minutes) isn't even a valid pattern and used to throw
+    // on every email
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("dd MMM, yyyy 'at' HH:mm",
+            Locale.ENGLISH);
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd MMM, yyyy", Locale.ENGLISH);
 
-    @Value("${app.email.from}")
-    private String fromEmail;
-
-    @Value("${app.email.from-name}")
-    private String fromName;
+    private final OutboundEmailRepository outboundEmailRepository;
+    private final EmailTemplateEngine templateEngine;
 
     private void sendHtmlEmail(String to, String subject, String htmlContent) {
-        try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-            helper.setFrom(new InternetAddress(fromEmail, fromName));
-            helper.setTo(to);
-            helper.setSubject(subject);
-            helper.setText(htmlContent, true);
-            mailSender.send(message);
-        } catch (Exception e) {
-            log.error("Failed to send email to {}: {}", to, e.getMessage());
-        }
+        enqueue(to, subject, htmlContent, null);
+    }
+
+    private void enqueue(String to, String subject, String htmlContent, String dedupKey) {
+        OutboundEmail email = new OutboundEmail();
+        email.setRecipient(to);
+        email.setSubject(subject);
+        email.setHtmlBody(htmlContent);
+        email.setDedupKey(dedupKey);
+        email.setNextAttemptAt(Instant.now());
+        outboundEmailRepository.save(email);
     }
 
-    @Async
     public void sendWelcomeEmailForv1(User user) {
-        String html = loadHtmlContentFilePathForEmail(user,
-                "emails/WelcomeEmail4V1.html")
-                .replace("{{timestamp}}", LocalDateTime.now()
-                        .format(DateTimeFormatter.ofPattern("dd mmm, yyyy 'at' HH:mm")));
+        String html = templateEngine.render("emails/WelcomeEmail4V1.html", Map.of(
+                "username", user.getUsername(),
+                "timestamp", LocalDateTime.now().format(TIMESTAMP_FORMAT)));
 
         sendHtmlEmail(user.getEmail(),
                 "Congratulations for stepping into your new journey with Verifiko!", html);
     }
 
-    @Async
-    public void sendCreditPurchaseReceiptForv1(User user, int creditsAmount, double price) {
-        String html = loadHtmlContentFilePathForEmail(user,
-                "emails/CreditPurchaseDigitalReceipt4V1.html")
-                .replace("{{credits}}", String.valueOf(creditsAmount))
-                .replace("{{price}}", String.format("$%.2f", price))
-                .replace("{{date}}", LocalDateTime.now()
-                        .format(DateTimeFormatter.ofPattern("dd mmm,yyyy")));
+    // called from the outbox relay (ReceiptEmailPublisher), which can publish the
+    // same receipt twice, so it's queued under a dedup key and a repeat is a no-op
+    public void sendCreditPurchaseReceipt(String dedupKey, String email, String username, int creditsAmount,
+            double price) {
+        if (outboundEmailRepository.existsByDedupKey(dedupKey)) {
+            return;
+        }
+
+        String html = templateEngine.render("emails/CreditPurchaseDigitalReceipt4V1.html", Map.of(
+                "username", username,
+                "credits", String.valueOf(creditsAmount),
+                "price", String.format("$%.2f", price),
+                "date", LocalDateTime.now().format(DATE_FORMAT)));
 
-        sendHtmlEmail(user.getEmail(), "Verifiko purchase digital receipt", html);
+        try {
+            enqueue(email, "Verifiko purchase digital receipt", html, dedupKey);
+        } catch (DataIntegrityViolationException e) {
+            // queued by someone else in the meantime
+            log.debug("Receipt {} already queued", dedupKey);
+        }
     }
 
-    @Async
     public void sendPasswordChangedEmailForv1(User user) {
-        String html = loadHtmlContentFilePathForEmail(user,
-                "emails/PasswordChangedNotification4V1.html")
-                .replace("{{timestamp}}", LocalDateTime.now()
-                        .format(DateTimeFormatter.ofPattern("dd mmm, yyyy 'at' HH:mm")));
+        String html = templateEngine.render("emails/PasswordChangedNotification4V1.html", Map.of(
+                "username", user.getUsername(),
+                "timestamp", LocalDateTime.now().format(TIMESTAMP_FORMAT)));
 
         sendHtmlEmail(user.getEmail(), "Your password was changed", html);
     }
 
-    @Async
     public void changePasswordResetLinkEmailForv1(String token, String email) {
-        String html = loadTemplate("emails/changePasswordResetLink4V1.html")
-                .replace("{{token}}", token);
+        String html = templateEngine.render("emails/changePasswordResetLink4V1.html", Map.of("token", token));
 
         sendHtmlEmail(email, "Password Reset Link", html);
     }
-
-    // helper template loader
-    private String loadTemplate(String path) {
-        try {
-            ClassPathResource resource = new ClassPathResource("templates/" + path);
-            return new String(resource.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            log.error("Failed to load email template: {}", path);
-            return "";
-        }
-    }
-
-    private String loadHtmlContentFilePathForEmail(User user, String path) {
-        return loadTemplate(path).replace("{{username}}", user.getUsername());
-    }
 }
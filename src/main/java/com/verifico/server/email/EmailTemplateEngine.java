@@ -0,0 +1,122 @@
+package com.verifico.server.email;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+// Loads + parses every email template once at startup and renders them from
+// memory, so sending an email doesn't read the classpath or copy the whole html
+// once per placeholder anymore.
+// Rendering reuses a per-thread StringBuilder, the only allocation per email is
+// the final String.
+//
+// For local dev point app.email.templates.location at the source folder
+// (file:src/main/resources/templates/) and turn on
+// app.email.templates.hot-reload, edited templates are then re-parsed on the
+// next render without a restart.
+@Component
+@Slf4j
+public class EmailTemplateEngine {
+
+  // don't keep a huge builder around per thread after a one off big render
+  private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+  private final String location;
+  private final boolean hotReload;
+  private final ResourceLoader resourceLoader = new DefaultResourceLoader();
+  private final Map<String, LoadedTemplate> templates = new ConcurrentHashMap<>();
+  private final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(8192));
+
+  public EmailTemplateEngine(@Value("${app.email.templates.location:classpath:templates/}") String location,
+      @Value("${app.email.templates.hot-reload:false}") boolean hotReload) {
+    this.location = location.endsWith("/") ? location : location + "/";
+    this.hotReload = hotReload;
+  }
+
+  @PostConstruct
+  public void preload() {
+    try {
+      Resource[] resources = new PathMatchingResourcePatternResolver(resourceLoader)
+          .getResources(location + "emails/*.html");
+      for (Resource resource : resources) {
+        String path = "emails/" + resource.getFilename();
+        templates.put(path, load(resource));
+      }
+      log.info("Compiled {} email templates from {}", templates.size(), location);
+    } catch (IOException e) {
+      // not fatal, templates are loaded on first use instead
+      log.warn("Unable to preload email templates from {}: {}", location, e.getMessage());
+    }
+  }
+
+  // path is relative to the template location, e.g. "emails/WelcomeEmail4V1.html"
+  public String render(String path, Map<String, String> values) {
+    LoadedTemplate template = lookup(path);
+    if (template == null) {
+      return "";
+    }
+
+    StringBuilder out = buffers.get();
+    out.setLength(0);
+    template.compiled().renderInto(out, values);
+    String html = out.toString();
+
+    if (out.capacity() > MAX_RETAINED_BUFFER) {
+      buffers.remove();
+    }
+    return html;
+  }
+
+  private LoadedTemplate lookup(String path) {
+    LoadedTemplate template = templates.get(path);
+    if (template != null && !(hotReload && template.isStale())) {
+      return template;
+    }
+
+    // not preloaded, or changed on disk while hot reloading
+    try {
+      LoadedTemplate loaded = load(resourceLoader.getResource(location + path));
+      templates.put(path, loaded);
+      return loaded;
+    } catch (IOException e) {
+      log.error("Failed to load email template: {}", path);
+      return null;
+    }
+  }
+
+  private LoadedTemplate load(Resource resource) throws IOException {
+    long lastModified = modifiedAt(resource);
+    String source;
+    try (InputStream in = resource.getInputStream()) {
+      source = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+    return new LoadedTemplate(CompiledEmailTemplate.parse(source), resource, lastModified);
+  }
+
+  private static long modifiedAt(Resource resource) {
+    try {
+      return resource.lastModified();
+    } catch (IOException e) {
+      // inside a jar etc, never stale
+      return -1;
+    }
+  }
+
+  private record LoadedTemplate(CompiledEmailTemplate compiled, Resource resource, long lastModified) {
+    boolean isStale() {
+      return modifiedAt(resource) != lastModified;
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package com.verifico.server.email;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// A rendered email waiting to be (or already) sent. EmailService only writes
+// these, EmailDeliveryWorker does the actual smtp work, so a slow or broken
+// smtp server never holds up a request and nothing is lost on a restart.
+@Entity
+@EntityListeners(AuditingEntityListener.class)
+@Table(name = "outbound_emails", indexes = {
+    @Index(name = "idx_outbound_email_status_next_attempt", columnList = "status,nextAttemptAt"),
+    @Index(name = "idx_outbound_email_locked_by", columnList = "lockedBy")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class OutboundEmail {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(nullable = false, updatable = false)
+  private String recipient;
+
+  @Column(nullable = false, updatable = false)
+  private String subject;
+
+  @Column(nullable = false, updatable = false, columnDefinition = "TEXT")
+  private String htmlBody;
+
+  // optional, for emails that must only ever be queued once (e.g. the receipt
+  // for a payment) even if whoever queues them retries
+  @Column(unique = true, updatable = false, length = 100)
+  private String dedupKey;
+
+  @Enumerated(EnumType.STRING)
+  @Column(nullable = false)
+  private OutboundEmailStatus status = OutboundEmailStatus.PENDING;
+
+  @Column(nullable = false)
+  private int attempts = 0;
+
+  @Column(nullable = false)
+  private Instant nextAttemptAt;
+
+  // lease held by the delivery batch sending this email
+  @Column
+  private Instant lockedUntil;
+
+  @Column(length = 100)
+  private String lockedBy;
+
+  @Column(length = 1000)
+  private String lastError;
+
+  @Column
+  private Instant sentAt;
+
+  // when it was given up on, FAILED rows are purged this long after like sent ones
+  @Column
+  private Instant failedAt;
+
+  @CreatedDate
+  @Column(nullable = false, updatable = false)
+  private Instant createdAt;
+}
@@ -0,0 +1,67 @@
+package com.verifico.server.email;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import jakarta.transaction.Transactional;
+
+public interface OutboundEmailRepository extends JpaRepository<OutboundEmail, Long> {
+
+  boolean existsByDedupKey(String dedupKey);
+
+  // due emails, plus ones whose lease ran out (worker died mid batch)
+  @Query("SELECT e.id FROM OutboundEmail e WHERE e.status = com.verifico.server.email.OutboundEmailStatus.PENDING "
+      + "AND e.nextAttemptAt <= :now AND (e.lockedUntil IS NULL OR e.lockedUntil < :now) ORDER BY e.id")
+  List<Long> findDueIds(@Param("now") Instant now, Pageable pageable);
+
+  // claims the whole batch in one statement, safe across replicas, read the
+  // rows we actually won back with findByLockedBy
+  @Transactional
+  @Modifying
+  @Query("UPDATE OutboundEmail e SET e.lockedBy = :token, e.lockedUntil = :leaseUntil WHERE e.id IN :ids "
+      + "AND e.status = com.verifico.server.email.OutboundEmailStatus.PENDING "
+      + "AND (e.lockedUntil IS NULL OR e.lockedUntil < :now)")
+  int claim(@Param("ids") Collection<Long> ids, @Param("token") String token, @Param("now") Instant now,
+      @Param("leaseUntil") Instant leaseUntil);
+
+  List<OutboundEmail> findByLockedByOrderByIdAsc(String lockedBy);
+
+  @Transactional
+  @Modifying
+  @Query("UPDATE OutboundEmail e SET e.status = com.verifico.server.email.OutboundEmailStatus.SENT, "
+      + "e.attempts = e.attempts + 1, e.sentAt = :now, e.lockedBy = null, e.lockedUntil = null, "
+      + "e.lastError = null WHERE e.id IN :ids AND e.lockedBy = :token")
+  int markSent(@Param("ids") Collection<Long> ids, @Param("token") String token, @Param("now") Instant now);
+
+  @Transactional
+  @Modifying
+  @Query("UPDATE OutboundEmail e SET e.attempts = :attempts, e.nextAttemptAt = :nextAttemptAt, "
+      + "e.lastError = :error, e.lockedBy = null, e.lockedUntil = null WHERE e.id = :id AND e.lockedBy = :token")
+  int scheduleRetry(@Param("id") Long id, @Param("token") String token, @Param("attempts") int attempts,
+      @Param("nextAttemptAt") Instant nextAttemptAt, @Param("error") String error);
+
+  @Transactional
+  @Modifying
+  @Query("UPDATE OutboundEmail e SET e.status = com.verifico.server.email.OutboundEmailStatus.FAILED, "
+      + "e.attempts = :attempts, e.lastError = :error, e.failedAt = :now, e.lockedBy = null, "
+      + "e.lockedUntil = null WHERE e.id = :id AND e.lockedBy = :token")
+  int markFailed(@Param("id") Long id, @Param("token") String token, @Param("attempts") int attempts,
+      @Param("error") String error, @Param("now") Instant now);
+
+  // sent and failed emails are only kept around for a bit for support
+  // questions. rows that failed before failed_at existed go by created_at
+  @Transactional
+  @Modifying
+  @Query(value = "DELETE FROM outbound_emails WHERE id IN ("
+      + "SELECT id FROM outbound_emails WHERE (status = 'SENT' AND sent_at < :before) "
+      + "OR (status = 'FAILED' AND COALESCE(failed_at, created_at) < :before) "
+      + "ORDER BY id LIMIT :batchSize)", nativeQuery = true)
+  int deleteFinishedBefore(@Param("before") Instant before, @Param("batchSize") int batchSize);
+}
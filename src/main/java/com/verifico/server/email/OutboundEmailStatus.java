@@ -0,0 +1,8 @@
+package com.verifico.server.email;
+
+public enum OutboundEmailStatus {
+  PENDING,
+  SENT,
+  // ran out of attempts (or the address was rejected for good)
+  FAILED
+}
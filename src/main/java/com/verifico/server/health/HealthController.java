@@ -2,6 +2,11 @@ package com.verifico.server.health;
 
 import java.util.Map;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.health.actuate.endpoint.HealthEndpoint;
+import org.springframework.boot.health.contributor.Status;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -12,15 +17,53 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 @Tag(name = "Health API Endpoints", description = "Basic health check and root endpoints")
 public class HealthController {
 
+  private final HealthEndpoint healthEndpoint;
+  private final long cacheNanos;
+  private volatile CachedStatus cached;
+
+  public HealthController(HealthEndpoint healthEndpoint,
+      @Value("${app.health.cache-ms:5000}") long cacheMillis) {
+    this.healthEndpoint = healthEndpoint;
+    this.cacheNanos = cacheMillis * 1_000_000;
+  }
+
   @Operation(summary = "Root endpoint")
   @GetMapping("/")
   public Map<String, String> homeString() {
     return Map.of("message", "Verifico");
   }
 
+  // overall status from the actuator checks (db, redis, disk...) without the
+  // details, those are on the management port. k8s probes use
+  // /actuator/health/liveness and /actuator/health/readiness instead.
+  // it's public, so the result is reused for `cache-ms`, otherwise anyone could
+  // make us run every check (db query, redis ping...) as fast as they can send
   @Operation(summary = "Health check")
   @GetMapping("/health")
-  public Map<String, String> healthString() {
-    return Map.of("status", "ok");
+  public ResponseEntity<Map<String, String>> healthString() {
+    Status status = currentStatus();
+    HttpStatus httpStatus = Status.DOWN.equals(status) || Status.OUT_OF_SERVICE.equals(status)
+        ? HttpStatus.SERVICE_UNAVAILABLE
+        : HttpStatus.OK;
+    return ResponseEntity.status(httpStatus).body(Map.of("status", status.getCode().toLowerCase()));
+  }
+
+  private Status currentStatus() {
+    CachedStatus current = cached;
+    if (current != null && System.nanoTime() - current.checkedAt < cacheNanos) {
+      return current.status;
+    }
+    // one caller refreshes, the rest wait for it rather than running the checks too
+    synchronized (this) {
+      current = cached;
+      if (current == null || System.nanoTime() - current.checkedAt >= cacheNanos) {
+        current = new CachedStatus(healthEndpoint.health().getStatus(), System.nanoTime());
+        cached = current;
+      }
+      return current.status;
+    }
+  }
+
+  private record CachedStatus(Status status, long checkedAt) {
   }
 }
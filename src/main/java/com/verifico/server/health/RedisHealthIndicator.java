@@ -0,0 +1,101 @@
+package com.verifico.server.health;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.HealthIndicator;
+import org.springframework.boot.health.contributor.Status;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+// Replaces boot's redis health check (same bean name), which reports DOWN and
+// would take every pod out of the readiness group the moment redis blips.
+// Everything we use redis for (rate limit sync, payment intent cache, webhook
+// dedupe, comment stream fan out, analytics outbox) keeps working locally or
+// falls back to postgres without it, so a failed ping is DEGRADED instead:
+// shows up on /actuator/health and in alerts but still answers 200.
+//
+// The ping is capped at `timeout-ms`, lettuce would otherwise wait out its
+// full command timeout on a redis that's hanging rather than refusing. Only one
+// ping is ever in flight: checks that come in while it's pending wait on that
+// same ping instead of queueing another behind it, and once it's overdue they
+// report DEGRADED straight away, so a hung redis can't pile up work on the
+// health thread however often we're polled.
+@Component("redisHealthIndicator")
+public class RedisHealthIndicator implements HealthIndicator {
+
+  public static final Status DEGRADED = new Status("DEGRADED", "Redis unavailable, running on local fallbacks");
+
+  private final StringRedisTemplate redisTemplate;
+  private final long timeoutMillis;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "redis-health");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final AtomicReference<Ping> inFlight = new AtomicReference<>();
+
+  public RedisHealthIndicator(StringRedisTemplate redisTemplate,
+      @Value("${app.health.redis.timeout-ms:1000}") long timeoutMillis) {
+    this.redisTemplate = redisTemplate;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  @Override
+  public Health health() {
+    Ping ping = currentPing();
+    try {
+      // an overdue ping gets 0 here, DEGRADED without waiting on it again
+      String pong = ping.reply.get(Math.max(ping.deadlineNanos - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+      return Health.up().withDetail("ping", pong).build();
+    } catch (TimeoutException e) {
+      return Health.status(DEGRADED).withDetail("error", "no reply within " + timeoutMillis + "ms").build();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Health.status(DEGRADED).withException(e).build();
+    } catch (Exception e) {
+      Throwable cause = e.getCause() != null ? e.getCause() : e;
+      return Health.status(DEGRADED).withException(cause).build();
+    }
+  }
+
+  // the pending ping if there is one, otherwise starts a new one
+  private Ping currentPing() {
+    while (true) {
+      Ping current = inFlight.get();
+      if (current != null && !current.reply.isDone()) {
+        return current;
+      }
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+      Ping next = new Ping(new CompletableFuture<>(), deadline);
+      if (inFlight.compareAndSet(current, next)) {
+        executor.execute(() -> {
+          try {
+            next.reply.complete(redisTemplate.execute((RedisCallback<String>) RedisConnection::ping));
+          } catch (Throwable t) {
+            next.reply.completeExceptionally(t);
+          }
+        });
+        return next;
+      }
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private record Ping(CompletableFuture<String> reply, long deadlineNanos) {
+  }
+}
@@ -0,0 +1,57 @@
+package com.verifico.server.outbox;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+// Appends analytics events to a redis stream for whatever consumes them, the
+// whole batch goes out in one pipelined round trip. Each entry carries the
+// outbox event id, if a batch gets published twice (crash before it was marked
+// published) consumers can drop the repeat by that id.
+@Component
+public class AnalyticsEventPublisher implements OutboxPublisher {
+
+  private final StringRedisTemplate redisTemplate;
+  private final String streamKey;
+  private final long maxLength;
+
+  public AnalyticsEventPublisher(StringRedisTemplate redisTemplate,
+      @Value("${app.outbox.analytics.stream-key:analytics:events}") String streamKey,
+      @Value("${app.outbox.analytics.max-length:1000000}") long maxLength) {
+    this.redisTemplate = redisTemplate;
+    this.streamKey = streamKey;
+    this.maxLength = maxLength;
+  }
+
+  @Override
+  public OutboxEventType type() {
+    return OutboxEventType.ANALYTICS_EVENT;
+  }
+
+  @Override
+  public Map<Long, String> publish(List<OutboxEvent> events) {
+    // approximate trimming so the stream can't grow forever but redis doesn't
+    // have to trim on every single add
+    XAddOptions options = XAddOptions.maxlen(maxLength).approximateTrimming(true);
+
+    redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      StringRedisConnection stringConnection = (StringRedisConnection) connection;
+      for (OutboxEvent event : events) {
+        stringConnection.xAdd(StreamRecords.string(Map.of(
+            "outbox_id", event.getId().toString(),
+            "payload", event.getPayload())).withStreamKey(streamKey), options);
+      }
+      return null;
+    });
+
+    // pipeline either went through or threw, nothing partial to report
+    return Map.of();
+  }
+}
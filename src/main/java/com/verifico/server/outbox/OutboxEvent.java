@@ -0,0 +1,79 @@
+package com.verifico.server.outbox;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// A side effect (email, analytics event ...) that has to happen because some
+// db change committed. It's written in the SAME transaction as that change, so
+// either both exist or neither does, and OutboxRelay carries it out afterwards.
+@Entity
+@EntityListeners(AuditingEntityListener.class)
+@Table(name = "outbox_events", indexes = {
+    @Index(name = "idx_outbox_status_next_attempt", columnList = "status,nextAttemptAt"),
+    @Index(name = "idx_outbox_locked_by", columnList = "lockedBy")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class OutboxEvent {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Enumerated(EnumType.STRING)
+  @Column(nullable = false, updatable = false, length = 50)
+  private OutboxEventType type;
+
+  // what the event is about, e.g. the payment id
+  @Column(nullable = false, updatable = false, length = 100)
+  private String aggregateId;
+
+  // json, shape depends on the type (see outbox/dto)
+  @Column(nullable = false, updatable = false, columnDefinition = "TEXT")
+  private String payload;
+
+  @Enumerated(EnumType.STRING)
+  @Column(nullable = false)
+  private OutboxEventStatus status = OutboxEventStatus.PENDING;
+
+  @Column(nullable = false)
+  private int attempts = 0;
+
+  @Column(nullable = false)
+  private Instant nextAttemptAt;
+
+  // lease held by the relay batch working on this event, if that relay dies
+  // the lease runs out and another one picks it up
+  @Column
+  private Instant lockedUntil;
+
+  @Column(length = 100)
+  private String lockedBy;
+
+  @Column(length = 1000)
+  private String lastError;
+
+  @Column
+  private Instant publishedAt;
+
+  @CreatedDate
+  @Column(nullable = false, updatable = false)
+  private Instant createdAt;
+}
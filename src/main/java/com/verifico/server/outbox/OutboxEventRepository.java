@@ -0,0 +1,63 @@
+package com.verifico.server.outbox;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import jakarta.transaction.Transactional;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+  // due events, plus ones whose lease ran out (relay died half way)
+  @Query("SELECT e.id FROM OutboxEvent e WHERE e.status = com.verifico.server.outbox.OutboxEventStatus.PENDING "
+      + "AND e.nextAttemptAt <= :now AND (e.lockedUntil IS NULL OR e.lockedUntil < :now) ORDER BY e.id")
+  List<Long> findDueIds(@Param("now") Instant now, Pageable pageable);
+
+  // claims a whole batch in one statement, rows another relay got to first are
+  // skipped by the where clause. Read the winners back with findByLockedBy.
+  @Transactional
+  @Modifying
+  @Query("UPDATE OutboxEvent e SET e.lockedBy = :token, e.lockedUntil = :leaseUntil WHERE e.id IN :ids "
+      + "AND e.status = com.verifico.server.outbox.OutboxEventStatus.PENDING "
+      + "AND (e.lockedUntil IS NULL OR e.lockedUntil < :now)")
+  int claim(@Param("ids") Collection<Long> ids, @Param("token") String token, @Param("now") Instant now,
+      @Param("leaseUntil") Instant leaseUntil);
+
+  List<OutboxEvent> findByLockedByOrderByIdAsc(String lockedBy);
+
+  // only if we still hold the lease, otherwise someone else owns the event now
+  @Transactional
+  @Modifying
+  @Query("UPDATE OutboxEvent e SET e.status = com.verifico.server.outbox.OutboxEventStatus.PUBLISHED, "
+      + "e.attempts = e.attempts + 1, e.publishedAt = :now, e.lockedBy = null, e.lockedUntil = null, "
+      + "e.lastError = null WHERE e.id IN :ids AND e.lockedBy = :token")
+  int markPublished(@Param("ids") Collection<Long> ids, @Param("token") String token, @Param("now") Instant now);
+
+  @Transactional
+  @Modifying
+  @Query("UPDATE OutboxEvent e SET e.attempts = :attempts, e.nextAttemptAt = :nextAttemptAt, "
+      + "e.lastError = :error, e.lockedBy = null, e.lockedUntil = null WHERE e.id = :id AND e.lockedBy = :token")
+  int scheduleRetry(@Param("id") Long id, @Param("token") String token, @Param("attempts") int attempts,
+      @Param("nextAttemptAt") Instant nextAttemptAt, @Param("error") String error);
+
+  @Transactional
+  @Modifying
+  @Query("UPDATE OutboxEvent e SET e.status = com.verifico.server.outbox.OutboxEventStatus.FAILED, "
+      + "e.attempts = :attempts, e.lastError = :error, e.lockedBy = null, e.lockedUntil = null "
+      + "WHERE e.id = :id AND e.lockedBy = :token")
+  int markFailed(@Param("id") Long id, @Param("token") String token, @Param("attempts") int attempts,
+      @Param("error") String error);
+
+  @Transactional
+  @Modifying
+  @Query(value = "DELETE FROM outbox_events WHERE id IN ("
+      + "SELECT id FROM outbox_events WHERE status = 'PUBLISHED' AND published_at < :before "
+      + "ORDER BY id LIMIT :batchSize)", nativeQuery = true)
+  int deletePublishedBefore(@Param("before") Instant before, @Param("batchSize") int batchSize);
+}
@@ -0,0 +1,8 @@
+package com.verifico.server.outbox;
+
+public enum OutboxEventStatus {
+  PENDING,
+  PUBLISHED,
+  // ran out of attempts, left in the table for someone to look at
+  FAILED
+}
@@ -0,0 +1,6 @@
+package com.verifico.server.outbox;
+
+public enum OutboxEventType {
+  PAYMENT_RECEIPT_EMAIL,
+  ANALYTICS_EVENT
+}
@@ -0,0 +1,17 @@
+package com.verifico.server.outbox;
+
+import java.util.List;
+import java.util.Map;
+
+// Carries out one type of outbox event. Runs outside of any db transaction.
+// Publishing has to be safe to repeat: if we crash after publishing but before
+// the event is marked published, the batch is published again once its lease
+// runs out.
+public interface OutboxPublisher {
+
+  OutboxEventType type();
+
+  // returns the error for each event that didn't make it (by event id), an
+  // empty map means everything was published. Throwing fails the whole batch.
+  Map<Long, String> publish(List<OutboxEvent> events);
+}
@@ -0,0 +1,175 @@
+package com.verifico.server.outbox;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.verifico.server.common.util.Backoff;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Publishes outbox events once the transaction that wrote them has committed.
+// Per batch:
+// 1. pick up to `batch-size` due ids and claim them all with one conditional
+// UPDATE (lease + a token unique to this batch), safe across replicas
+// 2. read back the rows we actually won
+// 3. publish them grouped by type, with NO db transaction open while we talk to
+// smtp/redis
+// 4. mark the published ones in one UPDATE, failures get a retry with backoff
+// and after `max-attempts` are left as FAILED
+//
+// Publishing is at least once (a crash between 3 and 4 publishes the batch
+// again after the lease runs out), every publisher is idempotent or passes the
+// event id on so the effect still only happens once.
+@Component
+@Slf4j
+public class OutboxRelay {
+
+  private final OutboxEventRepository outboxEventRepository;
+  private final Map<OutboxEventType, OutboxPublisher> publishers = new EnumMap<>(OutboxEventType.class);
+  private final String relayId = "outbox-relay-" + UUID.randomUUID();
+
+  private final int batchSize;
+  private final int maxBatchesPerRun;
+  private final int maxAttempts;
+  private final Duration lease;
+  private final Duration baseBackoff;
+  private final Duration maxBackoff;
+  private final Duration retention;
+
+  public OutboxRelay(OutboxEventRepository outboxEventRepository, List<OutboxPublisher> publishers,
+      @Value("${app.outbox.batch-size:100}") int batchSize,
+      @Value("${app.outbox.max-batches-per-run:10}") int maxBatchesPerRun,
+      @Value("${app.outbox.max-attempts:10}") int maxAttempts,
+      @Value("${app.outbox.lease-seconds:60}") long leaseSeconds,
+      @Value("${app.outbox.base-backoff-seconds:5}") long baseBackoffSeconds,
+      @Value("${app.outbox.max-backoff-seconds:3600}") long maxBackoffSeconds,
+      @Value("${app.outbox.retention-days:3}") long retentionDays) {
+    this.outboxEventRepository = outboxEventRepository;
+    publishers.forEach(publisher -> this.publishers.put(publisher.type(), publisher));
+    this.batchSize = batchSize;
+    this.maxBatchesPerRun = maxBatchesPerRun;
+    this.maxAttempts = maxAttempts;
+    this.lease = Duration.ofSeconds(leaseSeconds);
+    this.baseBackoff = Duration.ofSeconds(baseBackoffSeconds);
+    this.maxBackoff = Duration.ofSeconds(maxBackoffSeconds);
+    this.retention = Duration.ofDays(retentionDays);
+  }
+
+  @Scheduled(fixedDelayString = "${app.outbox.poll-interval-ms:1000}")
+  public void relay() {
+    for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+      if (relayBatch() < batchSize) {
+        break;
+      }
+    }
+  }
+
+  // returns how many due events there were, so relay() knows whether to go again
+  private int relayBatch() {
+    Instant now = Instant.now();
+    List<Long> dueIds = outboxEventRepository.findDueIds(now, PageRequest.of(0, batchSize));
+    if (dueIds.isEmpty()) {
+      return 0;
+    }
+
+    String token = relayId + ":" + UUID.randomUUID();
+    if (outboxEventRepository.claim(dueIds, token, now, now.plus(lease)) == 0) {
+      return dueIds.size(); // another replica got all of them
+    }
+    List<OutboxEvent> claimed = outboxEventRepository.findByLockedByOrderByIdAsc(token);
+
+    Map<OutboxEventType, List<OutboxEvent>> byType = new EnumMap<>(OutboxEventType.class);
+    for (OutboxEvent event : claimed) {
+      byType.computeIfAbsent(event.getType(), type -> new ArrayList<>()).add(event);
+    }
+
+    List<Long> published = new ArrayList<>(claimed.size());
+    List<OutboxEvent> failed = new ArrayList<>();
+    Map<Long, String> errors = new HashMap<>();
+
+    byType.forEach((type, events) -> {
+      Map<Long, String> failures = publish(type, events);
+      for (OutboxEvent event : events) {
+        String error = failures.get(event.getId());
+        if (error == null) {
+          published.add(event.getId());
+        } else {
+          failed.add(event);
+          errors.put(event.getId(), error);
+        }
+      }
+    });
+
+    if (!published.isEmpty()) {
+      outboxEventRepository.markPublished(published, token, Instant.now());
+    }
+    for (OutboxEvent event : failed) {
+      handleFailure(event, token, errors.get(event.getId()));
+    }
+    return dueIds.size();
+  }
+
+  private Map<Long, String> publish(OutboxEventType type, List<OutboxEvent> events) {
+    OutboxPublisher publisher = publishers.get(type);
+    Map<Long, String> failures = new HashMap<>();
+
+    if (publisher == null) {
+      events.forEach(event -> failures.put(event.getId(), "No publisher for " + type));
+      return failures;
+    }
+
+    try {
+      return publisher.publish(events);
+    } catch (Exception e) {
+      log.warn("Publishing {} outbox events of type {} failed: {}", events.size(), type, e.getMessage());
+      String error = truncate(e.getClass().getSimpleName() + ": " + e.getMessage());
+      events.forEach(event -> failures.put(event.getId(), error));
+      return failures;
+    }
+  }
+
+  private void handleFailure(OutboxEvent event, String token, String error) {
+    int attempts = event.getAttempts() + 1;
+    String message = truncate(error);
+
+    if (attempts >= maxAttempts) {
+      log.error("Outbox event {} ({}) failed {} times, giving up: {}", event.getId(), event.getType(), attempts,
+          message);
+      outboxEventRepository.markFailed(event.getId(), token, attempts, message);
+      return;
+    }
+
+    Instant nextAttemptAt = Instant.now().plus(Backoff.exponentialWithJitter(baseBackoff, maxBackoff, attempts));
+    outboxEventRepository.scheduleRetry(event.getId(), token, attempts, nextAttemptAt, message);
+  }
+
+  @Scheduled(fixedRate = 3_600_000, initialDelay = 180_000)
+  public void purgePublishedEvents() {
+    Instant before = Instant.now().minus(retention);
+    int deleted;
+    int total = 0;
+    do {
+      deleted = outboxEventRepository.deletePublishedBefore(before, 1000);
+      total += deleted;
+    } while (deleted == 1000);
+
+    if (total > 0) {
+      log.info("Purged {} published outbox events", total);
+    }
+  }
+
+  private String truncate(String message) {
+    return message != null && message.length() > 1000 ? message.substring(0, 1000) : message;
+  }
+}
@@ -0,0 +1,29 @@
+package com.verifico.server.outbox;
+
+import java.time.Instant;
+
+import org.springframework.stereotype.Service;
+
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import tools.jackson.databind.ObjectMapper;
+
+@Service
+@RequiredArgsConstructor
+public class OutboxService {
+
+  private final OutboxEventRepository outboxEventRepository;
+  private final ObjectMapper objectMapper;
+
+  // MANDATORY: an outbox row only makes sense as part of the caller's
+  // transaction, writing one on its own would defeat the point
+  @Transactional(Transactional.TxType.MANDATORY)
+  public OutboxEvent append(OutboxEventType type, String aggregateId, Object payload) {
+    OutboxEvent event = new OutboxEvent();
+    event.setType(type);
+    event.setAggregateId(aggregateId);
+    event.setPayload(objectMapper.writeValueAsString(payload));
+    event.setNextAttemptAt(Instant.now());
+    return outboxEventRepository.save(event);
+  }
+}
@@ -0,0 +1,45 @@
+package com.verifico.server.outbox;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+import com.verifico.server.email.EmailService;
+import com.verifico.server.outbox.dto.PaymentReceiptPayload;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import tools.jackson.databind.ObjectMapper;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ReceiptEmailPublisher implements OutboxPublisher {
+
+  private final EmailService emailService;
+  private final ObjectMapper objectMapper;
+
+  @Override
+  public OutboxEventType type() {
+    return OutboxEventType.PAYMENT_RECEIPT_EMAIL;
+  }
+
+  @Override
+  public Map<Long, String> publish(List<OutboxEvent> events) {
+    Map<Long, String> failures = new HashMap<>();
+    for (OutboxEvent event : events) {
+      try {
+        PaymentReceiptPayload receipt = objectMapper.readValue(event.getPayload(), PaymentReceiptPayload.class);
+        // one receipt per payment however many times this event is published
+        emailService.sendCreditPurchaseReceipt("receipt:" + receipt.paymentId(), receipt.email(),
+            receipt.username(), receipt.credits(), receipt.amountInCents() / 100.0);
+      } catch (Exception e) {
+        log.warn("Unable to send receipt for outbox event {}: {}", event.getId(), e.getMessage());
+        failures.put(event.getId(), e.getClass().getSimpleName() + ": " + e.getMessage());
+      }
+    }
+    return failures;
+  }
+}
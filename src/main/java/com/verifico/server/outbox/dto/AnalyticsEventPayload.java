@@ -0,0 +1,11 @@
+package com.verifico.server.outbox.dto;
+
+import java.time.Instant;
+import java.util.Map;
+
+public record AnalyticsEventPayload(
+    String event,
+    Long userId,
+    Instant occurredAt,
+    Map<String, String> properties) {
+}
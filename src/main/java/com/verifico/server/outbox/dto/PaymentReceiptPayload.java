@@ -0,0 +1,12 @@
+package com.verifico.server.outbox.dto;
+
+// everything the receipt email needs, captured when the payment settled so the
+// relay doesn't have to go back to the db
+public record PaymentReceiptPayload(
+    Long paymentId,
+    Long userId,
+    String email,
+    String username,
+    int credits,
+    long amountInCents) {
+}
@@ -12,6 +12,7 @@ import com.stripe.exception.StripeException;
 import com.verifico.server.common.dto.APIResponse;
 import com.verifico.server.payment.dto.PaymentIntentResponse;
 import com.verifico.server.payment.dto.PurchaseCreditsRequest;
+import com.verifico.server.payment.webhook.StripeWebhookInbox;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -28,6 +29,8 @@ public class PaymentController {
 
   private final PaymentService paymentService;
 
+  private final StripeWebhookInbox stripeWebhookInbox;
+
   @Operation(summary = "Create a Stripe payment intent for purchasing credits")
   @PostMapping("/payment-intent")
   public ResponseEntity<APIResponse<PaymentIntentResponse>> createPaymentIntent(
@@ -45,7 +48,9 @@ public class PaymentController {
   public ResponseEntity<String> handleStripeWebhook(@RequestBody String payload,
       @RequestHeader("Stripe-Signature") String sigHeader) {
     try {
-      paymentService.processWebhook(payload, sigHeader);
+      // only verify + store here, the event is processed in the background by
+      // StripeWebhookWorker so we can ack stripe straight away
+      stripeWebhookInbox.receive(payload, sigHeader);
       return ResponseEntity.ok("");
     } catch (SecurityException e) {
       // Invallid signature = permanent failure,
@@ -53,12 +58,8 @@ public class PaymentController {
       log.error("Webhook security violation", e);
       return ResponseEntity.ok("");
     } catch (Exception e) {
-      // everything else retry for, as it could be transistent
-      // i think we can also refactor the way we handle retries
-      // specifically regarding catching what type of err we are
-      // encountering to optimise @ scale... but this should be
-      // fine to handle quite a bit of users without any problems.
-      log.error("Webhook processing failed, will retry", e);
+      // couldn't store the event (db down etc), let stripe retry the delivery
+      log.error("Unable to store webhook event, stripe will retry", e);
       return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("null");
     }
   }
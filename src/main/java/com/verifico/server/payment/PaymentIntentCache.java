@@ -0,0 +1,111 @@
+package com.verifico.server.payment;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import com.verifico.server.payment.dto.PaymentIntentResponse;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+
+// Redis cache of idempotency key -> (client secret, payment intent id), so a
+// repeated create-payment-intent request is answered with one redis GET and no
+// db/stripe call.
+//
+// Values are versioned + length prefixed instead of "secret,id":
+// "1|<secret length>|<client secret><payment intent id>"
+// so nothing depends on the secret never containing a delimiter, and if the
+// format ever changes old entries just decode as a miss (they only live 15
+// mins anyway). Anything we can't decode is treated as a miss too, the caller
+// falls back to postgres/stripe and overwrites it.
+@Component
+@Slf4j
+public class PaymentIntentCache {
+
+  private static final String KEY_PREFIX = "payment_idempotency:";
+  private static final String VERSION = "1";
+
+  private final StringRedisTemplate redisTemplate;
+  private final Duration ttl;
+  private final Counter hits = Counter.builder("cache.gets").tag("cache", "payment-intents").tag("result", "hit")
+      .register(Metrics.globalRegistry);
+  private final Counter misses = Counter.builder("cache.gets").tag("cache", "payment-intents").tag("result", "miss")
+      .register(Metrics.globalRegistry);
+
+  public PaymentIntentCache(StringRedisTemplate redisTemplate,
+      @Value("${app.payments.intent-cache.ttl-minutes:15}") long ttlMinutes) {
+    this.redisTemplate = redisTemplate;
+    this.ttl = Duration.ofMinutes(ttlMinutes);
+  }
+
+  // null on a miss, a value we can't read or redis being down
+  public PaymentIntentResponse get(String idempotencyKey) {
+    String value;
+    try {
+      value = redisTemplate.opsForValue().get(KEY_PREFIX + idempotencyKey);
+    } catch (Exception e) {
+      log.debug("Unable to read payment intent cache for {}: {}", idempotencyKey, e.getMessage());
+      return null;
+    }
+
+    if (value == null) {
+      misses.increment();
+      return null;
+    }
+
+    PaymentIntentResponse decoded = decode(value);
+    if (decoded == null) {
+      log.warn("Ignoring unreadable payment intent cache entry for {}", idempotencyKey);
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+    return decoded;
+  }
+
+  public void put(String idempotencyKey, PaymentIntentResponse response) {
+    try {
+      redisTemplate.opsForValue().set(KEY_PREFIX + idempotencyKey, encode(response), ttl);
+    } catch (Exception e) {
+      // next request falls back to the payment row + stripe retrieve
+      log.debug("Unable to write payment intent cache for {}: {}", idempotencyKey, e.getMessage());
+    }
+  }
+
+  public static String encode(PaymentIntentResponse response) {
+    String clientSecret = response.clientSecret();
+    return VERSION + "|" + clientSecret.length() + "|" + clientSecret + response.paymentIntentId();
+  }
+
+  public static PaymentIntentResponse decode(String value) {
+    if (!value.startsWith(VERSION + "|")) {
+      return null;
+    }
+
+    int lengthStart = VERSION.length() + 1;
+    int lengthEnd = value.indexOf('|', lengthStart);
+    if (lengthEnd < 0) {
+      return null;
+    }
+
+    int secretLength;
+    try {
+      secretLength = Integer.parseInt(value, lengthStart, lengthEnd, 10);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+
+    int secretStart = lengthEnd + 1;
+    int secretEnd = secretStart + secretLength;
+    // need at least one char left over for the intent id
+    if (secretLength <= 0 || secretEnd >= value.length()) {
+      return null;
+    }
+
+    return new PaymentIntentResponse(value.substring(secretStart, secretEnd), value.substring(secretEnd));
+  }
+}
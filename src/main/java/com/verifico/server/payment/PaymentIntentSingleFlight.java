@@ -0,0 +1,165 @@
+package com.verifico.server.payment;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.stripe.exception.StripeException;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Makes sure concurrent requests with the same idempotency key (double clicks,
+// client retries) only make ONE stripe call between them.
+// - same replica: the first request for a key is the leader and does the call,
+// everyone else for that key just waits on the leader's future and gets the
+// same response
+// - other replicas: the leader also takes a short redis lease (SET NX PX). A
+// request on another replica that can't get the lease waits until it's released
+// and then runs normally, by then the leader has cached the response in redis
+// so it's served from the cache instead of calling stripe again.
+// If redis is down we skip the lease, stripe's own idempotency key still stops
+// a double charge, we just might make an extra call.
+@Component
+@Slf4j
+public class PaymentIntentSingleFlight {
+
+  private static final String LEASE_PREFIX = "payment_intent_lease:";
+
+  // only delete the lease if it's still ours, it may have expired and been
+  // taken by someone else in the meantime
+  private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+      "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+      Long.class);
+
+  private final StringRedisTemplate redisTemplate;
+  private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+  private final Duration leaseTtl;
+  private final Duration maxWait;
+
+  public PaymentIntentSingleFlight(StringRedisTemplate redisTemplate,
+      @Value("${app.payments.single-flight.lease-ms:10000}") long leaseMillis,
+      @Value("${app.payments.single-flight.max-wait-ms:10000}") long maxWaitMillis) {
+    this.redisTemplate = redisTemplate;
+    this.leaseTtl = Duration.ofMillis(leaseMillis);
+    this.maxWait = Duration.ofMillis(maxWaitMillis);
+  }
+
+  @FunctionalInterface
+  public interface StripeCall<T> {
+    T call() throws StripeException;
+  }
+
+  @SuppressWarnings("unchecked")
+  public <T> T execute(String idempotencyKey, StripeCall<T> call) throws StripeException {
+    CompletableFuture<Object> mine = new CompletableFuture<>();
+    CompletableFuture<Object> leader = inFlight.putIfAbsent(idempotencyKey, mine);
+
+    if (leader != null) {
+      return (T) awaitLeader(leader);
+    }
+
+    try {
+      T result = callWithLease(idempotencyKey, call);
+      mine.complete(result);
+      return result;
+    } catch (StripeException | RuntimeException e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(idempotencyKey, mine);
+    }
+  }
+
+  private <T> T callWithLease(String idempotencyKey, StripeCall<T> call) throws StripeException {
+    String leaseKey = LEASE_PREFIX + idempotencyKey;
+    String token = UUID.randomUUID().toString();
+
+    boolean leased = tryAcquireLease(leaseKey, token);
+    if (!leased) {
+      waitForLeaseRelease(leaseKey);
+    }
+
+    try {
+      return call.call();
+    } finally {
+      if (leased) {
+        releaseLease(leaseKey, token);
+      }
+    }
+  }
+
+  private boolean tryAcquireLease(String leaseKey, String token) {
+    try {
+      Boolean acquired = redisTemplate.opsForValue().setIfAbsent(leaseKey, token, leaseTtl);
+      // null means we couldn't tell, go ahead rather than block the request
+      return acquired == null || acquired;
+    } catch (Exception e) {
+      log.debug("Unable to take payment intent lease {}, continuing without it: {}", leaseKey, e.getMessage());
+      return true;
+    }
+  }
+
+  private void waitForLeaseRelease(String leaseKey) {
+    long deadline = System.nanoTime() + maxWait.toNanos();
+    try {
+      while (Boolean.TRUE.equals(redisTemplate.hasKey(leaseKey))) {
+        if (System.nanoTime() > deadline) {
+          throw new ResponseStatusException(HttpStatus.CONFLICT,
+              "This payment is already being created, please try again shortly");
+        }
+        Thread.sleep(50);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting for payment");
+    } catch (ResponseStatusException e) {
+      throw e;
+    } catch (Exception e) {
+      // redis went away while we were waiting, just carry on
+      log.debug("Unable to check payment intent lease {}: {}", leaseKey, e.getMessage());
+    }
+  }
+
+  private void releaseLease(String leaseKey, String token) {
+    try {
+      redisTemplate.execute(RELEASE_SCRIPT, List.of(leaseKey), token);
+    } catch (Exception e) {
+      // it'll expire on its own
+      log.debug("Unable to release payment intent lease {}: {}", leaseKey, e.getMessage());
+    }
+  }
+
+  private Object awaitLeader(CompletableFuture<Object> leader) throws StripeException {
+    try {
+      return leader.get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      throw new ResponseStatusException(HttpStatus.CONFLICT,
+          "This payment is already being created, please try again shortly");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting for payment");
+    } catch (ExecutionException e) {
+      // same outcome as the leader
+      if (e.getCause() instanceof StripeException stripeException) {
+        throw stripeException;
+      }
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw new IllegalStateException("Payment intent creation failed", e.getCause());
+    }
+  }
+}
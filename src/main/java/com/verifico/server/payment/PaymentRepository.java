@@ -1,15 +1,40 @@
 package com.verifico.server.payment;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.verifico.server.user.User;
 
+import jakarta.persistence.LockModeType;
+
 public interface PaymentRepository extends JpaRepository<Payment, Long> {
   Optional<Payment> findByIdempotencyKey(String idempotencyKey);
 
   Optional<Payment> findByPaymentIntentId(String paymentIntentId);
 
+  // row lock for the duration of the transaction, the webhook worker and the
+  // reconciler can both try to settle the same payment at the same time and
+  // only one of them may award the credits
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("SELECT p FROM Payment p WHERE p.paymentIntentId = :paymentIntentId")
+  Optional<Payment> findByPaymentIntentIdForUpdate(@Param("paymentIntentId") String paymentIntentId);
+
   Optional<Payment> findByTransactionInitiator(User user);
+
+  // keyset page over idx_payment_intent of payments still PENDING that were
+  // created in [notBefore, staleBefore), only the ids since that's all we need
+  // to ask stripe about them
+  @Query("SELECT p.paymentIntentId FROM Payment p WHERE p.paymentIntentId > :afterIntentId "
+      + "AND p.status = com.verifico.server.payment.PaymentStatus.PENDING "
+      + "AND p.createdAt < :staleBefore AND p.createdAt >= :notBefore "
+      + "ORDER BY p.paymentIntentId")
+  List<String> findStalePendingIntentIds(@Param("afterIntentId") String afterIntentId,
+      @Param("staleBefore") Instant staleBefore, @Param("notBefore") Instant notBefore, Pageable pageable);
 }
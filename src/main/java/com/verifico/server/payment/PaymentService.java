@@ -1,14 +1,11 @@
 package com.verifico.server.payment;
 
-import java.time.Duration;
 import java.util.Optional;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
@@ -18,11 +15,9 @@ import com.stripe.exception.StripeException;
 import com.stripe.model.Event;
 import com.stripe.model.PaymentIntent;
 import com.stripe.model.StripeObject;
-import com.stripe.net.RequestOptions;
 import com.stripe.net.Webhook;
 import com.stripe.param.PaymentIntentCreateParams;
-import com.verifico.server.credit.CreditService;
-import com.verifico.server.email.EmailService;
+import com.verifico.server.auth.jwt.AuthenticatedUser;
 import com.verifico.server.payment.dto.PaymentIntentResponse;
 import com.verifico.server.payment.dto.PurchaseCreditsRequest;
 import com.verifico.server.payment.exception.WebhookProcessingException;
@@ -36,9 +31,6 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class PaymentService {
 
-  @Value("${stripe.secret-key}")
-  private String stripeKey;
-
   @Value("${stripe.webhook-secret}")
   private String webhookSecret;
 
@@ -46,11 +38,13 @@ public class PaymentService {
 
   private final PaymentRepository paymentRepository;
 
-  private final StringRedisTemplate redisTemplate;
+  private final PaymentIntentCache paymentIntentCache;
+
+  private final StripeGateway stripeGateway;
 
-  private final CreditService creditService;
+  private final PaymentSettlementService paymentSettlementService;
 
-  private final EmailService emailService;
+  private final PaymentIntentSingleFlight paymentIntentSingleFlight;
 
   private static final Logger log = LoggerFactory.getLogger(PaymentService.class);
 
@@ -58,61 +52,52 @@ public class PaymentService {
   public PaymentIntentResponse paymentIntent(PurchaseCreditsRequest request, String idempotencyKey)
       throws StripeException {
 
-    // to optimise this function further look into preventing double network calls,
-    // e.g if user double clicks pay now very fast then redis will show empty cache
-    // and stripe will get called twice, it's nothing major but can be optimised.
-
     // is user logged in first
-    Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-    if (auth == null) {
+    AuthenticatedUser currentUser = AuthenticatedUser.from(SecurityContextHolder.getContext().getAuthentication());
+    if (currentUser == null) {
       throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Authenticated user not found!");
     }
-    String username = auth.getName();
 
-    User user = userRepository.findByUsername(username)
-        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found!"));
-
-    CreditsPurchasedAmount purchasedAmount = request.getAmount();
+    // payment row only needs the fk, the id comes straight from the token
+    User user = userRepository.getReferenceById(currentUser.userId());
 
     if (request.getQuantity() != 1) {
       throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Quantity must be 1");
     }
 
-    Optional<Payment> existing = paymentRepository.findByIdempotencyKey(idempotencyKey);
-    if (existing.isPresent() && existing.get().getPaymentIntentId() != null) {
-      String paymentIntentId = existing.get().getPaymentIntentId();
-
-      String redisKey = "payment_idempotency:" + idempotencyKey;
-      String cachedValue = redisTemplate.opsForValue().get(redisKey);
-      if (cachedValue != null) {
-        String[] parts = cachedValue.split(",");
-        return new PaymentIntentResponse(parts[0], parts[1]);
-      }
-
-      // If not in Redis, retrieve from Stripe
-      RequestOptions retrieveOptions = RequestOptions.builder()
-          .setApiKey(stripeKey)
-          .build();
-      PaymentIntent intent = PaymentIntent.retrieve(paymentIntentId, retrieveOptions); // ← FIXED
+    // hot path for a repeated request (refresh, retry): one redis GET, no db or
+    // stripe call
+    PaymentIntentResponse cached = paymentIntentCache.get(idempotencyKey);
+    if (cached != null) {
+      return cached;
+    }
 
-      // Re-cache it
-      String valueToCache = intent.getClientSecret() + "," + intent.getId();
-      redisTemplate.opsForValue().set(redisKey, valueToCache, Duration.ofMinutes(15));
+    // a double click on "pay now" sends two requests with the same key that
+    // both miss the redis cache, single flight makes them share one stripe call
+    return paymentIntentSingleFlight.execute(idempotencyKey,
+        () -> findOrCreatePaymentIntent(request, idempotencyKey, user, currentUser.userId()));
+  }
 
-      return new PaymentIntentResponse(
-          intent.getClientSecret(),
-          intent.getId());
+  private PaymentIntentResponse findOrCreatePaymentIntent(PurchaseCreditsRequest request, String idempotencyKey,
+      User user, Long userId) throws StripeException {
+    // check again, if we waited on another replica's lease it has cached the
+    // response by now
+    PaymentIntentResponse cached = paymentIntentCache.get(idempotencyKey);
+    if (cached != null) {
+      return cached;
     }
 
-    // check cache for secret key/pi_id:
-    String redisKey = "payment_idempotency:" + idempotencyKey;
-    String cachedValue = redisTemplate.opsForValue().get(redisKey);
+    CreditsPurchasedAmount purchasedAmount = request.getAmount();
+
+    // cache expired (or redis lost it) but we already created the intent, get it
+    // back from stripe rather than creating a second one
+    Optional<Payment> existing = paymentRepository.findByIdempotencyKey(idempotencyKey);
+    if (existing.isPresent() && existing.get().getPaymentIntentId() != null) {
+      PaymentIntent intent = stripeGateway.retrievePaymentIntent(existing.get().getPaymentIntentId());
 
-    if (cachedValue != null) {
-      // returning without going to db/stripe,
-      // our info is stored in client_secret,pi_id format
-      String[] parts = cachedValue.split(",");
-      return new PaymentIntentResponse(parts[0], parts[1]);
+      PaymentIntentResponse response = new PaymentIntentResponse(intent.getClientSecret(), intent.getId());
+      paymentIntentCache.put(idempotencyKey, response);
+      return response;
     }
 
     // create payment intent with user_id,pkg_id metadata + stripe idempotency
@@ -133,35 +118,50 @@ public class PaymentService {
                 .setAllowRedirects(
                     PaymentIntentCreateParams.AutomaticPaymentMethods.AllowRedirects.NEVER)
                 .build())
-        .putMetadata("user_id", user.getId().toString())
+        .putMetadata("user_id", userId.toString())
         .putMetadata("purchase_type", purchasedAmount.name())
         .build();
 
     // calling stripe w idempotency keym helps is redis fails but stripe succeeds:
-    RequestOptions options = RequestOptions.builder()
-        .setApiKey(stripeKey)
-        .setIdempotencyKey(idempotencyKey)
-        .build();
-
-    PaymentIntent paymentIntent = PaymentIntent.create(params, options);
+    PaymentIntent paymentIntent = stripeGateway.createPaymentIntent(params, idempotencyKey);
 
     // make sure payment status is set to pending with payment intent id
     toTransaction(idempotencyKey, paymentIntent.getId(), purchasedAmount, user, amountInCents);
 
-    // set client secret key with ttl 15 mins in redis cache.
-    String valueToCache = paymentIntent.getClientSecret() + "," + paymentIntent.getId();
-    redisTemplate.opsForValue().set(redisKey, valueToCache, Duration.ofMinutes(15));
-
     // return client secret + payment intent id not entire payment intent (best
-    // practice)
-    return new PaymentIntentResponse(
+    // practice), cached for repeat requests
+    PaymentIntentResponse response = new PaymentIntentResponse(
         paymentIntent.getClientSecret(),
         paymentIntent.getId());
+    paymentIntentCache.put(idempotencyKey, response);
+    return response;
   }
 
+  // verifies + handles the event in one go, the webhook endpoint goes through
+  // StripeWebhookInbox instead so this is only for handling a payload by hand
   public void processWebhook(String payload, String sigHeader) {
+    handleEvent(constructVerifiedEvent(payload, sigHeader));
+  }
+
+  public Event constructVerifiedEvent(String payload, String sigHeader) {
+    try {
+      return Webhook.constructEvent(payload, sigHeader, webhookSecret);
+    } catch (SignatureVerificationException e) {
+      // log invalid webhook signature
+      log.error("✘ Invalid webhook signature", e);
+      throw new SecurityException("Invalid webhook signature");
+    } catch (Exception e) {
+      log.error("✘ Unable to parse webhook payload", e);
+      throw new WebhookProcessingException("Unable to parse webhook payload", e);
+    }
+  }
+
+  // called by StripeWebhookWorker for events from the inbox, one transaction per
+  // event so a failure half way through doesn't leave credits awarded without
+  // the payment being marked (or the other way round)
+  @Transactional
+  public void handleEvent(Event event) {
     try {
-      Event event = Webhook.constructEvent(payload, sigHeader, webhookSecret);
       switch (event.getType()) {
 
         case "payment_intent.succeeded" -> {
@@ -178,8 +178,8 @@ public class PaymentService {
 
           // log successful payment along with intent id here
           log.info("✔ Payment successful: {}", intent.getId());
-          // call handleSuccessfulPayment function here
-          handleSuccessPayment(intent.getId());
+          // award credits + queue the receipt
+          paymentSettlementService.settleSucceeded(intent.getId());
         }
 
         case "payment_intent.payment_failed" -> {
@@ -196,17 +196,13 @@ public class PaymentService {
 
           // log payment failed w intent id here
           log.warn("✘ Payment failed: {}", intent.getId());
-          // call handlefailedpayment function here
-          handleFailedPayment(intent.getId());
+          // mark it failed, no credits
+          paymentSettlementService.settleFailed(intent.getId());
         }
 
         // if not either of these 2 above, log unhandled event type. (default)
         default -> log.debug("Unhandled event type: {}", event.getType());
       }
-    } catch (SignatureVerificationException e) {
-      // log invalid webhook signature
-      log.error("✘ Invalid webhook signature", e);
-      throw new SecurityException("Invalid webhook signature");
     } catch (Exception e) {
       // log webhook processing err
       log.error("✘ Webhook processing error", e);
@@ -214,53 +210,28 @@ public class PaymentService {
     }
   }
 
+  // called by PendingPaymentReconciler with the intent as stripe sees it right
+  // now, for payments whose webhook never showed up. Same handling as the
+  // webhook events so it doesn't matter which of the two gets there first.
+  // Returns false if stripe hasn't settled the intent yet.
   @Transactional
-  private void handleSuccessPayment(String paymentIntentId) {
-    Payment payment = paymentRepository.findByPaymentIntentId(paymentIntentId)
-        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Payment not found"));
-
-    // check if payment already processed:
-    if (payment.getStatus() == PaymentStatus.SUCCEEDED) {
-      return;
-    }
-
-    if (payment.getCreditsAwarded() != null && payment.getCreditsAwarded()) {
-      log.info("Credits already awarded for payment {}, skipping", payment.getId());
-      return;
-    }
-
-    // adding credits to user
-    int credits = switch (payment.getPurchasedPackage()) {
-      case BUY_25_CREDITS -> 25;
-      case BUY_50_CREDITS -> 50;
-      case BUY_75_CREDITS -> 75;
-      case BUY_150_CREDITS -> 150;
-    };
-
-    creditService.addPurchasedCredits(payment.getTransactionInitiator().getId(), credits);
-    log.info("{} credits successfully added to user {} balance", credits, payment.getTransactionInitiator().getId());
-
-    payment.setStatus(PaymentStatus.SUCCEEDED);
-    payment.setCreditsAwarded(true);
-    paymentRepository.save(payment);
-    log.info("Payment {} marked as successful", payment.getId());
-
-    if (payment.getAmountInCents() != null) {
-      double price = payment.getAmountInCents() / 100.0; // centies to dollas conversion
-      emailService.sendCreditPurchaseReceiptForv1(payment.getTransactionInitiator(), credits, price);
+  public boolean reconcilePaymentIntent(PaymentIntent intent) {
+    switch (intent.getStatus()) {
+      case "succeeded" -> paymentSettlementService.settleSucceeded(intent.getId());
+      case "canceled" -> paymentSettlementService.settleFailed(intent.getId());
+      // back to requires_payment_method with an error is what payment_failed
+      // is sent for, without an error the user just hasn't paid yet
+      case "requires_payment_method" -> {
+        if (intent.getLastPaymentError() == null) {
+          return false;
+        }
+        paymentSettlementService.settleFailed(intent.getId());
+      }
+      default -> {
+        return false;
+      }
     }
-  }
-
-  @Transactional
-  private void handleFailedPayment(String paymentIntentId) {
-    paymentRepository.findByPaymentIntentId(paymentIntentId)
-        .ifPresentOrElse(payment -> {
-          if (payment.getStatus() != PaymentStatus.FAILED) {
-            payment.setStatus(PaymentStatus.FAILED);
-            paymentRepository.save(payment);
-            log.warn("Payment {} marked as failed", payment.getId());
-          }
-        }, () -> log.warn("Payment with intent {} not found, ignoring", paymentIntentId));
+    return true;
   }
 
   // helpers:
@@ -0,0 +1,101 @@
+package com.verifico.server.payment;
+
+import java.time.Instant;
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.verifico.server.credit.CreditService;
+import com.verifico.server.outbox.OutboxEventType;
+import com.verifico.server.outbox.OutboxService;
+import com.verifico.server.outbox.dto.AnalyticsEventPayload;
+import com.verifico.server.outbox.dto.PaymentReceiptPayload;
+import com.verifico.server.user.User;
+
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+// Moves a payment to its final state, used by both the webhook worker and the
+// reconciler (through PaymentService). Everything for one payment happens in a
+// single transaction with the payment row locked:
+// credits awarded + payment status + outbox rows for the receipt email and
+// analytics, so a payment is never marked without the credits (or the other
+// way round) and the receipt only goes out if all of that committed.
+// The actual email/analytics publishing is done later by OutboxRelay.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentSettlementService {
+
+  private final PaymentRepository paymentRepository;
+
+  private final CreditService creditService;
+
+  private final OutboxService outboxService;
+
+  @Transactional
+  public void settleSucceeded(String paymentIntentId) {
+    Payment payment = paymentRepository.findByPaymentIntentIdForUpdate(paymentIntentId)
+        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Payment not found"));
+
+    // check if payment already processed:
+    if (payment.getStatus() == PaymentStatus.SUCCEEDED) {
+      return;
+    }
+
+    if (payment.getCreditsAwarded() != null && payment.getCreditsAwarded()) {
+      log.info("Credits already awarded for payment {}, skipping", payment.getId());
+      return;
+    }
+
+    // adding credits to user
+    int credits = switch (payment.getPurchasedPackage()) {
+      case BUY_25_CREDITS -> 25;
+      case BUY_50_CREDITS -> 50;
+      case BUY_75_CREDITS -> 75;
+      case BUY_150_CREDITS -> 150;
+    };
+
+    User user = payment.getTransactionInitiator();
+    creditService.addPurchasedCredits(user.getId(), credits);
+    log.info("{} credits successfully added to user {} balance", credits, user.getId());
+
+    payment.setStatus(PaymentStatus.SUCCEEDED);
+    payment.setCreditsAwarded(true);
+    paymentRepository.save(payment);
+    log.info("Payment {} marked as successful", payment.getId());
+
+    String paymentId = String.valueOf(payment.getId());
+    if (payment.getAmountInCents() != null) {
+      outboxService.append(OutboxEventType.PAYMENT_RECEIPT_EMAIL, paymentId, new PaymentReceiptPayload(
+          payment.getId(), user.getId(), user.getEmail(), user.getUsername(), credits, payment.getAmountInCents()));
+    }
+    outboxService.append(OutboxEventType.ANALYTICS_EVENT, paymentId, new AnalyticsEventPayload(
+        "payment_succeeded", user.getId(), Instant.now(), Map.of(
+            "payment_id", paymentId,
+            "package", payment.getPurchasedPackage().name(),
+            "credits", String.valueOf(credits),
+            "amount_in_cents", String.valueOf(payment.getAmountInCents()))));
+  }
+
+  @Transactional
+  public void settleFailed(String paymentIntentId) {
+    paymentRepository.findByPaymentIntentIdForUpdate(paymentIntentId)
+        .ifPresentOrElse(payment -> {
+          if (payment.getStatus() != PaymentStatus.FAILED) {
+            payment.setStatus(PaymentStatus.FAILED);
+            paymentRepository.save(payment);
+            log.warn("Payment {} marked as failed", payment.getId());
+
+            String paymentId = String.valueOf(payment.getId());
+            outboxService.append(OutboxEventType.ANALYTICS_EVENT, paymentId, new AnalyticsEventPayload(
+                "payment_failed", payment.getTransactionInitiator().getId(), Instant.now(), Map.of(
+                    "payment_id", paymentId,
+                    "package", payment.getPurchasedPackage().name())));
+          }
+        }, () -> log.warn("Payment with intent {} not found, ignoring", paymentIntentId));
+  }
+}
@@ -0,0 +1,145 @@
+package com.verifico.server.payment;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.stripe.model.PaymentIntent;
+import com.verifico.server.common.util.CircuitBreaker;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+// Safety net for payments whose webhook never made it to us (stripe gave up,
+// endpoint misconfigured, event dead lettered ...), without this they'd sit in
+// PENDING forever and the user never gets their credits.
+// Every few minutes:
+// - walk the PENDING payments older than `stale-after-minutes` (and younger
+// than `lookback-days`, anything older was abandoned at checkout) in keyset
+// batches ordered by payment intent id
+// - ask stripe for each intent's current status, `concurrency` at a time (on
+// top of the StripeGateway bulkhead)
+// - settle it through PaymentService.reconcilePaymentIntent, which is the same
+// idempotent + row locked handling the webhook uses, so racing a late webhook is
+// fine
+@Component
+@Slf4j
+public class PendingPaymentReconciler {
+
+  private final PaymentRepository paymentRepository;
+  private final StripeGateway stripeGateway;
+  private final PaymentService paymentService;
+
+  private final ThreadPoolExecutor executor;
+  private final int batchSize;
+  private final int maxBatches;
+  private final Duration staleAfter;
+  private final Duration lookback;
+
+  public PendingPaymentReconciler(PaymentRepository paymentRepository, StripeGateway stripeGateway,
+      PaymentService paymentService,
+      @Value("${app.payments.reconciler.concurrency:4}") int concurrency,
+      @Value("${app.payments.reconciler.batch-size:100}") int batchSize,
+      @Value("${app.payments.reconciler.max-batches:20}") int maxBatches,
+      @Value("${app.payments.reconciler.stale-after-minutes:30}") long staleAfterMinutes,
+      @Value("${app.payments.reconciler.lookback-days:7}") long lookbackDays) {
+    this.paymentRepository = paymentRepository;
+    this.stripeGateway = stripeGateway;
+    this.paymentService = paymentService;
+    this.batchSize = batchSize;
+    this.maxBatches = maxBatches;
+    this.staleAfter = Duration.ofMinutes(staleAfterMinutes);
+    this.lookback = Duration.ofDays(lookbackDays);
+
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(),
+        runnable -> {
+          Thread thread = new Thread(runnable, "payment-reconciler-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    new ExecutorServiceMetrics(executor, "payment-reconciler", List.of()).bindTo(Metrics.globalRegistry);
+  }
+
+  @Scheduled(fixedDelayString = "${app.payments.reconciler.interval-ms:300000}", initialDelay = 60_000)
+  public void reconcileStalePayments() {
+    Instant now = Instant.now();
+    Instant staleBefore = now.minus(staleAfter);
+    Instant notBefore = now.minus(lookback);
+
+    String afterIntentId = "";
+    AtomicInteger settled = new AtomicInteger();
+    int checked = 0;
+
+    for (int batch = 0; batch < maxBatches; batch++) {
+      // no point asking while stripe is down, the gateway would just reject
+      // every call, try again next run
+      if (stripeGateway.getCircuitState() == CircuitBreaker.State.OPEN) {
+        log.warn("Stripe circuit open, stopping payment reconciliation early");
+        break;
+      }
+
+      List<String> intentIds = paymentRepository.findStalePendingIntentIds(afterIntentId, staleBefore, notBefore,
+          PageRequest.of(0, batchSize));
+      if (intentIds.isEmpty()) {
+        break;
+      }
+
+      List<CompletableFuture<Void>> tasks = new ArrayList<>(intentIds.size());
+      for (String intentId : intentIds) {
+        tasks.add(CompletableFuture.runAsync(() -> {
+          if (reconcile(intentId)) {
+            settled.incrementAndGet();
+          }
+        }, executor));
+      }
+      CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).join();
+
+      checked += intentIds.size();
+      afterIntentId = intentIds.get(intentIds.size() - 1);
+
+      if (intentIds.size() < batchSize) {
+        break;
+      }
+    }
+
+    if (checked > 0) {
+      log.info("Reconciled {} of {} stale pending payments with stripe", settled.get(), checked);
+    }
+  }
+
+  // one bad intent shouldn't stop the rest of the batch, it just gets picked up
+  // again on the next run
+  private boolean reconcile(String paymentIntentId) {
+    try {
+      PaymentIntent intent = stripeGateway.retrievePaymentIntent(paymentIntentId);
+      boolean settled = paymentService.reconcilePaymentIntent(intent);
+      if (settled) {
+        log.info("Payment intent {} settled by reconciler as {}", paymentIntentId, intent.getStatus());
+      }
+      return settled;
+    } catch (Exception e) {
+      log.warn("Unable to reconcile payment intent {}: {}", paymentIntentId, e.getMessage());
+      return false;
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+}
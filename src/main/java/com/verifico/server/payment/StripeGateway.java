@@ -0,0 +1,173 @@
+package com.verifico.server.payment;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.stripe.StripeClient;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.RateLimitException;
+import com.stripe.exception.StripeException;
+import com.stripe.model.PaymentIntent;
+import com.stripe.net.RequestOptions;
+import com.stripe.param.PaymentIntentCreateParams;
+import com.verifico.server.common.util.CircuitBreaker;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+// Every call we make to the stripe api goes through here, so a slow or broken
+// stripe can't take the rest of the app down with it:
+// - one shared StripeClient (keep-alive connections get reused) with connect +
+// read timeouts, so no request thread waits on stripe forever
+// - bulkhead: at most `max-concurrent-calls` stripe calls at once, a request
+// waits at most `acquire-timeout-ms` for a slot and then gets a 503, so stripe
+// being slow can only ever pin that many tomcat threads
+// - circuit breaker: after a run of failures (timeouts, 5xx, 429) we stop
+// calling stripe for a while and fail fast with a 503, then let a single probe
+// through to see if it's back
+//
+// Card declines / bad requests are stripe working fine, they don't count
+// against the breaker.
+//
+// Metrics: `stripe.api.calls` timer tagged by operation + outcome, plus gauges
+// for bulkhead usage and breaker state (0 closed, 1 open, 2 half open).
+@Component
+@Slf4j
+public class StripeGateway {
+
+  private final StripeClient stripeClient;
+  private final Semaphore bulkhead;
+  private final int maxConcurrentCalls;
+  private final long acquireTimeoutMillis;
+  private final CircuitBreaker circuitBreaker;
+
+  @FunctionalInterface
+  private interface StripeCall<T> {
+    T call() throws StripeException;
+  }
+
+  public StripeGateway(@Value("${stripe.secret-key}") String stripeKey,
+      @Value("${stripe.api-base:https://api.stripe.com}") String apiBase,
+      @Value("${app.payments.stripe.max-concurrent-calls:16}") int maxConcurrentCalls,
+      @Value("${app.payments.stripe.acquire-timeout-ms:200}") long acquireTimeoutMillis,
+      @Value("${app.payments.stripe.connect-timeout-ms:3000}") int connectTimeoutMillis,
+      @Value("${app.payments.stripe.read-timeout-ms:10000}") int readTimeoutMillis,
+      @Value("${app.payments.stripe.max-network-retries:1}") int maxNetworkRetries,
+      @Value("${app.payments.stripe.breaker.failure-threshold:5}") int failureThreshold,
+      @Value("${app.payments.stripe.breaker.open-ms:30000}") long openMillis) {
+    this.stripeClient = StripeClient.builder()
+        .setApiKey(stripeKey)
+        .setApiBase(apiBase)
+        .setConnectTimeout(connectTimeoutMillis)
+        .setReadTimeout(readTimeoutMillis)
+        // retries reuse the idempotency key so they can't double charge
+        .setMaxNetworkRetries(maxNetworkRetries)
+        .build();
+    this.maxConcurrentCalls = maxConcurrentCalls;
+    this.bulkhead = new Semaphore(maxConcurrentCalls);
+    this.acquireTimeoutMillis = acquireTimeoutMillis;
+    this.circuitBreaker = new CircuitBreaker(failureThreshold, openMillis);
+
+    Gauge.builder("stripe.api.bulkhead.in_use", this, gateway -> gateway.getCallsInFlight())
+        .description("Stripe api calls currently in flight")
+        .register(Metrics.globalRegistry);
+    Gauge.builder("stripe.api.circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+        .description("Stripe circuit breaker state, 0 closed, 1 open, 2 half open")
+        .register(Metrics.globalRegistry);
+  }
+
+  public PaymentIntent createPaymentIntent(PaymentIntentCreateParams params, String idempotencyKey)
+      throws StripeException {
+    RequestOptions options = RequestOptions.builder()
+        .setIdempotencyKey(idempotencyKey)
+        .build();
+    return execute("payment_intent.create", () -> stripeClient.v1().paymentIntents().create(params, options));
+  }
+
+  public PaymentIntent retrievePaymentIntent(String paymentIntentId) throws StripeException {
+    return execute("payment_intent.retrieve", () -> stripeClient.v1().paymentIntents().retrieve(paymentIntentId));
+  }
+
+  public CircuitBreaker.State getCircuitState() {
+    return circuitBreaker.getState();
+  }
+
+  public int getCallsInFlight() {
+    return maxConcurrentCalls - bulkhead.availablePermits();
+  }
+
+  private <T> T execute(String operation, StripeCall<T> call) throws StripeException {
+    if (!circuitBreaker.tryAcquirePermission()) {
+      record(operation, "rejected", 0);
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+          "Payments are temporarily unavailable, please try again shortly");
+    }
+
+    if (!acquireSlot()) {
+      circuitBreaker.releasePermission();
+      record(operation, "rejected", 0);
+      log.warn("Stripe bulkhead full, rejecting {}", operation);
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+          "Payments are busy right now, please try again shortly");
+    }
+
+    long start = System.nanoTime();
+    try {
+      T result = call.call();
+      circuitBreaker.onSuccess();
+      record(operation, "success", System.nanoTime() - start);
+      return result;
+    } catch (StripeException e) {
+      if (isStripeFailure(e)) {
+        circuitBreaker.onFailure();
+        record(operation, "failure", System.nanoTime() - start);
+      } else {
+        circuitBreaker.onSuccess();
+        record(operation, "client_error", System.nanoTime() - start);
+      }
+      throw e;
+    } catch (RuntimeException e) {
+      circuitBreaker.onFailure();
+      record(operation, "failure", System.nanoTime() - start);
+      throw e;
+    } finally {
+      bulkhead.release();
+    }
+  }
+
+  private boolean acquireSlot() {
+    try {
+      return bulkhead.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  // timeouts / connection errors, rate limiting and 5xx mean stripe (or the
+  // network to it) is struggling, anything else is a problem with our request
+  private boolean isStripeFailure(StripeException e) {
+    if (e instanceof ApiConnectionException || e instanceof RateLimitException) {
+      return true;
+    }
+    Integer status = e.getStatusCode();
+    return status == null || status >= 500;
+  }
+
+  private void record(String operation, String outcome, long nanos) {
+    Timer.builder("stripe.api.calls")
+        .description("Calls made to the stripe api")
+        .tag("operation", operation)
+        .tag("outcome", outcome)
+        .publishPercentileHistogram()
+        .register(Metrics.globalRegistry)
+        .record(nanos, TimeUnit.NANOSECONDS);
+  }
+}
@@ -0,0 +1,91 @@
+package com.verifico.server.payment.webhook;
+
+import java.time.Instant;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import com.stripe.model.Event;
+import com.stripe.model.PaymentIntent;
+import com.verifico.server.payment.PaymentService;
+
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+// Ingestion side of the webhook inbox. The endpoint only does the cheap part
+// here (verify the signature, one insert) so stripe gets its 200 within a few
+// ms no matter how slow the db/smtp are for the actual payment handling, which
+// StripeWebhookWorker picks up afterwards.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StripeWebhookInbox {
+
+  private final PaymentService paymentService;
+  private final WebhookEventRepository webhookEventRepository;
+  private final WebhookDeadLetterRepository webhookDeadLetterRepository;
+  private final WebhookEventDeduplicator webhookEventDeduplicator;
+
+  // returns false if we already had this event (stripe redelivers on timeouts
+  // etc), either way the caller should ack it
+  public boolean receive(String payload, String sigHeader) {
+    Event event = paymentService.constructVerifiedEvent(payload, sigHeader);
+
+    // cheapest check first, most redeliveries stop here without a db query
+    if (webhookEventDeduplicator.seenRecently(event.getId())) {
+      log.info("Duplicate webhook event {} ignored", event.getId());
+      return false;
+    }
+
+    if (webhookEventRepository.existsByEventId(event.getId())) {
+      log.info("Duplicate webhook event {} ignored", event.getId());
+      webhookEventDeduplicator.recordDbHit();
+      webhookEventDeduplicator.remember(event.getId());
+      return false;
+    }
+
+    WebhookEvent inboxEvent = new WebhookEvent();
+    inboxEvent.setEventId(event.getId());
+    inboxEvent.setEventType(event.getType());
+    inboxEvent.setPaymentIntentId(paymentIntentIdOf(event));
+    inboxEvent.setPayload(payload);
+    inboxEvent.setNextAttemptAt(Instant.now());
+
+    try {
+      webhookEventRepository.save(inboxEvent);
+    } catch (DataIntegrityViolationException e) {
+      // same event delivered twice at the same time, the unique event id lets
+      // exactly one insert through
+      log.info("Duplicate webhook event {} ignored", event.getId());
+      webhookEventDeduplicator.recordConstraintHit();
+      return false;
+    }
+
+    webhookEventDeduplicator.remember(event.getId());
+    return true;
+  }
+
+  // moves an event we've given up on into the dead letter table, in one
+  // transaction so it's never in both or neither
+  @Transactional
+  public void moveToDeadLetter(WebhookEvent event, int attempts, String error) {
+    WebhookDeadLetter deadLetter = new WebhookDeadLetter();
+    deadLetter.setEventId(event.getEventId());
+    deadLetter.setEventType(event.getEventType());
+    deadLetter.setPaymentIntentId(event.getPaymentIntentId());
+    deadLetter.setPayload(event.getPayload());
+    deadLetter.setAttempts(attempts);
+    deadLetter.setLastError(error);
+    webhookDeadLetterRepository.save(deadLetter);
+
+    webhookEventRepository.markDead(event.getId(), attempts, error);
+  }
+
+  private String paymentIntentIdOf(Event event) {
+    return event.getDataObjectDeserializer().getObject()
+        .filter(PaymentIntent.class::isInstance)
+        .map(object -> ((PaymentIntent) object).getId())
+        .orElse(null);
+  }
+}
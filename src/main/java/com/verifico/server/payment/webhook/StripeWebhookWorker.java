@@ -0,0 +1,172 @@
+package com.verifico.server.payment.webhook;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.stripe.model.Event;
+import com.stripe.model.StripeObject;
+import com.stripe.net.ApiResource;
+import com.verifico.server.common.util.Backoff;
+import com.verifico.server.payment.PaymentService;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+// Processing side of the webhook inbox.
+// - polls for due events and claims each one with a conditional update, so
+// every event is handled by exactly one worker even with several replicas
+// - hands claimed events to a small fixed pool, never more in flight than the
+// pool has threads
+// - events for the same payment intent are never claimed while an earlier one
+// for that intent is unfinished (see findReadyToProcess), so e.g. a failed
+// event can't be applied before the succeeded event it followed
+// - failures are retried with exponential backoff + jitter, after maxAttempts
+// the event goes to the dead letter table
+@Component
+@Slf4j
+public class StripeWebhookWorker {
+
+  private final WebhookEventRepository webhookEventRepository;
+  private final StripeWebhookInbox stripeWebhookInbox;
+  private final PaymentService paymentService;
+
+  private final ThreadPoolExecutor executor;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final String workerId = "webhook-worker-" + UUID.randomUUID();
+
+  private final int workers;
+  private final int maxAttempts;
+  private final Duration lease;
+  private final Duration baseBackoff;
+  private final Duration maxBackoff;
+  private final Duration retention;
+
+  public StripeWebhookWorker(WebhookEventRepository webhookEventRepository, StripeWebhookInbox stripeWebhookInbox,
+      PaymentService paymentService,
+      @Value("${app.payments.webhook.workers:4}") int workers,
+      @Value("${app.payments.webhook.max-attempts:8}") int maxAttempts,
+      @Value("${app.payments.webhook.lease-seconds:300}") long leaseSeconds,
+      @Value("${app.payments.webhook.base-backoff-seconds:5}") long baseBackoffSeconds,
+      @Value("${app.payments.webhook.max-backoff-seconds:3600}") long maxBackoffSeconds,
+      @Value("${app.payments.webhook.retention-days:7}") long retentionDays) {
+    this.webhookEventRepository = webhookEventRepository;
+    this.stripeWebhookInbox = stripeWebhookInbox;
+    this.paymentService = paymentService;
+    this.workers = workers;
+    this.maxAttempts = maxAttempts;
+    this.lease = Duration.ofSeconds(leaseSeconds);
+    this.baseBackoff = Duration.ofSeconds(baseBackoffSeconds);
+    this.maxBackoff = Duration.ofSeconds(maxBackoffSeconds);
+    this.retention = Duration.ofDays(retentionDays);
+
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(),
+        runnable -> {
+          Thread thread = new Thread(runnable, "stripe-webhook-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    new ExecutorServiceMetrics(executor, "stripe-webhook", List.of()).bindTo(Metrics.globalRegistry);
+  }
+
+  @Scheduled(fixedDelayString = "${app.payments.webhook.poll-interval-ms:500}")
+  public void pollInbox() {
+    int capacity = workers - inFlight.get();
+    if (capacity <= 0) {
+      return;
+    }
+
+    Instant now = Instant.now();
+    List<WebhookEvent> dueEvents = webhookEventRepository.findReadyToProcess(now, PageRequest.of(0, capacity));
+
+    for (WebhookEvent event : dueEvents) {
+      if (webhookEventRepository.claim(event.getId(), workerId, now, now.plus(lease)) != 1) {
+        continue; // another worker got it first
+      }
+
+      inFlight.incrementAndGet();
+      executor.execute(() -> {
+        try {
+          process(event);
+        } finally {
+          inFlight.decrementAndGet();
+        }
+      });
+    }
+  }
+
+  private void process(WebhookEvent event) {
+    try {
+      // signature was already checked on the way in, just parse it back
+      Event stripeEvent = StripeObject.deserializeStripeObject(event.getPayload(), Event.class,
+          ApiResource.getGlobalResponseGetter());
+      paymentService.handleEvent(stripeEvent);
+      webhookEventRepository.markProcessed(event.getId(), Instant.now());
+    } catch (Exception e) {
+      handleFailure(event, e);
+    }
+  }
+
+  private void handleFailure(WebhookEvent event, Exception e) {
+    int attempts = event.getAttempts() + 1;
+    String error = describe(e);
+
+    try {
+      if (attempts >= maxAttempts) {
+        log.error("Webhook event {} failed {} times, moving to dead letter table", event.getEventId(), attempts, e);
+        stripeWebhookInbox.moveToDeadLetter(event, attempts, error);
+        return;
+      }
+
+      Instant nextAttemptAt = Instant.now().plus(Backoff.exponentialWithJitter(baseBackoff, maxBackoff, attempts));
+      log.warn("Webhook event {} failed (attempt {}), retrying at {}: {}", event.getEventId(), attempts,
+          nextAttemptAt, error);
+      webhookEventRepository.scheduleRetry(event.getId(), attempts, nextAttemptAt, error);
+    } catch (Exception bookkeepingFailure) {
+      // db is probably down, the lease will run out and the event gets picked
+      // up again anyway
+      log.error("Unable to record failure for webhook event {}", event.getEventId(), bookkeepingFailure);
+    }
+  }
+
+  @Scheduled(fixedRate = 3_600_000, initialDelay = 120_000)
+  public void purgeProcessedEvents() {
+    // only needs to outlive stripe's retry window (3 days) for dedup
+    Instant before = Instant.now().minus(retention);
+    int deleted;
+    int total = 0;
+    do {
+      deleted = webhookEventRepository.deleteProcessedBefore(before, 1000);
+      total += deleted;
+    } while (deleted == 1000);
+
+    if (total > 0) {
+      log.info("Purged {} processed webhook events", total);
+    }
+  }
+
+  private String describe(Exception e) {
+    Throwable root = e.getCause() != null ? e.getCause() : e;
+    String message = root.getClass().getSimpleName() + ": " + root.getMessage();
+    return message.length() > 1000 ? message.substring(0, 1000) : message;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+}
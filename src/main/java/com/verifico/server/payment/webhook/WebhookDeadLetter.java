@@ -0,0 +1,54 @@
+package com.verifico.server.payment.webhook;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// Webhook events we gave up on after max attempts. Kept with the raw payload so
+// they can be looked at + replayed by hand.
+@Entity
+@EntityListeners(AuditingEntityListener.class)
+@Table(name = "stripe_webhook_dead_letters")
+@Getter
+@Setter
+@NoArgsConstructor
+public class WebhookDeadLetter {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(nullable = false, unique = true, updatable = false)
+  private String eventId;
+
+  @Column(nullable = false, updatable = false)
+  private String eventType;
+
+  @Column(updatable = false)
+  private String paymentIntentId;
+
+  @Column(nullable = false, updatable = false, columnDefinition = "TEXT")
+  private String payload;
+
+  @Column(nullable = false)
+  private int attempts;
+
+  @Column(length = 1000)
+  private String lastError;
+
+  @CreatedDate
+  @Column(nullable = false, updatable = false)
+  private Instant createdAt;
+}
@@ -0,0 +1,6 @@
+package com.verifico.server.payment.webhook;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface WebhookDeadLetterRepository extends JpaRepository<WebhookDeadLetter, Long> {
+}
@@ -0,0 +1,83 @@
+package com.verifico.server.payment.webhook;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// A verified stripe webhook event waiting to be (or already) processed.
+// The webhook endpoint only verifies the signature + inserts one of these, the
+// actual payment/credits/email work happens later in StripeWebhookWorker.
+@Entity
+@EntityListeners(AuditingEntityListener.class)
+@Table(name = "stripe_webhook_events", indexes = {
+    @Index(name = "idx_webhook_status_next_attempt", columnList = "status,nextAttemptAt"),
+    @Index(name = "idx_webhook_payment_intent", columnList = "paymentIntentId,id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class WebhookEvent {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  // stripe's evt_... id, unique so a redelivered event can never be stored twice
+  @Column(nullable = false, unique = true, updatable = false)
+  private String eventId;
+
+  @Column(nullable = false, updatable = false)
+  private String eventType;
+
+  // events for the same payment intent are processed strictly in arrival order
+  @Column(updatable = false)
+  private String paymentIntentId;
+
+  // raw body exactly as stripe sent it
+  @Column(nullable = false, updatable = false, columnDefinition = "TEXT")
+  private String payload;
+
+  @Enumerated(EnumType.STRING)
+  @Column(nullable = false)
+  private WebhookEventStatus status = WebhookEventStatus.PENDING;
+
+  @Column(nullable = false)
+  private int attempts = 0;
+
+  @Column(nullable = false)
+  private Instant nextAttemptAt;
+
+  // lease, while status = PROCESSING only the worker holding the lease should
+  // touch the event. If that worker dies the lease runs out and it's picked up
+  // again.
+  @Column
+  private Instant lockedUntil;
+
+  @Column(length = 100)
+  private String lockedBy;
+
+  @Column(length = 1000)
+  private String lastError;
+
+  @Column
+  private Instant processedAt;
+
+  @CreatedDate
+  @Column(nullable = false, updatable = false)
+  private Instant createdAt;
+}
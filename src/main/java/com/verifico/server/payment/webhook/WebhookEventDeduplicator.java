@@ -0,0 +1,90 @@
+package com.verifico.server.payment.webhook;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+
+// Remembers which stripe event ids we've already stored so a redelivery can be
+// dropped with one redis lookup, before we touch postgres at all.
+// Redis is only the fast path: one key per event id with a TTL (same as the
+// inbox retention), and if redis is down or the key expired we fall back to the
+// exists check + unique constraint on stripe_webhook_events.event_id.
+//
+// Hits are counted per layer that caught the duplicate (redis / db / unique
+// constraint) as `stripe.webhook.dedup.hits`, so we can see how many replays
+// stripe is sending us and how many get past redis.
+@Component
+@Slf4j
+public class WebhookEventDeduplicator {
+
+  private static final String KEY_PREFIX = "stripe:webhook:event:";
+
+  private final StringRedisTemplate redisTemplate;
+  private final Duration ttl;
+
+  private final LongAdder redisHits = new LongAdder();
+  private final LongAdder dbHits = new LongAdder();
+  private final LongAdder constraintHits = new LongAdder();
+
+  public WebhookEventDeduplicator(StringRedisTemplate redisTemplate,
+      @Value("${app.payments.webhook.retention-days:7}") long retentionDays) {
+    this.redisTemplate = redisTemplate;
+    this.ttl = Duration.ofDays(retentionDays);
+    registerCounter("redis", redisHits);
+    registerCounter("db", dbHits);
+    registerCounter("constraint", constraintHits);
+  }
+
+  public boolean seenRecently(String eventId) {
+    try {
+      if (Boolean.TRUE.equals(redisTemplate.hasKey(KEY_PREFIX + eventId))) {
+        redisHits.increment();
+        return true;
+      }
+    } catch (Exception e) {
+      log.debug("Unable to check webhook event {} in redis, falling back to db: {}", eventId, e.getMessage());
+    }
+    return false;
+  }
+
+  // only call this once the event is safely in postgres, otherwise a crash in
+  // between would make us drop an event we never stored
+  public void remember(String eventId) {
+    try {
+      redisTemplate.opsForValue().set(KEY_PREFIX + eventId, "1", ttl);
+    } catch (Exception e) {
+      log.debug("Unable to remember webhook event {} in redis: {}", eventId, e.getMessage());
+    }
+  }
+
+  public void recordDbHit() {
+    dbHits.increment();
+  }
+
+  public void recordConstraintHit() {
+    constraintHits.increment();
+  }
+
+  public long getHitCount(String source) {
+    return switch (source) {
+      case "redis" -> redisHits.sum();
+      case "db" -> dbHits.sum();
+      case "constraint" -> constraintHits.sum();
+      default -> 0;
+    };
+  }
+
+  private void registerCounter(String source, LongAdder hits) {
+    FunctionCounter.builder("stripe.webhook.dedup.hits", hits, LongAdder::sum)
+        .description("Stripe webhook redeliveries dropped as duplicates")
+        .tag("source", source)
+        .register(Metrics.globalRegistry);
+  }
+}
@@ -0,0 +1,70 @@
+package com.verifico.server.payment.webhook;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import jakarta.transaction.Transactional;
+
+public interface WebhookEventRepository extends JpaRepository<WebhookEvent, Long> {
+
+  boolean existsByEventId(String eventId);
+
+  // events that are due (or whose lease ran out), skipping any event that still
+  // has an unfinished earlier event for the same payment intent so events for
+  // one intent always run one at a time, oldest first
+  @Query("SELECT e FROM WebhookEvent e WHERE "
+      + "((e.status = com.verifico.server.payment.webhook.WebhookEventStatus.PENDING AND e.nextAttemptAt <= :now) "
+      + "OR (e.status = com.verifico.server.payment.webhook.WebhookEventStatus.PROCESSING AND e.lockedUntil < :now)) "
+      + "AND NOT EXISTS (SELECT 1 FROM WebhookEvent earlier WHERE earlier.paymentIntentId = e.paymentIntentId "
+      + "AND earlier.id < e.id AND earlier.status IN ("
+      + "com.verifico.server.payment.webhook.WebhookEventStatus.PENDING, "
+      + "com.verifico.server.payment.webhook.WebhookEventStatus.PROCESSING)) "
+      + "ORDER BY e.id")
+  List<WebhookEvent> findReadyToProcess(@Param("now") Instant now, Pageable pageable);
+
+  // conditional update so only one worker (across all replicas) can win the
+  // lease for an event, returns 1 if we got it
+  @Transactional
+  @Modifying
+  @Query("UPDATE WebhookEvent e SET e.status = com.verifico.server.payment.webhook.WebhookEventStatus.PROCESSING, "
+      + "e.lockedBy = :worker, e.lockedUntil = :leaseUntil WHERE e.id = :id AND "
+      + "((e.status = com.verifico.server.payment.webhook.WebhookEventStatus.PENDING AND e.nextAttemptAt <= :now) "
+      + "OR (e.status = com.verifico.server.payment.webhook.WebhookEventStatus.PROCESSING AND e.lockedUntil < :now))")
+  int claim(@Param("id") Long id, @Param("worker") String worker, @Param("now") Instant now,
+      @Param("leaseUntil") Instant leaseUntil);
+
+  @Transactional
+  @Modifying
+  @Query("UPDATE WebhookEvent e SET e.status = com.verifico.server.payment.webhook.WebhookEventStatus.PROCESSED, "
+      + "e.attempts = e.attempts + 1, e.processedAt = :now, e.lockedBy = null, e.lockedUntil = null, "
+      + "e.lastError = null WHERE e.id = :id")
+  int markProcessed(@Param("id") Long id, @Param("now") Instant now);
+
+  @Transactional
+  @Modifying
+  @Query("UPDATE WebhookEvent e SET e.status = com.verifico.server.payment.webhook.WebhookEventStatus.PENDING, "
+      + "e.attempts = :attempts, e.nextAttemptAt = :nextAttemptAt, e.lastError = :error, "
+      + "e.lockedBy = null, e.lockedUntil = null WHERE e.id = :id")
+  int scheduleRetry(@Param("id") Long id, @Param("attempts") int attempts,
+      @Param("nextAttemptAt") Instant nextAttemptAt, @Param("error") String error);
+
+  @Modifying
+  @Query("UPDATE WebhookEvent e SET e.status = com.verifico.server.payment.webhook.WebhookEventStatus.DEAD, "
+      + "e.attempts = :attempts, e.lastError = :error, e.lockedBy = null, e.lockedUntil = null WHERE e.id = :id")
+  int markDead(@Param("id") Long id, @Param("attempts") int attempts, @Param("error") String error);
+
+  // same batching idea as the refresh token cleanup, processed events only need
+  // to stick around long enough to dedupe stripe's redeliveries
+  @Transactional
+  @Modifying
+  @Query(value = "DELETE FROM stripe_webhook_events WHERE id IN ("
+      + "SELECT id FROM stripe_webhook_events WHERE status = 'PROCESSED' AND processed_at < :before "
+      + "ORDER BY id LIMIT :batchSize)", nativeQuery = true)
+  int deleteProcessedBefore(@Param("before") Instant before, @Param("batchSize") int batchSize);
+}
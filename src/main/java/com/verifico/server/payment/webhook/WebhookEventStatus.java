@@ -0,0 +1,5 @@
+package com.verifico.server.payment.webhook;
+
+public enum WebhookEventStatus {
+  PENDING, PROCESSING, PROCESSED, DEAD
+}
@@ -0,0 +1,50 @@
+package com.verifico.server.post;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+// posts.comment_count is kept up to date by the +1/-1 updates in CommentService,
+// this just recounts every post once a day in small id batches. First run after
+// a deploy backfills posts that existed before the column did, after that it
+// only catches drift (e.g. comments removed by hand in the db).
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CommentCountRepair {
+
+  private final PostRepository postRepository;
+
+  @Value("${app.posts.comment-count-repair.batch-size:500}")
+  private int batchSize;
+
+  @Scheduled(fixedRate = 86_400_000, initialDelay = 120_000)
+  public void recountComments() {
+    long afterId = 0;
+    int repaired = 0;
+
+    while (true) {
+      List<Long> ids = postRepository.findIdsAfter(afterId, PageRequest.of(0, batchSize));
+      if (ids.isEmpty()) {
+        break;
+      }
+
+      repaired += postRepository.recountComments(ids);
+      afterId = ids.get(ids.size() - 1);
+
+      if (ids.size() < batchSize) {
+        break;
+      }
+    }
+
+    if (repaired > 0) {
+      log.info("Repaired comment count on {} posts", repaired);
+    }
+  }
+}
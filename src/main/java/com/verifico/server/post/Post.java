@@ -5,6 +5,7 @@ import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.hibernate.annotations.ColumnDefault;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
@@ -94,6 +95,13 @@ public class Post {
   // credits it costs
   private LocalDate boostedUntil;
 
+  // denormalized so listing comments / showing a post never needs a COUNT(*),
+  // only ever changed with the atomic updates in PostRepository. default 0 so
+  // the column can be added to a table that already has posts
+  @ColumnDefault("0")
+  @Column(nullable = false)
+  private long commentCount = 0;
+
   @CreatedDate
   @Column(nullable = false, updatable = false)
   private Instant createdAt;
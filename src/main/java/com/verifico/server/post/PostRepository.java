@@ -1,19 +1,65 @@
 package com.verifico.server.post;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import jakarta.transaction.Transactional;
 
 public interface PostRepository extends JpaRepository<Post, Long> {
   Optional<Post> findById(Long id);
 
-  @EntityGraph(attributePaths = { "author" })
-  Page<Post> findAllByOrderByCreatedAtDesc(Pageable pageable);
+  // feed pages select straight into PostRow, only the author columns the
+  // response actually shows
+  String POST_ROW = "SELECT new com.verifico.server.post.PostRow(p.id, p.title, p.tagline, p.category, p.stage, "
+      + "p.problemDescription, p.solutionDescription, p.liveDemoUrl, p.isBoosted, p.boostedUntil, p.createdAt, "
+      + "p.updatedAt, p.commentCount, a.id, a.username, a.firstName, a.lastName, a.avatarUrl) "
+      + "FROM Post p JOIN p.author a ";
+
+  @Query(value = POST_ROW + "ORDER BY p.createdAt DESC", countQuery = "SELECT COUNT(p) FROM Post p")
+  Page<PostRow> findAllByOrderByCreatedAtDesc(Pageable pageable);
+
+  @Query(value = POST_ROW + "WHERE p.category = :category ORDER BY p.createdAt DESC",
+      countQuery = "SELECT COUNT(p) FROM Post p WHERE p.category = :category")
+  Page<PostRow> findByCategoryOrderByCreatedAtDesc(@Param("category") Category category, Pageable pageable);
+
+  // screenshots for a whole page of posts in one query, instead of the element
+  // collection being loaded post by post
+  @Query("SELECT p.id AS postId, s AS url FROM Post p JOIN p.screenshotUrls s WHERE p.id IN :ids")
+  List<PostScreenshotView> findScreenshotUrls(@Param("ids") Collection<Long> ids);
+
+  // doubles as the existence check when listing comments, empty = no such post
+  @Query("SELECT p.commentCount FROM Post p WHERE p.id = :id")
+  Optional<Long> findCommentCountById(@Param("id") Long id);
+
+  // single atomic UPDATE, no read-modify-write so concurrent comments can't
+  // lose an increment. 0 rows updated = post doesn't exist
+  @Modifying
+  @Transactional
+  @Query("UPDATE Post p SET p.commentCount = p.commentCount + 1 WHERE p.id = :id")
+  int incrementCommentCount(@Param("id") Long id);
+
+  @Modifying
+  @Transactional
+  @Query("UPDATE Post p SET p.commentCount = CASE WHEN p.commentCount > :by THEN p.commentCount - :by ELSE 0 END "
+      + "WHERE p.id = :id")
+  int decrementCommentCount(@Param("id") Long id, @Param("by") long by);
 
-  @EntityGraph(attributePaths = { "author" })
-  Page<Post> findByCategoryOrderByCreatedAtDesc(Category category, Pageable pageable);
+  @Query("SELECT p.id FROM Post p WHERE p.id > :afterId ORDER BY p.id ASC")
+  List<Long> findIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
 
+  // recounts a batch of posts, only touches rows that actually drifted
+  @Modifying
+  @Transactional
+  @Query(value = "UPDATE posts p SET comment_count = (SELECT COUNT(*) FROM comments c WHERE c.post_id = p.id) "
+      + "WHERE p.id IN (:ids) "
+      + "AND p.comment_count <> (SELECT COUNT(*) FROM comments c WHERE c.post_id = p.id)", nativeQuery = true)
+  int recountComments(@Param("ids") List<Long> ids);
 }
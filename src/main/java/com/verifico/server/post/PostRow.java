@@ -0,0 +1,28 @@
+package com.verifico.server.post;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+// a post + only the author columns a post card shows, for the feed/search
+// queries. screenshots are an element collection so they come from one extra
+// query per page (PostRepository.findScreenshotUrls)
+public record PostRow(
+    Long id,
+    String title,
+    String tagline,
+    Category category,
+    Stage stage,
+    String problemDescription,
+    String solutionDescription,
+    String liveDemoUrl,
+    boolean boosted,
+    LocalDate boostedUntil,
+    Instant createdAt,
+    Instant updatedAt,
+    long commentCount,
+    Long authorId,
+    String authorUsername,
+    String authorFirstName,
+    String authorLastName,
+    String authorAvatarUrl) {
+}
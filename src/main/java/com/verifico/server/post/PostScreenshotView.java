@@ -0,0 +1,8 @@
+package com.verifico.server.post;
+
+// one screenshot url of a post, see PostRepository.findScreenshotUrls
+public interface PostScreenshotView {
+  Long getPostId();
+
+  String getUrl();
+}
@@ -1,24 +1,30 @@
 package com.verifico.server.post;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
+import com.verifico.server.auth.jwt.AuthenticatedUser;
 import com.verifico.server.post.dto.PostResponse;
 import com.verifico.server.user.User;
 import com.verifico.server.user.UserRepository;
+import com.verifico.server.user.UserStatsService;
 import com.verifico.server.user.dto.AuthorResponse;
 import com.verifico.server.credit.CreditService;
 import com.verifico.server.credit.TransactionType;
 import com.verifico.server.post.dao.PostSearchDao;
 import com.verifico.server.post.dto.PostRequest;
 
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 
 @Service
@@ -28,17 +34,17 @@ public class PostService {
   private final PostRepository postRepository;
   private final PostSearchDao postSearchDao;
   private final CreditService creditService;
+  private final UserStatsService userStatsService;
 
   @Transactional
   public PostResponse createPost(PostRequest request) {
-    Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-    if (auth == null) {
+    AuthenticatedUser currentUser = AuthenticatedUser.from(SecurityContextHolder.getContext().getAuthentication());
+    if (currentUser == null) {
       throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Authenticated user not found!");
     }
-    String username = auth.getName();
 
-    User author = userRepository.findByUsername(username)
-        .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unable to get username"));
+    // the post only needs the author's fk, no need to fetch the user for that
+    User author = userRepository.getReferenceById(currentUser.userId());
 
     Post post = new Post();
     post.setAuthor(author);
@@ -59,15 +65,15 @@ public class PostService {
     Post savedPost = postRepository.save(post);
 
     // removing credits from user..
-    creditService.spendCredits(author.getId(), TransactionType.CREATE_POST, null, savedPost.getId());
+    creditService.spendCredits(currentUser.userId(), TransactionType.CREATE_POST, null, savedPost.getId());
 
-    // I need to have a field called totalPosts for user profile info, and then
-    // increment it here whenever user makes a post
-    userRepository.save(author);
+    // totalPosts on the profile
+    userStatsService.postsChanged(currentUser.userId(), 1);
 
     return toPostResponse(savedPost);
   }
 
+  @Transactional(readOnly = true)
   public PostResponse getPostById(Long id) {
     Post post = findPostIfExists(id);
 
@@ -75,9 +81,10 @@ public class PostService {
 
   }
 
+  @Transactional(readOnly = true)
   public Page<PostResponse> getAllPosts(int page, int size, Category category, String search) {
     Pageable pageable = PageRequest.of(page, size);
-    Page<Post> posts;
+    Page<PostRow> posts;
 
     if (category != null) {
       posts = postRepository.findByCategoryOrderByCreatedAtDesc(category, pageable);
@@ -86,7 +93,9 @@ public class PostService {
     } else {
       posts = postRepository.findAllByOrderByCreatedAtDesc(pageable);
     }
-    return posts.map(this::toPostResponse);
+
+    Map<Long, List<String>> screenshots = findScreenshotUrls(posts.getContent());
+    return posts.map(post -> toPostResponse(post, screenshots.getOrDefault(post.id(), List.of())));
 
   }
 
@@ -94,18 +103,16 @@ public class PostService {
   public PostResponse updatePostServiceById(Long id, PostRequest postRequest) {
     // security check first,
     // check if the user who posted is the one trying to update the post
-    // I think we have a common username ground, on the access token and the post,
-    // so we can compare those and see if they match for the check... We also have
-    // to check if cookie is present ofc...
+    // the access token carries the user id, so we compare it with the post's
+    // author id (getId() on the author doesn't even need to load the user)
     Post post = findPostIfExists(id);
 
-    Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-    if (auth == null) {
+    AuthenticatedUser currentUser = AuthenticatedUser.from(SecurityContextHolder.getContext().getAuthentication());
+    if (currentUser == null) {
       throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Authenticated user not found!");
     }
-    String username = auth.getName();
 
-    if (!username.equals(post.getAuthor().getUsername())) {
+    if (!currentUser.userId().equals(post.getAuthor().getId())) {
       throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You are not authorised to make changes to this post");
     }
 
@@ -165,19 +172,19 @@ public class PostService {
   @Transactional
   public void deletePostbyId(Long id) {
 
-    Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-    if (auth == null) {
+    AuthenticatedUser currentUser = AuthenticatedUser.from(SecurityContextHolder.getContext().getAuthentication());
+    if (currentUser == null) {
       throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Authenticated user not found!");
     }
-    String username = auth.getName();
 
     Post post = findPostIfExists(id);
 
-    if (!username.equals(post.getAuthor().getUsername())) {
+    if (!currentUser.userId().equals(post.getAuthor().getId())) {
       throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You are not authorised to make changes to this post");
     }
 
     postRepository.deleteById(id);
+    userStatsService.postsChanged(currentUser.userId(), -1);
   }
 
   private PostResponse toPostResponse(Post post) {
@@ -195,7 +202,42 @@ public class PostService {
         post.isBoosted(),
         post.getBoostedUntil(),
         post.getCreatedAt(),
-        post.getUpdatedAt());
+        post.getUpdatedAt(),
+        post.getCommentCount());
+  }
+
+  // one query for the whole page, grouped by post
+  private Map<Long, List<String>> findScreenshotUrls(List<PostRow> posts) {
+    if (posts.isEmpty()) {
+      return Map.of();
+    }
+
+    List<Long> ids = posts.stream().map(PostRow::id).toList();
+    Map<Long, List<String>> screenshots = new HashMap<>();
+    for (PostScreenshotView screenshot : postRepository.findScreenshotUrls(ids)) {
+      screenshots.computeIfAbsent(screenshot.getPostId(), id -> new ArrayList<>()).add(screenshot.getUrl());
+    }
+    return screenshots;
+  }
+
+  private PostResponse toPostResponse(PostRow post, List<String> screenshotUrls) {
+    return new PostResponse(
+        post.id(),
+        new AuthorResponse(post.authorId(), post.authorUsername(), post.authorFirstName(), post.authorLastName(),
+            post.authorAvatarUrl()),
+        post.title(),
+        post.tagline(),
+        post.category(),
+        post.stage(),
+        post.problemDescription(),
+        post.solutionDescription(),
+        screenshotUrls,
+        post.liveDemoUrl(),
+        post.boosted(),
+        post.boostedUntil(),
+        post.createdAt(),
+        post.updatedAt(),
+        post.commentCount());
   }
 
   private AuthorResponse toAuthorResponse(User user) {
@@ -2,6 +2,7 @@ package com.verifico.server.post.dao;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
@@ -9,11 +10,16 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
 
 import com.verifico.server.post.Post;
+import com.verifico.server.post.PostRow;
+import com.verifico.server.user.User;
 
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
 
@@ -26,19 +32,40 @@ import jakarta.persistence.criteria.Root;
 public class PostSearchDao {
   private final EntityManager em;
 
+  // the leading wildcard LIKEs can't use an index, so these are the first
+  // queries to watch as the posts table grows
+  private final Timer pageQueryTimer = queryTimer("page");
+  private final Timer countQueryTimer = queryTimer("count");
+
   public PostSearchDao(EntityManager em) {
     this.em = em;
   }
 
+  private static Timer queryTimer(String query) {
+    return Timer.builder("posts.search.query")
+        .description("Post search queries")
+        .tag("query", query)
+        .publishPercentileHistogram()
+        .register(Metrics.globalRegistry);
+  }
+
   // all these fields are required when making post, so adding the if (field
   // !=null) check is redundant.
-  public Page<Post> searchPosts(String search, Pageable pageable) {
+  public Page<PostRow> searchPosts(String search, Pageable pageable) {
 
     CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
-    CriteriaQuery<Post> criteriaQuery = criteriaBuilder.createQuery(Post.class);
+    CriteriaQuery<PostRow> criteriaQuery = criteriaBuilder.createQuery(PostRow.class);
 
-    // SELECT * FROM post
+    // SELECT <post columns>, <author card columns> FROM post JOIN users, same
+    // shape as PostRepository.POST_ROW so no User entity gets loaded
     Root<Post> root = criteriaQuery.from(Post.class);
+    Join<Post, User> author = root.join("author");
+    criteriaQuery.select(criteriaBuilder.construct(PostRow.class,
+        root.get("id"), root.get("title"), root.get("tagline"), root.get("category"), root.get("stage"),
+        root.get("problemDescription"), root.get("solutionDescription"), root.get("liveDemoUrl"),
+        root.get("isBoosted"), root.get("boostedUntil"), root.get("createdAt"), root.get("updatedAt"),
+        root.get("commentCount"), author.get("id"), author.get("username"), author.get("firstName"),
+        author.get("lastName"), author.get("avatarUrl")));
 
     // Build predicates list
     List<Predicate> predicates = new ArrayList<>();
@@ -60,7 +87,7 @@ public class PostSearchDao {
       Predicate solutionDescriptionPredicate = criteriaBuilder.like(
           criteriaBuilder.lower(root.get("solutionDescription")),
           searchPattern);
-      Predicate userNamePredicate = criteriaBuilder.like(criteriaBuilder.lower(root.get("author").get("username")),
+      Predicate userNamePredicate = criteriaBuilder.like(criteriaBuilder.lower(author.get("username")),
           searchPattern);
 
       Predicate searchPredicates = criteriaBuilder.or(titlePredicate, taglinePredicate, categoryPredicate,
@@ -73,12 +100,14 @@ public class PostSearchDao {
     }
 
     // get result
-    TypedQuery<Post> query = em.createQuery(criteriaQuery);
+    TypedQuery<PostRow> query = em.createQuery(criteriaQuery);
 
     // {ALL PAGINATION LOGIC AFTER THIS}
     query.setFirstResult((int) pageable.getOffset()); // make sure we are skipping to right page
     query.setMaxResults(pageable.getPageSize()); // limit results per page
-    List<Post> results = query.getResultList(); // execute + get results
+    long start = System.nanoTime();
+    List<PostRow> results = query.getResultList(); // execute + get results
+    pageQueryTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 
     // count query for pagination {total counts for this page, all pages etc..}
     CriteriaQuery<Long> countQuery = criteriaBuilder.createQuery(Long.class);
@@ -98,7 +127,9 @@ public class PostSearchDao {
       countQuery.where(searchPredicate);
     }
 
+    start = System.nanoTime();
     long total = em.createQuery(countQuery).getSingleResult();
+    countQueryTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 
     return new PageImpl<>(results, pageable, total);
   }
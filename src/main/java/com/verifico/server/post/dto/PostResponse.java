@@ -22,6 +22,7 @@ public record PostResponse(
   boolean isBoosted,
   LocalDate boostedUntil,
   Instant createdAt,
-  Instant updatedAt
+  Instant updatedAt,
+  long commentCount
 ) {
 }
@@ -0,0 +1,114 @@
+package com.verifico.server.security;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+// BCrypt is deliberately slow (~50-100ms @ cost 10), so if we run it straight on
+// tomcat's request threads a login burst ends up pinning every worker thread on
+// hashing and even cheap GET requests start queueing behind it.
+// All hashing goes through this small bounded pool instead:
+// - only `threads` hashes ever run at once, so the rest of the cpu stays free
+// - at most `queue-capacity` requests wait for a slot, anything over that gets
+// rejected straight away with a 429 instead of piling up
+@Service
+@Slf4j
+public class PasswordHashingService {
+
+  private final BCryptPasswordEncoder passwordEncoder;
+  private final ThreadPoolExecutor executor;
+  private final long timeoutMillis;
+
+  public PasswordHashingService(BCryptPasswordEncoder passwordEncoder,
+      @Value("${app.security.hashing.threads:0}") int threads,
+      @Value("${app.security.hashing.queue-capacity:32}") int queueCapacity,
+      @Value("${app.security.hashing.timeout-ms:5000}") long timeoutMillis) {
+    this.passwordEncoder = passwordEncoder;
+    this.timeoutMillis = timeoutMillis;
+
+    // default to half the cores, hashing should never be able to take the
+    // whole box
+    int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity),
+        runnable -> {
+          Thread thread = new Thread(runnable, "password-hashing-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        },
+        new ThreadPoolExecutor.AbortPolicy());
+    new ExecutorServiceMetrics(executor, "password-hashing", List.of()).bindTo(Metrics.globalRegistry);
+  }
+
+  public String encode(CharSequence rawPassword) {
+    return runOnHashingPool(() -> passwordEncoder.encode(rawPassword));
+  }
+
+  public boolean matches(CharSequence rawPassword, String encodedPassword) {
+    return runOnHashingPool(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+  }
+
+  // true when the stored hash was made with a lower cost factor than the one
+  // we're configured with now, only reads the hash prefix so no need for the
+  // pool here
+  public boolean needsUpgrade(String encodedPassword) {
+    return passwordEncoder.upgradeEncoding(encodedPassword);
+  }
+
+  // how many hash requests are currently waiting for a free thread
+  public int getQueueDepth() {
+    return executor.getQueue().size();
+  }
+
+  private <T> T runOnHashingPool(Callable<T> task) {
+    Future<T> future;
+    try {
+      future = executor.submit(task);
+    } catch (RejectedExecutionException e) {
+      log.warn("Password hashing queue full, rejecting request");
+      throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+          "Too many authentication requests, please try again shortly");
+    }
+
+    try {
+      return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      future.cancel(true);
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Authentication timed out, please try again");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      future.cancel(true);
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Authentication interrupted");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw new IllegalStateException("Password hashing failed", e.getCause());
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+}
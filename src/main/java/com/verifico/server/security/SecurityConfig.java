@@ -18,6 +18,11 @@ public class SecurityConfig {
   @Value("${SPRING_PROFILES_ACTIVE}")
   private String activeProfile;
 
+  // bcrypt cost factor, bumping this up is safe, existing hashes get upgraded
+  // the next time the user logs in (see AuthService.login)
+  @Value("${app.security.bcrypt-strength:10}")
+  private int bcryptStrength;
+
   private final JWTAuthFilter jwtAuthFilter;
 
   public SecurityConfig(JWTAuthFilter jwtAuthFilter) {
@@ -45,10 +50,17 @@ public class SecurityConfig {
                 .requestMatchers(HttpMethod.POST, "/api/auth/register", "/api/auth/login", "/api/auth/logout",
                     "/api/v1/payments/webhook/stripe")
                 .permitAll()
-                .requestMatchers(HttpMethod.GET, "/", "/api/posts", "/api/posts/{id}/comments", "/api/users/{id}")
+                // probes + scraping, the actuator ones are only served on the
+                // management port which isn't exposed by the k8s service
+                .requestMatchers(HttpMethod.GET, "/health", "/actuator/health", "/actuator/health/**",
+                    "/actuator/prometheus")
+                .permitAll()
+                .requestMatchers(HttpMethod.GET, "/", "/api/posts", "/api/posts/{id}/comments", "/api/users/{id}",
+                    "/api/users/batch", "/api/auth/availability", "/api/comments/{id}/thread",
+                    "/api/posts/{id}/comments/stream")
                 .permitAll()
                 .requestMatchers(HttpMethod.POST, "/api/post/create", "/api/posts/{id}/comments",
-                    "/api/v1/payments/payment-intent")
+                    "/api/comments/{id}/replies", "/api/v1/payments/payment-intent")
                 .authenticated()
                 .requestMatchers(HttpMethod.DELETE, "/api/comments/{id}").authenticated()
                 .requestMatchers(HttpMethod.GET, "/api/users/me", "/api/credits/balance", "/api/credits/transactions")
@@ -60,6 +72,6 @@ public class SecurityConfig {
 
   @Bean
   public BCryptPasswordEncoder passwordEncoder() {
-    return new BCryptPasswordEncoder();
+    return new BCryptPasswordEncoder(bcryptStrength);
   }
 }
@@ -0,0 +1,106 @@
+package com.verifico.server.user;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.verifico.server.user.dto.PublicUserResponse;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+
+// Public profile cards by user id, for feeds/comment lists that show the same
+// few authors over and over.
+// - entries expire after `ttl-seconds`, so the stats on a card (and edits made
+// on another replica) are at most that stale
+// - at most `max-size` entries, oldest inserted goes first when we're over
+// - updateMyProfile invalidates the user's entry on this replica
+// Reads are a single concurrent map lookup, no locking.
+// Exports cache.gets (result=hit/miss) and cache.size tagged cache=public-profiles.
+@Component
+public class PublicProfileCache {
+
+  private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+  // insertion order for eviction, can hold entries that were already replaced
+  // or invalidated, those are skipped when they come up
+  private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger queued = new AtomicInteger();
+
+  private final int maxSize;
+  private final long ttlMillis;
+  private final Counter hits = Counter.builder("cache.gets").tag("cache", "public-profiles").tag("result", "hit")
+      .register(Metrics.globalRegistry);
+  private final Counter misses = Counter.builder("cache.gets").tag("cache", "public-profiles").tag("result", "miss")
+      .register(Metrics.globalRegistry);
+
+  public PublicProfileCache(
+      @Value("${app.users.profile-cache.max-size:10000}") int maxSize,
+      @Value("${app.users.profile-cache.ttl-seconds:60}") long ttlSeconds) {
+    this.maxSize = maxSize;
+    this.ttlMillis = ttlSeconds * 1000;
+    Gauge.builder("cache.size", entries, Map::size).tag("cache", "public-profiles").register(Metrics.globalRegistry);
+  }
+
+  // null on a miss or an expired entry
+  public PublicUserResponse get(Long userId) {
+    Entry entry = entries.get(userId);
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+
+    if (entry.expiresAt < System.currentTimeMillis()) {
+      entries.remove(userId, entry);
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return entry.profile;
+  }
+
+  public void put(Long userId, PublicUserResponse profile) {
+    Entry entry = new Entry(userId, profile, System.currentTimeMillis() + ttlMillis);
+    entries.put(userId, entry);
+    insertionOrder.add(entry);
+
+    if (queued.incrementAndGet() > maxSize) {
+      evict();
+    }
+  }
+
+  public void invalidate(Long userId) {
+    entries.remove(userId);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  private void evict() {
+    Entry oldest;
+    while (queued.get() > maxSize && (oldest = insertionOrder.poll()) != null) {
+      queued.decrementAndGet();
+      entries.remove(oldest.userId, oldest);
+    }
+  }
+
+  // identity equality on purpose, remove(key, entry) must only ever drop this
+  // exact entry
+  private static final class Entry {
+    private final Long userId;
+    private final PublicUserResponse profile;
+    private final long expiresAt;
+
+    private Entry(Long userId, PublicUserResponse profile, long expiresAt) {
+      this.userId = userId;
+      this.profile = profile;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package com.verifico.server.user;
+
+import java.time.LocalDate;
+
+// what a public profile card needs, user + stats in one row. no password hash,
+// no email, no entity to hydrate
+public interface PublicProfileView {
+  Long getId();
+
+  String getUsername();
+
+  String getFirstName();
+
+  String getLastName();
+
+  String getBio();
+
+  String getAvatarUrl();
+
+  LocalDate getJoinedDate();
+
+  long getPostCount();
+
+  long getCommentCount();
+
+  long getHelpfulCount();
+
+  long getCreditsEarned();
+}
@@ -0,0 +1,193 @@
+package com.verifico.server.user;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.verifico.server.common.util.BloomFilter;
+import com.verifico.server.user.dto.AvailabilityResponse;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Answers "is this username/email taken?" mostly without going to postgres.
+// We keep a bloom filter of every taken username + email (warmed on startup,
+// then updated whenever we insert/update a user). Most values people check are
+// NOT taken, and for those the filter gives a definite "no" from memory. A
+// "maybe" falls through to the db as usual.
+//
+// Every replica has its own filters, so a "definitely free" is only right if
+// we've heard about users registered everywhere else:
+// - recordTaken PUBLISHes the values on a redis channel, every replica
+// (including us) is subscribed and adds them (see UserAvailabilitySubscription)
+// - pub/sub is fire and forget, anything missed while redis or our
+// subscription was down is picked up by the periodic rebuild from the db
+// So there's still a window where another replica's new user looks free here.
+// The availability endpoint and register's pre-check are fine with that
+// (register has the unique constraints as the real guard), anything that needs
+// a definite answer should ask the db.
+@Service
+@Slf4j
+public class UserAvailabilityService {
+
+  public static final String CHANNEL = "users:taken";
+
+  private static final int WARMUP_PAGE_SIZE = 5_000;
+
+  private final UserRepository userRepository;
+  private final StringRedisTemplate redisTemplate;
+  private final long expectedUsers;
+  private final double falsePositiveRate;
+
+  private volatile Filters filters;
+  // set while a rebuild is running, so values recorded mid-rebuild end up in
+  // the new filters too
+  private volatile Filters rebuilding;
+
+  // until warmup finishes every lookup has to go to the db
+  private volatile boolean warmedUp = false;
+
+  public UserAvailabilityService(UserRepository userRepository, StringRedisTemplate redisTemplate,
+      @Value("${app.users.availability.expected-users:1000000}") long expectedUsers,
+      @Value("${app.users.availability.false-positive-rate:0.01}") double falsePositiveRate) {
+    this.userRepository = userRepository;
+    this.redisTemplate = redisTemplate;
+    this.expectedUsers = expectedUsers;
+    this.falsePositiveRate = falsePositiveRate;
+    this.filters = newFilters();
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void warmUp() {
+    rebuild();
+  }
+
+  // builds fresh filters from the db and swaps them in
+  @Scheduled(fixedDelayString = "${app.users.availability.rebuild-ms:3600000}",
+      initialDelayString = "${app.users.availability.rebuild-ms:3600000}")
+  public void rebuild() {
+    Filters fresh = newFilters();
+    rebuilding = fresh;
+    long lastId = 0L;
+    long loaded = 0;
+
+    try {
+      List<UserIdentityView> page;
+      do {
+        page = userRepository.findIdentitiesAfter(lastId, PageRequest.of(0, WARMUP_PAGE_SIZE));
+        for (UserIdentityView identity : page) {
+          fresh.put(identity.getUsername(), identity.getEmail());
+          lastId = identity.getId();
+        }
+        loaded += page.size();
+      } while (page.size() == WARMUP_PAGE_SIZE);
+
+      filters = fresh;
+      warmedUp = true;
+      log.info("Availability filters built with {} users", loaded);
+    } catch (Exception e) {
+      // not fatal, we keep the filters we had (or keep answering from the db if
+      // we never warmed up)
+      log.error("Failed to build availability filters", e);
+    } finally {
+      rebuilding = null;
+    }
+  }
+
+  public void recordTaken(String username, String email) {
+    String normalisedEmail = email != null ? normaliseEmail(email) : null;
+    recordLocally(username, normalisedEmail);
+
+    try {
+      redisTemplate.convertAndSend(CHANNEL, (username != null ? username : "") + "\n"
+          + (normalisedEmail != null ? normalisedEmail : ""));
+    } catch (Exception e) {
+      // the other replicas pick it up on their next rebuild
+      log.debug("Unable to publish taken username/email to redis: {}", e.getMessage());
+    }
+  }
+
+  // subscribed to CHANNEL in UserAvailabilitySubscription, message is
+  // "<username>\n<email>" with either side empty when it wasn't set
+  public void onRedisMessage(Message message, byte[] pattern) {
+    String body = new String(message.getBody(), StandardCharsets.UTF_8);
+    int separator = body.indexOf('\n');
+    if (separator < 0) {
+      log.warn("Ignoring malformed taken username/email message");
+      return;
+    }
+
+    String username = body.substring(0, separator);
+    String email = body.substring(separator + 1);
+    recordLocally(username.isEmpty() ? null : username, email.isEmpty() ? null : email);
+  }
+
+  // false = definitely free, true = might be taken, go check the db
+  public boolean mightBeTaken(String username, String email) {
+    if (!warmedUp) {
+      return true;
+    }
+    Filters current = filters;
+    return (username != null && current.usernames.mightContain(username))
+        || (email != null && current.emails.mightContain(normaliseEmail(email)));
+  }
+
+  // live check for the signup form
+  public AvailabilityResponse checkAvailability(String username, String email) {
+    Boolean usernameAvailable = username != null && !username.isBlank() ? !isUsernameTaken(username.strip()) : null;
+    Boolean emailAvailable = email != null && !email.isBlank() ? !isEmailTaken(email) : null;
+    return new AvailabilityResponse(usernameAvailable, emailAvailable);
+  }
+
+  public boolean isUsernameTaken(String username) {
+    if (warmedUp && !filters.usernames.mightContain(username)) {
+      return false;
+    }
+    return userRepository.existsByUsername(username);
+  }
+
+  public boolean isEmailTaken(String email) {
+    String normalised = normaliseEmail(email);
+    if (warmedUp && !filters.emails.mightContain(normalised)) {
+      return false;
+    }
+    return userRepository.existsByEmail(normalised);
+  }
+
+  // email already normalised
+  private void recordLocally(String username, String email) {
+    filters.put(username, email);
+    Filters next = rebuilding;
+    if (next != null) {
+      next.put(username, email);
+    }
+  }
+
+  private Filters newFilters() {
+    return new Filters(new BloomFilter(expectedUsers, falsePositiveRate),
+        new BloomFilter(expectedUsers, falsePositiveRate));
+  }
+
+  private String normaliseEmail(String email) {
+    return email.strip().toLowerCase(Locale.ROOT);
+  }
+
+  private record Filters(BloomFilter usernames, BloomFilter emails) {
+    void put(String username, String email) {
+      if (username != null) {
+        usernames.put(username);
+      }
+      if (email != null) {
+        emails.put(email);
+      }
+    }
+  }
+}
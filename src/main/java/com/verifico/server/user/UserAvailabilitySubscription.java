@@ -0,0 +1,59 @@
+package com.verifico.server.user;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+// Keeps this replica subscribed to usernames/emails taken on other replicas so
+// its availability filters don't answer "free" for them (see
+// UserAvailabilityService). Same approach as CommentEventSubscription: not a
+// lifecycle bean so redis being down doesn't fail startup, we subscribe once
+// the app is up and keep retrying. Whatever we miss meanwhile is picked up by
+// the filter rebuild.
+@Component
+@Slf4j
+public class UserAvailabilitySubscription {
+
+  private final RedisMessageListenerContainer container;
+
+  public UserAvailabilitySubscription(RedisConnectionFactory connectionFactory,
+      UserAvailabilityService availabilityService) {
+    this.container = new RedisMessageListenerContainer();
+    this.container.setConnectionFactory(connectionFactory);
+    this.container.addMessageListener(availabilityService::onRedisMessage,
+        new ChannelTopic(UserAvailabilityService.CHANNEL));
+    this.container.afterPropertiesSet();
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void subscribeOnStartup() {
+    ensureSubscribed();
+  }
+
+  @Scheduled(fixedDelayString = "${app.users.availability.resubscribe-ms:30000}", initialDelay = 30_000)
+  public void ensureSubscribed() {
+    if (container.isRunning()) {
+      return;
+    }
+
+    try {
+      container.start();
+      log.info("Subscribed to {}", UserAvailabilityService.CHANNEL);
+    } catch (Exception e) {
+      container.stop();
+      log.warn("Unable to subscribe to taken usernames/emails, relying on the filter rebuild: {}", e.getMessage());
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() throws Exception {
+    container.destroy();
+  }
+}
@@ -1,5 +1,8 @@
 package com.verifico.server.user;
 
+import java.util.List;
+import java.util.Map;
+
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -8,6 +11,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.verifico.server.common.dto.APIResponse;
@@ -55,6 +59,18 @@ public class UserController {
         .body(new APIResponse<>("Successfully Fetched User Profile", response));
   }
 
+  // GET /api/users/batch?ids=1,2,3 -> { "1": {...}, "3": {...} }, up to 100 ids.
+  // for rendering a page of author cards in one request
+  @Operation(summary = "Get public profiles of up to 100 users by ID")
+  @GetMapping("/batch")
+  public ResponseEntity<APIResponse<Map<Long, PublicUserResponse>>> getUserProfiles(
+      @RequestParam("ids") List<Long> ids) {
+    Map<Long, PublicUserResponse> response = userService.viewProfiles(ids);
+
+    return ResponseEntity.ok()
+        .body(new APIResponse<>("Successfully Fetched User Profiles", response));
+  }
+
   @Operation(summary = "Update current user profile")
   @PatchMapping("/me")
   public ResponseEntity<APIResponse<UserResponse>> updateMyProfile(@Valid @RequestBody ProfileRequest request) {
@@ -0,0 +1,11 @@
+package com.verifico.server.user;
+
+// just the unique columns of a user, used for availability checks + warming the
+// availability bloom filters without loading full user entities
+public interface UserIdentityView {
+  Long getId();
+
+  String getUsername();
+
+  String getEmail();
+}
@@ -1,15 +1,67 @@
 package com.verifico.server.user;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import jakarta.transaction.Transactional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
+  // login/register/password reset lookups always read the primary (read-write
+  // transaction), a replica that's a second behind shouldn't be able to say an
+  // account we just created or a password we just changed doesn't exist
+  @Transactional
   Optional<User> findByUsername(String username);
 
+  @Transactional
   Optional<User> findByEmail(String email);
 
   boolean existsByEmail(String email);
 
   boolean existsByUsername(String username);
+
+  // just the balance, no need to hydrate the whole user for it
+  @Query("SELECT u.credits FROM User u WHERE u.id = :id")
+  Optional<Integer> findCreditsById(@Param("id") Long id);
+
+  // atomic balance change straight in the db, no load + save so two awards at
+  // the same time can't overwrite each other. bumps the version as well so
+  // anyone still holding an older copy of the user gets an optimistic lock
+  // failure instead of writing a stale balance back. 0 rows = no such user
+  @Modifying
+  @Transactional
+  @Query("UPDATE User u SET u.credits = u.credits + :amount, u.version = COALESCE(u.version, 0) + 1 "
+      + "WHERE u.id = :id")
+  int addToCredits(@Param("id") Long id, @Param("amount") int amount);
+
+  // one round trip for both uniqueness checks on register, at most 2 rows back
+  @Transactional
+  @Query("SELECT u.id AS id, u.username AS username, u.email AS email FROM User u "
+      + "WHERE u.username = :username OR u.email = :email")
+  List<UserIdentityView> findIdentitiesByUsernameOrEmail(@Param("username") String username,
+      @Param("email") String email);
+
+  // keyset paging over every user, used to warm the availability bloom filters
+  @Query("SELECT u.id AS id, u.username AS username, u.email AS email FROM User u "
+      + "WHERE u.id > :afterId ORDER BY u.id")
+  List<UserIdentityView> findIdentitiesAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+  // profile cards for a batch of users, user + stats in one query. users
+  // without a stats row yet get zeros
+  @Query("SELECT u.id AS id, u.username AS username, u.firstName AS firstName, u.lastName AS lastName, "
+      + "u.bio AS bio, u.avatarUrl AS avatarUrl, u.joinedDate AS joinedDate, "
+      + "COALESCE(s.postCount, 0) AS postCount, COALESCE(s.commentCount, 0) AS commentCount, "
+      + "COALESCE(s.helpfulCount, 0) AS helpfulCount, COALESCE(s.creditsEarned, 0) AS creditsEarned "
+      + "FROM User u LEFT JOIN UserStats s ON s.userId = u.id WHERE u.id IN :ids")
+  List<PublicProfileView> findPublicProfilesByIds(@Param("ids") Collection<Long> ids);
+
+  // keyset paging over user ids, used by UserStatsRepair
+  @Query("SELECT u.id FROM User u WHERE u.id > :afterId ORDER BY u.id ASC")
+  List<Long> findIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
 }
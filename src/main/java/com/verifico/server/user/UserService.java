@@ -1,83 +1,169 @@
 package com.verifico.server.user;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
 import org.springframework.http.HttpStatus;
-import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.server.ResponseStatusException;
 
+import com.verifico.server.auth.jwt.AuthenticatedUser;
 import com.verifico.server.auth.token.RefreshTokenRepository;
 import com.verifico.server.email.EmailService;
+import com.verifico.server.security.PasswordHashingService;
 import com.verifico.server.user.dto.ProfileRequest;
 import com.verifico.server.user.dto.PublicUserResponse;
 import com.verifico.server.user.dto.UpdatePasswordRequest;
 import com.verifico.server.user.dto.UserResponse;
 
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 
 @Service
 @RequiredArgsConstructor
 public class UserService {
 
+  public static final int MAX_PROFILE_BATCH = 100;
+
   private final UserRepository userRepository;
 
-  private final PasswordEncoder passwordEncoder;
+  private final PasswordHashingService passwordHashingService;
 
   private final RefreshTokenRepository refreshTokenRepository;
 
   private final EmailService emailService;
 
+  private final UserAvailabilityService userAvailabilityService;
+
+  private final UserStatsService userStatsService;
+
+  private final PublicProfileCache publicProfileCache;
+
+  @Transactional(readOnly = true)
   public UserResponse meEndpoint() {
-    Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-    if (auth == null) {
+    AuthenticatedUser currentUser = AuthenticatedUser.from(SecurityContextHolder.getContext().getAuthentication());
+    if (currentUser == null) {
       throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unable to find authenticated user");
     }
-    String username = auth.getName();
 
-    User user = userRepository.findByUsername(username).orElseThrow(
+    User user = userRepository.findById(currentUser.userId()).orElseThrow(
         () -> new ResponseStatusException(HttpStatus.UNAUTHORIZED,
             "Unable to find user associated with that username."));
 
     return toUserResponse(user);
   }
 
+  @Transactional(readOnly = true)
   public PublicUserResponse viewSomebodiesProfile(Long id) {
     // no need authentication or anything to view some body elses profile
     // just find by id and return the public user response..
+    PublicUserResponse cached = publicProfileCache.get(id);
+    if (cached != null) {
+      return cached;
+    }
 
     User user = userRepository.findById(id).orElseThrow(
         () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "A user with that associated id couldn't be found"));
 
-    return toPublicUserResponse(user);
+    // counters are kept up to date on write, one pk lookup instead of counting
+    // posts/comments/credits here
+    PublicUserResponse response = toPublicUserResponse(user, userStatsService.getStats(id));
+    publicProfileCache.put(id, response);
+    return response;
+  }
+
+  // author cards for a whole page in one go: whatever is cached, plus one IN
+  // query for the rest. keyed by id in the order asked for, unknown ids are just
+  // left out
+  @Transactional(readOnly = true)
+  public Map<Long, PublicUserResponse> viewProfiles(List<Long> ids) {
+    Set<Long> uniqueIds = new LinkedHashSet<>(ids);
+    uniqueIds.remove(null);
+
+    if (uniqueIds.isEmpty() || uniqueIds.size() > MAX_PROFILE_BATCH) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "Between 1 and " + MAX_PROFILE_BATCH + " user ids are allowed");
+    }
+
+    Map<Long, PublicUserResponse> found = new HashMap<>(uniqueIds.size() * 4 / 3 + 1);
+    List<Long> misses = new ArrayList<>();
+    for (Long id : uniqueIds) {
+      PublicUserResponse cached = publicProfileCache.get(id);
+      if (cached != null) {
+        found.put(id, cached);
+      } else {
+        misses.add(id);
+      }
+    }
+
+    if (!misses.isEmpty()) {
+      for (PublicProfileView view : userRepository.findPublicProfilesByIds(misses)) {
+        PublicUserResponse response = toPublicUserResponse(view);
+        publicProfileCache.put(view.getId(), response);
+        found.put(view.getId(), response);
+      }
+    }
+
+    Map<Long, PublicUserResponse> profiles = new LinkedHashMap<>(found.size() * 4 / 3 + 1);
+    for (Long id : uniqueIds) {
+      PublicUserResponse profile = found.get(id);
+      if (profile != null) {
+        profiles.put(id, profile);
+      }
+    }
+    return profiles;
   }
 
   @Transactional
   public UserResponse updateMyProfile(ProfileRequest request) {
-    Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-    if (auth == null) {
+    AuthenticatedUser currentUser = AuthenticatedUser.from(SecurityContextHolder.getContext().getAuthentication());
+    if (currentUser == null) {
       throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Authenticated user not found!");
     }
-    String username = auth.getName();
 
-    User user = userRepository.findByUsername(username)
+    User user = userRepository.findById(currentUser.userId())
         .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
             "User couldn't be found"));
 
     // update fields if entered
-    if (request.getEmail() != null && !request.getEmail().equals(user.getEmail()) && !request.getEmail().isBlank()) {
-      if (userRepository.existsByEmail(request.getEmail())) {
+    String newEmail = null;
+    if (request.getEmail() != null && !request.getEmail().isBlank()) {
+      String email = request.getEmail().trim().toLowerCase(Locale.ROOT);
+      newEmail = email.equals(user.getEmail()) ? null : email;
+    }
+    String newUsername = null;
+    if (request.getUsername() != null && !request.getUsername().isBlank()) {
+      String username = request.getUsername().trim();
+      newUsername = username.equals(user.getUsername()) ? null : username;
+    }
+
+    // straight to the db, the availability filter can miss users registered on
+    // another replica a moment ago. one round trip for both, like register
+    if (newEmail != null || newUsername != null) {
+      for (UserIdentityView clash : userRepository.findIdentitiesByUsernameOrEmail(newUsername, newEmail)) {
+        if (clash.getId().equals(user.getId())) {
+          continue;
+        }
+        if (newUsername != null && newUsername.equals(clash.getUsername())) {
+          throw new ResponseStatusException(HttpStatus.CONFLICT, "Username already in use");
+        }
         throw new ResponseStatusException(HttpStatus.CONFLICT, "Email already in use");
       }
-      user.setEmail(request.getEmail().trim().toLowerCase(java.util.Locale.ROOT));
     }
-    if (request.getUsername() != null && !request.getUsername().equals(user.getUsername())
-        && !request.getUsername().isBlank()) {
-      if (userRepository.existsByUsername(request.getUsername())) {
-        throw new ResponseStatusException(HttpStatus.CONFLICT, "Username already in use");
-      }
-      user.setUsername(request.getUsername().trim());
+    if (newEmail != null) {
+      user.setEmail(newEmail);
+    }
+    if (newUsername != null) {
+      user.setUsername(newUsername);
     }
     if (request.getFirstName() != null && !request.getFirstName().isBlank()) {
       user.setFirstName(request.getFirstName().trim());
@@ -102,29 +188,32 @@ public class UserService {
     }
 
     User updatedUser = userRepository.save(user);
+    // old values stay in the filter, that just costs an extra db check later
+    userAvailabilityService.recordTaken(updatedUser.getUsername(), updatedUser.getEmail());
+    invalidateProfileAfterCommit(updatedUser.getId());
     return toUserResponse(updatedUser);
 
   }
 
   @Transactional
   public void updatePassword(UpdatePasswordRequest request) {
-    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-    if (authentication == null) {
+    AuthenticatedUser currentUser = AuthenticatedUser.from(SecurityContextHolder.getContext().getAuthentication());
+    if (currentUser == null) {
       throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Authenticated user not found!");
     }
 
-    String username = authentication.getName();
-
-    User user = userRepository.findByUsername(username).orElseThrow(
+    User user = userRepository.findById(currentUser.userId()).orElseThrow(
         () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "A user with that associated id couldn't be found"));
 
     // check old pass matches user password
-    if (!passwordEncoder.matches(request.getOldPassword(), user.getPassword())) {
+    if (!passwordHashingService.matches(request.getOldPassword(), user.getPassword())) {
       throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Incorrect Current Password");
     }
 
-    // check new pass doesn't equal the old pass
-    if (passwordEncoder.matches(request.getNewPassword(), user.getPassword())) {
+    // check new pass doesn't equal the old pass, we already know the old pass
+    // matches the stored hash so a plain compare is enough here, no need to
+    // burn a second bcrypt round
+    if (request.getNewPassword().equals(request.getOldPassword())) {
       throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "New password cannot be the same as old password");
     }
 
@@ -135,7 +224,7 @@ public class UserService {
     }
 
     // hash new pass
-    user.setPassword(passwordEncoder.encode(request.getNewPassword()));
+    user.setPassword(passwordHashingService.encode(request.getNewPassword()));
 
     // save
     userRepository.save(user);
@@ -146,6 +235,22 @@ public class UserService {
     emailService.sendPasswordChangedEmailForv1(user);
   }
 
+  // dropping it before the commit would let a read in between cache the old
+  // profile again
+  private void invalidateProfileAfterCommit(Long userId) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      publicProfileCache.invalidate(userId);
+      return;
+    }
+
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        publicProfileCache.invalidate(userId);
+      }
+    });
+  }
+
   public UserResponse toUserResponse(User user) {
     return new UserResponse(
         user.getId(),
@@ -158,13 +263,31 @@ public class UserService {
         user.getJoinedDate());
   }
 
-  public PublicUserResponse toPublicUserResponse(User user) {
+  public PublicUserResponse toPublicUserResponse(User user, UserStats stats) {
     return new PublicUserResponse(
         user.getUsername(),
         user.getFirstName(),
         user.getLastName(),
         user.getBio(),
         user.getAvatarUrl(),
-        user.getJoinedDate());
+        user.getJoinedDate(),
+        stats.getPostCount(),
+        stats.getCommentCount(),
+        stats.getHelpfulCount(),
+        stats.getCreditsEarned());
+  }
+
+  private PublicUserResponse toPublicUserResponse(PublicProfileView view) {
+    return new PublicUserResponse(
+        view.getUsername(),
+        view.getFirstName(),
+        view.getLastName(),
+        view.getBio(),
+        view.getAvatarUrl(),
+        view.getJoinedDate(),
+        view.getPostCount(),
+        view.getCommentCount(),
+        view.getHelpfulCount(),
+        view.getCreditsEarned());
   }
 }
@@ -0,0 +1,46 @@
+package com.verifico.server.user;
+
+import org.hibernate.annotations.ColumnDefault;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// Profile counters, one row per user. Kept up to date with atomic +n/-n updates
+// by the post, comment and credit services (see UserStatsService) so a profile
+// view is one primary key lookup instead of counting posts, comments and the
+// credit ledger every time. UserStatsRepair recounts them daily.
+@Entity
+@Table(name = "user_stats")
+@Getter
+@Setter
+@NoArgsConstructor
+public class UserStats {
+
+  // same id as the user, no relationship needed
+  @Id
+  @Column(name = "user_id")
+  private Long userId;
+
+  @ColumnDefault("0")
+  @Column(name = "post_count", nullable = false)
+  private long postCount;
+
+  @ColumnDefault("0")
+  @Column(name = "comment_count", nullable = false)
+  private long commentCount;
+
+  // comments of theirs that are currently marked helpful
+  @ColumnDefault("0")
+  @Column(name = "helpful_count", nullable = false)
+  private long helpfulCount;
+
+  // credits awarded by the community, purchases don't count
+  @ColumnDefault("0")
+  @Column(name = "credits_earned", nullable = false)
+  private long creditsEarned;
+}
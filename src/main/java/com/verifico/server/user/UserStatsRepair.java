@@ -0,0 +1,108 @@
+package com.verifico.server.user;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+// user_stats is kept up to date incrementally by UserStatsService, this
+// recounts every user once a day to catch drift (rows edited by hand, replies
+// lost with a post, the first run after a deploy backfilling existing users).
+// Users are walked by id in batches and the batches are recounted on a couple
+// of threads at once, each batch is its own short transaction.
+@Component
+@Slf4j
+public class UserStatsRepair {
+
+  private final UserRepository userRepository;
+  private final UserStatsRepository userStatsRepository;
+  private final int batchSize;
+  private final int maxInFlight;
+  private final ExecutorService executor;
+
+  public UserStatsRepair(UserRepository userRepository, UserStatsRepository userStatsRepository,
+      @Value("${app.users.stats-repair.batch-size:500}") int batchSize,
+      @Value("${app.users.stats-repair.threads:2}") int threads) {
+    this.userRepository = userRepository;
+    this.userStatsRepository = userStatsRepository;
+    this.batchSize = batchSize;
+    this.maxInFlight = threads * 2;
+
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "user-stats-repair-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @Scheduled(fixedRate = 86_400_000, initialDelay = 180_000)
+  public void recountStats() {
+    // a couple of batches queued per thread at most, we don't need every id
+    // in memory at once
+    Deque<Future<Integer>> inFlight = new ArrayDeque<>();
+    int repaired = 0;
+    long afterId = 0;
+
+    try {
+      while (true) {
+        List<Long> ids = userRepository.findIdsAfter(afterId, PageRequest.of(0, batchSize));
+        if (ids.isEmpty()) {
+          break;
+        }
+
+        if (inFlight.size() >= maxInFlight) {
+          repaired += await(inFlight.removeFirst());
+        }
+        inFlight.addLast(executor.submit(() -> repairBatch(ids)));
+        afterId = ids.get(ids.size() - 1);
+
+        if (ids.size() < batchSize) {
+          break;
+        }
+      }
+
+      while (!inFlight.isEmpty()) {
+        repaired += await(inFlight.removeFirst());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    if (repaired > 0) {
+      log.info("Repaired stats on {} users", repaired);
+    }
+  }
+
+  private int await(Future<Integer> batch) throws InterruptedException {
+    try {
+      return batch.get();
+    } catch (ExecutionException e) {
+      // the next run picks the batch up again
+      log.warn("Unable to repair a batch of user stats", e.getCause());
+      return 0;
+    }
+  }
+
+  private int repairBatch(List<Long> ids) {
+    return userStatsRepository.insertMissing(ids) + userStatsRepository.recount(ids);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,63 @@
+package com.verifico.server.user;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import jakarta.transaction.Transactional;
+
+public interface UserStatsRepository extends JpaRepository<UserStats, Long> {
+
+  // all counters in one atomic update, never goes below 0. 0 rows = the user
+  // has no stats row yet
+  @Modifying
+  @Transactional
+  @Query("UPDATE UserStats s SET s.postCount = greatest(s.postCount + :posts, 0), "
+      + "s.commentCount = greatest(s.commentCount + :comments, 0), "
+      + "s.helpfulCount = greatest(s.helpfulCount + :helpful, 0), "
+      + "s.creditsEarned = greatest(s.creditsEarned + :credits, 0) "
+      + "WHERE s.userId = :userId")
+  int increment(@Param("userId") Long userId, @Param("posts") long posts, @Param("comments") long comments,
+      @Param("helpful") long helpful, @Param("credits") long credits);
+
+  // two first writes racing each other can't both insert, the loser just does
+  // nothing and retries its update
+  @Modifying
+  @Transactional
+  @Query(value = "INSERT INTO user_stats (user_id, post_count, comment_count, helpful_count, credits_earned) "
+      + "VALUES (:userId, 0, 0, 0, 0) ON CONFLICT DO NOTHING", nativeQuery = true)
+  int insertIfMissing(@Param("userId") Long userId);
+
+  // rows for users that don't have one yet, the first repair after a deploy
+  // creates them for everyone
+  @Modifying
+  @Transactional
+  @Query(value = "INSERT INTO user_stats (user_id, post_count, comment_count, helpful_count, credits_earned) "
+      + "SELECT u.id, 0, 0, 0, 0 FROM users u WHERE u.id IN (:ids) "
+      + "AND NOT EXISTS (SELECT 1 FROM user_stats s WHERE s.user_id = u.id) ON CONFLICT DO NOTHING",
+      nativeQuery = true)
+  int insertMissing(@Param("ids") List<Long> ids);
+
+  // recounts a batch of users from the source tables, only touches rows that
+  // actually drifted
+  @Modifying
+  @Transactional
+  @Query(value = "UPDATE user_stats s SET "
+      + "post_count = (SELECT COUNT(*) FROM posts p WHERE p.user_id = s.user_id), "
+      + "comment_count = (SELECT COUNT(*) FROM comments c WHERE c.user_id = s.user_id), "
+      + "helpful_count = (SELECT COUNT(*) FROM comments c WHERE c.user_id = s.user_id AND c.is_marked_helpful = TRUE), "
+      + "credits_earned = (SELECT COALESCE(SUM(t.amount), 0) FROM credit_transactions t WHERE t.user_id = s.user_id "
+      + "AND t.amount > 0 AND t.transaction_type <> 'PURCHASE_CREDITS') "
+      + "WHERE s.user_id IN (:ids) AND ("
+      + "s.post_count <> (SELECT COUNT(*) FROM posts p WHERE p.user_id = s.user_id) "
+      + "OR s.comment_count <> (SELECT COUNT(*) FROM comments c WHERE c.user_id = s.user_id) "
+      + "OR s.helpful_count <> (SELECT COUNT(*) FROM comments c WHERE c.user_id = s.user_id "
+      + "AND c.is_marked_helpful = TRUE) "
+      + "OR s.credits_earned <> (SELECT COALESCE(SUM(t.amount), 0) FROM credit_transactions t "
+      + "WHERE t.user_id = s.user_id AND t.amount > 0 AND t.transaction_type <> 'PURCHASE_CREDITS'))",
+      nativeQuery = true)
+  int recount(@Param("ids") List<Long> ids);
+}
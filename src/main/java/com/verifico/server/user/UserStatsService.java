@@ -0,0 +1,51 @@
+package com.verifico.server.user;
+
+import org.springframework.stereotype.Service;
+
+import lombok.RequiredArgsConstructor;
+
+// +n/-n on a user's profile counters. Every change is a single UPDATE with
+// col = col + n, so concurrent posts/comments/awards for the same user never
+// overwrite each other and nothing is read first. Called inside the caller's
+// transaction so a rolled back post/comment doesn't leave its count behind.
+@Service
+@RequiredArgsConstructor
+public class UserStatsService {
+
+  private final UserStatsRepository userStatsRepository;
+
+  public void postsChanged(Long userId, long delta) {
+    increment(userId, delta, 0, 0, 0);
+  }
+
+  public void commentsChanged(Long userId, long comments, long helpful) {
+    increment(userId, 0, comments, helpful, 0);
+  }
+
+  public void commentMarkedHelpful(Long userId) {
+    increment(userId, 0, 0, 1, 0);
+  }
+
+  public void creditsEarned(Long userId, long amount) {
+    increment(userId, 0, 0, 0, amount);
+  }
+
+  // zeros for users that haven't done anything yet
+  public UserStats getStats(Long userId) {
+    return userStatsRepository.findById(userId).orElseGet(() -> {
+      UserStats empty = new UserStats();
+      empty.setUserId(userId);
+      return empty;
+    });
+  }
+
+  private void increment(Long userId, long posts, long comments, long helpful, long credits) {
+    if (userStatsRepository.increment(userId, posts, comments, helpful, credits) > 0) {
+      return;
+    }
+
+    // first counter for this user
+    userStatsRepository.insertIfMissing(userId);
+    userStatsRepository.increment(userId, posts, comments, helpful, credits);
+  }
+}
@@ -0,0 +1,7 @@
+package com.verifico.server.user.dto;
+
+// null when that field wasn't asked about
+public record AvailabilityResponse(
+    Boolean usernameAvailable,
+    Boolean emailAvailable) {
+}
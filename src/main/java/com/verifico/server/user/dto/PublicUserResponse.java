@@ -8,5 +8,9 @@ public record PublicUserResponse(
     String LastName,
     String bio,
     String avatarUrl,
-    LocalDate joinedDate) {
+    LocalDate joinedDate,
+    long totalPosts,
+    long totalComments,
+    long helpfulComments,
+    long creditsEarned) {
 }
@@ -0,0 +1,120 @@
+package com.verifico.server.auth.unit;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.verifico.server.auth.ratelimit.AuthRateLimiter;
+
+@ExtendWith(MockitoExtension.class)
+class AuthRateLimiterTest {
+
+  @Mock
+  StringRedisTemplate redisTemplate;
+
+  @Mock
+  ValueOperations<String, String> valueOperations;
+
+  AuthRateLimiter rateLimiter;
+
+  @BeforeEach
+  void setup() {
+    // 3 logins per ip, 2 per account, 2 resets per ip, 1 per account, 2
+    // availability checks per ip
+    rateLimiter = new AuthRateLimiter(redisTemplate, 60, 3, 2, 2, 1, 2);
+  }
+
+  @Test
+  void loginsOverAccountLimitAreRejectedWithoutTouchingRedis() {
+    rateLimiter.checkLogin("10.0.0.1", "JohnDoe123");
+    rateLimiter.checkLogin("10.0.0.2", "johndoe123");
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> rateLimiter.checkLogin("10.0.0.3", "JohnDoe123"));
+
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, ex.getStatusCode());
+    verifyNoInteractions(redisTemplate);
+  }
+
+  @Test
+  void loginsOverIpLimitAreRejected() {
+    rateLimiter.checkLogin("10.0.0.1", "first");
+    rateLimiter.checkLogin("10.0.0.1", "second");
+    rateLimiter.checkLogin("10.0.0.1", "third");
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> rateLimiter.checkLogin("10.0.0.1", "fourth"));
+
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, ex.getStatusCode());
+    // other clients aren't affected
+    assertDoesNotThrow(() -> rateLimiter.checkLogin("10.0.0.2", "fourth"));
+  }
+
+  @Test
+  void passwordResetsAreLimitedPerEmail() {
+    rateLimiter.checkPasswordReset("10.0.0.1", "john@verifiko.com");
+
+    assertThrows(ResponseStatusException.class,
+        () -> rateLimiter.checkPasswordReset("10.0.0.9", " JOHN@verifiko.com"));
+  }
+
+  @Test
+  void availabilityChecksAreLimitedPerIp() {
+    rateLimiter.checkAvailability("10.0.0.1");
+    rateLimiter.checkAvailability("10.0.0.1");
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> rateLimiter.checkAvailability("10.0.0.1"));
+
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, ex.getStatusCode());
+    assertDoesNotThrow(() -> rateLimiter.checkAvailability("10.0.0.2"));
+    // separate budget from logins
+    assertDoesNotThrow(() -> rateLimiter.checkLogin("10.0.0.1", "JohnDoe123"));
+  }
+
+  // another replica already used up this account's budget, after a sync we
+  // should reject locally even though we only saw one attempt ourselves
+  @Test
+  void hitsFromOtherReplicasCountAfterSync() {
+    when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    when(valueOperations.increment(startsWith("rate_limit:login:ip:"), anyLong())).thenReturn(1L);
+    when(valueOperations.increment(startsWith("rate_limit:login:account:"), anyLong())).thenReturn(2L);
+
+    rateLimiter.checkLogin("10.0.0.1", "JohnDoe123");
+    rateLimiter.syncWithRedis();
+
+    assertThrows(ResponseStatusException.class, () -> rateLimiter.checkLogin("10.0.0.1", "JohnDoe123"));
+  }
+
+  @Test
+  void redisFailureFallsBackToLocalLimits() {
+    when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    when(valueOperations.increment(anyString(), anyLong()))
+        .thenThrow(new RedisConnectionFailureException("redis down"));
+
+    rateLimiter.checkLogin("10.0.0.1", "JohnDoe123");
+    assertDoesNotThrow(() -> rateLimiter.syncWithRedis());
+
+    assertDoesNotThrow(() -> rateLimiter.checkLogin("10.0.0.1", "JohnDoe123"));
+    assertThrows(ResponseStatusException.class, () -> rateLimiter.checkLogin("10.0.0.1", "JohnDoe123"));
+    verify(valueOperations, atLeastOnce()).increment(anyString(), anyLong());
+  }
+}
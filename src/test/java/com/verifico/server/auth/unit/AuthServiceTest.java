@@ -8,6 +8,7 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.List;
 import java.util.Optional;
 
 import org.junit.jupiter.api.Test;
@@ -16,7 +17,6 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.web.server.ResponseStatusException;
 
 import com.verifico.server.auth.AuthService;
@@ -26,7 +26,10 @@ import com.verifico.server.auth.jwt.JWTService;
 import com.verifico.server.auth.token.RefreshToken;
 import com.verifico.server.auth.token.RefreshTokenService;
 import com.verifico.server.email.EmailService;
+import com.verifico.server.security.PasswordHashingService;
 import com.verifico.server.user.User;
+import com.verifico.server.user.UserAvailabilityService;
+import com.verifico.server.user.UserIdentityView;
 import com.verifico.server.user.UserRepository;
 import com.verifico.server.user.dto.UserResponse;
 
@@ -37,13 +40,15 @@ class AuthServiceTest {
   @Mock
   UserRepository userRepository;
   @Mock
-  BCryptPasswordEncoder passwordEncoder;
+  PasswordHashingService passwordHashingService;
   @Mock
   JWTService jwtService;
   @Mock
   RefreshTokenService refreshTokenService;
   @Mock
   EmailService emailService;
+  @Mock
+  UserAvailabilityService userAvailabilityService;
 
   @InjectMocks
   AuthService authService;
@@ -60,13 +65,29 @@ class AuthServiceTest {
     return registerRequest;
   }
 
+  private UserIdentityView identity(Long id, String username, String email) {
+    return new UserIdentityView() {
+      public Long getId() {
+        return id;
+      }
+
+      public String getUsername() {
+        return username;
+      }
+
+      public String getEmail() {
+        return email;
+      }
+    };
+  }
+
   @Test
   void registerHappyPath() {
     RegisterRequest registerRequest = validRegisterRequest();
 
-    when(userRepository.findByUsername(registerRequest.getUsername())).thenReturn(Optional.empty());
-    when(userRepository.findByEmail(registerRequest.getEmail())).thenReturn(Optional.empty());
-    when(passwordEncoder.encode(registerRequest.getPassword())).thenReturn("hashedPass");
+    when(userAvailabilityService.mightBeTaken(registerRequest.getUsername(), registerRequest.getEmail()))
+        .thenReturn(false);
+    when(passwordHashingService.encode(registerRequest.getPassword())).thenReturn("hashedPass");
 
     User savedUser = new User();
     savedUser.setId(1L);
@@ -88,6 +109,10 @@ class AuthServiceTest {
     assertEquals("JohnDoe123", response.username());
     assertEquals("johndoe2@gmail.com", response.email());
 
+    // bloom filter said free, so no uniqueness query at all
+    verify(userRepository, never()).findIdentitiesByUsernameOrEmail(any(), any());
+    verify(userAvailabilityService).recordTaken("JohnDoe123", "johndoe2@gmail.com");
+
     verify(userRepository).save(any(User.class)); // verification line, we're asserting “Yes, the service actually
                                                   // attempted to persist the user.” If this line isn't called then
                                                   // save() probably wasn't called and we have validation failed,
@@ -99,8 +124,10 @@ class AuthServiceTest {
   void duplicateEmail() {
     RegisterRequest registerRequest = validRegisterRequest();
 
-    when(userRepository.findByUsername(registerRequest.getUsername())).thenReturn(Optional.empty());
-    when(userRepository.findByEmail(registerRequest.getEmail())).thenReturn(Optional.of(new User()));
+    when(userAvailabilityService.mightBeTaken(registerRequest.getUsername(), registerRequest.getEmail()))
+        .thenReturn(true);
+    when(userRepository.findIdentitiesByUsernameOrEmail(registerRequest.getUsername(), registerRequest.getEmail()))
+        .thenReturn(List.of(identity(7L, "SomebodyElse", "johndoe2@gmail.com")));
 
     ResponseStatusException exception = assertThrows(ResponseStatusException.class,
         () -> authService.register(registerRequest));
@@ -116,7 +143,12 @@ class AuthServiceTest {
   void duplicateUsername() {
     RegisterRequest registerRequest = validRegisterRequest();
 
-    when(userRepository.findByUsername(registerRequest.getUsername())).thenReturn(Optional.of(new User()));
+    when(userAvailabilityService.mightBeTaken(registerRequest.getUsername(), registerRequest.getEmail()))
+        .thenReturn(true);
+    // both columns clash, username is reported first
+    when(userRepository.findIdentitiesByUsernameOrEmail(registerRequest.getUsername(), registerRequest.getEmail()))
+        .thenReturn(List.of(identity(7L, "SomebodyElse", "johndoe2@gmail.com"),
+            identity(8L, "JohnDoe123", "other@gmail.com")));
 
     ResponseStatusException exception = assertThrows(ResponseStatusException.class,
         () -> authService.register(registerRequest));
@@ -125,13 +157,31 @@ class AuthServiceTest {
     assertEquals("Username already in use", exception.getReason());
   }
 
+  // bloom filter false positive: the db says it's actually free so we go ahead
+  @Test
+  void registerFalsePositiveFallsThroughToDb() {
+    RegisterRequest registerRequest = validRegisterRequest();
+
+    when(userAvailabilityService.mightBeTaken(registerRequest.getUsername(), registerRequest.getEmail()))
+        .thenReturn(true);
+    when(userRepository.findIdentitiesByUsernameOrEmail(registerRequest.getUsername(), registerRequest.getEmail()))
+        .thenReturn(List.of());
+    when(passwordHashingService.encode(registerRequest.getPassword())).thenReturn("hashedPass");
+    when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+    UserResponse response = authService.register(registerRequest);
+
+    assertEquals("JohnDoe123", response.username());
+    verify(userRepository).save(any(User.class));
+  }
+
   @Test
   void checkForPassHashing() {
     RegisterRequest registerRequest = validRegisterRequest();
 
-    when(userRepository.findByUsername(registerRequest.getUsername())).thenReturn(Optional.empty());
-    when(userRepository.findByEmail(registerRequest.getEmail())).thenReturn(Optional.empty());
-    when(passwordEncoder.encode(registerRequest.getPassword())).thenReturn("hashedPass");
+    when(userAvailabilityService.mightBeTaken(registerRequest.getUsername(), registerRequest.getEmail()))
+        .thenReturn(false);
+    when(passwordHashingService.encode(registerRequest.getPassword())).thenReturn("hashedPass");
 
     User savedUser = new User();
     savedUser.setId(1L);
@@ -147,7 +197,7 @@ class AuthServiceTest {
 
     authService.register(registerRequest);
 
-    verify(passwordEncoder).encode("password123");
+    verify(passwordHashingService).encode("password123");
   }
 
   // tests for login endpoint: (check missing input, happy path, check invalid
@@ -224,7 +274,7 @@ class AuthServiceTest {
     LoginRequest req = loginWithUsername("JohnDoe123", "wronggggpassword");
 
     when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
-    when(passwordEncoder.matches("wronggggpassword", "hashedPass")).thenReturn(false);
+    when(passwordHashingService.matches("wronggggpassword", "hashedPass")).thenReturn(false);
 
     ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> authService.login(req));
 
@@ -238,7 +288,7 @@ class AuthServiceTest {
     LoginRequest req = loginWithUsername("JohnDoe123", "password123");
 
     when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
-    when(passwordEncoder.matches("password123", "hashedPass")).thenReturn(true);
+    when(passwordHashingService.matches("password123", "hashedPass")).thenReturn(true);
     when(jwtService.generateAccessToken(1L, "JohnDoe123")).thenReturn("access-token");
 
     RefreshToken refreshToken = new RefreshToken();
@@ -253,7 +303,7 @@ class AuthServiceTest {
     assertEquals("access-token", response.getAccessToken());
     assertEquals("refresh-token", response.getRefreshToken());
 
-    verify(passwordEncoder).matches("password123", "hashedPass");
+    verify(passwordHashingService).matches("password123", "hashedPass");
     verify(jwtService).generateAccessToken(1L, "JohnDoe123");
     verify(refreshTokenService).createToken(user);
   }
@@ -264,7 +314,7 @@ class AuthServiceTest {
     LoginRequest req = loginWithEmail("johndoe2@gmail.com", "password123");
 
     when(userRepository.findByEmail("johndoe2@gmail.com")).thenReturn(Optional.of(user));
-    when(passwordEncoder.matches("password123", "hashedPass")).thenReturn(true);
+    when(passwordHashingService.matches("password123", "hashedPass")).thenReturn(true);
     when(jwtService.generateAccessToken(1L, "JohnDoe123")).thenReturn("access-token");
 
     RefreshToken refreshToken = new RefreshToken();
@@ -279,8 +329,48 @@ class AuthServiceTest {
     assertEquals("access-token", response.getAccessToken());
     assertEquals("refresh-token", response.getRefreshToken());
 
-    verify(passwordEncoder).matches("password123", "hashedPass");
+    verify(passwordHashingService).matches("password123", "hashedPass");
     verify(jwtService).generateAccessToken(1L, "JohnDoe123");
     verify(refreshTokenService).createToken(user);
   }
+
+  // stored hash was made with an older/lower bcrypt cost, login should re-hash
+  // and save it transparently
+  @Test
+  void loginUpgradesOutdatedPasswordHash() {
+    User user = mockUser();
+    LoginRequest req = loginWithUsername("JohnDoe123", "password123");
+
+    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(passwordHashingService.matches("password123", "hashedPass")).thenReturn(true);
+    when(passwordHashingService.needsUpgrade("hashedPass")).thenReturn(true);
+    when(passwordHashingService.encode("password123")).thenReturn("strongerHashedPass");
+
+    RefreshToken refreshToken = new RefreshToken();
+    refreshToken.setToken("refresh-token");
+    when(refreshTokenService.createToken(user)).thenReturn(refreshToken);
+
+    authService.login(req);
+
+    assertEquals("strongerHashedPass", user.getPassword());
+    verify(userRepository).save(user);
+  }
+
+  @Test
+  void loginDoesNotRehashUpToDatePasswordHash() {
+    User user = mockUser();
+    LoginRequest req = loginWithUsername("JohnDoe123", "password123");
+
+    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(passwordHashingService.matches("password123", "hashedPass")).thenReturn(true);
+
+    RefreshToken refreshToken = new RefreshToken();
+    refreshToken.setToken("refresh-token");
+    when(refreshTokenService.createToken(user)).thenReturn(refreshToken);
+
+    authService.login(req);
+
+    verify(passwordHashingService, never()).encode(any());
+    verify(userRepository, never()).save(any());
+  }
 }
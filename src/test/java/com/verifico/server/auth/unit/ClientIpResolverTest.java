@@ -0,0 +1,84 @@
+package com.verifico.server.auth.unit;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.verifico.server.auth.ratelimit.AuthRateLimiter;
+import com.verifico.server.auth.ratelimit.ClientIpResolver;
+
+@ExtendWith(MockitoExtension.class)
+class ClientIpResolverTest {
+
+  @Mock
+  StringRedisTemplate redisTemplate;
+
+  ClientIpResolver behindProxy = new ClientIpResolver("10.0.0.0/8, 192.168.0.0/16");
+
+  private MockHttpServletRequest request(String remoteAddress, String forwardedFor) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setRemoteAddr(remoteAddress);
+    if (forwardedFor != null) {
+      request.addHeader("X-Forwarded-For", forwardedFor);
+    }
+    return request;
+  }
+
+  // no proxies configured, the header is whatever the client made up
+  @Test
+  void headerIsIgnoredWithoutTrustedProxies() {
+    ClientIpResolver resolver = new ClientIpResolver("");
+
+    assertEquals("203.0.113.7", resolver.resolve(request("203.0.113.7", "1.2.3.4")));
+  }
+
+  @Test
+  void clientIsTakenFromHeaderBehindTrustedProxy() {
+    assertEquals("203.0.113.7", behindProxy.resolve(request("10.1.2.3", "203.0.113.7")));
+    assertEquals("10.1.2.3", behindProxy.resolve(request("10.1.2.3", null)));
+  }
+
+  // the client can prepend anything, we stop at the first address our own
+  // proxies didn't add
+  @Test
+  void spoofedEntriesLeftOfTheRealClientAreIgnored() {
+    assertEquals("203.0.113.7",
+        behindProxy.resolve(request("10.1.2.3", "1.2.3.4, 203.0.113.7, 192.168.0.5")));
+  }
+
+  @Test
+  void headerFromUntrustedAddressIsIgnored() {
+    assertEquals("198.51.100.20", behindProxy.resolve(request("198.51.100.20", "1.2.3.4")));
+  }
+
+  @Test
+  void unreadableEntriesStopTheWalk() {
+    assertEquals("10.1.2.3", behindProxy.resolve(request("10.1.2.3", "unknown")));
+    assertEquals("203.0.113.7", behindProxy.resolve(request("10.1.2.3", "evil.example.com, 203.0.113.7")));
+  }
+
+  // every request arrives from the same load balancer address, one noisy
+  // client must not lock the others out
+  @Test
+  void proxiedClientsGetTheirOwnLoginBudget() {
+    AuthRateLimiter rateLimiter = new AuthRateLimiter(redisTemplate, 60, 3, 100, 2, 100, 100);
+    MockHttpServletRequest noisy = request("10.0.0.1", "203.0.113.7");
+    MockHttpServletRequest someoneElse = request("10.0.0.1", "198.51.100.20");
+
+    for (int i = 0; i < 3; i++) {
+      rateLimiter.checkLogin(behindProxy.resolve(noisy), "account" + i);
+    }
+
+    assertThrows(ResponseStatusException.class,
+        () -> rateLimiter.checkLogin(behindProxy.resolve(noisy), "another"));
+    assertDoesNotThrow(() -> rateLimiter.checkLogin(behindProxy.resolve(someoneElse), "another"));
+  }
+}
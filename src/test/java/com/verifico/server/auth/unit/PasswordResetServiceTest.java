@@ -21,7 +21,6 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.server.ResponseStatusException;
 
 import com.verifico.server.auth.dto.ResetPasswordRequest;
@@ -29,6 +28,7 @@ import com.verifico.server.auth.reset.PasswordResetService;
 import com.verifico.server.auth.reset.ResetToken;
 import com.verifico.server.auth.reset.ResetTokenRepository;
 import com.verifico.server.email.EmailService;
+import com.verifico.server.security.PasswordHashingService;
 import com.verifico.server.user.User;
 import com.verifico.server.user.UserRepository;
 
@@ -42,7 +42,7 @@ class PasswordResetServiceTest {
   ResetTokenRepository resetTokenRepository;
 
   @Mock
-  PasswordEncoder passwordEncoder;
+  PasswordHashingService passwordHashingService;
 
   @Mock
   EmailService emailService;
@@ -183,7 +183,7 @@ class PasswordResetServiceTest {
   @Test
   void resetPassword_validToken_updatesPasswordAndDeletesToken() {
     when(resetTokenRepository.findByToken("valid-token-abc123")).thenReturn(Optional.of(validToken));
-    when(passwordEncoder.encode("NewPassword1!")).thenReturn("hashed_new_password");
+    when(passwordHashingService.encode("NewPassword1!")).thenReturn("hashed_new_password");
 
     ResetPasswordRequest request = new ResetPasswordRequest();
     request.setToken("valid-token-abc123");
@@ -198,7 +198,7 @@ class PasswordResetServiceTest {
   @Test
   void resetPassword_validToken_sendsPasswordChangedEmail() {
     when(resetTokenRepository.findByToken("valid-token-abc123")).thenReturn(Optional.of(validToken));
-    when(passwordEncoder.encode(anyString())).thenReturn("hashed_new_password");
+    when(passwordHashingService.encode(anyString())).thenReturn("hashed_new_password");
 
     ResetPasswordRequest request = new ResetPasswordRequest();
     request.setToken("valid-token-abc123");
@@ -0,0 +1,72 @@
+package com.verifico.server.auth.unit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.verifico.server.auth.token.RefreshTokenCleanup;
+import com.verifico.server.auth.token.RefreshTokenRepository;
+import com.verifico.server.auth.token.RefreshTokenService;
+import com.verifico.server.user.User;
+
+@ExtendWith(MockitoExtension.class)
+class RefreshTokenCleanupTest {
+
+  @Mock
+  RefreshTokenRepository refreshTokenRepository;
+
+  @InjectMocks
+  RefreshTokenCleanup refreshTokenCleanup;
+
+  @BeforeEach
+  void setup() {
+    ReflectionTestUtils.setField(refreshTokenCleanup, "batchSize", 100);
+    ReflectionTestUtils.setField(refreshTokenCleanup, "maxBatches", 5);
+  }
+
+  // keeps deleting full batches until a partial batch comes back
+  @Test
+  void purgeStopsAfterPartialBatch() {
+    when(refreshTokenRepository.deleteExpiredOrRevokedBatch(any(Instant.class), eq(100)))
+        .thenReturn(100, 100, 42);
+
+    refreshTokenCleanup.purgeExpiredAndRevokedTokens();
+
+    verify(refreshTokenRepository, times(3)).deleteExpiredOrRevokedBatch(any(Instant.class), eq(100));
+  }
+
+  // never runs more than maxBatches statements in a single run
+  @Test
+  void purgeIsCappedAtMaxBatches() {
+    when(refreshTokenRepository.deleteExpiredOrRevokedBatch(any(Instant.class), eq(100))).thenReturn(100);
+
+    refreshTokenCleanup.purgeExpiredAndRevokedTokens();
+
+    verify(refreshTokenRepository, times(5)).deleteExpiredOrRevokedBatch(any(Instant.class), eq(100));
+  }
+
+  @Test
+  void revokeAllForUserIsSingleBulkUpdate() {
+    RefreshTokenService refreshTokenService = new RefreshTokenService(refreshTokenRepository);
+    User user = new User();
+    user.setId(1L);
+    user.setUsername("JohnDoe123");
+
+    refreshTokenService.revokeAllForUser(user);
+
+    verify(refreshTokenRepository).revokeAllByUserId(1L);
+    verify(refreshTokenRepository, times(0)).findByUser_Username(any());
+  }
+}
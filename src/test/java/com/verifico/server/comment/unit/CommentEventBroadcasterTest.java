@@ -0,0 +1,229 @@
+package com.verifico.server.comment.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.verifico.server.comment.dto.CommentResponse;
+import com.verifico.server.comment.stream.CommentEvent;
+import com.verifico.server.comment.stream.CommentEventBroadcaster;
+import com.verifico.server.comment.stream.CommentEventBroadcaster.Subscriber;
+import com.verifico.server.comment.stream.CommentEventSink;
+import com.verifico.server.comment.stream.CommentEventType;
+import com.verifico.server.user.dto.AuthorResponse;
+
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+@ExtendWith(MockitoExtension.class)
+class CommentEventBroadcasterTest {
+
+  @Mock
+  StringRedisTemplate redisTemplate;
+
+  ObjectMapper objectMapper = JsonMapper.builder().build();
+
+  CommentEventBroadcaster broadcaster;
+
+  @BeforeEach
+  void setup() {
+    // 2 drain threads, 4 queued events per client, 3 clients max
+    broadcaster = new CommentEventBroadcaster(redisTemplate, objectMapper, 2, 4, 3, 60_000);
+  }
+
+  @AfterEach
+  void tearDown() {
+    broadcaster.shutdown();
+  }
+
+  private CommentEvent createdEvent(Long postId, Long commentId) {
+    CommentResponse comment = new CommentResponse(commentId, "Nice launch!",
+        new AuthorResponse(1L, "JohnDoe123", "John", "Doe", null), postId, Instant.now(), null, 0);
+    return new CommentEvent(CommentEventType.COMMENT_CREATED, postId, commentId, comment);
+  }
+
+  // events go out through redis after commit
+  @Test
+  void eventIsPublishedToRedis() {
+    broadcaster.onCommentEvent(createdEvent(1L, 7L));
+
+    ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+    verify(redisTemplate).convertAndSend(eq(CommentEventBroadcaster.CHANNEL), message.capture());
+    assertTrue(message.getValue().startsWith("1\ncomment-created\n{"));
+  }
+
+  // whatever comes back from redis only goes to clients watching that post
+  @Test
+  void redisMessageIsFannedOutToSubscribersOfThatPostOnly() throws Exception {
+    RecordingSink first = new RecordingSink(1);
+    RecordingSink second = new RecordingSink(1);
+    RecordingSink otherPost = new RecordingSink(1);
+    broadcaster.register(1L, first);
+    broadcaster.register(1L, second);
+    broadcaster.register(2L, otherPost);
+
+    broadcaster.onRedisMessage(message("1\ncomment-deleted\n{\"commentId\":7}"), null);
+
+    assertTrue(first.await());
+    assertTrue(second.await());
+    assertEquals(List.of("comment-deleted:{\"commentId\":7}"), first.received);
+    assertEquals(List.of("comment-deleted:{\"commentId\":7}"), second.received);
+    assertTrue(otherPost.received.isEmpty());
+  }
+
+  // clients on this replica still get the event while redis is down
+  @Test
+  void redisFailureFallsBackToLocalDelivery() throws Exception {
+    when(redisTemplate.convertAndSend(anyString(), anyString()))
+        .thenThrow(new RedisConnectionFailureException("redis down"));
+    RecordingSink sink = new RecordingSink(1);
+    broadcaster.register(1L, sink);
+
+    broadcaster.onCommentEvent(createdEvent(1L, 7L));
+
+    assertTrue(sink.await());
+    assertTrue(sink.received.get(0).startsWith("comment-created:{"));
+  }
+
+  // a client that stops reading gets dropped once its queue is full instead of
+  // holding up everyone else
+  @Test
+  void slowClientIsDisconnectedWithoutBlockingOthers() throws Exception {
+    BlockedSink slow = new BlockedSink();
+    RecordingSink fast = new RecordingSink(10);
+    Subscriber slowSubscriber = broadcaster.register(1L, slow);
+    broadcaster.register(1L, fast);
+
+    // the fast client keeps up with every event, the slow one is still stuck on
+    // the first
+    for (int i = 0; i < 10; i++) {
+      broadcaster.onRedisMessage(message("1\ncomment-created\n{\"id\":" + i + "}"), null);
+      assertTrue(fast.awaitCount(i + 1));
+    }
+
+    assertTrue(fast.await());
+    assertTrue(slowSubscriber.isClosed());
+    assertTrue(slow.closed.await(5, TimeUnit.SECONDS));
+    assertEquals(1, broadcaster.getSubscriberCount());
+    slow.release.countDown();
+  }
+
+  @Test
+  void connectionsOverTheLimitAreRejected() {
+    for (int i = 0; i < 3; i++) {
+      broadcaster.register(1L, new RecordingSink(0));
+    }
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> broadcaster.register(2L, new RecordingSink(0)));
+
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ex.getStatusCode());
+    assertEquals(3, broadcaster.getSubscriberCount());
+  }
+
+  @Test
+  void heartbeatsReachIdleClients() throws Exception {
+    RecordingSink sink = new RecordingSink(1);
+    Subscriber subscriber = broadcaster.register(1L, sink);
+
+    broadcaster.sendHeartbeats();
+
+    assertTrue(sink.await());
+    assertEquals(List.of("heartbeat"), sink.received);
+    assertFalse(subscriber.isClosed());
+  }
+
+  private DefaultMessage message(String body) {
+    return new DefaultMessage(CommentEventBroadcaster.CHANNEL.getBytes(StandardCharsets.UTF_8),
+        body.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static class RecordingSink implements CommentEventSink {
+    final List<String> received = new CopyOnWriteArrayList<>();
+    final CountDownLatch latch;
+
+    RecordingSink(int expected) {
+      this.latch = new CountDownLatch(expected);
+    }
+
+    boolean await() throws InterruptedException {
+      return latch.await(5, TimeUnit.SECONDS);
+    }
+
+    boolean awaitCount(int count) throws InterruptedException {
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (received.size() < count) {
+        if (System.nanoTime() > deadline) {
+          return false;
+        }
+        Thread.sleep(1);
+      }
+      return true;
+    }
+
+    @Override
+    public void send(String eventName, String json) {
+      received.add(eventName + ":" + json);
+      latch.countDown();
+    }
+
+    @Override
+    public void sendHeartbeat() {
+      received.add("heartbeat");
+      latch.countDown();
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  // stuck on its first write, like a client on a dead connection
+  private static class BlockedSink implements CommentEventSink {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch closed = new CountDownLatch(1);
+
+    @Override
+    public void send(String eventName, String json) {
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public void sendHeartbeat() {
+    }
+
+    @Override
+    public void close() {
+      closed.countDown();
+    }
+  }
+}
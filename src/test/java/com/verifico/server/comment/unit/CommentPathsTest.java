@@ -0,0 +1,62 @@
+package com.verifico.server.comment.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.verifico.server.comment.CommentPaths;
+
+class CommentPathsTest {
+
+  @Test
+  void segmentsAreFixedWidth() {
+    assertEquals("000000000042", CommentPaths.segment(42));
+    assertEquals("000000000007000000000042", CommentPaths.childPath(CommentPaths.segment(7), 42));
+  }
+
+  // upper bound covers the whole subtree and nothing else, even when ids roll
+  // over into more digits
+  @Test
+  void subtreeRangeHoldsOnlyDescendants() {
+    String root = CommentPaths.segment(9);
+    String child = CommentPaths.childPath(root, 10);
+    String grandchild = CommentPaths.childPath(child, 999);
+    String nextRoot = CommentPaths.segment(10);
+    String end = CommentPaths.upperBound(root);
+
+    for (String path : List.of(root, child, grandchild)) {
+      assertTrue(path.compareTo(root) >= 0 && path.compareTo(end) < 0, path);
+    }
+    assertFalse(nextRoot.compareTo(end) < 0);
+    assertFalse(CommentPaths.segment(8).compareTo(root) >= 0);
+  }
+
+  // sorting by path gives parents before replies, replies in id order
+  @Test
+  void pathOrderIsDepthFirst() {
+    String a = CommentPaths.segment(1);
+    String aReply = CommentPaths.childPath(a, 5);
+    String aReplyReply = CommentPaths.childPath(aReply, 6);
+    String aSecondReply = CommentPaths.childPath(a, 7);
+    List<String> paths = new ArrayList<>(List.of(aSecondReply, aReplyReply, a, aReply));
+
+    paths.sort(null);
+
+    assertEquals(List.of(a, aReply, aReplyReply, aSecondReply), paths);
+    assertTrue(CommentPaths.after(aReply).compareTo(aReplyReply) <= 0);
+    assertTrue(CommentPaths.after(aReply).compareTo(aReply) > 0);
+  }
+
+  @Test
+  void onlyWholeDigitSegmentsAreValid() {
+    assertTrue(CommentPaths.isValid(CommentPaths.segment(3)));
+    assertFalse(CommentPaths.isValid("12345"));
+    assertFalse(CommentPaths.isValid("00000000000a"));
+    assertFalse(CommentPaths.isValid(null));
+  }
+}
@@ -2,45 +2,71 @@ package com.verifico.server.comment.unit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Random;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.server.ResponseStatusException;
 
+import com.verifico.server.auth.jwt.AuthenticatedUser;
 import com.verifico.server.comment.Comment;
+import com.verifico.server.comment.CommentAuthorCount;
+import com.verifico.server.comment.CommentCursor;
+import com.verifico.server.comment.CommentPaths;
 import com.verifico.server.comment.CommentRepository;
+import com.verifico.server.comment.CommentRow;
 import com.verifico.server.comment.CommentService;
+import com.verifico.server.comment.CommentSpamGuard;
+import com.verifico.server.comment.HelpfulCommentView;
+import com.verifico.server.comment.dto.CommentPageResponse;
 import com.verifico.server.comment.dto.CommentRequest;
 import com.verifico.server.comment.dto.CommentResponse;
+import com.verifico.server.comment.dto.CommentThreadNode;
+import com.verifico.server.comment.dto.CommentThreadResponse;
+import com.verifico.server.comment.stream.CommentEvent;
+import com.verifico.server.comment.stream.CommentEventBroadcaster;
+import com.verifico.server.comment.stream.CommentEventType;
+import com.verifico.server.credit.CreditService;
+import com.verifico.server.credit.TransactionType;
 import com.verifico.server.post.Category;
 import com.verifico.server.post.Post;
 import com.verifico.server.post.PostRepository;
 import com.verifico.server.post.Stage;
 import com.verifico.server.user.User;
 import com.verifico.server.user.UserRepository;
+import com.verifico.server.user.UserStatsService;
 
 @ExtendWith(MockitoExtension.class)
 public class CommentServiceTest {
@@ -53,6 +79,21 @@ public class CommentServiceTest {
   @Mock
   PostRepository postRepository;
 
+  @Mock
+  CreditService creditService;
+
+  @Mock
+  CommentSpamGuard commentSpamGuard;
+
+  @Mock
+  UserStatsService userStatsService;
+
+  @Mock
+  ApplicationEventPublisher eventPublisher;
+
+  @Mock
+  CommentEventBroadcaster commentEventBroadcaster;
+
   @Mock
   SecurityContext securityContext;
 
@@ -114,51 +155,74 @@ public class CommentServiceTest {
     return comment;
   }
 
-  // create comment (authenticated user JWT but not in db,post id not found,
-  // comment successfully made)
+  // create comment (not logged in, post id not found, comment successfully
+  // made)
   @Test
-  void userNotLoggedInDBTryingToComment() {
-    when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
-
-    Post post = mockPost();
-
-    when(postRepository.findById(1L)).thenReturn(Optional.of(post));
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.empty());
+  void userNotLoggedInTryingToComment() {
+    when(securityContext.getAuthentication()).thenReturn(null);
 
     ResponseStatusException ex = assertThrows(ResponseStatusException.class,
         () -> commentService.postComment(validCommentRequest(), 1L));
 
-    assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, ex.getStatusCode());
-    assertEquals("User data inconsistency detected", ex.getReason());
+    assertEquals(HttpStatus.UNAUTHORIZED, ex.getStatusCode());
+    assertEquals("Authenticated user not found!", ex.getReason());
+
+    verify(commentRepository, never()).save(any());
   }
 
   @Test
   void postIdNotFoundWhenAddingComment() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
-    when(postRepository.findById(4L)).thenReturn(Optional.empty());
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
+    when(postRepository.incrementCommentCount(4L)).thenReturn(0);
+    CommentRequest request = validCommentRequest();
 
-    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
-        () -> commentService.postComment(validCommentRequest(), 4L));
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+          () -> commentService.postComment(request, 4L));
+
+      assertEquals(HttpStatus.NOT_FOUND, ex.getStatusCode());
+      assertEquals("Post not found", ex.getReason());
+      verify(commentRepository, never()).save(any());
+
+      // a comment that never existed mustn't count as already posted
+      TransactionSynchronizationManager.getSynchronizations()
+          .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+      verify(commentSpamGuard).release(1L, 4L, request.getContent());
+    } finally {
+      TransactionSynchronizationManager.clear();
+    }
+  }
 
-    assertEquals(HttpStatus.NOT_FOUND, ex.getStatusCode());
-    assertEquals("Post not found", ex.getReason());
+  // spam is turned away before anything touches the db
+  @Test
+  void duplicateCommentIsRejectedBeforeAnyWrite() {
+    when(securityContext.getAuthentication()).thenReturn(authentication);
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
+    CommentRequest request = validCommentRequest();
+    doThrow(new ResponseStatusException(HttpStatus.CONFLICT, "You've already posted this comment"))
+        .when(commentSpamGuard).check(1L, 1L, request.getContent());
 
-    verify(commentRepository, never()).save(any());
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> commentService.postComment(request, 1L));
+
+    assertEquals(HttpStatus.CONFLICT, ex.getStatusCode());
+    verifyNoInteractions(postRepository, commentRepository, eventPublisher);
   }
 
   @Test
   void commentSuccessfullyMade() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     User user = mockUser();
     Post post = mockPost();
     CommentRequest request = validCommentRequest();
 
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
-    when(postRepository.findById(1L)).thenReturn(Optional.of(post));
+    when(userRepository.getReferenceById(1L)).thenReturn(user);
+    when(postRepository.incrementCommentCount(1L)).thenReturn(1);
+    when(postRepository.getReferenceById(1L)).thenReturn(post);
 
     Comment savedComment = mockComment(user, post, request.getContent());
     when(commentRepository.save(any(Comment.class))).thenReturn(savedComment);
@@ -172,21 +236,123 @@ public class CommentServiceTest {
     assertEquals(post.getId(), response.postId());
 
     verify(commentRepository).save(any(Comment.class));
+    verify(userRepository, never()).findByUsername(any());
+    verify(postRepository, never()).findById(any());
+    assertEquals(CommentPaths.segment(1L), savedComment.getPath());
+    assertNull(response.parentId());
+    verify(userStatsService).commentsChanged(1L, 1, 0);
+
+    ArgumentCaptor<CommentEvent> event = ArgumentCaptor.forClass(CommentEvent.class);
+    verify(eventPublisher).publishEvent(event.capture());
+    assertEquals(CommentEventType.COMMENT_CREATED, event.getValue().type());
+    assertEquals(1L, event.getValue().postId());
+    assertEquals(response, event.getValue().comment());
+  }
+
+  // check reserved the fingerprint up front, a committed comment keeps it
+  @Test
+  void committedCommentKeepsItsSpamGuardReservation() {
+    when(securityContext.getAuthentication()).thenReturn(authentication);
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
+
+    User user = mockUser();
+    Post post = mockPost();
+    CommentRequest request = validCommentRequest();
+
+    when(userRepository.getReferenceById(1L)).thenReturn(user);
+    when(postRepository.incrementCommentCount(1L)).thenReturn(1);
+    when(postRepository.getReferenceById(1L)).thenReturn(post);
+    when(commentRepository.save(any(Comment.class))).thenReturn(mockComment(user, post, request.getContent()));
+
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      commentService.postComment(request, 1L);
+
+      verify(commentSpamGuard).check(1L, 1L, request.getContent());
+
+      TransactionSynchronizationManager.getSynchronizations()
+          .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+      verify(commentSpamGuard, never()).release(any(), any(), any());
+    } finally {
+      TransactionSynchronizationManager.clear();
+    }
+  }
+
+  // replies (parent not found, nested too deep, successfully replied)
+  @Test
+  void parentNotFoundWhenReplying() {
+    when(securityContext.getAuthentication()).thenReturn(authentication);
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
+    when(commentRepository.findById(9L)).thenReturn(Optional.empty());
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> commentService.replyToComment(validCommentRequest(), 9L));
+
+    assertEquals(HttpStatus.NOT_FOUND, ex.getStatusCode());
+    verify(commentRepository, never()).save(any());
+    verify(postRepository, never()).incrementCommentCount(any());
+  }
+
+  @Test
+  void replyNestedTooDeepIsRejected() {
+    when(securityContext.getAuthentication()).thenReturn(authentication);
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
+    Comment parent = mockComment(mockUser(), mockPost(), "deep");
+    parent.setDepth(CommentPaths.MAX_DEPTH);
+    when(commentRepository.findById(1L)).thenReturn(Optional.of(parent));
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> commentService.replyToComment(validCommentRequest(), 1L));
+
+    assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+    verify(commentRepository, never()).save(any());
+  }
+
+  @Test
+  void replySuccessfullyMade() {
+    when(securityContext.getAuthentication()).thenReturn(authentication);
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
+
+    User user = mockUser();
+    Post post = mockPost();
+    Comment parent = mockComment(user, post, "parent");
+    parent.setId(7L);
+    parent.setPath(CommentPaths.segment(7L));
+    when(commentRepository.findById(7L)).thenReturn(Optional.of(parent));
+    when(postRepository.incrementCommentCount(1L)).thenReturn(1);
+    when(userRepository.getReferenceById(1L)).thenReturn(user);
+    when(commentRepository.save(any(Comment.class))).thenAnswer(invocation -> {
+      Comment reply = invocation.getArgument(0);
+      reply.setId(42L);
+      reply.setCreatedAt(Instant.now());
+      return reply;
+    });
+
+    CommentResponse response = commentService.replyToComment(validCommentRequest(), 7L);
+
+    assertEquals(42L, response.id());
+    assertEquals(7L, response.parentId());
+    assertEquals(1, response.depth());
+    assertEquals(1L, response.postId());
+
+    ArgumentCaptor<Comment> captor = ArgumentCaptor.forClass(Comment.class);
+    verify(commentRepository).save(captor.capture());
+    assertEquals(CommentPaths.segment(7L) + CommentPaths.segment(42L), captor.getValue().getPath());
   }
 
   // get All comments for a posting (post id not found,successfully fetched all
   // comments)
   @Test
   void postIdNotFoundWhenFetchingAllComments() {
-    when(postRepository.findById(4L)).thenReturn(Optional.empty());
+    when(postRepository.findCommentCountById(4L)).thenReturn(Optional.empty());
 
     ResponseStatusException ex = assertThrows(ResponseStatusException.class,
-        () -> commentService.getAllCommentsForPost(4L, 0, 15));
+        () -> commentService.getAllCommentsForPost(4L, null, 15));
 
     assertEquals(HttpStatus.NOT_FOUND, ex.getStatusCode());
     assertEquals("Post not found", ex.getReason());
 
-    verify(commentRepository, never()).save(any());
+    verify(commentRepository, never()).findLatestByPostId(any(), any());
   }
 
   @Test
@@ -195,20 +361,17 @@ public class CommentServiceTest {
     User user = mockUser();
     Comment comment = mockComment(user, post, "w post");
 
-    when(postRepository.findById(1L)).thenReturn(Optional.of(post));
-
-    List<Comment> commentList = List.of(comment);
+    when(postRepository.findCommentCountById(1L)).thenReturn(Optional.of(1L));
+    when(commentRepository.findLatestByPostId(eq(1L), any(Pageable.class))).thenReturn(rows(List.of(comment)));
 
-    Page<Comment> commentPage = new PageImpl<>(commentList);
-
-    when(commentRepository.findAllByPostIdOrderByCreatedAtDesc(eq(1L), any(Pageable.class))).thenReturn(commentPage);
-
-    Page<CommentResponse> response = commentService.getAllCommentsForPost(1L, 0, 15);
+    CommentPageResponse response = commentService.getAllCommentsForPost(1L, null, 15);
 
     assertNotNull(response);
-    assertEquals(1, response.getContent().size());
+    assertEquals(1, response.comments().size());
+    assertEquals(1L, response.totalComments());
+    assertNull(response.nextCursor());
 
-    CommentResponse commentResponse = response.getContent().get(0);
+    CommentResponse commentResponse = response.comments().get(0);
 
     assertEquals(comment.getId(), commentResponse.id());
     assertEquals(comment.getContent(), commentResponse.content());
@@ -217,6 +380,49 @@ public class CommentServiceTest {
     assertEquals(comment.getCreatedAt(), commentResponse.createdAt());
   }
 
+  // asks for one extra row, if it comes back there's a next page and the
+  // cursor points at the last comment actually returned
+  @Test
+  void fullPageReturnsCursorForNextPage() {
+    Post post = mockPost();
+    User user = mockUser();
+    Instant now = Instant.now();
+    List<Comment> comments = new ArrayList<>();
+    for (long id = 5; id >= 1; id--) {
+      Comment comment = mockComment(user, post, "comment " + id);
+      comment.setId(id);
+      comment.setCreatedAt(now.minusSeconds(5 - id));
+      comments.add(comment);
+    }
+
+    when(postRepository.findCommentCountById(1L)).thenReturn(Optional.of(5L));
+    when(commentRepository.findLatestByPostId(1L, PageRequest.of(0, 4))).thenReturn(rows(comments.subList(0, 4)));
+    when(commentRepository.findByPostIdBefore(1L, comments.get(2).getCreatedAt(), 3L, PageRequest.of(0, 4)))
+        .thenReturn(rows(comments.subList(3, 5)));
+
+    CommentPageResponse firstPage = commentService.getAllCommentsForPost(1L, null, 3);
+
+    assertEquals(List.of(5L, 4L, 3L), firstPage.comments().stream().map(CommentResponse::id).toList());
+    assertNotNull(firstPage.nextCursor());
+    assertEquals(new CommentCursor(comments.get(2).getCreatedAt(), 3L), CommentCursor.decode(firstPage.nextCursor()));
+
+    CommentPageResponse secondPage = commentService.getAllCommentsForPost(1L, firstPage.nextCursor(), 3);
+
+    assertEquals(List.of(2L, 1L), secondPage.comments().stream().map(CommentResponse::id).toList());
+    assertNull(secondPage.nextCursor());
+    assertEquals(5L, secondPage.totalComments());
+  }
+
+  @Test
+  void invalidCursorIsBadRequest() {
+    when(postRepository.findCommentCountById(1L)).thenReturn(Optional.of(5L));
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> commentService.getAllCommentsForPost(1L, "not-a-cursor", 15));
+
+    assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+  }
+
   // delete comment (unauthenticated user tries to delete comment, authenticated
   // user tries to delete someone elses comment, comment id not
   // found,successfully deleted comment )
@@ -238,7 +444,7 @@ public class CommentServiceTest {
   @Test
   void commentIdNotFoundWhenDeleting() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     when(commentRepository.findById(99L)).thenReturn(Optional.empty());
 
@@ -253,7 +459,7 @@ public class CommentServiceTest {
   @Test
   void authenticatedUserTriesToDeleteSomeoneElsesComment() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     User commentAuthor = new User();
     commentAuthor.setId(2L);
@@ -276,7 +482,7 @@ public class CommentServiceTest {
   @Test
   void commentSuccessfullyDeleted() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     User user = mockUser();
     Post post = mockPost();
@@ -287,6 +493,262 @@ public class CommentServiceTest {
     commentService.deleteMyComment(1L);
 
     verify(commentRepository).delete(comment);
+    verify(postRepository).decrementCommentCount(post.getId(), 1);
+    verify(userStatsService).commentsChanged(1L, -1, 0);
+    verify(eventPublisher).publishEvent(new CommentEvent(CommentEventType.COMMENT_DELETED, 1L, 1L, null));
+    // reposting a fixed up version is fine
+    verify(commentSpamGuard).release(1L, 1L, "This is my comment");
+  }
+
+  // a threaded comment takes its replies with it, in one range delete
+  @Test
+  void deletingCommentDeletesItsReplies() {
+    when(securityContext.getAuthentication()).thenReturn(authentication);
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
+
+    Post post = mockPost();
+    Comment comment = mockComment(mockUser(), post, "This is my comment");
+    comment.setPath(CommentPaths.segment(1L));
+    when(commentRepository.findById(1L)).thenReturn(Optional.of(comment));
+    when(commentRepository.deleteSubtree(1L, CommentPaths.segment(1L), CommentPaths.segment(2L))).thenReturn(3);
+    // ours + a helpful one, and a reply from someone else
+    List<CommentAuthorCount> counts = List.of(authorCount(1L, 2, 1), authorCount(2L, 1, 0));
+    when(commentRepository.countSubtreeByAuthor(1L, CommentPaths.segment(1L), CommentPaths.segment(2L)))
+        .thenReturn(counts);
+
+    commentService.deleteMyComment(1L);
+
+    verify(commentRepository).detachSubtree(1L, CommentPaths.segment(1L), CommentPaths.segment(2L));
+    verify(commentRepository, never()).delete(any());
+    verify(postRepository).decrementCommentCount(post.getId(), 3);
+    verify(userStatsService).commentsChanged(1L, -2, -1);
+    verify(userStatsService).commentsChanged(2L, -1, 0);
+  }
+
+  private CommentAuthorCount authorCount(Long authorId, long comments, long helpful) {
+    CommentAuthorCount count = mock(CommentAuthorCount.class);
+    when(count.getAuthorId()).thenReturn(authorId);
+    when(count.getComments()).thenReturn(comments);
+    when(count.getHelpful()).thenReturn(helpful);
+    return count;
+  }
+
+  // mark helpful (not found, not the post author, already helpful, lost the
+  // race, successfully marked)
+  private HelpfulCommentView helpfulView(long postAuthorId, boolean markedHelpful) {
+    HelpfulCommentView view = mock(HelpfulCommentView.class);
+    lenient().when(view.getPostId()).thenReturn(1L);
+    lenient().when(view.getPostAuthorId()).thenReturn(postAuthorId);
+    lenient().when(view.getCommentAuthorId()).thenReturn(2L);
+    lenient().when(view.isMarkedHelpful()).thenReturn(markedHelpful);
+    return view;
+  }
+
+  @Test
+  void commentNotFoundWhenMarkingHelpful() {
+    when(securityContext.getAuthentication()).thenReturn(authentication);
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
+    when(commentRepository.findHelpfulViewById(9L)).thenReturn(Optional.empty());
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> commentService.markCommentHelpful(9L));
+
+    assertEquals(HttpStatus.NOT_FOUND, ex.getStatusCode());
+    verifyNoInteractions(creditService);
+  }
+
+  @Test
+  void onlyPostAuthorCanMarkHelpful() {
+    when(securityContext.getAuthentication()).thenReturn(authentication);
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
+    HelpfulCommentView view = helpfulView(3L, false);
+    when(commentRepository.findHelpfulViewById(5L)).thenReturn(Optional.of(view));
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> commentService.markCommentHelpful(5L));
+
+    assertEquals(HttpStatus.FORBIDDEN, ex.getStatusCode());
+    verify(commentRepository, never()).markHelpfulIfNotAlready(any());
+    verifyNoInteractions(creditService);
+  }
+
+  @Test
+  void alreadyHelpfulCommentIsRejectedWithoutUpdate() {
+    when(securityContext.getAuthentication()).thenReturn(authentication);
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
+    HelpfulCommentView view = helpfulView(1L, true);
+    when(commentRepository.findHelpfulViewById(5L)).thenReturn(Optional.of(view));
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> commentService.markCommentHelpful(5L));
+
+    assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+    verify(commentRepository, never()).markHelpfulIfNotAlready(any());
+    verifyNoInteractions(creditService);
+  }
+
+  // another request flipped the flag between our read and our update
+  @Test
+  void concurrentMarkHelpfulOnlyAwardsOnce() {
+    when(securityContext.getAuthentication()).thenReturn(authentication);
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
+    HelpfulCommentView view = helpfulView(1L, false);
+    when(commentRepository.findHelpfulViewById(5L)).thenReturn(Optional.of(view));
+    when(commentRepository.markHelpfulIfNotAlready(5L)).thenReturn(0);
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> commentService.markCommentHelpful(5L));
+
+    assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+    assertEquals("Comment already marked helpful", ex.getReason());
+    verifyNoInteractions(creditService);
+    verifyNoInteractions(eventPublisher);
+  }
+
+  @Test
+  void commentSuccessfullyMarkedHelpful() {
+    when(securityContext.getAuthentication()).thenReturn(authentication);
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
+    HelpfulCommentView view = helpfulView(1L, false);
+    when(commentRepository.findHelpfulViewById(5L)).thenReturn(Optional.of(view));
+    when(commentRepository.markHelpfulIfNotAlready(5L)).thenReturn(1);
+
+    commentService.markCommentHelpful(5L);
+
+    verify(creditService).addCredits(2L, TransactionType.COMMENT_MARKED_HELPFUL, 5L, 1L);
+    verify(userStatsService).commentMarkedHelpful(2L);
+    verify(commentRepository, never()).findById(any());
+    verify(commentRepository, never()).save(any());
+    verify(eventPublisher).publishEvent(new CommentEvent(CommentEventType.COMMENT_MARKED_HELPFUL, 1L, 5L, null));
+  }
+
+  // stream (post not found)
+  @Test
+  void postNotFoundWhenStreamingComments() {
+    when(postRepository.existsById(9L)).thenReturn(false);
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> commentService.streamComments(9L));
+
+    assertEquals(HttpStatus.NOT_FOUND, ex.getStatusCode());
+    verifyNoInteractions(commentEventBroadcaster);
+  }
+
+  // thread (not found, pages with cursor, 10k comment thread)
+  @Test
+  void commentNotFoundWhenFetchingThread() {
+    when(commentRepository.findById(9L)).thenReturn(Optional.empty());
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> commentService.getThread(9L, null, 50));
+
+    assertEquals(HttpStatus.NOT_FOUND, ex.getStatusCode());
+  }
+
+  @Test
+  void threadIsAssembledAndPagedByPath() {
+    Post post = mockPost();
+    User user = mockUser();
+    // 1 -> (2 -> 4), 3
+    Comment root = threadComment(1L, null, user, post);
+    Comment first = threadComment(2L, root, user, post);
+    Comment nested = threadComment(4L, first, user, post);
+    Comment second = threadComment(3L, root, user, post);
+    String end = CommentPaths.upperBound(root.getPath());
+
+    when(commentRepository.findById(1L)).thenReturn(Optional.of(root));
+    when(commentRepository.findSubtreePage(1L, root.getPath(), end, PageRequest.of(0, 4)))
+        .thenReturn(rows(List.of(root, first, nested, second)));
+    when(commentRepository.findSubtreePage(1L, CommentPaths.after(nested.getPath()), end, PageRequest.of(0, 4)))
+        .thenReturn(rows(List.of(second)));
+
+    CommentThreadResponse firstPage = commentService.getThread(1L, null, 3);
+
+    assertEquals(1, firstPage.thread().size());
+    CommentThreadNode rootNode = firstPage.thread().get(0);
+    assertEquals(1L, rootNode.comment().id());
+    assertEquals(1, rootNode.replies().size());
+    assertEquals(4L, rootNode.replies().get(0).replies().get(0).comment().id());
+    assertEquals(nested.getPath(), firstPage.nextCursor());
+
+    // 3's parent was on the previous page, so it comes back at the top level
+    CommentThreadResponse secondPage = commentService.getThread(1L, firstPage.nextCursor(), 3);
+
+    assertEquals(1, secondPage.thread().size());
+    assertEquals(3L, secondPage.thread().get(0).comment().id());
+    assertEquals(1L, secondPage.thread().get(0).comment().parentId());
+    assertNull(secondPage.nextCursor());
+  }
+
+  @Test
+  void cursorFromAnotherThreadIsRejected() {
+    Comment root = threadComment(1L, null, mockUser(), mockPost());
+    when(commentRepository.findById(1L)).thenReturn(Optional.of(root));
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> commentService.getThread(1L, CommentPaths.segment(2L), 50));
+
+    assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+  }
+
+  // a 10k comment thread (random replies, up to max depth) in
+  // path order should come back as one query and assemble in a single pass
+  @Test
+  void tenThousandCommentThreadAssemblesInOnePass() {
+    Post post = mockPost();
+    User user = mockUser();
+    Random random = new Random(42);
+    List<Comment> comments = new ArrayList<>();
+    Comment root = threadComment(1L, null, user, post);
+    comments.add(root);
+    for (long id = 2; id <= 10_000; id++) {
+      Comment parent = comments.get(random.nextInt(comments.size()));
+      while (parent.getDepth() >= CommentPaths.MAX_DEPTH) {
+        parent = parent.getParent();
+      }
+      comments.add(threadComment(id, parent, user, post));
+    }
+    comments.sort(Comparator.comparing(Comment::getPath));
+
+    when(commentRepository.findById(1L)).thenReturn(Optional.of(root));
+    List<CommentRow> rows = rows(comments);
+    when(commentRepository.findSubtreePage(eq(1L), eq(root.getPath()), any(), any())).thenReturn(rows);
+
+    CommentThreadResponse response = commentService.getThread(1L, null, 10_000);
+
+    assertEquals(1, response.thread().size());
+    assertEquals(10_000, countNodes(response.thread().get(0), 0));
+    assertNull(response.nextCursor());
+    verify(commentRepository).findSubtreePage(eq(1L), any(), any(), any());
+  }
+
+  // what the list/thread queries select for these comments
+  private List<CommentRow> rows(List<Comment> comments) {
+    return comments.stream().map(comment -> new CommentRow(comment.getId(), comment.getContent(),
+        comment.getPost().getId(), comment.getParent() != null ? comment.getParent().getId() : null,
+        comment.getDepth(), comment.getPath(), comment.getCreatedAt(), comment.getAuthor().getId(),
+        comment.getAuthor().getUsername(), comment.getAuthor().getFirstName(), comment.getAuthor().getLastName(),
+        comment.getAuthor().getAvatarUrl())).toList();
+  }
+
+  private Comment threadComment(long id, Comment parent, User author, Post post) {
+    Comment comment = mockComment(author, post, "comment " + id);
+    comment.setId(id);
+    comment.setParent(parent);
+    comment.setDepth(parent == null ? 0 : parent.getDepth() + 1);
+    comment.setPath(parent == null ? CommentPaths.segment(id) : CommentPaths.childPath(parent.getPath(), id));
+    return comment;
+  }
+
+  // also checks every reply sits one level below its parent
+  private int countNodes(CommentThreadNode node, int depth) {
+    assertEquals(depth, node.comment().depth());
+    int count = 1;
+    for (CommentThreadNode reply : node.replies()) {
+      assertEquals(node.comment().id(), reply.comment().parentId());
+      count += countNodes(reply, depth + 1);
+    }
+    return count;
   }
 
 }
@@ -0,0 +1,173 @@
+package com.verifico.server.comment.unit;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.verifico.server.comment.CommentSpamGuard;
+import com.verifico.server.comment.ContentFingerprint;
+
+class CommentSpamGuardTest {
+
+  CommentSpamGuard spamGuard;
+
+  @BeforeEach
+  void setup() {
+    // 10 min window, 16 fingerprints per user, 3 bits apart = same text, 3 posts
+    spamGuard = new CommentSpamGuard(600, 16, 3, 3);
+  }
+
+  @Test
+  void nearIdenticalTextHasCloseFingerprints() {
+    long original = ContentFingerprint.simHash("Great idea, would definitely pay for this!");
+
+    assertTrue(ContentFingerprint.distance(original,
+        ContentFingerprint.simHash("great idea  would definitely pay for this")) <= 3);
+    assertTrue(ContentFingerprint.distance(original,
+        ContentFingerprint.simHash("The onboarding flow is confusing, I got lost after signup.")) > 3);
+  }
+
+  @Test
+  void repeatedCommentOnSamePostIsRejected() {
+    spamGuard.check(1L, 10L, "Great idea, would definitely pay for this!");
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> spamGuard.check(1L, 10L, "GREAT idea!! would definitely pay for this"));
+
+    assertEquals(HttpStatus.CONFLICT, ex.getStatusCode());
+  }
+
+  @Test
+  void differentCommentsAndDifferentUsersAreFine() {
+    spamGuard.check(1L, 10L, "Great idea, would definitely pay for this!");
+
+    assertDoesNotThrow(() -> spamGuard.check(1L, 10L, "How are you planning to price the team tier?"));
+    assertDoesNotThrow(() -> spamGuard.check(2L, 10L, "Great idea, would definitely pay for this!"));
+  }
+
+  // the same text sprayed over posts is let through up to the limit
+  @Test
+  void sameCommentAcrossManyPostsIsThrottled() {
+    String spam = "Check out my startup at example dot com, 50% off today";
+    spamGuard.check(1L, 1L, spam);
+    spamGuard.check(1L, 2L, spam);
+    spamGuard.check(1L, 3L, spam);
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> spamGuard.check(1L, 4L, spam));
+
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, ex.getStatusCode());
+  }
+
+  @Test
+  void fingerprintsExpireAfterTheWindow() throws Exception {
+    CommentSpamGuard shortWindow = new CommentSpamGuard(0, 16, 3, 3);
+    shortWindow.check(1L, 10L, "Great idea, would definitely pay for this!");
+    Thread.sleep(5);
+
+    assertDoesNotThrow(() -> shortWindow.check(1L, 10L, "Great idea, would definitely pay for this!"));
+
+    Thread.sleep(5);
+    shortWindow.evictExpired();
+    assertEquals(0, shortWindow.getTrackedUsers());
+  }
+
+  // with a full ring to compare against, letting a comment through is one
+  // simhash + 16 xor/bitCounts
+  @Test
+  void checksStayInTheMicrosecondRange() {
+    CommentSpamGuard noCrossPostLimit = new CommentSpamGuard(600, 16, 3, Integer.MAX_VALUE);
+    String comment = "Really like where this is going, the demo video sold it for me";
+
+    int checks = 20_000;
+    // warm up first, the interpreted first few thousand calls aren't what
+    // we're measuring
+    for (int i = 0; i < checks; i++) {
+      noCrossPostLimit.check(2L, (long) i, comment);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < checks; i++) {
+      noCrossPostLimit.check(1L, (long) i, comment);
+    }
+    long perCheckNanos = (System.nanoTime() - start) / checks;
+
+    // generous bound so a busy ci box doesn't flake, usually a few us
+    assertTrue(perCheckNanos < 100_000, "check took " + perCheckNanos + "ns");
+  }
+
+  // a scripted flood sends them all at once, none of them is in the db yet when
+  // the others are checked
+  @Test
+  void concurrentIdenticalSubmitsLetOnlyOneThrough() throws Exception {
+    int submits = 16;
+    ExecutorService flood = Executors.newFixedThreadPool(submits);
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicInteger passed = new AtomicInteger();
+    AtomicInteger rejected = new AtomicInteger();
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (int i = 0; i < submits; i++) {
+        results.add(flood.submit(() -> {
+          start.await();
+          try {
+            spamGuard.check(1L, 10L, "Great idea, would definitely pay for this!");
+            passed.incrementAndGet();
+          } catch (ResponseStatusException e) {
+            rejected.incrementAndGet();
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> result : results) {
+        result.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      flood.shutdownNow();
+    }
+
+    assertEquals(1, passed.get());
+    assertEquals(submits - 1, rejected.get());
+  }
+
+  // 404 / failed insert, the comment rolled back and the retry goes through
+  @Test
+  void releasedCommentDoesNotBlockRetry() {
+    spamGuard.check(1L, 10L, "Great idea, would definitely pay for this!");
+    spamGuard.release(1L, 10L, "Great idea, would definitely pay for this!");
+
+    assertDoesNotThrow(() -> spamGuard.check(1L, 10L, "Great idea, would definitely pay for this!"));
+  }
+
+  // emoji/punctuation only replies all normalize to "", they're not duplicates
+  // of each other
+  @Test
+  void commentsWithoutEnoughTextAreNotTracked() {
+    assertFalse(ContentFingerprint.hasEnoughText("👍"));
+    assertFalse(ContentFingerprint.hasEnoughText("?!"));
+    assertTrue(ContentFingerprint.hasEnoughText("lol"));
+
+    for (long postId = 1; postId <= 5; postId++) {
+      spamGuard.check(1L, postId, "👍");
+      spamGuard.check(1L, postId, "🔥");
+      spamGuard.check(1L, postId, "?!");
+    }
+    assertEquals(0, spamGuard.getTrackedUsers());
+  }
+}
@@ -0,0 +1,157 @@
+package com.verifico.server.comment.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Properties;
+
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.test.web.servlet.setup.StandaloneMockMvcBuilder;
+import org.springframework.web.servlet.handler.WebRequestHandlerInterceptorAdapter;
+
+import com.verifico.server.comment.CommentController;
+import com.verifico.server.comment.CommentRepository;
+import com.verifico.server.comment.CommentService;
+import com.verifico.server.comment.CommentSpamGuard;
+import com.verifico.server.comment.stream.CommentEventBroadcaster;
+import com.verifico.server.credit.CreditService;
+import com.verifico.server.post.PostRepository;
+import com.verifico.server.user.UserRepository;
+import com.verifico.server.user.UserStatsService;
+import com.zaxxer.hikari.HikariDataSource;
+
+import jakarta.persistence.EntityManagerFactory;
+import tools.jackson.databind.json.JsonMapper;
+
+// a live comment stream stays open for up to half an hour, it mustn't keep a
+// pooled connection for that long. real hibernate on h2 behind a 2 connection
+// pool, and the open-in-view interceptor only if the app config would turn it
+// on (boot's default when the property isn't set)
+@ExtendWith(MockitoExtension.class)
+class CommentStreamConnectionTest {
+
+  private static final int POOL_SIZE = 2;
+
+  @Mock
+  CommentRepository commentRepository;
+
+  @Mock
+  UserRepository userRepository;
+
+  @Mock
+  CreditService creditService;
+
+  @Mock
+  CommentSpamGuard commentSpamGuard;
+
+  @Mock
+  UserStatsService userStatsService;
+
+  @Mock
+  ApplicationEventPublisher eventPublisher;
+
+  @Mock
+  StringRedisTemplate redisTemplate;
+
+  HikariDataSource pool;
+  LocalContainerEntityManagerFactoryBean entityManagerFactory;
+  CommentEventBroadcaster broadcaster;
+  MockMvc mockMvc;
+
+  @BeforeEach
+  void setup() throws Exception {
+    pool = new HikariDataSource();
+    pool.setPoolName("test-comment-stream");
+    pool.setJdbcUrl("jdbc:h2:mem:comment-stream;DB_CLOSE_DELAY=-1");
+    pool.setMaximumPoolSize(POOL_SIZE);
+    pool.setConnectionTimeout(500);
+
+    entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+    entityManagerFactory.setDataSource(pool);
+    entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+    entityManagerFactory.setPackagesToScan("com.verifico.server.post", "com.verifico.server.user");
+    entityManagerFactory.setJpaPropertyMap(Map.of("hibernate.hbm2ddl.auto", "create-drop",
+        "hibernate.physical_naming_strategy", CamelCaseToUnderscoresNamingStrategy.class.getName()));
+    entityManagerFactory.afterPropertiesSet();
+    EntityManagerFactory emf = entityManagerFactory.getObject();
+
+    try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+      statement.execute("INSERT INTO users (id, username, first_name, last_name, email, password, credits, "
+          + "version, joined_date) VALUES (1, 'JohnDoe123', 'John', 'Doe', 'john@verifiko.test', 'x', 0, 0, "
+          + "CURRENT_DATE)");
+      statement.execute("INSERT INTO posts (id, user_id, title, tagline, category, stage, problem_description, "
+          + "solution_description, is_boosted, comment_count, created_at, updated_at) VALUES (1, 1, 'Verifiko', "
+          + "'Validate ideas', 'SAAS', 'BETA', 'problem', 'solution', false, 0, CURRENT_TIMESTAMP, "
+          + "CURRENT_TIMESTAMP)");
+    }
+
+    PostRepository postRepository = new JpaRepositoryFactory(SharedEntityManagerCreator.createSharedEntityManager(emf))
+        .getRepository(PostRepository.class);
+    broadcaster = new CommentEventBroadcaster(redisTemplate, JsonMapper.builder().build(), 1, 4, 100, 60_000);
+    CommentService commentService = new CommentService(commentRepository, userRepository, postRepository,
+        creditService, commentSpamGuard, userStatsService, eventPublisher, broadcaster);
+
+    StandaloneMockMvcBuilder builder = MockMvcBuilders.standaloneSetup(new CommentController(commentService));
+    if (openInViewEnabled()) {
+      OpenEntityManagerInViewInterceptor interceptor = new OpenEntityManagerInViewInterceptor();
+      interceptor.setEntityManagerFactory(emf);
+      builder.addInterceptors(new WebRequestHandlerInterceptorAdapter(interceptor));
+    }
+    mockMvc = builder.build();
+  }
+
+  @AfterEach
+  void tearDown() {
+    broadcaster.shutdown();
+    entityManagerFactory.destroy();
+    pool.close();
+  }
+
+  @Test
+  void moreStreamsThanPooledConnections() throws Exception {
+    for (int i = 0; i < POOL_SIZE * 3; i++) {
+      mockMvc.perform(get("/api/posts/{id}/comments/stream", 1L)).andExpect(request().asyncStarted());
+    }
+
+    assertEquals(POOL_SIZE * 3, broadcaster.getSubscriberCount());
+    assertEquals(0, pool.getHikariPoolMXBean().getActiveConnections());
+    try (Connection connection = pool.getConnection()) {
+      connection.createStatement().execute("SELECT 1");
+    } catch (SQLException e) {
+      throw new AssertionError("streams are holding the pool", e);
+    }
+  }
+
+  // test resources have their own application.properties, read the one we ship
+  private static boolean openInViewEnabled() throws IOException {
+    Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(Path.of("src/main/resources/application.properties"))) {
+      properties.load(in);
+    }
+    return Boolean.parseBoolean(properties.getProperty("spring.jpa.open-in-view", "true"));
+  }
+}
@@ -0,0 +1,52 @@
+package com.verifico.server.common.unit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import com.verifico.server.common.util.Backoff;
+
+class BackoffTest {
+
+  private static final Duration BASE = Duration.ofSeconds(5);
+  private static final Duration MAX = Duration.ofHours(1);
+
+  private static void assertWithinJitter(long expectedMillis, Duration actual) {
+    long millis = actual.toMillis();
+    assertTrue(millis >= expectedMillis * 0.8 && millis <= expectedMillis * 1.2,
+        "expected ~" + expectedMillis + "ms, got " + millis + "ms");
+  }
+
+  @Test
+  void doublesWithEachAttempt() {
+    for (int i = 0; i < 100; i++) {
+      assertWithinJitter(5_000, Backoff.exponentialWithJitter(BASE, MAX, 1));
+      assertWithinJitter(10_000, Backoff.exponentialWithJitter(BASE, MAX, 2));
+      assertWithinJitter(20_000, Backoff.exponentialWithJitter(BASE, MAX, 3));
+    }
+  }
+
+  // attempt counts pile up on poison messages, mustn't overflow the shift
+  @Test
+  void cappedAtMax() {
+    for (int attempts : new int[] { 11, 21, 64, 1_000 }) {
+      assertWithinJitter(MAX.toMillis(), Backoff.exponentialWithJitter(BASE, MAX, attempts));
+    }
+  }
+
+  // otherwise a batch that failed together retries together
+  @Test
+  void retriesAreSpreadOut() {
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    for (int i = 0; i < 1_000; i++) {
+      long millis = Backoff.exponentialWithJitter(BASE, MAX, 1).toMillis();
+      min = Math.min(min, millis);
+      max = Math.max(max, millis);
+    }
+
+    assertTrue(max - min > 1_000);
+  }
+}
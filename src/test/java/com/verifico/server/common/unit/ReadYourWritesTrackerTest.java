@@ -0,0 +1,79 @@
+package com.verifico.server.common.unit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import com.verifico.server.common.datasource.ReadYourWritesTracker;
+
+@ExtendWith(MockitoExtension.class)
+class ReadYourWritesTrackerTest {
+
+  @Mock
+  StringRedisTemplate redisTemplate;
+
+  @Mock
+  ValueOperations<String, String> valueOperations;
+
+  // the write goes through one instance, the next request lands on another
+  @Test
+  void writeOnOneInstanceIsSeenByAnother() {
+    Set<String> redis = new HashSet<>();
+    when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    doAnswer(invocation -> redis.add(invocation.getArgument(0)))
+        .when(valueOperations).set(anyString(), anyString(), any(Duration.class));
+    when(redisTemplate.hasKey(anyString())).thenAnswer(invocation -> redis.contains(invocation.getArgument(0)));
+
+    ReadYourWritesTracker first = new ReadYourWritesTracker(redisTemplate, 5_000);
+    ReadYourWritesTracker second = new ReadYourWritesTracker(redisTemplate, 5_000);
+
+    first.recordWrite(7L);
+
+    assertTrue(second.wroteRecently(7L));
+    assertFalse(second.wroteRecently(8L));
+    verify(valueOperations).set(eq("read_your_writes:7"), eq("1"), eq(Duration.ofMillis(5_000)));
+  }
+
+  @Test
+  void localWritesDontNeedRedis() {
+    when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    ReadYourWritesTracker tracker = new ReadYourWritesTracker(redisTemplate, 5_000);
+
+    tracker.recordWrite(7L);
+
+    assertTrue(tracker.wroteRecently(7L));
+    verify(redisTemplate, never()).hasKey(anyString());
+  }
+
+  // can't tell whether they wrote elsewhere, so read from the primary
+  @Test
+  void redisDownSendsReadsToThePrimary() {
+    when(redisTemplate.hasKey(anyString())).thenThrow(new RedisConnectionFailureException("down"));
+    ReadYourWritesTracker tracker = new ReadYourWritesTracker(redisTemplate, 5_000);
+
+    for (int i = 0; i < 10; i++) {
+      assertTrue(tracker.wroteRecently(7L));
+    }
+    // the breaker opened, we stopped waiting on redis
+    verify(redisTemplate, times(5)).hasKey(anyString());
+  }
+}
@@ -0,0 +1,365 @@
+package com.verifico.server.common.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.verifico.server.auth.jwt.AuthenticatedUser;
+import com.verifico.server.common.datasource.ReadYourWritesTracker;
+import com.verifico.server.common.datasource.WorkloadRoutingDataSource;
+import com.verifico.server.user.User;
+import com.zaxxer.hikari.HikariDataSource;
+
+import jakarta.persistence.EntityManager;
+
+@ExtendWith(MockitoExtension.class)
+class WorkloadRoutingDataSourceTest {
+
+  @Mock
+  DataSource requestWrites;
+
+  @Mock
+  DataSource requestReads;
+
+  @Mock
+  DataSource background;
+
+  @Mock
+  DataSource replica1;
+
+  @Mock
+  DataSource replica2;
+
+  @Mock
+  StringRedisTemplate redisTemplate;
+
+  @Mock
+  ValueOperations<String, String> valueOperations;
+
+  @Mock
+  Connection primaryConnection;
+
+  @Mock
+  Connection replica1Connection;
+
+  @Mock
+  Connection replica2Connection;
+
+  ReadYourWritesTracker readYourWrites;
+  WorkloadRoutingDataSource dataSource;
+
+  @BeforeEach
+  void setup() {
+    Map<String, DataSource> replicas = new LinkedHashMap<>();
+    replicas.put("replica-1", replica1);
+    replicas.put("replica-2", replica2);
+    lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    readYourWrites = new ReadYourWritesTracker(redisTemplate, 60_000);
+    // lag check off, h2/mocks don't have the pg replication functions
+    dataSource = new WorkloadRoutingDataSource(requestWrites, requestReads, background, replicas, readYourWrites, 0);
+
+    TransactionSynchronizationManager.initSynchronization();
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+  }
+
+  @AfterEach
+  void cleanup() {
+    TransactionSynchronizationManager.clear();
+    SecurityContextHolder.clearContext();
+    RequestContextHolder.resetRequestAttributes();
+  }
+
+  @Test
+  void requestWritesGoToWritePool() throws SQLException {
+    when(requestWrites.getConnection()).thenReturn(primaryConnection);
+
+    assertSame(primaryConnection, dataSource.getConnection());
+    verifyNoInteractions(replica1, replica2, requestReads, background);
+  }
+
+  // scheduled jobs/workers use their own pool even for read only work
+  @Test
+  void workOffRequestThreadsGoesToBackgroundPool() throws SQLException {
+    RequestContextHolder.resetRequestAttributes();
+    when(background.getConnection()).thenReturn(primaryConnection);
+
+    assertSame(primaryConnection, dataSource.getConnection());
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+    assertSame(primaryConnection, dataSource.getConnection());
+    verifyNoInteractions(replica1, replica2, requestReads, requestWrites);
+  }
+
+  @Test
+  void readOnlyTransactionsAreSpreadOverReplicas() throws SQLException {
+    when(replica1.getConnection()).thenReturn(replica1Connection);
+    when(replica2.getConnection()).thenReturn(replica2Connection);
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+    assertSame(replica1Connection, dataSource.getConnection());
+    assertSame(replica2Connection, dataSource.getConnection());
+    assertSame(replica1Connection, dataSource.getConnection());
+    verifyNoInteractions(requestReads, requestWrites);
+  }
+
+  @Test
+  void failingReplicaIsSkippedAndPrimaryReadPoolIsLastResort() throws SQLException {
+    when(replica1.getConnection()).thenThrow(new SQLException("connection refused"));
+    when(replica2.getConnection()).thenThrow(new SQLException("connection refused"));
+    when(requestReads.getConnection()).thenReturn(primaryConnection);
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+    assertSame(primaryConnection, dataSource.getConnection());
+    assertEquals(0, dataSource.getHealthyReplicaCount());
+
+    // marked down, so the next read doesn't even try them
+    assertSame(primaryConnection, dataSource.getConnection());
+    verify(replica1).getConnection();
+    verify(replica2).getConnection();
+  }
+
+  @Test
+  void healthCheckBringsReplicaBack() throws SQLException {
+    when(replica1.getConnection()).thenThrow(new SQLException("connection refused"))
+        .thenReturn(replica1Connection);
+    when(replica1Connection.isValid(2)).thenReturn(true);
+    when(replica2.getConnection()).thenReturn(replica2Connection);
+    when(replica2Connection.isValid(2)).thenReturn(true);
+
+    dataSource.checkReplicas();
+    assertEquals(1, dataSource.getHealthyReplicaCount());
+
+    dataSource.checkReplicas();
+    assertEquals(2, dataSource.getHealthyReplicaCount());
+  }
+
+  // after the write commits the same user reads from the primary, somebody
+  // else still reads from the replicas
+  @Test
+  void committedWriteMakesCallerReadFromPrimary() throws SQLException {
+    when(requestWrites.getConnection()).thenReturn(primaryConnection);
+    when(requestReads.getConnection()).thenReturn(primaryConnection);
+    when(replica1.getConnection()).thenReturn(replica1Connection);
+    authenticate(42L);
+
+    dataSource.getConnection().prepareStatement("insert into comments (content, post_id, user_id) values (?, ?, ?)");
+    List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+    assertEquals(0, readYourWrites.size());
+    synchronizations.forEach(TransactionSynchronization::afterCommit);
+
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+    assertSame(primaryConnection, dataSource.getConnection());
+    verify(replica1, never()).getConnection();
+
+    authenticate(7L);
+    assertSame(replica1Connection, dataSource.getConnection());
+  }
+
+  // derived queries outside a transaction, lookups before a 404... get a write
+  // connection without writing anything, no reason to pin the user to the primary
+  @Test
+  void onlyStatementsThatWriteCountAsWrites() throws SQLException {
+    when(requestWrites.getConnection()).thenReturn(primaryConnection);
+    authenticate(42L);
+
+    Connection connection = dataSource.getConnection();
+    connection.prepareStatement("select p1_0.id from posts p1_0 where p1_0.id=?");
+    connection.prepareStatement("  SELECT id FROM outbox_events WHERE status = 'PENDING' FOR UPDATE SKIP LOCKED");
+    assertTrue(TransactionSynchronizationManager.getSynchronizations().isEmpty());
+
+    connection.prepareStatement("update posts set comment_count=comment_count+1 where id=?");
+    connection.prepareStatement("insert into comments (content, post_id, user_id) values (?, ?, ?)");
+    assertEquals(1, TransactionSynchronizationManager.getSynchronizations().size());
+    verify(primaryConnection).prepareStatement("select p1_0.id from posts p1_0 where p1_0.id=?");
+  }
+
+  // a read only transaction and then a write in the same request, through
+  // hibernate like the app does. each transaction has to get its own connection
+  // (open-in-view off) for the write to land on the primary
+  @Test
+  void readThenWriteInOneRequestUseTheirOwnPools() throws Exception {
+    CountingDataSource writes = new CountingDataSource(h2Pool("test-jpa-request-write", 2, "workload-jpa"));
+    CountingDataSource reads = new CountingDataSource(h2Pool("test-jpa-request-read", 2, "workload-jpa"));
+    CountingDataSource jobs = new CountingDataSource(h2Pool("test-jpa-background", 2, "workload-jpa"));
+    CountingDataSource replica = new CountingDataSource(h2Pool("test-jpa-replica", 2, "workload-jpa"));
+    WorkloadRoutingDataSource pools = new WorkloadRoutingDataSource(writes, reads, jobs, Map.of("replica-1", replica),
+        readYourWrites, 0);
+
+    // schema is created off the request thread, like on startup
+    TransactionSynchronizationManager.clear();
+    RequestContextHolder.resetRequestAttributes();
+    LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+    factory.setDataSource(new LazyConnectionDataSourceProxy(pools));
+    factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+    factory.setPackagesToScan("com.verifico.server.user");
+    factory.setJpaPropertyMap(Map.of("hibernate.hbm2ddl.auto", "create-drop"));
+    factory.afterPropertiesSet();
+    EntityManager entityManager = SharedEntityManagerCreator.createSharedEntityManager(factory.getObject());
+    TransactionTemplate readOnly = new TransactionTemplate(new JpaTransactionManager(factory.getObject()));
+    readOnly.setReadOnly(true);
+    TransactionTemplate readWrite = new TransactionTemplate(new JpaTransactionManager(factory.getObject()));
+
+    try {
+      RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+      authenticate(42L);
+
+      readOnly.executeWithoutResult(
+          status -> entityManager.createQuery("SELECT COUNT(u) FROM User u", Long.class).getSingleResult());
+      readWrite.executeWithoutResult(status -> entityManager.persist(user("JohnDoe123")));
+      assertEquals(1, replica.connections.get());
+      assertEquals(1, writes.connections.get());
+
+      // wrote just now, reads come from the primary for a bit
+      readOnly.executeWithoutResult(
+          status -> entityManager.createQuery("SELECT COUNT(u) FROM User u", Long.class).getSingleResult());
+      assertEquals(1, replica.connections.get());
+      assertEquals(1, reads.connections.get());
+    } finally {
+      factory.destroy();
+      pools.close();
+    }
+  }
+
+  // webhook storm: far more background work than the background pool has
+  // connections, each holding its connection for a while. request reads have
+  // their own pool so they still get a connection straight away
+  @Test
+  void backgroundStormDoesNotStarveRequests() throws Exception {
+    HikariDataSource writes = h2Pool("test-request-write", 2);
+    HikariDataSource reads = h2Pool("test-request-read", 2);
+    HikariDataSource jobs = h2Pool("test-background", 2);
+    WorkloadRoutingDataSource pools = new WorkloadRoutingDataSource(writes, reads, jobs, Map.of(),
+        readYourWrites, 0);
+    reads.getConnection().close();
+    RequestContextHolder.resetRequestAttributes();
+
+    ExecutorService storm = Executors.newFixedThreadPool(16);
+    AtomicBoolean stop = new AtomicBoolean();
+    CountDownLatch saturated = new CountDownLatch(2);
+    try {
+      for (int i = 0; i < 16; i++) {
+        storm.submit(() -> {
+          while (!stop.get()) {
+            try (Connection connection = pools.getConnection()) {
+              connection.createStatement().execute("SELECT 1");
+              saturated.countDown();
+              Thread.sleep(50);
+            } catch (Exception e) {
+              // background pool timing out is fine, that's the point
+            }
+          }
+          return null;
+        });
+      }
+      assertTrue(saturated.await(10, TimeUnit.SECONDS));
+
+      RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+      TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+      long slowest = 0;
+      for (int i = 0; i < 50; i++) {
+        long start = System.nanoTime();
+        try (Connection connection = pools.getConnection()) {
+          connection.createStatement().execute("SELECT 1");
+        }
+        slowest = Math.max(slowest, System.nanoTime() - start);
+      }
+
+      assertTrue(jobs.getHikariPoolMXBean().getThreadsAwaitingConnection() > 0, "storm should saturate its pool");
+      // sharing one pool they'd queue behind ~8 storm holds of 50ms each
+      assertTrue(TimeUnit.NANOSECONDS.toMillis(slowest) < 200, "request read took " + slowest / 1_000_000 + "ms");
+    } finally {
+      stop.set(true);
+      storm.shutdown();
+      storm.awaitTermination(10, TimeUnit.SECONDS);
+      pools.close();
+    }
+  }
+
+  private HikariDataSource h2Pool(String name, int size) {
+    return h2Pool(name, size, "workload-pools");
+  }
+
+  private HikariDataSource h2Pool(String name, int size, String database) {
+    HikariDataSource pool = new HikariDataSource();
+    pool.setPoolName(name);
+    pool.setJdbcUrl("jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1");
+    pool.setMaximumPoolSize(size);
+    pool.setConnectionTimeout(1000);
+    return pool;
+  }
+
+  private User user(String username) {
+    User user = new User();
+    user.setUsername(username);
+    user.setFirstName("John");
+    user.setLastName("Doe");
+    user.setEmail(username.toLowerCase() + "@verifiko.test");
+    user.setPassword("hash");
+    return user;
+  }
+
+  private void authenticate(Long userId) {
+    SecurityContextHolder.getContext().setAuthentication(
+        new UsernamePasswordAuthenticationToken(new AuthenticatedUser(userId, "user" + userId), null, List.of()));
+  }
+
+  private static final class CountingDataSource extends DelegatingDataSource implements AutoCloseable {
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private CountingDataSource(HikariDataSource target) {
+      super(target);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+      connections.incrementAndGet();
+      return super.getConnection();
+    }
+
+    @Override
+    public void close() {
+      ((HikariDataSource) getTargetDataSource()).close();
+    }
+  }
+}
@@ -4,9 +4,11 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import java.util.Optional;
@@ -24,12 +26,14 @@ import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.server.ResponseStatusException;
 
+import com.verifico.server.auth.jwt.AuthenticatedUser;
 import com.verifico.server.credit.CreditService;
 import com.verifico.server.credit.CreditTransaction;
 import com.verifico.server.credit.CreditTransactionRepository;
 import com.verifico.server.credit.TransactionType;
 import com.verifico.server.user.User;
 import com.verifico.server.user.UserRepository;
+import com.verifico.server.user.UserStatsService;
 
 @ExtendWith(MockitoExtension.class)
 class CreditServiceTest {
@@ -45,6 +49,9 @@ class CreditServiceTest {
   @Mock
   Authentication authentication;
 
+  @Mock
+  UserStatsService userStatsService;
+
   @InjectMocks
   CreditService creditService;
 
@@ -66,10 +73,10 @@ class CreditServiceTest {
   // user not found
   @Test
   void userNotFoundWhenAddingCredits() {
-    when(userRepository.findById(4L)).thenReturn(Optional.empty());
+    when(userRepository.addToCredits(4L, 5)).thenReturn(0);
 
     ResponseStatusException ex = assertThrows(ResponseStatusException.class,
-        () -> creditService.addCredits(4L, null, null, null));
+        () -> creditService.addCredits(4L, TransactionType.COMMENT_MARKED_HELPFUL, null, null));
 
     assertEquals(HttpStatus.NOT_FOUND, ex.getStatusCode());
     assertEquals("User not found", ex.getReason());
@@ -80,23 +87,18 @@ class CreditServiceTest {
   // negative amount
   @Test
   void negativeAmountWhenAddingCredits() {
-    User user = mockUser();
-    when(userRepository.findById(1L)).thenReturn(Optional.of(user));
-
     IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
         () -> creditService.addCredits(1L, TransactionType.CREATE_POST, null, null));
 
     assertEquals("addCredits cannot be used for negative transactions", ex.getMessage());
 
+    verify(userRepository, never()).addToCredits(any(), anyInt());
     verify(creditTransactionRepository, never()).save(any());
   }
 
   // PURCHASE_CREDITS type -> throws IllegalArgumentException
   @Test
   void purchaseCreditsTypeOnAddCredits() {
-    User user = mockUser();
-    when(userRepository.findById(1L)).thenReturn(Optional.of(user));
-
     IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
         () -> creditService.addCredits(1L, TransactionType.PURCHASE_CREDITS, null, null));
 
@@ -105,28 +107,33 @@ class CreditServiceTest {
     verify(creditTransactionRepository, never()).save(any());
   }
 
-  // successful add credits + verify balance updated
+  // successful add credits + verify balance updated, straight in the db without
+  // loading the user
   @Test
   void successfullAddCreditsPlusVerifyBalanceUpdated() {
     User user = mockUser();
-    user.setCredits(100);
 
-    when(userRepository.findById(1L)).thenReturn(Optional.of(user));
-    when(userRepository.save(any(User.class))).thenReturn(user);
+    when(userRepository.addToCredits(1L, 5)).thenReturn(1);
+    when(userRepository.findCreditsById(1L)).thenReturn(Optional.of(105));
+    when(userRepository.getReferenceById(1L)).thenReturn(user);
     when(creditTransactionRepository.save(any(CreditTransaction.class)))
         .thenAnswer(invocation -> invocation.getArgument(0));
 
     CreditTransaction response = creditService.addCredits(1L,
-        TransactionType.COMMENT_MARKED_HELPFUL, null, null);
+        TransactionType.COMMENT_MARKED_HELPFUL, 7L, 3L);
 
     assertNotNull(response);
-    assertEquals(105, user.getCredits());
     assertEquals(105, response.getBalanceAfter());
     assertEquals(5, response.getAmount());
     assertEquals(TransactionType.COMMENT_MARKED_HELPFUL, response.getTransactionType());
+    assertEquals(7L, response.getRelatedCommentId());
+    assertEquals(3L, response.getRelatedPostId());
+    assertEquals(user, response.getUser());
 
-    verify(userRepository).save(user);
+    verify(userRepository, never()).findById(any());
+    verify(userRepository, never()).save(any());
     verify(creditTransactionRepository).save(any(CreditTransaction.class));
+    verify(userStatsService).creditsEarned(1L, 5);
   }
 
   // spend credits endpoint:
@@ -254,13 +261,13 @@ class CreditServiceTest {
     assertEquals("Authenticated user not found!", ex.getReason());
   }
 
-  // user not found by username
+  // user in the token no longer exists
   @Test
-  void userNotFoundByUserNameWhenCheckingBalance() {
+  void userNotFoundByIdWhenCheckingBalance() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.empty());
+    when(userRepository.findCreditsById(1L)).thenReturn(Optional.empty());
 
     ResponseStatusException ex = assertThrows(ResponseStatusException.class,
         () -> creditService.checkBalance());
@@ -273,15 +280,16 @@ class CreditServiceTest {
   @Test
   void successfullBalanceCheck() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     User user = mockUser();
 
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(userRepository.findCreditsById(1L)).thenReturn(Optional.of(user.getCredits()));
 
     int response = creditService.checkBalance();
 
     assertEquals(user.getCredits(), response);
+    verify(userRepository, never()).findById(any());
   }
 
   // get my transactions endpoint:
@@ -297,29 +305,24 @@ class CreditServiceTest {
     assertEquals("Authenticated user not found!", ex.getReason());
   }
 
-  // user not found by username
+  // transactions are looked up by the user id from the token, the user row
+  // itself is never loaded
   @Test
-  void userNotFoundByUserNameWhenGettingTransactionHistory() {
+  void transactionHistoryUsesTokenUserIdWithoutLoadingUser() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
+    when(creditTransactionRepository.findByUserIdOrderByCreatedAtDesc(eq(1L), any())).thenReturn(Page.empty());
 
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.empty());
-
-    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
-        () -> creditService.getTransactions(0, 0));
+    creditService.getTransactions(0, 15);
 
-    assertEquals(HttpStatus.NOT_FOUND, ex.getStatusCode());
-    assertEquals("User not found", ex.getReason());
+    verifyNoInteractions(userRepository);
   }
 
   // successful transactions fetch
   @Test
   void successfullyFetchedUserTransactions() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
-
-    User user = mockUser();
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     Page<CreditTransaction> mockPage = Page.empty();
     when(creditTransactionRepository.findByUserIdOrderByCreatedAtDesc(any(), any())).thenReturn(mockPage);
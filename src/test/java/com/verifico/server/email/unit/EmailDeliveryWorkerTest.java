@@ -0,0 +1,268 @@
+package com.verifico.server.email.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import com.verifico.server.email.EmailDeliveryWorker;
+import com.verifico.server.email.OutboundEmail;
+import com.verifico.server.email.OutboundEmailRepository;
+
+// Runs the worker against a tiny local smtp server so batching / connection
+// reuse / rejected recipients go through the real JavaMail client.
+@ExtendWith(MockitoExtension.class)
+class EmailDeliveryWorkerTest {
+
+  @Mock
+  OutboundEmailRepository outboundEmailRepository;
+
+  SmtpStub smtpStub;
+  JavaMailSenderImpl mailSender;
+  EmailDeliveryWorker worker;
+
+  @BeforeEach
+  void setup() throws IOException {
+    smtpStub = new SmtpStub();
+    mailSender = new JavaMailSenderImpl();
+    mailSender.setHost("127.0.0.1");
+    mailSender.setPort(smtpStub.port());
+    // skip the local hostname lookups for EHLO + message ids, they can take
+    // seconds in ci
+    mailSender.getJavaMailProperties().put("mail.smtp.localhost", "localhost");
+    mailSender.getJavaMailProperties().put("mail.from", "noreply@verifiko.test");
+    worker = worker(2, 50);
+  }
+
+  @AfterEach
+  void teardown() throws IOException {
+    worker.shutdown();
+    smtpStub.close();
+  }
+
+  private EmailDeliveryWorker worker(int threads, int batchSize) {
+    return new EmailDeliveryWorker(outboundEmailRepository, mailSender, "noreply@verifiko.test", "Verifiko",
+        threads, batchSize, 3, 120, 30, 3600, 24);
+  }
+
+  private OutboundEmail email(long id, String to) {
+    OutboundEmail email = new OutboundEmail();
+    email.setId(id);
+    email.setRecipient(to);
+    email.setSubject("Subject " + id);
+    email.setHtmlBody("<p>hello " + id + "</p>");
+    return email;
+  }
+
+  // serves the emails in pages the way the real table would: findDueIds hands
+  // out the next page, claim ties it to the batch token, findByLockedBy returns
+  // that batch
+  private void queue(List<OutboundEmail> emails, int batchSize) {
+    Queue<List<OutboundEmail>> pages = new ConcurrentLinkedQueue<>();
+    for (int i = 0; i < emails.size(); i += batchSize) {
+      pages.add(emails.subList(i, Math.min(i + batchSize, emails.size())));
+    }
+    Map<String, List<OutboundEmail>> claimed = new ConcurrentHashMap<>();
+    Map<Long, OutboundEmail> byId = new ConcurrentHashMap<>();
+    emails.forEach(email -> byId.put(email.getId(), email));
+
+    when(outboundEmailRepository.findDueIds(any(Instant.class), any(Pageable.class))).thenAnswer(invocation -> {
+      List<OutboundEmail> page = pages.poll();
+      return page == null ? List.of() : page.stream().map(OutboundEmail::getId).toList();
+    });
+    when(outboundEmailRepository.claim(anyList(), anyString(), any(Instant.class), any(Instant.class)))
+        .thenAnswer(invocation -> {
+          Collection<Long> ids = invocation.getArgument(0);
+          claimed.put(invocation.getArgument(1), ids.stream().map(byId::get).toList());
+          return ids.size();
+        });
+    when(outboundEmailRepository.findByLockedByOrderByIdAsc(anyString()))
+        .thenAnswer(invocation -> claimed.get(invocation.<String>getArgument(0)));
+  }
+
+  @Test
+  void batchIsSentOverOneSmtpConnection() {
+    List<OutboundEmail> emails = new ArrayList<>();
+    LongStream.rangeClosed(1, 20).forEach(id -> emails.add(email(id, "user" + id + "@verifiko.test")));
+    queue(emails, 50);
+
+    worker.pollQueue();
+
+    verify(outboundEmailRepository, timeout(5000)).markSent(eq(LongStream.rangeClosed(1, 20).boxed().toList()),
+        anyString(), any(Instant.class));
+    assertEquals(1, smtpStub.connections.get());
+    assertEquals(20, smtpStub.messages.get());
+  }
+
+  // a rejected recipient only fails its own email, the rest of the batch goes
+  @Test
+  void rejectedRecipientIsRetriedOthersAreSent() {
+    queue(List.of(email(1, "ok1@verifiko.test"), email(2, "bounce@verifiko.test"), email(3, "ok2@verifiko.test")),
+        50);
+
+    worker.pollQueue();
+
+    verify(outboundEmailRepository, timeout(5000)).scheduleRetry(eq(2L), anyString(), eq(1), any(Instant.class),
+        anyString());
+    verify(outboundEmailRepository, timeout(5000)).markSent(eq(List.of(1L, 3L)), anyString(), any(Instant.class));
+    assertEquals(2, smtpStub.messages.get());
+  }
+
+  @Test
+  void smtpDownRetriesWholeBatch() throws IOException {
+    smtpStub.close();
+    OutboundEmail first = email(1, "a@verifiko.test");
+    OutboundEmail second = email(2, "b@verifiko.test");
+    second.setAttempts(2);
+    queue(List.of(first, second), 50);
+
+    worker.pollQueue();
+
+    verify(outboundEmailRepository, timeout(5000)).scheduleRetry(eq(1L), anyString(), eq(1), any(Instant.class),
+        anyString());
+    // third failure, out of attempts
+    verify(outboundEmailRepository, timeout(5000)).markFailed(eq(2L), anyString(), eq(3), anyString(),
+        any(Instant.class));
+    verify(outboundEmailRepository, never()).markSent(anyList(), anyString(), any(Instant.class));
+  }
+
+  // rough throughput check: 500 emails in batches of 50 on 2 threads should be
+  // 10 smtp connections total, not 500
+  @Test
+  void throughputWithConnectionReuse() {
+    worker.shutdown();
+    worker = worker(2, 50);
+    List<OutboundEmail> emails = new ArrayList<>();
+    LongStream.rangeClosed(1, 500).forEach(id -> emails.add(email(id, "user" + id + "@verifiko.test")));
+    queue(emails, 50);
+    AtomicInteger sent = new AtomicInteger();
+    lenient().when(outboundEmailRepository.markSent(anyList(), anyString(), any(Instant.class)))
+        .thenAnswer(invocation -> {
+          sent.addAndGet(invocation.<Collection<Long>>getArgument(0).size());
+          return 0;
+        });
+
+    long start = System.nanoTime();
+    while (sent.get() < 500 && System.nanoTime() - start < 20_000_000_000L) {
+      worker.pollQueue();
+      Thread.onSpinWait();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    assertEquals(500, sent.get());
+    assertEquals(500, smtpStub.messages.get());
+    assertEquals(10, smtpStub.connections.get());
+    assertTrue(seconds < 20);
+    verify(outboundEmailRepository, never()).scheduleRetry(any(), anyString(), anyInt(), any(Instant.class),
+        anyString());
+  }
+
+  // just enough smtp to make JavaMail happy, rejects any recipient with
+  // "bounce" in it
+  static class SmtpStub implements AutoCloseable {
+    final ServerSocket serverSocket;
+    final AtomicInteger connections = new AtomicInteger();
+    final AtomicInteger messages = new AtomicInteger();
+
+    SmtpStub() throws IOException {
+      serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+      Thread acceptor = new Thread(() -> {
+        while (!serverSocket.isClosed()) {
+          try {
+            Socket socket = serverSocket.accept();
+            connections.incrementAndGet();
+            Thread session = new Thread(() -> serve(socket));
+            session.setDaemon(true);
+            session.start();
+          } catch (IOException e) {
+            return;
+          }
+        }
+      });
+      acceptor.setDaemon(true);
+      acceptor.start();
+    }
+
+    int port() {
+      return serverSocket.getLocalPort();
+    }
+
+    private void serve(Socket socket) {
+      try (socket;
+          BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+              StandardCharsets.US_ASCII));
+          OutputStream out = socket.getOutputStream()) {
+        reply(out, "220 stub ESMTP");
+        String line;
+        while ((line = in.readLine()) != null) {
+          String command = line.toUpperCase();
+          if (command.startsWith("EHLO")) {
+            reply(out, "250-stub\r\n250 OK");
+          } else if (command.startsWith("RCPT TO") && command.contains("BOUNCE")) {
+            reply(out, "550 no such user");
+          } else if (command.equals("DATA")) {
+            reply(out, "354 go ahead");
+            while ((line = in.readLine()) != null && !line.equals(".")) {
+              // swallow the message
+            }
+            messages.incrementAndGet();
+            reply(out, "250 queued");
+          } else if (command.equals("QUIT")) {
+            reply(out, "221 bye");
+            return;
+          } else {
+            reply(out, "250 OK");
+          }
+        }
+      } catch (IOException e) {
+        // client went away
+      }
+    }
+
+    private void reply(OutputStream out, String response) throws IOException {
+      out.write((response + "\r\n").getBytes(StandardCharsets.US_ASCII));
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      serverSocket.close();
+    }
+  }
+}
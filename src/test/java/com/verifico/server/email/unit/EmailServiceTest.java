@@ -0,0 +1,82 @@
+package com.verifico.server.email.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.verifico.server.email.EmailService;
+import com.verifico.server.email.EmailTemplateEngine;
+import com.verifico.server.email.OutboundEmail;
+import com.verifico.server.email.OutboundEmailRepository;
+import com.verifico.server.user.User;
+
+@ExtendWith(MockitoExtension.class)
+class EmailServiceTest {
+
+  @Mock
+  OutboundEmailRepository outboundEmailRepository;
+
+  EmailService emailService;
+
+  @BeforeEach
+  void setup() {
+    EmailTemplateEngine templateEngine = new EmailTemplateEngine("classpath:templates/", false);
+    templateEngine.preload();
+    emailService = new EmailService(outboundEmailRepository, templateEngine);
+  }
+
+  @Test
+  void welcomeEmailIsRenderedAndQueued() {
+    User user = new User();
+    user.setUsername("JohnDoe123");
+    user.setEmail("john@verifiko.com");
+
+    emailService.sendWelcomeEmailForv1(user);
+
+    ArgumentCaptor<OutboundEmail> captor = ArgumentCaptor.forClass(OutboundEmail.class);
+    verify(outboundEmailRepository).save(captor.capture());
+    assertEquals("john@verifiko.com", captor.getValue().getRecipient());
+    assertFalse(captor.getValue().getHtmlBody().isBlank());
+    assertNotNull(captor.getValue().getNextAttemptAt());
+  }
+
+  @Test
+  void resetLinkContainsToken() {
+    emailService.changePasswordResetLinkEmailForv1("reset-token-123", "john@verifiko.com");
+
+    ArgumentCaptor<OutboundEmail> captor = ArgumentCaptor.forClass(OutboundEmail.class);
+    verify(outboundEmailRepository).save(captor.capture());
+    assertTrue(captor.getValue().getHtmlBody().contains("reset-token-123"));
+    assertFalse(captor.getValue().getHtmlBody().contains("{{token}}"));
+  }
+
+  @Test
+  void alreadyQueuedReceiptIsNotQueuedAgain() {
+    when(outboundEmailRepository.existsByDedupKey("receipt:1")).thenReturn(true);
+
+    emailService.sendCreditPurchaseReceipt("receipt:1", "john@verifiko.com", "JohnDoe123", 50, 4.99);
+
+    verify(outboundEmailRepository, never()).save(any());
+  }
+
+  @Test
+  void receiptIsQueuedWithDedupKey() {
+    emailService.sendCreditPurchaseReceipt("receipt:2", "john@verifiko.com", "JohnDoe123", 50, 4.99);
+
+    ArgumentCaptor<OutboundEmail> captor = ArgumentCaptor.forClass(OutboundEmail.class);
+    verify(outboundEmailRepository).save(captor.capture());
+    assertEquals("receipt:2", captor.getValue().getDedupKey());
+  }
+}
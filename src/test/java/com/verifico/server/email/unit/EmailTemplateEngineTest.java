@@ -0,0 +1,144 @@
+package com.verifico.server.email.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+
+import com.verifico.server.email.CompiledEmailTemplate;
+import com.verifico.server.email.EmailTemplateEngine;
+
+class EmailTemplateEngineTest {
+
+  @TempDir
+  Path templateDir;
+
+  private static String render(String source, Map<String, String> values) {
+    StringBuilder out = new StringBuilder();
+    CompiledEmailTemplate.parse(source).renderInto(out, values);
+    return out.toString();
+  }
+
+  @Test
+  void placeholdersAreSubstituted() {
+    String html = render("<p>Hi {{username}}, {{ credits }} credits for {{price}}. Bye {{username}}</p>",
+        Map.of("username", "JohnDoe123", "credits", "50", "price", "$4.99"));
+
+    assertEquals("<p>Hi JohnDoe123, 50 credits for $4.99. Bye JohnDoe123</p>", html);
+  }
+
+  // same as String.replace: nothing to replace with, nothing changes
+  @Test
+  void unknownAndUnterminatedPlaceholdersAreLeftAlone() {
+    String html = render("{{a}}{{b}} {{missing}} and {{broken", Map.of("a", "1", "b", "2"));
+
+    assertEquals("12 {{missing}} and {{broken", html);
+  }
+
+  @Test
+  void rendersSameHtmlAsChainedReplace() {
+    EmailTemplateEngine engine = new EmailTemplateEngine("classpath:templates/", false);
+    engine.preload();
+
+    String html = engine.render("emails/changePasswordResetLink4V1.html", Map.of("token", "abc123"));
+
+    assertEquals(legacyRender("emails/changePasswordResetLink4V1.html", "abc123"), html);
+    assertTrue(html.contains("abc123"));
+    assertFalse(html.contains("{{token}}"));
+  }
+
+  @Test
+  void missingTemplateRendersEmpty() {
+    EmailTemplateEngine engine = new EmailTemplateEngine("classpath:templates/", false);
+
+    assertEquals("", engine.render("emails/DoesNotExist.html", Map.of()));
+  }
+
+  @Test
+  void hotReloadPicksUpEditedTemplate() throws IOException {
+    Path template = Files.createDirectories(templateDir.resolve("emails")).resolve("Hello.html");
+    Files.writeString(template, "Hello {{username}}");
+    EmailTemplateEngine engine = new EmailTemplateEngine(templateDir.toUri().toString(), true);
+    engine.preload();
+    assertEquals("Hello John", engine.render("emails/Hello.html", Map.of("username", "John")));
+
+    Files.writeString(template, "Welcome back {{username}}");
+    Files.setLastModifiedTime(template, FileTime.from(Instant.now().plusSeconds(5)));
+
+    assertEquals("Welcome back John", engine.render("emails/Hello.html", Map.of("username", "John")));
+  }
+
+  @Test
+  void withoutHotReloadTemplateIsParsedOnce() throws IOException {
+    Path template = Files.createDirectories(templateDir.resolve("emails")).resolve("Hello.html");
+    Files.writeString(template, "Hello {{username}}");
+    EmailTemplateEngine engine = new EmailTemplateEngine(templateDir.toUri().toString(), false);
+    engine.preload();
+
+    Files.writeString(template, "Welcome back {{username}}");
+    Files.setLastModifiedTime(template, FileTime.from(Instant.now().plusSeconds(5)));
+
+    assertEquals("Hello John", engine.render("emails/Hello.html", Map.of("username", "John")));
+  }
+
+  // rough comparison against the old classpath read + String.replace chain,
+  // allocations are measured per thread so this isn't affected by other tests
+  @Test
+  void allocatesLessThanReplaceChain() {
+    EmailTemplateEngine engine = new EmailTemplateEngine("classpath:templates/", false);
+    engine.preload();
+    String path = "emails/changePasswordResetLink4V1.html";
+    int iterations = 2_000;
+
+    for (int i = 0; i < 200; i++) {
+      engine.render(path, Map.of("token", "token-" + i));
+      legacyRender(path, "token-" + i);
+    }
+
+    long legacyBytes = allocatedBytes(() -> {
+      for (int i = 0; i < iterations; i++) {
+        legacyRender(path, "token-" + i);
+      }
+    });
+    long compiledBytes = allocatedBytes(() -> {
+      for (int i = 0; i < iterations; i++) {
+        engine.render(path, Map.of("token", "token-" + i));
+      }
+    });
+
+    assertTrue(compiledBytes < legacyBytes);
+  }
+
+  private static long allocatedBytes(Runnable work) {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+    work.run();
+    return threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+  }
+
+  // what EmailService used to do for every email
+  private static String legacyRender(String path, String token) {
+    try {
+      ClassPathResource resource = new ClassPathResource("templates/" + path);
+      try (InputStream in = resource.getInputStream()) {
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8).replace("{{token}}", token);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
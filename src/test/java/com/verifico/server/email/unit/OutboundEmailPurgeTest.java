@@ -0,0 +1,125 @@
+package com.verifico.server.email.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+
+import com.verifico.server.email.EmailDeliveryWorker;
+import com.verifico.server.email.OutboundEmailRepository;
+import com.zaxxer.hikari.HikariDataSource;
+
+import jakarta.persistence.EntityManagerFactory;
+
+// the purge is a native query, so run it on a real table (h2) through the
+// repository with its transaction like the app does
+class OutboundEmailPurgeTest {
+
+  private static final Duration OLD = Duration.ofHours(48);
+  private static final Duration RECENT = Duration.ofHours(1);
+
+  HikariDataSource pool;
+  LocalContainerEntityManagerFactoryBean entityManagerFactory;
+  EmailDeliveryWorker worker;
+
+  @BeforeEach
+  void setup() {
+    pool = new HikariDataSource();
+    pool.setPoolName("test-outbound-email-purge");
+    pool.setJdbcUrl("jdbc:h2:mem:outbound-email-purge;DB_CLOSE_DELAY=-1");
+    pool.setMaximumPoolSize(2);
+
+    entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+    entityManagerFactory.setDataSource(pool);
+    entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+    entityManagerFactory.setPackagesToScan("com.verifico.server.email");
+    entityManagerFactory.setJpaPropertyMap(Map.of("hibernate.hbm2ddl.auto", "create-drop",
+        "hibernate.physical_naming_strategy", CamelCaseToUnderscoresNamingStrategy.class.getName()));
+    entityManagerFactory.afterPropertiesSet();
+    EntityManagerFactory emf = entityManagerFactory.getObject();
+
+    JpaRepositoryFactory repositoryFactory = new JpaRepositoryFactory(
+        SharedEntityManagerCreator.createSharedEntityManager(emf));
+    TransactionInterceptor transactions = new TransactionInterceptor(new JpaTransactionManager(emf),
+        new AnnotationTransactionAttributeSource());
+    repositoryFactory.addRepositoryProxyPostProcessor((proxy, info) -> proxy.addAdvice(transactions));
+    OutboundEmailRepository repository = repositoryFactory.getRepository(OutboundEmailRepository.class);
+
+    worker = new EmailDeliveryWorker(repository, new JavaMailSenderImpl(), "noreply@verifiko.test", "Verifiko", 1,
+        50, 3, 120, 30, 3600, 24);
+  }
+
+  @AfterEach
+  void teardown() {
+    worker.shutdown();
+    entityManagerFactory.destroy();
+    pool.close();
+  }
+
+  // failed emails can hold a reset link as much as sent ones
+  @Test
+  void failedEmailsArePurgedAfterRetentionLikeSentOnes() throws SQLException {
+    Instant now = Instant.now();
+    insert(1, "SENT", now.minus(OLD), null, now.minus(OLD));
+    insert(2, "SENT", now.minus(RECENT), null, now.minus(RECENT));
+    insert(3, "FAILED", now.minus(OLD), now.minus(OLD), null);
+    insert(4, "FAILED", now.minus(OLD), now.minus(RECENT), null);
+    // failed before failed_at was recorded
+    insert(5, "FAILED", now.minus(OLD), null, null);
+    insert(6, "PENDING", now.minus(OLD), null, null);
+
+    worker.purgeFinishedEmails();
+
+    assertEquals(List.of(2L, 4L, 6L), remainingIds());
+  }
+
+  private void insert(long id, String status, Instant createdAt, Instant failedAt, Instant sentAt)
+      throws SQLException {
+    try (Connection connection = pool.getConnection();
+        PreparedStatement statement = connection.prepareStatement("INSERT INTO outbound_emails (id, recipient, "
+            + "subject, html_body, status, attempts, next_attempt_at, created_at, failed_at, sent_at) "
+            + "VALUES (?, 'john@verifiko.test', 'Reset your password', '<a href=\"reset\">reset</a>', ?, 0, ?, ?, "
+            + "?, ?)")) {
+      statement.setLong(1, id);
+      statement.setString(2, status);
+      statement.setTimestamp(3, Timestamp.from(createdAt));
+      statement.setTimestamp(4, Timestamp.from(createdAt));
+      statement.setTimestamp(5, failedAt != null ? Timestamp.from(failedAt) : null);
+      statement.setTimestamp(6, sentAt != null ? Timestamp.from(sentAt) : null);
+      statement.executeUpdate();
+    }
+  }
+
+  private List<Long> remainingIds() throws SQLException {
+    List<Long> ids = new ArrayList<>();
+    try (Connection connection = pool.getConnection();
+        PreparedStatement statement = connection.prepareStatement("SELECT id FROM outbound_emails ORDER BY id");
+        ResultSet rows = statement.executeQuery()) {
+      while (rows.next()) {
+        ids.add(rows.getLong(1));
+      }
+    }
+    return ids;
+  }
+}
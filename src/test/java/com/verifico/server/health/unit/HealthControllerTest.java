@@ -0,0 +1,62 @@
+package com.verifico.server.health.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.health.actuate.endpoint.HealthEndpoint;
+import org.springframework.boot.health.actuate.endpoint.IndicatedHealthDescriptor;
+import org.springframework.boot.health.contributor.Status;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import com.verifico.server.health.HealthController;
+
+@ExtendWith(MockitoExtension.class)
+class HealthControllerTest {
+
+  @Mock
+  HealthEndpoint healthEndpoint;
+
+  @Mock
+  IndicatedHealthDescriptor up;
+
+  @Mock
+  IndicatedHealthDescriptor down;
+
+  // anonymous callers share one run of the checks
+  @Test
+  void statusIsReusedWithinTheCacheWindow() {
+    when(up.getStatus()).thenReturn(Status.UP);
+    when(healthEndpoint.health()).thenReturn(up);
+    HealthController controller = new HealthController(healthEndpoint, 60_000);
+
+    for (int i = 0; i < 10; i++) {
+      ResponseEntity<Map<String, String>> response = controller.healthString();
+      assertEquals(HttpStatus.OK, response.getStatusCode());
+      assertEquals("up", response.getBody().get("status"));
+    }
+    verify(healthEndpoint, times(1)).health();
+  }
+
+  @Test
+  void expiredStatusIsCheckedAgain() throws Exception {
+    when(up.getStatus()).thenReturn(Status.UP);
+    when(down.getStatus()).thenReturn(Status.DOWN);
+    when(healthEndpoint.health()).thenReturn(up, down);
+    HealthController controller = new HealthController(healthEndpoint, 50);
+
+    assertEquals(HttpStatus.OK, controller.healthString().getStatusCode());
+    Thread.sleep(100);
+
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE, controller.healthString().getStatusCode());
+    verify(healthEndpoint, times(2)).health();
+  }
+}
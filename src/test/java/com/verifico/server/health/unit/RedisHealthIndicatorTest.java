@@ -0,0 +1,108 @@
+package com.verifico.server.health.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.Status;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.verifico.server.health.RedisHealthIndicator;
+
+@ExtendWith(MockitoExtension.class)
+class RedisHealthIndicatorTest {
+
+  @Mock
+  StringRedisTemplate redisTemplate;
+
+  RedisHealthIndicator indicator;
+
+  @BeforeEach
+  void setup() {
+    indicator = new RedisHealthIndicator(redisTemplate, 200);
+  }
+
+  @AfterEach
+  void cleanup() {
+    indicator.shutdown();
+  }
+
+  @Test
+  void pongIsUp() {
+    when(redisTemplate.execute(anyCallback())).thenReturn("PONG");
+
+    Health health = indicator.health();
+
+    assertEquals(Status.UP, health.getStatus());
+    assertEquals("PONG", health.getDetails().get("ping"));
+  }
+
+  // redis down shouldn't make the pod unready, everything has a local fallback
+  @Test
+  void unreachableRedisIsDegradedNotDown() {
+    when(redisTemplate.execute(anyCallback()))
+        .thenThrow(new RedisConnectionFailureException("Unable to connect to Redis"));
+
+    Health health = indicator.health();
+
+    assertEquals(RedisHealthIndicator.DEGRADED, health.getStatus());
+    assertEquals(RedisConnectionFailureException.class.getName() + ": Unable to connect to Redis",
+        health.getDetails().get("error"));
+  }
+
+  // a hanging redis answers within the timeout instead of lettuce's 60s
+  @Test
+  void hangingRedisTimesOut() {
+    when(redisTemplate.execute(anyCallback())).thenAnswer(invocation -> {
+      Thread.sleep(5_000);
+      return "PONG";
+    });
+
+    long start = System.currentTimeMillis();
+    Health health = indicator.health();
+
+    assertEquals(RedisHealthIndicator.DEGRADED, health.getStatus());
+    assertEquals("no reply within 200ms", health.getDetails().get("error"));
+    assertTrue(System.currentTimeMillis() - start < 2_000);
+  }
+
+  // polled faster than a hung redis answers: still one ping, no queue of them
+  // building up behind it
+  @Test
+  void pendingPingIsSharedNotQueued() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    when(redisTemplate.execute(anyCallback())).thenAnswer(invocation -> {
+      release.await();
+      return "PONG";
+    });
+
+    for (int i = 0; i < 5; i++) {
+      assertEquals(RedisHealthIndicator.DEGRADED, indicator.health().getStatus());
+    }
+    verify(redisTemplate, times(1)).execute(anyCallback());
+
+    // once it answers the next check pings again
+    release.countDown();
+    Thread.sleep(100);
+    assertEquals(Status.UP, indicator.health().getStatus());
+    verify(redisTemplate, times(2)).execute(anyCallback());
+  }
+
+  private static RedisCallback<String> anyCallback() {
+    return any();
+  }
+}
@@ -0,0 +1,153 @@
+package com.verifico.server.outbox.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+
+import com.verifico.server.outbox.OutboxEvent;
+import com.verifico.server.outbox.OutboxEventRepository;
+import com.verifico.server.outbox.OutboxEventType;
+import com.verifico.server.outbox.OutboxPublisher;
+import com.verifico.server.outbox.OutboxRelay;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxRelayTest {
+
+  @Mock
+  OutboxEventRepository outboxEventRepository;
+
+  @Mock
+  OutboxPublisher emailPublisher;
+
+  @Mock
+  OutboxPublisher analyticsPublisher;
+
+  OutboxRelay relay;
+
+  @BeforeEach
+  void setup() {
+    when(emailPublisher.type()).thenReturn(OutboxEventType.PAYMENT_RECEIPT_EMAIL);
+    when(analyticsPublisher.type()).thenReturn(OutboxEventType.ANALYTICS_EVENT);
+    // batches of 10, 3 attempts max
+    relay = new OutboxRelay(outboxEventRepository, List.of(emailPublisher, analyticsPublisher), 10, 5, 3, 60, 5,
+        3600, 3);
+  }
+
+  private OutboxEvent event(long id, OutboxEventType type, int attempts) {
+    OutboxEvent event = new OutboxEvent();
+    event.setId(id);
+    event.setType(type);
+    event.setAggregateId("42");
+    event.setPayload("{}");
+    event.setAttempts(attempts);
+    return event;
+  }
+
+  private void claimable(List<OutboxEvent> events) {
+    List<Long> ids = events.stream().map(OutboxEvent::getId).toList();
+    when(outboxEventRepository.findDueIds(any(Instant.class), any(Pageable.class))).thenReturn(ids);
+    when(outboxEventRepository.claim(eq(ids), anyString(), any(Instant.class), any(Instant.class)))
+        .thenReturn(ids.size());
+    when(outboxEventRepository.findByLockedByOrderByIdAsc(anyString())).thenReturn(events);
+  }
+
+  // whole batch: one claim, one publish call per type, one update to mark it
+  @SuppressWarnings("unchecked")
+  @Test
+  void publishesBatchGroupedByTypeAndMarksItInOneUpdate() {
+    OutboxEvent receipt = event(1, OutboxEventType.PAYMENT_RECEIPT_EMAIL, 0);
+    OutboxEvent analytics1 = event(2, OutboxEventType.ANALYTICS_EVENT, 0);
+    OutboxEvent analytics2 = event(3, OutboxEventType.ANALYTICS_EVENT, 0);
+    claimable(List.of(receipt, analytics1, analytics2));
+    when(emailPublisher.publish(List.of(receipt))).thenReturn(Map.of());
+    when(analyticsPublisher.publish(List.of(analytics1, analytics2))).thenReturn(Map.of());
+
+    relay.relay();
+
+    ArgumentCaptor<List<Long>> published = ArgumentCaptor.forClass(List.class);
+    verify(outboxEventRepository).markPublished(published.capture(), anyString(), any(Instant.class));
+    assertEquals(List.of(1L, 2L, 3L), published.getValue().stream().sorted().toList());
+  }
+
+  // a failed receipt is retried later, the rest of the batch still counts as
+  // published
+  @SuppressWarnings("unchecked")
+  @Test
+  void failedEventsAreRetriedWithBackoff() {
+    OutboxEvent receipt = event(1, OutboxEventType.PAYMENT_RECEIPT_EMAIL, 0);
+    OutboxEvent analytics = event(2, OutboxEventType.ANALYTICS_EVENT, 0);
+    claimable(List.of(receipt, analytics));
+    when(emailPublisher.publish(List.of(receipt))).thenReturn(Map.of(1L, "smtp down"));
+    when(analyticsPublisher.publish(List.of(analytics))).thenReturn(Map.of());
+
+    Instant before = Instant.now();
+    relay.relay();
+
+    verify(outboxEventRepository).markPublished(eq(List.of(2L)), anyString(), any(Instant.class));
+    ArgumentCaptor<Instant> nextAttempt = ArgumentCaptor.forClass(Instant.class);
+    verify(outboxEventRepository).scheduleRetry(eq(1L), anyString(), eq(1), nextAttempt.capture(),
+        eq("smtp down"));
+    // 5s base backoff +/- 20%
+    assertTrue(nextAttempt.getValue().isAfter(before.plusSeconds(3)));
+    verify(outboxEventRepository, never()).markFailed(any(), anyString(), anyInt(), anyString());
+  }
+
+  @Test
+  void publisherThrowingFailsOnlyItsOwnGroup() {
+    OutboxEvent receipt = event(1, OutboxEventType.PAYMENT_RECEIPT_EMAIL, 0);
+    OutboxEvent analytics = event(2, OutboxEventType.ANALYTICS_EVENT, 0);
+    claimable(List.of(receipt, analytics));
+    when(emailPublisher.publish(List.of(receipt))).thenReturn(Map.of());
+    when(analyticsPublisher.publish(List.of(analytics))).thenThrow(new IllegalStateException("redis down"));
+
+    relay.relay();
+
+    verify(outboxEventRepository).markPublished(eq(List.of(1L)), anyString(), any(Instant.class));
+    verify(outboxEventRepository).scheduleRetry(eq(2L), anyString(), eq(1), any(Instant.class),
+        eq("IllegalStateException: redis down"));
+  }
+
+  @Test
+  void givesUpAfterMaxAttempts() {
+    OutboxEvent receipt = event(1, OutboxEventType.PAYMENT_RECEIPT_EMAIL, 2);
+    claimable(List.of(receipt));
+    when(emailPublisher.publish(List.of(receipt))).thenReturn(Map.of(1L, "mailbox unavailable"));
+
+    relay.relay();
+
+    verify(outboxEventRepository).markFailed(eq(1L), anyString(), eq(3), eq("mailbox unavailable"));
+    verify(outboxEventRepository, never()).markPublished(anyList(), anyString(), any(Instant.class));
+  }
+
+  // another replica claimed everything between our select and our update
+  @Test
+  void nothingPublishedWhenClaimIsLost() {
+    when(outboxEventRepository.findDueIds(any(Instant.class), any(Pageable.class))).thenReturn(List.of(1L, 2L));
+    when(outboxEventRepository.claim(anyList(), anyString(), any(Instant.class), any(Instant.class))).thenReturn(0);
+
+    relay.relay();
+
+    verify(outboxEventRepository, never()).findByLockedByOrderByIdAsc(anyString());
+    verify(emailPublisher, never()).publish(anyList());
+    verify(analyticsPublisher, never()).publish(anyList());
+  }
+}
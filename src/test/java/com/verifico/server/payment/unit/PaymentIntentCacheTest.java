@@ -0,0 +1,95 @@
+package com.verifico.server.payment.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import com.verifico.server.payment.PaymentIntentCache;
+import com.verifico.server.payment.dto.PaymentIntentResponse;
+
+@ExtendWith(MockitoExtension.class)
+class PaymentIntentCacheTest {
+
+  @Mock
+  StringRedisTemplate redisTemplate;
+
+  @Mock
+  ValueOperations<String, String> valueOperations;
+
+  PaymentIntentCache cache;
+
+  @BeforeEach
+  void setup() {
+    cache = new PaymentIntentCache(redisTemplate, 15);
+  }
+
+  @Test
+  void encodedValuesDecodeToTheSameResponse() {
+    PaymentIntentResponse response = new PaymentIntentResponse("pi_123_secret_abc", "pi_123");
+
+    assertEquals("1|17|pi_123_secret_abcpi_123", PaymentIntentCache.encode(response));
+    assertEquals(response, PaymentIntentCache.decode(PaymentIntentCache.encode(response)));
+  }
+
+  // the length prefix means delimiters inside the secret don't matter
+  @Test
+  void secretContainingDelimitersRoundTrips() {
+    PaymentIntentResponse response = new PaymentIntentResponse("odd|secret,with|pipes", "pi_1");
+
+    assertEquals(response, PaymentIntentCache.decode(PaymentIntentCache.encode(response)));
+  }
+
+  @Test
+  void unreadableValuesAreMisses() {
+    // old "secret,id" format, unknown version, bad length, nothing left for the id
+    assertNull(PaymentIntentCache.decode("pi_test_secret,pi_test_id"));
+    assertNull(PaymentIntentCache.decode("2|3|abcpi_1"));
+    assertNull(PaymentIntentCache.decode("1|x|abcpi_1"));
+    assertNull(PaymentIntentCache.decode("1|7|abcpi_1"));
+    assertNull(PaymentIntentCache.decode("1|3"));
+  }
+
+  @Test
+  void getReadsOneKey() {
+    when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    when(valueOperations.get("payment_idempotency:key")).thenReturn("1|6|secretpi_9");
+
+    assertEquals(new PaymentIntentResponse("secret", "pi_9"), cache.get("key"));
+  }
+
+  @Test
+  void putWritesEncodedValueWithTtl() {
+    when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
+    cache.put("key", new PaymentIntentResponse("secret", "pi_9"));
+
+    verify(valueOperations).set("payment_idempotency:key", "1|6|secretpi_9", Duration.ofMinutes(15));
+  }
+
+  // redis down is just a miss, payment creation carries on without the cache
+  @Test
+  void redisFailuresAreMisses() {
+    when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    when(valueOperations.get(anyString())).thenThrow(new RedisConnectionFailureException("redis down"));
+    doThrow(new RedisConnectionFailureException("redis down"))
+        .when(valueOperations).set(anyString(), anyString(), any(Duration.class));
+
+    assertNull(cache.get("key"));
+    cache.put("key", new PaymentIntentResponse("secret", "pi_9"));
+  }
+}
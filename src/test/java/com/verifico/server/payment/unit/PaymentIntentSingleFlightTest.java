@@ -0,0 +1,178 @@
+package com.verifico.server.payment.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.stripe.exception.ApiConnectionException;
+import com.verifico.server.payment.PaymentIntentSingleFlight;
+import com.verifico.server.payment.dto.PaymentIntentResponse;
+
+@ExtendWith(MockitoExtension.class)
+class PaymentIntentSingleFlightTest {
+
+  @Mock
+  StringRedisTemplate redisTemplate;
+
+  @Mock
+  ValueOperations<String, String> valueOperations;
+
+  PaymentIntentSingleFlight singleFlight;
+
+  @BeforeEach
+  void setup() {
+    singleFlight = new PaymentIntentSingleFlight(redisTemplate, 10_000, 300);
+  }
+
+  // a burst of requests with the same key only hits stripe once and they all
+  // get the leader's response back
+  @Test
+  void concurrentCallersShareOneUpstreamCall() throws Exception {
+    when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    when(valueOperations.setIfAbsent(eq("payment_intent_lease:double-click"), anyString(), any(Duration.class)))
+        .thenReturn(true);
+
+    int callers = 8;
+    AtomicInteger upstreamCalls = new AtomicInteger();
+    CountDownLatch releaseUpstream = new CountDownLatch(1);
+    PaymentIntentResponse stripeResponse = new PaymentIntentResponse("pi_secret", "pi_123");
+
+    PaymentIntentSingleFlight patient = new PaymentIntentSingleFlight(redisTemplate, 10_000, 5_000);
+    ExecutorService pool = Executors.newFixedThreadPool(callers);
+    CountDownLatch started = new CountDownLatch(callers);
+    List<Future<PaymentIntentResponse>> results = new ArrayList<>();
+
+    try {
+      for (int i = 0; i < callers; i++) {
+        results.add(pool.submit(() -> {
+          started.countDown();
+          return patient.execute("double-click", () -> {
+            upstreamCalls.incrementAndGet();
+            awaitQuietly(releaseUpstream);
+            return stripeResponse;
+          });
+        }));
+      }
+
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+      // give the followers a moment to pile up behind the leader
+      Thread.sleep(100);
+      releaseUpstream.countDown();
+
+      for (Future<PaymentIntentResponse> result : results) {
+        assertSame(stripeResponse, result.get(5, TimeUnit.SECONDS));
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    assertEquals(1, upstreamCalls.get());
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Test
+  void failuresArePassedOnAndKeyCanBeRetried() throws Exception {
+    when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+
+    assertThrows(ApiConnectionException.class, () -> singleFlight.execute("retry-key", () -> {
+      throw new ApiConnectionException("stripe unreachable");
+    }));
+
+    // nothing left in flight, the next attempt runs again
+    PaymentIntentResponse response = singleFlight.execute("retry-key",
+        () -> new PaymentIntentResponse("pi_secret", "pi_123"));
+    assertEquals("pi_123", response.paymentIntentId());
+
+    // the lease is given back (compare and delete) after each attempt
+    verify(redisTemplate, times(2)).execute(any(RedisScript.class), anyList(), anyString());
+  }
+
+  // redis being down shouldn't stop people paying, stripe's idempotency key
+  // still protects against a double charge
+  @Test
+  void redisDownStillCallsStripe() throws Exception {
+    when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class)))
+        .thenThrow(new RedisConnectionFailureException("redis down"));
+    when(redisTemplate.execute(any(RedisScript.class), anyList(), anyString()))
+        .thenThrow(new RedisConnectionFailureException("redis down"));
+
+    PaymentIntentResponse response = singleFlight.execute("key",
+        () -> new PaymentIntentResponse("pi_secret", "pi_123"));
+
+    assertEquals("pi_123", response.paymentIntentId());
+  }
+
+  // another replica holds the lease for too long, give up with a 409 instead of
+  // making a second stripe call
+  @Test
+  void leaseHeldByAnotherReplicaTimesOut() {
+    when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(false);
+    when(redisTemplate.hasKey("payment_intent_lease:busy-key")).thenReturn(true);
+
+    AtomicInteger upstreamCalls = new AtomicInteger();
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> singleFlight.execute("busy-key", () -> {
+          upstreamCalls.incrementAndGet();
+          return new PaymentIntentResponse("pi_secret", "pi_123");
+        }));
+
+    assertEquals(HttpStatus.CONFLICT, ex.getStatusCode());
+    assertEquals(0, upstreamCalls.get());
+    verify(redisTemplate, never()).execute(any(RedisScript.class), anyList(), anyString());
+  }
+
+  // once the other replica is done we go ahead, in the service that means we
+  // pick up its cached response
+  @Test
+  void runsOnceOtherReplicaReleasesLease() throws Exception {
+    when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(false);
+    when(redisTemplate.hasKey("payment_intent_lease:key")).thenReturn(true, false);
+
+    PaymentIntentResponse response = singleFlight.execute("key",
+        () -> new PaymentIntentResponse("cached_secret", "pi_cached"));
+
+    assertEquals("pi_cached", response.paymentIntentId());
+  }
+}
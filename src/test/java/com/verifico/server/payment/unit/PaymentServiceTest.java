@@ -12,6 +12,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
@@ -30,8 +31,6 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.ValueOperations;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
@@ -43,16 +42,24 @@ import com.stripe.model.Event;
 import com.stripe.model.EventDataObjectDeserializer;
 import com.stripe.model.PaymentIntent;
 import com.stripe.net.Webhook;
+import com.verifico.server.auth.jwt.AuthenticatedUser;
 import com.verifico.server.credit.CreditService;
-import com.verifico.server.email.EmailService;
 import com.verifico.server.payment.CreditsPurchasedAmount;
 import com.verifico.server.payment.Payment;
+import com.verifico.server.payment.PaymentIntentCache;
+import com.verifico.server.payment.PaymentIntentSingleFlight;
 import com.verifico.server.payment.PaymentRepository;
 import com.verifico.server.payment.PaymentService;
+import com.verifico.server.payment.PaymentSettlementService;
 import com.verifico.server.payment.PaymentStatus;
+import com.verifico.server.payment.StripeGateway;
 import com.verifico.server.payment.dto.PaymentIntentResponse;
 import com.verifico.server.payment.dto.PurchaseCreditsRequest;
 import com.verifico.server.payment.exception.WebhookProcessingException;
+import com.verifico.server.outbox.OutboxEventType;
+import com.verifico.server.outbox.OutboxService;
+import com.verifico.server.outbox.dto.AnalyticsEventPayload;
+import com.verifico.server.outbox.dto.PaymentReceiptPayload;
 import com.verifico.server.user.User;
 import com.verifico.server.user.UserRepository;
 
@@ -66,10 +73,10 @@ class PaymentServiceTest {
   UserRepository userRepository;
 
   @Mock
-  StringRedisTemplate redisTemplate;
+  PaymentIntentCache paymentIntentCache;
 
   @Mock
-  ValueOperations<String, String> valueOperations;
+  StripeGateway stripeGateway;
 
   @Mock
   CreditService creditService;
@@ -81,7 +88,10 @@ class PaymentServiceTest {
   Authentication authentication;
 
   @Mock
-  EmailService emailService;
+  OutboxService outboxService;
+
+  @Mock
+  PaymentIntentSingleFlight paymentIntentSingleFlight;
 
   @InjectMocks
   PaymentService paymentService;
@@ -89,8 +99,11 @@ class PaymentServiceTest {
   @BeforeEach
   void setup() {
     SecurityContextHolder.setContext(securityContext);
-    ReflectionTestUtils.setField(paymentService, "stripeKey", "sk_test_fake_key");
     ReflectionTestUtils.setField(paymentService, "webhookSecret", "whsec_fake_secret_for_tests");
+    // real settlement logic on top of the mocked repos, that's what the webhook
+    // tests below are exercising
+    ReflectionTestUtils.setField(paymentService, "paymentSettlementService",
+        new PaymentSettlementService(paymentRepository, creditService, outboxService));
   }
 
   private User mockUser() {
@@ -102,6 +115,12 @@ class PaymentServiceTest {
     return user;
   }
 
+  // no other request in flight, so the call just runs straight through
+  private void passThroughSingleFlight() throws Exception {
+    when(paymentIntentSingleFlight.execute(anyString(), any()))
+        .thenAnswer(invocation -> invocation.<PaymentIntentSingleFlight.StripeCall<?>>getArgument(1).call());
+  }
+
   private PurchaseCreditsRequest validPurchaseRequest() {
     PurchaseCreditsRequest request = new PurchaseCreditsRequest();
     request.setAmount(CreditsPurchasedAmount.BUY_25_CREDITS);
@@ -125,19 +144,20 @@ class PaymentServiceTest {
     verify(paymentRepository, never()).save(any());
   }
 
-  // 2. Authenticated user not found in DB
+  // 2. Principal isn't one of ours (not set by the jwt filter), user id is
+  // unknown so treat it as unauthenticated, we never look the user up by name
   @Test
-  void authenticatedUserNotFoundInDB() {
+  void principalWithoutUserIdIsUnauthorized() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.empty());
+    when(authentication.getPrincipal()).thenReturn("JohnDoe123");
 
     ResponseStatusException ex = assertThrows(ResponseStatusException.class,
         () -> paymentService.paymentIntent(null, "idempotency-key"));
 
-    assertEquals(HttpStatus.NOT_FOUND, ex.getStatusCode());
-    assertEquals("User not found!", ex.getReason());
+    assertEquals(HttpStatus.UNAUTHORIZED, ex.getStatusCode());
+    assertEquals("Authenticated user not found!", ex.getReason());
 
+    verify(userRepository, never()).findByUsername(any());
     verify(paymentRepository, never()).save(any());
   }
 
@@ -145,10 +165,7 @@ class PaymentServiceTest {
   @Test
   void invalidQuantityWhenCreatingPaymentIntent() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
-
-    User user = mockUser();
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     PurchaseCreditsRequest request = validPurchaseRequest();
     request.setQuantity(5);
@@ -160,21 +177,17 @@ class PaymentServiceTest {
     assertEquals("Quantity must be 1", ex.getReason());
 
     verify(paymentRepository, never()).save(any());
+    verifyNoInteractions(paymentIntentSingleFlight);
   }
 
-  // 4. Idempotency key reuse: return cached clientSecret and paymentIntentId
+  // 4. Idempotency key reuse: answered straight from the cache, no db lookup
+  // and no stripe call
   @Test
   void idempotencyKeyReusesCache() throws Exception {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
-
-    User user = mockUser();
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
-    String cachedValue = "pi_test_secret,pi_test_id";
-
-    when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-    when(valueOperations.get("payment_idempotency:cached-key")).thenReturn(cachedValue);
+    when(paymentIntentCache.get("cached-key")).thenReturn(new PaymentIntentResponse("pi_test_secret", "pi_test_id"));
 
     PaymentIntentResponse response = paymentService.paymentIntent(validPurchaseRequest(), "cached-key");
 
@@ -182,26 +195,36 @@ class PaymentServiceTest {
     assertEquals("pi_test_secret", response.clientSecret());
     assertEquals("pi_test_id", response.paymentIntentId());
 
-    verify(paymentRepository, never()).save(any());
+    verifyNoInteractions(paymentRepository, paymentIntentSingleFlight);
   }
 
-  // 5. Redis cache contains malformed value (missing comma) ->
-  // ArrayIndexOutOfBoundsException
+  // 5. Cache miss (expired, or an entry we couldn't decode) but the intent was
+  // already created -> retrieve it from stripe and re-cache, never create a
+  // second one
   @Test
-  void malformedRedisCacheMissingComma() {
+  void cacheMissReusesStoredPaymentIntent() throws Exception {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
+    passThroughSingleFlight();
 
-    User user = mockUser();
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    Payment payment = new Payment();
+    payment.setPaymentIntentId("pi_existing");
+    when(paymentRepository.findByIdempotencyKey("bad-key")).thenReturn(Optional.of(payment));
 
-    when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-    when(valueOperations.get("payment_idempotency:bad-key")).thenReturn("malformed_value_no_comma");
+    PaymentIntent intent = mock(PaymentIntent.class);
+    when(intent.getClientSecret()).thenReturn("pi_existing_secret");
+    when(intent.getId()).thenReturn("pi_existing");
 
-    PurchaseCreditsRequest request = validPurchaseRequest();
+    when(stripeGateway.retrievePaymentIntent("pi_existing")).thenReturn(intent);
+
+    PaymentIntentResponse response = paymentService.paymentIntent(validPurchaseRequest(), "bad-key");
 
-    assertThrows(ArrayIndexOutOfBoundsException.class,
-        () -> paymentService.paymentIntent(request, "bad-key"));
+    assertEquals("pi_existing_secret", response.clientSecret());
+    assertEquals("pi_existing", response.paymentIntentId());
+
+    verify(stripeGateway, never()).createPaymentIntent(any(), any());
+    verify(paymentIntentCache).put("bad-key", new PaymentIntentResponse("pi_existing_secret", "pi_existing"));
+    verify(paymentRepository, never()).save(any());
   }
 
   // Helper method tests:
@@ -301,7 +324,7 @@ class PaymentServiceTest {
       payment.setStatus(PaymentStatus.PENDING);
       payment.setCreditsAwarded(false);
 
-      when(paymentRepository.findByPaymentIntentId("pi_test_123"))
+      when(paymentRepository.findByPaymentIntentIdForUpdate("pi_test_123"))
           .thenReturn(Optional.of(payment));
 
       paymentService.processWebhook("fake-payload", "fake-signature");
@@ -311,6 +334,9 @@ class PaymentServiceTest {
 
       verify(paymentRepository).save(payment);
       verify(creditService).addPurchasedCredits(user.getId(), 50);
+      // no amount on this payment so no receipt, analytics only
+      verify(outboxService).append(eq(OutboxEventType.ANALYTICS_EVENT), eq("42"), any(AnalyticsEventPayload.class));
+      verify(outboxService, never()).append(eq(OutboxEventType.PAYMENT_RECEIPT_EMAIL), any(), any());
     }
   }
 
@@ -340,7 +366,7 @@ class PaymentServiceTest {
       payment.setStatus(PaymentStatus.SUCCEEDED);
       payment.setCreditsAwarded(true);
 
-      when(paymentRepository.findByPaymentIntentId("pi_test_123"))
+      when(paymentRepository.findByPaymentIntentIdForUpdate("pi_test_123"))
           .thenReturn(Optional.of(payment));
 
       paymentService.processWebhook("bomboo", "claat");
@@ -379,7 +405,7 @@ class PaymentServiceTest {
       payment.setStatus(PaymentStatus.PENDING);
       payment.setCreditsAwarded(true);
 
-      when(paymentRepository.findByPaymentIntentId("pi_test_123"))
+      when(paymentRepository.findByPaymentIntentIdForUpdate("pi_test_123"))
           .thenReturn(Optional.of(payment));
 
       paymentService.processWebhook("bomboo", "claat");
@@ -416,7 +442,7 @@ class PaymentServiceTest {
       payment.setStatus(PaymentStatus.PENDING);
       payment.setCreditsAwarded(false);
 
-      when(paymentRepository.findByPaymentIntentId("pi_test_123"))
+      when(paymentRepository.findByPaymentIntentIdForUpdate("pi_test_123"))
           .thenReturn(Optional.of(payment));
 
       // Simulate failure in credit awarding
@@ -433,6 +459,8 @@ class PaymentServiceTest {
       verify(paymentRepository, never()).save(any(Payment.class));
       // creditService called but threw
       verify(creditService).addPurchasedCredits(user.getId(), 50);
+      // nothing queued either, the receipt can't go out for a rolled back payment
+      verifyNoInteractions(outboxService);
     }
   }
 
@@ -462,7 +490,7 @@ class PaymentServiceTest {
       payment.setStatus(PaymentStatus.PENDING);
       payment.setCreditsAwarded(false);
 
-      when(paymentRepository.findByPaymentIntentId("pi_fail_456"))
+      when(paymentRepository.findByPaymentIntentIdForUpdate("pi_fail_456"))
           .thenReturn(Optional.of(payment));
 
       paymentService.processWebhook("fake-payload", "fake-signature");
@@ -495,7 +523,7 @@ class PaymentServiceTest {
       payment.setPaymentIntentId("pi_fail_456");
       payment.setStatus(PaymentStatus.FAILED);
 
-      when(paymentRepository.findByPaymentIntentId("pi_fail_456"))
+      when(paymentRepository.findByPaymentIntentIdForUpdate("pi_fail_456"))
           .thenReturn(Optional.of(payment));
 
       paymentService.processWebhook("fake-payload", "fake-signature");
@@ -543,7 +571,7 @@ class PaymentServiceTest {
       webhookMock.when(() -> Webhook.constructEvent(anyString(), anyString(), anyString()))
           .thenReturn(mockEvent);
 
-      when(paymentRepository.findByPaymentIntentId("pi_missing_789"))
+      when(paymentRepository.findByPaymentIntentIdForUpdate("pi_missing_789"))
           .thenReturn(Optional.empty());
 
       WebhookProcessingException ex = assertThrows(WebhookProcessingException.class,
@@ -560,4 +588,42 @@ class PaymentServiceTest {
     }
   }
 
+  // reconciler tests (payments whose webhook never arrived):
+  // 1. stripe says succeeded -> same handling as the succeeded webhook
+  @Test
+  void reconcile_succeededIntent_awardsCredits() {
+    PaymentIntent intent = mock(PaymentIntent.class);
+    when(intent.getId()).thenReturn("pi_lost_webhook");
+    when(intent.getStatus()).thenReturn("succeeded");
+
+    User user = mockUser();
+    Payment payment = new Payment();
+    payment.setId(7L);
+    payment.setPaymentIntentId("pi_lost_webhook");
+    payment.setPurchasedPackage(CreditsPurchasedAmount.BUY_25_CREDITS);
+    payment.setAmountInCents(399L);
+    payment.setTransactionInitiator(user);
+    payment.setStatus(PaymentStatus.PENDING);
+    payment.setCreditsAwarded(false);
+    when(paymentRepository.findByPaymentIntentIdForUpdate("pi_lost_webhook")).thenReturn(Optional.of(payment));
+
+    assertTrue(paymentService.reconcilePaymentIntent(intent));
+
+    assertEquals(PaymentStatus.SUCCEEDED, payment.getStatus());
+    verify(creditService).addPurchasedCredits(user.getId(), 25);
+    // receipt is queued in the same transaction, sent later by the outbox relay
+    verify(outboxService).append(OutboxEventType.PAYMENT_RECEIPT_EMAIL, "7",
+        new PaymentReceiptPayload(7L, 1L, "johndoe2@gmail.com", "JohnDoe123", 25, 399L));
+  }
+
+  // 2. user never paid (no error on the intent) -> leave it pending
+  @Test
+  void reconcile_unpaidIntent_staysPending() {
+    PaymentIntent intent = mock(PaymentIntent.class);
+    when(intent.getStatus()).thenReturn("requires_payment_method");
+
+    assertFalse(paymentService.reconcilePaymentIntent(intent));
+
+    verifyNoInteractions(paymentRepository, creditService);
+  }
 }
@@ -0,0 +1,129 @@
+package com.verifico.server.payment.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.model.PaymentIntent;
+import com.verifico.server.common.util.CircuitBreaker;
+import com.verifico.server.payment.PaymentRepository;
+import com.verifico.server.payment.PaymentService;
+import com.verifico.server.payment.PendingPaymentReconciler;
+import com.verifico.server.payment.StripeGateway;
+
+@ExtendWith(MockitoExtension.class)
+class PendingPaymentReconcilerTest {
+
+  @Mock
+  PaymentRepository paymentRepository;
+
+  @Mock
+  StripeGateway stripeGateway;
+
+  @Mock
+  PaymentService paymentService;
+
+  PendingPaymentReconciler reconciler;
+
+  @BeforeEach
+  void setup() {
+    // 2 stripe calls at a time, batches of 2
+    reconciler = new PendingPaymentReconciler(paymentRepository, stripeGateway, paymentService, 2, 2, 10, 30, 7);
+    when(stripeGateway.getCircuitState()).thenReturn(CircuitBreaker.State.CLOSED);
+  }
+
+  @AfterEach
+  void teardown() {
+    reconciler.shutdown();
+  }
+
+  // keyset paging: each batch starts after the last intent id of the previous
+  // one, and a short batch means we're done
+  @Test
+  void walksPendingPaymentsInKeysetBatches() throws Exception {
+    when(paymentRepository.findStalePendingIntentIds(eq(""), any(Instant.class), any(Instant.class),
+        any(Pageable.class))).thenReturn(List.of("pi_1", "pi_2"));
+    when(paymentRepository.findStalePendingIntentIds(eq("pi_2"), any(Instant.class), any(Instant.class),
+        any(Pageable.class))).thenReturn(List.of("pi_3"));
+
+    PaymentIntent succeeded = mock(PaymentIntent.class);
+    when(stripeGateway.retrievePaymentIntent(anyString())).thenReturn(succeeded);
+    when(paymentService.reconcilePaymentIntent(succeeded)).thenReturn(true);
+
+    reconciler.reconcileStalePayments();
+
+    verify(stripeGateway).retrievePaymentIntent("pi_1");
+    verify(stripeGateway).retrievePaymentIntent("pi_2");
+    verify(stripeGateway).retrievePaymentIntent("pi_3");
+    verify(paymentService, times(3)).reconcilePaymentIntent(succeeded);
+    verify(paymentRepository, times(2)).findStalePendingIntentIds(anyString(), any(Instant.class),
+        any(Instant.class), any(Pageable.class));
+  }
+
+  @Test
+  void stripeErrorForOneIntentDoesntStopTheRest() throws Exception {
+    when(paymentRepository.findStalePendingIntentIds(eq(""), any(Instant.class), any(Instant.class),
+        any(Pageable.class))).thenReturn(List.of("pi_broken", "pi_ok"));
+
+    PaymentIntent succeeded = mock(PaymentIntent.class);
+    when(stripeGateway.retrievePaymentIntent("pi_broken")).thenThrow(new ApiConnectionException("timeout"));
+    when(stripeGateway.retrievePaymentIntent("pi_ok")).thenReturn(succeeded);
+
+    reconciler.reconcileStalePayments();
+
+    // pi_broken is still PENDING so the next run picks it up again
+    verify(paymentService).reconcilePaymentIntent(succeeded);
+  }
+
+  // never more stripe calls in flight than the configured concurrency
+  @Test
+  void stripeLookupsAreBoundedInParallel() throws Exception {
+    reconciler.shutdown();
+    reconciler = new PendingPaymentReconciler(paymentRepository, stripeGateway, paymentService, 2, 6, 10, 30, 7);
+    when(paymentRepository.findStalePendingIntentIds(eq(""), any(Instant.class), any(Instant.class),
+        any(Pageable.class))).thenReturn(List.of("pi_1", "pi_2", "pi_3", "pi_4", "pi_5"));
+
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    PaymentIntent processing = mock(PaymentIntent.class);
+    when(stripeGateway.retrievePaymentIntent(anyString())).thenAnswer(invocation -> {
+      maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+      Thread.sleep(50);
+      inFlight.decrementAndGet();
+      return processing;
+    });
+
+    reconciler.reconcileStalePayments();
+
+    assertEquals(2, maxInFlight.get());
+    verify(paymentService, times(5)).reconcilePaymentIntent(processing);
+  }
+
+  @Test
+  void skipsRunWhileStripeCircuitIsOpen() {
+    when(stripeGateway.getCircuitState()).thenReturn(CircuitBreaker.State.OPEN);
+
+    reconciler.reconcileStalePayments();
+
+    verifyNoInteractions(paymentRepository, paymentService);
+  }
+}
@@ -0,0 +1,230 @@
+package com.verifico.server.payment.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.ApiException;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.model.PaymentIntent;
+import com.stripe.param.PaymentIntentCreateParams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.verifico.server.common.util.CircuitBreaker;
+import com.verifico.server.payment.StripeGateway;
+
+// Runs the gateway against a tiny local http server pretending to be stripe,
+// so timeouts / 5xx / slow responses go through the real stripe client.
+class StripeGatewayTest {
+
+  private static final String INTENT_JSON = "{\"id\":\"pi_123\",\"object\":\"payment_intent\","
+      + "\"client_secret\":\"pi_123_secret_abc\",\"status\":\"requires_payment_method\"}";
+  private static final String SERVER_ERROR_JSON = "{\"error\":{\"type\":\"api_error\",\"message\":\"boom\"}}";
+  private static final String BAD_REQUEST_JSON = "{\"error\":{\"type\":\"invalid_request_error\","
+      + "\"message\":\"No such payment_intent\"}}";
+
+  HttpServer stripeStub;
+  ExecutorService stubThreads = Executors.newCachedThreadPool();
+  AtomicInteger requests = new AtomicInteger();
+  // what the stub does for the next request, swapped per test
+  AtomicReference<StubBehaviour> behaviour = new AtomicReference<>();
+
+  @FunctionalInterface
+  interface StubBehaviour {
+    void handle(HttpExchange exchange) throws IOException;
+  }
+
+  @BeforeEach
+  void startStub() throws IOException {
+    stripeStub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    stripeStub.setExecutor(stubThreads);
+    stripeStub.createContext("/", exchange -> {
+      requests.incrementAndGet();
+      behaviour.get().handle(exchange);
+    });
+    stripeStub.start();
+  }
+
+  @AfterEach
+  void stopStub() {
+    stripeStub.stop(0);
+    stubThreads.shutdownNow();
+  }
+
+  private StripeGateway gateway(int maxConcurrent, int readTimeoutMillis, int failureThreshold, long openMillis) {
+    return new StripeGateway("sk_test_fake_key", "http://127.0.0.1:" + stripeStub.getAddress().getPort(),
+        maxConcurrent, 50, 1000, readTimeoutMillis, 0, failureThreshold, openMillis);
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static PaymentIntentCreateParams params() {
+    return PaymentIntentCreateParams.builder().setAmount(500L).setCurrency("usd").build();
+  }
+
+  @Test
+  void createsPaymentIntentWithIdempotencyKey() throws Exception {
+    AtomicReference<String> idempotencyHeader = new AtomicReference<>();
+    behaviour.set(exchange -> {
+      idempotencyHeader.set(exchange.getRequestHeaders().getFirst("Idempotency-Key"));
+      respond(exchange, 200, INTENT_JSON);
+    });
+
+    PaymentIntent intent = gateway(4, 1000, 3, 1000).createPaymentIntent(params(), "key-1");
+
+    assertEquals("pi_123", intent.getId());
+    assertEquals("pi_123_secret_abc", intent.getClientSecret());
+    assertEquals("key-1", idempotencyHeader.get());
+  }
+
+  // stripe hanging turns into a timeout instead of holding the request thread
+  @Test
+  void slowStripeTimesOut() {
+    behaviour.set(exchange -> {
+      sleep(1000);
+      respond(exchange, 200, INTENT_JSON);
+    });
+
+    StripeGateway gateway = gateway(4, 100, 3, 1000);
+
+    assertThrows(ApiConnectionException.class, () -> gateway.retrievePaymentIntent("pi_123"));
+  }
+
+  @Test
+  void breakerOpensAfterFailuresAndStopsCallingStripe() {
+    behaviour.set(exchange -> respond(exchange, 500, SERVER_ERROR_JSON));
+    StripeGateway gateway = gateway(4, 1000, 3, 60_000);
+
+    for (int i = 0; i < 3; i++) {
+      assertThrows(ApiException.class, () -> gateway.retrievePaymentIntent("pi_123"));
+    }
+    assertEquals(CircuitBreaker.State.OPEN, gateway.getCircuitState());
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> gateway.retrievePaymentIntent("pi_123"));
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ex.getStatusCode());
+    assertEquals(3, requests.get());
+  }
+
+  // a bad request is our problem, not stripe's, it shouldn't trip the breaker
+  @Test
+  void clientErrorsDontTripBreaker() {
+    behaviour.set(exchange -> respond(exchange, 404, BAD_REQUEST_JSON));
+    StripeGateway gateway = gateway(4, 1000, 2, 60_000);
+
+    for (int i = 0; i < 4; i++) {
+      assertThrows(InvalidRequestException.class, () -> gateway.retrievePaymentIntent("pi_missing"));
+    }
+
+    assertEquals(CircuitBreaker.State.CLOSED, gateway.getCircuitState());
+    assertEquals(4, requests.get());
+  }
+
+  @Test
+  void halfOpenProbeClosesBreakerWhenStripeRecovers() throws Exception {
+    behaviour.set(exchange -> respond(exchange, 503, SERVER_ERROR_JSON));
+    StripeGateway gateway = gateway(4, 1000, 1, 100);
+
+    assertThrows(ApiException.class, () -> gateway.retrievePaymentIntent("pi_123"));
+    assertEquals(CircuitBreaker.State.OPEN, gateway.getCircuitState());
+
+    behaviour.set(exchange -> respond(exchange, 200, INTENT_JSON));
+    sleep(150);
+
+    assertEquals("pi_123", gateway.retrievePaymentIntent("pi_123").getId());
+    assertEquals(CircuitBreaker.State.CLOSED, gateway.getCircuitState());
+  }
+
+  @Test
+  void failedProbeReopensBreaker() {
+    behaviour.set(exchange -> respond(exchange, 500, SERVER_ERROR_JSON));
+    StripeGateway gateway = gateway(4, 1000, 1, 100);
+
+    assertThrows(ApiException.class, () -> gateway.retrievePaymentIntent("pi_123"));
+    sleep(150);
+    assertThrows(ApiException.class, () -> gateway.retrievePaymentIntent("pi_123"));
+
+    assertEquals(CircuitBreaker.State.OPEN, gateway.getCircuitState());
+    assertThrows(ResponseStatusException.class, () -> gateway.retrievePaymentIntent("pi_123"));
+    assertEquals(2, requests.get());
+  }
+
+  // with every slot taken by a slow call, the next caller is turned away with a
+  // 503 instead of queueing up behind it
+  @Test
+  void bulkheadRejectsWhenFull() throws Exception {
+    CountDownLatch inStripe = new CountDownLatch(1);
+    CountDownLatch releaseStripe = new CountDownLatch(1);
+    behaviour.set(exchange -> {
+      inStripe.countDown();
+      awaitQuietly(releaseStripe);
+      respond(exchange, 200, INTENT_JSON);
+    });
+    StripeGateway gateway = gateway(1, 5000, 3, 60_000);
+
+    CompletableFuture<PaymentIntent> slowCall = CompletableFuture.supplyAsync(() -> {
+      try {
+        return gateway.retrievePaymentIntent("pi_123");
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    });
+
+    try {
+      assertTrue(inStripe.await(5, TimeUnit.SECONDS));
+      assertEquals(1, gateway.getCallsInFlight());
+
+      ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+          () -> gateway.retrievePaymentIntent("pi_123"));
+      assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ex.getStatusCode());
+    } finally {
+      releaseStripe.countDown();
+    }
+
+    assertEquals("pi_123", slowCall.get(5, TimeUnit.SECONDS).getId());
+    assertEquals(1, requests.get());
+    assertEquals(0, gateway.getCallsInFlight());
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
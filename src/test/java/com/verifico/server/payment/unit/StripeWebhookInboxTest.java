@@ -0,0 +1,155 @@
+package com.verifico.server.payment.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import com.stripe.model.Event;
+import com.stripe.model.EventDataObjectDeserializer;
+import com.stripe.model.PaymentIntent;
+import com.verifico.server.payment.PaymentService;
+import com.verifico.server.payment.webhook.StripeWebhookInbox;
+import com.verifico.server.payment.webhook.WebhookDeadLetter;
+import com.verifico.server.payment.webhook.WebhookDeadLetterRepository;
+import com.verifico.server.payment.webhook.WebhookEvent;
+import com.verifico.server.payment.webhook.WebhookEventDeduplicator;
+import com.verifico.server.payment.webhook.WebhookEventRepository;
+import com.verifico.server.payment.webhook.WebhookEventStatus;
+
+@ExtendWith(MockitoExtension.class)
+class StripeWebhookInboxTest {
+
+  @Mock
+  PaymentService paymentService;
+
+  @Mock
+  WebhookEventRepository webhookEventRepository;
+
+  @Mock
+  WebhookDeadLetterRepository webhookDeadLetterRepository;
+
+  @Mock
+  WebhookEventDeduplicator webhookEventDeduplicator;
+
+  @InjectMocks
+  StripeWebhookInbox stripeWebhookInbox;
+
+  private Event mockSucceededEvent() {
+    Event event = mock(Event.class);
+    PaymentIntent intent = mock(PaymentIntent.class);
+    EventDataObjectDeserializer deserializer = mock(EventDataObjectDeserializer.class);
+
+    when(event.getId()).thenReturn("evt_123");
+    when(event.getType()).thenReturn("payment_intent.succeeded");
+    when(event.getDataObjectDeserializer()).thenReturn(deserializer);
+    when(deserializer.getObject()).thenReturn(Optional.of(intent));
+    when(intent.getId()).thenReturn("pi_test_123");
+    return event;
+  }
+
+  @Test
+  void newEventIsStoredForLaterProcessing() {
+    Event event = mockSucceededEvent();
+    when(paymentService.constructVerifiedEvent("payload", "sig")).thenReturn(event);
+    when(webhookEventRepository.existsByEventId("evt_123")).thenReturn(false);
+
+    assertTrue(stripeWebhookInbox.receive("payload", "sig"));
+
+    ArgumentCaptor<WebhookEvent> captor = ArgumentCaptor.forClass(WebhookEvent.class);
+    verify(webhookEventRepository).save(captor.capture());
+    WebhookEvent stored = captor.getValue();
+    assertEquals("evt_123", stored.getEventId());
+    assertEquals("pi_test_123", stored.getPaymentIntentId());
+    assertEquals("payload", stored.getPayload());
+    assertEquals(WebhookEventStatus.PENDING, stored.getStatus());
+
+    // nothing is processed on the request thread
+    verify(paymentService, never()).handleEvent(any());
+    verify(webhookEventDeduplicator).remember("evt_123");
+  }
+
+  // redelivery we already know about from redis never reaches postgres
+  @Test
+  void redeliveryCaughtByRedisSkipsDb() {
+    Event event = mock(Event.class);
+    when(event.getId()).thenReturn("evt_123");
+    when(paymentService.constructVerifiedEvent("payload", "sig")).thenReturn(event);
+    when(webhookEventDeduplicator.seenRecently("evt_123")).thenReturn(true);
+
+    assertFalse(stripeWebhookInbox.receive("payload", "sig"));
+
+    verify(webhookEventRepository, never()).existsByEventId(any());
+    verify(webhookEventRepository, never()).save(any());
+  }
+
+  @Test
+  void redeliveredEventIsAckedWithoutStoringAgain() {
+    Event event = mock(Event.class);
+    when(event.getId()).thenReturn("evt_123");
+    when(paymentService.constructVerifiedEvent("payload", "sig")).thenReturn(event);
+    when(webhookEventRepository.existsByEventId("evt_123")).thenReturn(true);
+
+    assertFalse(stripeWebhookInbox.receive("payload", "sig"));
+    verify(webhookEventRepository, never()).save(any());
+    verify(webhookEventDeduplicator).recordDbHit();
+    // so the next redelivery is caught by redis
+    verify(webhookEventDeduplicator).remember("evt_123");
+  }
+
+  // two deliveries racing past the exists check, unique constraint catches it
+  @Test
+  void concurrentDuplicateIsAcked() {
+    Event event = mockSucceededEvent();
+    when(paymentService.constructVerifiedEvent("payload", "sig")).thenReturn(event);
+    when(webhookEventRepository.existsByEventId("evt_123")).thenReturn(false);
+    when(webhookEventRepository.save(any(WebhookEvent.class)))
+        .thenThrow(new DataIntegrityViolationException("duplicate key"));
+
+    assertFalse(stripeWebhookInbox.receive("payload", "sig"));
+    verify(webhookEventDeduplicator).recordConstraintHit();
+  }
+
+  @Test
+  void invalidSignatureIsNotStored() {
+    when(paymentService.constructVerifiedEvent("payload", "bad-sig"))
+        .thenThrow(new SecurityException("Invalid webhook signature"));
+
+    assertThrows(SecurityException.class, () -> stripeWebhookInbox.receive("payload", "bad-sig"));
+    verify(webhookEventRepository, never()).save(any());
+  }
+
+  @Test
+  void deadLetterKeepsPayloadAndMarksEventDead() {
+    WebhookEvent event = new WebhookEvent();
+    event.setId(5L);
+    event.setEventId("evt_123");
+    event.setEventType("payment_intent.succeeded");
+    event.setPaymentIntentId("pi_test_123");
+    event.setPayload("payload");
+
+    stripeWebhookInbox.moveToDeadLetter(event, 8, "boom");
+
+    ArgumentCaptor<WebhookDeadLetter> captor = ArgumentCaptor.forClass(WebhookDeadLetter.class);
+    verify(webhookDeadLetterRepository).save(captor.capture());
+    assertEquals("evt_123", captor.getValue().getEventId());
+    assertEquals("payload", captor.getValue().getPayload());
+    assertEquals(8, captor.getValue().getAttempts());
+    verify(webhookEventRepository).markDead(5L, 8, "boom");
+  }
+}
@@ -0,0 +1,127 @@
+package com.verifico.server.payment.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.stripe.model.Event;
+import com.verifico.server.payment.PaymentService;
+import com.verifico.server.payment.exception.WebhookProcessingException;
+import com.verifico.server.payment.webhook.StripeWebhookInbox;
+import com.verifico.server.payment.webhook.StripeWebhookWorker;
+import com.verifico.server.payment.webhook.WebhookEvent;
+import com.verifico.server.payment.webhook.WebhookEventRepository;
+
+@ExtendWith(MockitoExtension.class)
+class StripeWebhookWorkerTest {
+
+  private static final String PAYLOAD = "{\"id\":\"evt_123\",\"object\":\"event\",\"type\":\"payment_intent.succeeded\","
+      + "\"data\":{\"object\":{\"id\":\"pi_test_123\",\"object\":\"payment_intent\"}}}";
+
+  @Mock
+  WebhookEventRepository webhookEventRepository;
+
+  @Mock
+  StripeWebhookInbox stripeWebhookInbox;
+
+  @Mock
+  PaymentService paymentService;
+
+  StripeWebhookWorker worker;
+
+  @BeforeEach
+  void setup() {
+    // 2 workers, 3 attempts, 5 min lease, 5s base backoff, 1h max, 7 days retention
+    worker = new StripeWebhookWorker(webhookEventRepository, stripeWebhookInbox, paymentService, 2, 3, 300, 5, 3600,
+        7);
+  }
+
+  @AfterEach
+  void tearDown() {
+    worker.shutdown();
+  }
+
+  private WebhookEvent inboxEvent(int attempts) {
+    WebhookEvent event = new WebhookEvent();
+    event.setId(1L);
+    event.setEventId("evt_123");
+    event.setEventType("payment_intent.succeeded");
+    event.setPaymentIntentId("pi_test_123");
+    event.setPayload(PAYLOAD);
+    event.setAttempts(attempts);
+    return event;
+  }
+
+  @Test
+  void claimedEventIsHandledAndMarkedProcessed() {
+    when(webhookEventRepository.findReadyToProcess(any(Instant.class), any())).thenReturn(List.of(inboxEvent(0)));
+    when(webhookEventRepository.claim(eq(1L), anyString(), any(Instant.class), any(Instant.class))).thenReturn(1);
+
+    worker.pollInbox();
+
+    ArgumentCaptor<Event> captor = ArgumentCaptor.forClass(Event.class);
+    verify(paymentService, timeout(2000)).handleEvent(captor.capture());
+    assertEquals("evt_123", captor.getValue().getId());
+    verify(webhookEventRepository, timeout(2000)).markProcessed(eq(1L), any(Instant.class));
+  }
+
+  // another replica claimed it between our select and update
+  @Test
+  void eventClaimedElsewhereIsSkipped() {
+    when(webhookEventRepository.findReadyToProcess(any(Instant.class), any())).thenReturn(List.of(inboxEvent(0)));
+    when(webhookEventRepository.claim(eq(1L), anyString(), any(Instant.class), any(Instant.class))).thenReturn(0);
+
+    worker.pollInbox();
+
+    verify(paymentService, never()).handleEvent(any());
+  }
+
+  @Test
+  void failedEventIsRetriedWithBackoff() {
+    when(webhookEventRepository.findReadyToProcess(any(Instant.class), any())).thenReturn(List.of(inboxEvent(1)));
+    when(webhookEventRepository.claim(eq(1L), anyString(), any(Instant.class), any(Instant.class))).thenReturn(1);
+    doThrow(new WebhookProcessingException("db down")).when(paymentService).handleEvent(any());
+
+    Instant before = Instant.now();
+    worker.pollInbox();
+
+    ArgumentCaptor<Instant> nextAttempt = ArgumentCaptor.forClass(Instant.class);
+    verify(webhookEventRepository, timeout(2000)).scheduleRetry(eq(1L), eq(2), nextAttempt.capture(), anyString());
+    // second attempt failed -> ~10s (+/- 20%) from now
+    assertTrue(nextAttempt.getValue().isAfter(before.plusSeconds(7)));
+    assertTrue(nextAttempt.getValue().isBefore(Instant.now().plusSeconds(13)));
+    verify(webhookEventRepository, never()).markProcessed(any(), any());
+  }
+
+  @Test
+  void eventIsDeadLetteredAfterMaxAttempts() {
+    WebhookEvent event = inboxEvent(2);
+    when(webhookEventRepository.findReadyToProcess(any(Instant.class), any())).thenReturn(List.of(event));
+    when(webhookEventRepository.claim(eq(1L), anyString(), any(Instant.class), any(Instant.class))).thenReturn(1);
+    doThrow(new WebhookProcessingException("still broken")).when(paymentService).handleEvent(any());
+
+    worker.pollInbox();
+
+    verify(stripeWebhookInbox, timeout(2000)).moveToDeadLetter(eq(event), eq(3), anyString());
+    verify(webhookEventRepository, never()).scheduleRetry(any(), anyInt(), any(), any());
+  }
+}
@@ -0,0 +1,81 @@
+package com.verifico.server.payment.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import com.verifico.server.payment.webhook.WebhookEventDeduplicator;
+
+@ExtendWith(MockitoExtension.class)
+class WebhookEventDeduplicatorTest {
+
+  @Mock
+  StringRedisTemplate redisTemplate;
+
+  @Mock
+  ValueOperations<String, String> valueOperations;
+
+  WebhookEventDeduplicator deduplicator;
+
+  @BeforeEach
+  void setup() {
+    deduplicator = new WebhookEventDeduplicator(redisTemplate, 7);
+  }
+
+  @Test
+  void knownEventIsCountedAsRedisHit() {
+    when(redisTemplate.hasKey("stripe:webhook:event:evt_123")).thenReturn(true);
+
+    assertTrue(deduplicator.seenRecently("evt_123"));
+    assertEquals(1, deduplicator.getHitCount("redis"));
+  }
+
+  @Test
+  void unknownEventIsNotAHit() {
+    when(redisTemplate.hasKey("stripe:webhook:event:evt_new")).thenReturn(false);
+
+    assertFalse(deduplicator.seenRecently("evt_new"));
+    assertEquals(0, deduplicator.getHitCount("redis"));
+  }
+
+  // redis down -> not treated as a duplicate, the db checks take over
+  @Test
+  void redisFailureFallsBackToDb() {
+    when(redisTemplate.hasKey("stripe:webhook:event:evt_123"))
+        .thenThrow(new RedisConnectionFailureException("redis down"));
+
+    assertFalse(deduplicator.seenRecently("evt_123"));
+  }
+
+  @Test
+  void rememberedEventsExpireWithInboxRetention() {
+    when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
+    deduplicator.remember("evt_123");
+
+    verify(valueOperations).set("stripe:webhook:event:evt_123", "1", Duration.ofDays(7));
+  }
+
+  @Test
+  void dbAndConstraintHitsAreCountedSeparately() {
+    deduplicator.recordDbHit();
+    deduplicator.recordDbHit();
+    deduplicator.recordConstraintHit();
+
+    assertEquals(2, deduplicator.getHitCount("db"));
+    assertEquals(1, deduplicator.getHitCount("constraint"));
+  }
+}
@@ -0,0 +1,58 @@
+package com.verifico.server.post.unit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.verifico.server.post.CommentCountRepair;
+import com.verifico.server.post.PostRepository;
+
+@ExtendWith(MockitoExtension.class)
+class CommentCountRepairTest {
+
+  @Mock
+  PostRepository postRepository;
+
+  @InjectMocks
+  CommentCountRepair commentCountRepair;
+
+  @BeforeEach
+  void setup() {
+    ReflectionTestUtils.setField(commentCountRepair, "batchSize", 2);
+  }
+
+  // walks the posts by id, each batch starts after the last id of the previous
+  @Test
+  void recountsAllPostsInIdBatches() {
+    when(postRepository.findIdsAfter(0L, PageRequest.of(0, 2))).thenReturn(List.of(1L, 2L));
+    when(postRepository.findIdsAfter(2L, PageRequest.of(0, 2))).thenReturn(List.of(5L));
+    when(postRepository.recountComments(any())).thenReturn(1);
+
+    commentCountRepair.recountComments();
+
+    verify(postRepository).recountComments(List.of(1L, 2L));
+    verify(postRepository).recountComments(List.of(5L));
+  }
+
+  @Test
+  void noPostsNothingToRecount() {
+    when(postRepository.findIdsAfter(eq(0L), any())).thenReturn(List.of());
+
+    commentCountRepair.recountComments();
+
+    verify(postRepository, never()).recountComments(any());
+  }
+}
@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -30,10 +31,13 @@ import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.server.ResponseStatusException;
 
+import com.verifico.server.auth.jwt.AuthenticatedUser;
 import com.verifico.server.credit.CreditService;
 import com.verifico.server.post.Category;
 import com.verifico.server.post.Post;
 import com.verifico.server.post.PostRepository;
+import com.verifico.server.post.PostRow;
+import com.verifico.server.post.PostScreenshotView;
 import com.verifico.server.post.PostService;
 import com.verifico.server.post.Stage;
 import com.verifico.server.post.dao.PostSearchDao;
@@ -41,6 +45,7 @@ import com.verifico.server.post.dto.PostRequest;
 import com.verifico.server.post.dto.PostResponse;
 import com.verifico.server.user.User;
 import com.verifico.server.user.UserRepository;
+import com.verifico.server.user.UserStatsService;
 
 // since we don't have any service layer validation for post api
 // the unit tests do not feature the missing input/validation checks
@@ -65,6 +70,9 @@ class PostServiceTest {
   @Mock
   CreditService creditService;
 
+  @Mock
+  UserStatsService userStatsService;
+
   @InjectMocks
   PostService postService;
 
@@ -116,21 +124,37 @@ class PostServiceTest {
     return post;
   }
 
+  // what the feed queries select for this post
+  private PostRow postRow(Post post) {
+    User author = post.getAuthor();
+    return new PostRow(post.getId(), post.getTitle(), post.getTagline(), post.getCategory(), post.getStage(),
+        post.getProblemDescription(), post.getSolutionDescription(), post.getLiveDemoUrl(), post.isBoosted(),
+        post.getBoostedUntil(), post.getCreatedAt(), post.getUpdatedAt(), post.getCommentCount(), author.getId(),
+        author.getUsername(), author.getFirstName(), author.getLastName(), author.getAvatarUrl());
+  }
+
+  private List<PostScreenshotView> screenshots(Post post) {
+    return post.getScreenshotUrls().stream().map(url -> {
+      PostScreenshotView view = mock(PostScreenshotView.class);
+      when(view.getPostId()).thenReturn(post.getId());
+      when(view.getUrl()).thenReturn(url);
+      return view;
+    }).toList();
+  }
+
   // create post test endpoints:
   // user not found/ not authenticated and tries to make post
   // successfull post creation with only required fields, optionals left blank
   // successfull post creation with all fields including optionals
   @Test
-  void userNotFoundWhenMakingPost() {
-    when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.empty());
+  void userNotAuthenticatedWhenMakingPost() {
+    when(securityContext.getAuthentication()).thenReturn(null);
 
     ResponseStatusException ex = assertThrows(ResponseStatusException.class,
         () -> postService.createPost(validPostRequest()));
 
     assertEquals(HttpStatus.UNAUTHORIZED, ex.getStatusCode());
-    assertEquals("Unable to get username", ex.getReason());
+    assertEquals("Authenticated user not found!", ex.getReason());
 
     verify(postRepository, never()).save(any(Post.class));
   }
@@ -138,12 +162,12 @@ class PostServiceTest {
   @Test
   void successfullPostCreationWithOnlyRequiredFields() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     User user = mockUser();
     Post savedPost = mockPost();
 
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(userRepository.getReferenceById(1L)).thenReturn(user);
     when(postRepository.save(any(Post.class))).thenReturn(savedPost);
 
     PostRequest minimalRequest = new PostRequest();
@@ -164,18 +188,19 @@ class PostServiceTest {
     assertEquals(savedPost.getSolutionDescription(), response.solutionDescription());
 
     verify(postRepository, times(1)).save(any(Post.class));
-    verify(userRepository, times(1)).save(user);
+    verify(userRepository, never()).findByUsername(any());
+    verify(userStatsService).postsChanged(1L, 1);
   }
 
   @Test
   void successfullPostCreationWithAllFields() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     User user = mockUser();
     Post savedPost = mockPost();
 
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(userRepository.getReferenceById(1L)).thenReturn(user);
     when(postRepository.save(any(Post.class))).thenReturn(savedPost);
 
     PostResponse response = postService.createPost(validPostRequest());
@@ -195,7 +220,7 @@ class PostServiceTest {
     assertEquals(savedPost.isBoosted(), false);
 
     verify(postRepository, times(1)).save(any(Post.class));
-    verify(userRepository, times(1)).save(user);
+    verify(userRepository, never()).findByUsername(any());
   }
 
   // get post by id test endpoints:
@@ -242,7 +267,9 @@ class PostServiceTest {
     Post savedPost = mockPost();
     List<Post> postList = List.of(savedPost);
 
-    Page<Post> postPage = new PageImpl<>(postList);
+    Page<PostRow> postPage = new PageImpl<>(postList.stream().map(this::postRow).toList());
+    List<PostScreenshotView> screenshots = screenshots(savedPost);
+    when(postRepository.findScreenshotUrls(List.of(1L))).thenReturn(screenshots);
 
     when(postRepository.findAllByOrderByCreatedAtDesc(any())).thenReturn(postPage);
 
@@ -270,7 +297,9 @@ class PostServiceTest {
     Post savedPost = mockPost();
     List<Post> postList = List.of(savedPost);
 
-    Page<Post> postPage = new PageImpl<>(postList);
+    Page<PostRow> postPage = new PageImpl<>(postList.stream().map(this::postRow).toList());
+    List<PostScreenshotView> screenshots = screenshots(savedPost);
+    when(postRepository.findScreenshotUrls(List.of(1L))).thenReturn(screenshots);
 
     when(postRepository.findByCategoryOrderByCreatedAtDesc(eq(Category.AI), any())).thenReturn(postPage);
 
@@ -298,7 +327,9 @@ class PostServiceTest {
     Post savedPost = mockPost();
     List<Post> postList = List.of(savedPost);
 
-    Page<Post> postPage = new PageImpl<>(postList);
+    Page<PostRow> postPage = new PageImpl<>(postList.stream().map(this::postRow).toList());
+    List<PostScreenshotView> screenshots = screenshots(savedPost);
+    when(postRepository.findScreenshotUrls(List.of(1L))).thenReturn(screenshots);
 
     when(postSearchDao.searchPosts(eq("JohnDoe123"), any())).thenReturn(postPage);
 
@@ -330,7 +361,7 @@ class PostServiceTest {
   @Test
   void partialPostUpdate() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     Post savedPost = mockPost();
     when(postRepository.findById(1L)).thenReturn(Optional.of(savedPost));
@@ -348,7 +379,7 @@ class PostServiceTest {
   @Test
   void unAuthorisedUserTryingToUpdatePost() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("GIGGANIGGA");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(99L, "GIGGANIGGA"));
 
     Post savedPost = mockPost();
 
@@ -377,7 +408,7 @@ class PostServiceTest {
   @Test
   void successfullUpdatePost() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     Post savedPost = mockPost();
 
@@ -411,7 +442,7 @@ class PostServiceTest {
   @Test
   void unAuthorisedUserTryingToDeletePost() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("GIGGANIGA");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(99L, "GIGGANIGA"));
 
     Post savedPost = mockPost();
     when(postRepository.findById(1L)).thenReturn(Optional.of(savedPost));
@@ -427,7 +458,7 @@ class PostServiceTest {
   @Test
   void postNotFoundOnDelete() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
     when(postRepository.findById(4L)).thenReturn(Optional.empty());
 
     ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> postService.deletePostbyId(4L));
@@ -440,7 +471,7 @@ class PostServiceTest {
   @Test
   void successfullDeletePostById() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     Post savedPost = mockPost();
 
@@ -449,6 +480,7 @@ class PostServiceTest {
     postService.deletePostbyId(1L);
 
     verify(postRepository, times(1)).deleteById(1L);
+    verify(userStatsService).postsChanged(1L, -1);
   }
 
 }
@@ -0,0 +1,82 @@
+package com.verifico.server.security.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.verifico.server.security.PasswordHashingService;
+
+class PasswordHashingServiceTest {
+
+  @Test
+  void encodeAndMatchRunOnHashingPool() {
+    PasswordHashingService hashingService = new PasswordHashingService(new BCryptPasswordEncoder(4), 1, 4, 5000);
+
+    String hash = hashingService.encode("password123");
+
+    assertTrue(hashingService.matches("password123", hash));
+    assertFalse(hashingService.matches("wrongpassword", hash));
+    hashingService.shutdown();
+  }
+
+  // hashes made with a lower cost than what we're configured with now should be
+  // flagged for upgrade, same cost shouldn't be
+  @Test
+  void lowerCostHashNeedsUpgrade() {
+    String oldHash = new BCryptPasswordEncoder(4).encode("password123");
+    PasswordHashingService hashingService = new PasswordHashingService(new BCryptPasswordEncoder(6), 1, 4, 5000);
+
+    assertTrue(hashingService.needsUpgrade(oldHash));
+    assertFalse(hashingService.needsUpgrade(hashingService.encode("password123")));
+    hashingService.shutdown();
+  }
+
+  // 1 thread + queue of 1: first call runs, second waits in the queue, third
+  // gets a 429 straight away instead of waiting
+  @Test
+  void rejectsWith429WhenQueueIsFull() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    BCryptPasswordEncoder blockingEncoder = mock(BCryptPasswordEncoder.class);
+    when(blockingEncoder.encode(any())).thenAnswer(invocation -> {
+      started.countDown();
+      release.await(5, TimeUnit.SECONDS);
+      return "hash";
+    });
+
+    PasswordHashingService hashingService = new PasswordHashingService(blockingEncoder, 1, 1, 5000);
+
+    CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> hashingService.encode("first"));
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> hashingService.encode("second"));
+
+    // give the second call a moment to land in the queue
+    long deadline = System.currentTimeMillis() + 5000;
+    while (hashingService.getQueueDepth() < 1 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+        () -> hashingService.encode("third"));
+
+    release.countDown();
+
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, ex.getStatusCode());
+    assertEquals("hash", running.get(5, TimeUnit.SECONDS));
+    assertEquals("hash", queued.get(5, TimeUnit.SECONDS));
+    hashingService.shutdown();
+  }
+}
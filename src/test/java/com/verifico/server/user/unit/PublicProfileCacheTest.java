@@ -0,0 +1,56 @@
+package com.verifico.server.user.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+
+import com.verifico.server.user.PublicProfileCache;
+import com.verifico.server.user.dto.PublicUserResponse;
+
+class PublicProfileCacheTest {
+
+  private PublicUserResponse profile(String username) {
+    return new PublicUserResponse(username, "John", "Doe", null, null, LocalDate.now(), 0, 0, 0, 0);
+  }
+
+  @Test
+  void invalidateDropsTheEntry() {
+    PublicProfileCache cache = new PublicProfileCache(10, 60);
+    cache.put(1L, profile("JohnDoe123"));
+
+    assertEquals("JohnDoe123", cache.get(1L).username());
+
+    cache.invalidate(1L);
+    assertNull(cache.get(1L));
+  }
+
+  @Test
+  void entriesExpireAfterTtl() throws Exception {
+    PublicProfileCache cache = new PublicProfileCache(10, 0);
+    cache.put(1L, profile("JohnDoe123"));
+    Thread.sleep(5);
+
+    assertNull(cache.get(1L));
+    assertEquals(0, cache.size());
+  }
+
+  // oldest inserted goes first, re-putting a user doesn't count twice
+  @Test
+  void sizeIsBoundedOldestFirst() {
+    PublicProfileCache cache = new PublicProfileCache(3, 60);
+    cache.put(1L, profile("one"));
+    cache.put(2L, profile("two"));
+    cache.put(2L, profile("two again"));
+    cache.put(3L, profile("three"));
+    cache.put(4L, profile("four"));
+
+    assertTrue(cache.size() <= 3);
+    assertNull(cache.get(1L));
+    assertEquals("two again", cache.get(2L).username());
+    assertEquals("four", cache.get(4L).username());
+  }
+}
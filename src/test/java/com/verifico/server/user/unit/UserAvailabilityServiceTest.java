@@ -0,0 +1,153 @@
+package com.verifico.server.user.unit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.verifico.server.user.UserAvailabilityService;
+import com.verifico.server.user.UserIdentityView;
+import com.verifico.server.user.UserRepository;
+import com.verifico.server.user.dto.AvailabilityResponse;
+
+@ExtendWith(MockitoExtension.class)
+class UserAvailabilityServiceTest {
+
+  @Mock
+  UserRepository userRepository;
+
+  @Mock
+  StringRedisTemplate redisTemplate;
+
+  UserAvailabilityService availabilityService;
+
+  @BeforeEach
+  void setup() {
+    availabilityService = new UserAvailabilityService(userRepository, redisTemplate, 1_000, 0.01);
+  }
+
+  private UserIdentityView identity(Long id, String username, String email) {
+    return new UserIdentityView() {
+      public Long getId() {
+        return id;
+      }
+
+      public String getUsername() {
+        return username;
+      }
+
+      public String getEmail() {
+        return email;
+      }
+    };
+  }
+
+  private void warmUpWith(UserIdentityView... users) {
+    when(userRepository.findIdentitiesAfter(eq(0L), any())).thenReturn(List.of(users));
+    availabilityService.warmUp();
+  }
+
+  // before warmup we can't trust the filter, everything goes to the db
+  @Test
+  void beforeWarmupEverythingHitsDb() {
+    when(userRepository.existsByUsername("NewUsername")).thenReturn(false);
+
+    assertTrue(availabilityService.mightBeTaken("NewUsername", "new@gmail.com"));
+    assertFalse(availabilityService.isUsernameTaken("NewUsername"));
+    verify(userRepository).existsByUsername("NewUsername");
+  }
+
+  @Test
+  void freeValuesAreAnsweredWithoutDb() {
+    warmUpWith(identity(1L, "JohnDoe123", "johndoe2@gmail.com"));
+
+    AvailabilityResponse response = availabilityService.checkAvailability("NewUsername", "new@gmail.com");
+
+    assertTrue(response.usernameAvailable());
+    assertTrue(response.emailAvailable());
+    assertFalse(availabilityService.mightBeTaken("NewUsername", "new@gmail.com"));
+    verify(userRepository, never()).existsByUsername(anyString());
+    verify(userRepository, never()).existsByEmail(anyString());
+  }
+
+  @Test
+  void takenValuesAreConfirmedWithDb() {
+    warmUpWith(identity(1L, "JohnDoe123", "johndoe2@gmail.com"));
+    when(userRepository.existsByEmail("johndoe2@gmail.com")).thenReturn(true);
+
+    AvailabilityResponse response = availabilityService.checkAvailability(null, " JohnDoe2@Gmail.com");
+
+    assertNull(response.usernameAvailable());
+    assertFalse(response.emailAvailable());
+  }
+
+  @Test
+  void recordedValuesAreSeenAsMaybeTaken() {
+    warmUpWith();
+
+    availabilityService.recordTaken("FreshUser", "fresh@gmail.com");
+
+    assertTrue(availabilityService.mightBeTaken("FreshUser", null));
+    assertTrue(availabilityService.mightBeTaken(null, "FRESH@gmail.com"));
+    assertFalse(availabilityService.mightBeTaken("SomeoneElse", "else@gmail.com"));
+  }
+
+  @Test
+  void recordedValuesArePublishedToOtherReplicas() {
+    availabilityService.recordTaken("FreshUser", " Fresh@Gmail.com");
+
+    verify(redisTemplate).convertAndSend(UserAvailabilityService.CHANNEL, "FreshUser\nfresh@gmail.com");
+  }
+
+  // a user registered on another replica after we warmed up must not look
+  // definitely free here
+  @Test
+  void valuesTakenOnAnotherReplicaAreSeenAsMaybeTaken() {
+    UserAvailabilityService otherReplica = new UserAvailabilityService(userRepository, redisTemplate, 1_000, 0.01);
+    warmUpWith();
+
+    otherReplica.recordTaken("FreshUser", "fresh@gmail.com");
+    availabilityService.onRedisMessage(new DefaultMessage(UserAvailabilityService.CHANNEL.getBytes(),
+        "FreshUser\nfresh@gmail.com".getBytes(StandardCharsets.UTF_8)), null);
+
+    assertTrue(availabilityService.mightBeTaken("FreshUser", null));
+    assertTrue(availabilityService.mightBeTaken(null, "fresh@gmail.com"));
+  }
+
+  // missed the message (redis down), the next rebuild from the db catches up
+  @Test
+  void rebuildPicksUpValuesMissedOverRedis() {
+    doThrow(new RedisConnectionFailureException("Unable to connect to Redis")).when(redisTemplate)
+        .convertAndSend(anyString(), anyString());
+    UserAvailabilityService otherReplica = new UserAvailabilityService(userRepository, redisTemplate, 1_000, 0.01);
+    warmUpWith();
+
+    otherReplica.recordTaken("FreshUser", "fresh@gmail.com");
+    assertFalse(availabilityService.mightBeTaken("FreshUser", null));
+
+    when(userRepository.findIdentitiesAfter(eq(0L), any()))
+        .thenReturn(List.of(identity(2L, "FreshUser", "fresh@gmail.com")));
+    availabilityService.rebuild();
+
+    assertTrue(availabilityService.mightBeTaken("FreshUser", null));
+    assertTrue(availabilityService.mightBeTaken(null, "fresh@gmail.com"));
+  }
+}
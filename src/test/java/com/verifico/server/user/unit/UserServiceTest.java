@@ -5,12 +5,18 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.LongStream;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -23,14 +29,21 @@ import org.springframework.http.HttpStatus;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.server.ResponseStatusException;
 
+import com.verifico.server.auth.jwt.AuthenticatedUser;
 import com.verifico.server.auth.token.RefreshTokenRepository;
 import com.verifico.server.email.EmailService;
+import com.verifico.server.security.PasswordHashingService;
 import com.verifico.server.user.User;
+import com.verifico.server.user.UserAvailabilityService;
+import com.verifico.server.user.UserIdentityView;
 import com.verifico.server.user.UserRepository;
 import com.verifico.server.user.UserService;
+import com.verifico.server.user.PublicProfileCache;
+import com.verifico.server.user.PublicProfileView;
+import com.verifico.server.user.UserStats;
+import com.verifico.server.user.UserStatsService;
 import com.verifico.server.user.dto.ProfileRequest;
 import com.verifico.server.user.dto.PublicUserResponse;
 import com.verifico.server.user.dto.UpdatePasswordRequest;
@@ -48,7 +61,7 @@ class UserServiceTest {
   Authentication authentication;
 
   @Mock
-  PasswordEncoder passwordEncoder;
+  PasswordHashingService passwordHashingService;
 
   @Mock
   RefreshTokenRepository refreshTokenRepository;
@@ -56,6 +69,15 @@ class UserServiceTest {
   @Mock
   EmailService emailService;
 
+  @Mock
+  UserAvailabilityService userAvailabilityService;
+
+  @Mock
+  UserStatsService userStatsService;
+
+  @Mock
+  PublicProfileCache publicProfileCache;
+
   @InjectMocks
   UserService userService;
 
@@ -70,6 +92,22 @@ class UserServiceTest {
     return user;
   }
 
+  private UserIdentityView identity(Long id, String username, String email) {
+    return new UserIdentityView() {
+      public Long getId() {
+        return id;
+      }
+
+      public String getUsername() {
+        return username;
+      }
+
+      public String getEmail() {
+        return email;
+      }
+    };
+  }
+
   @BeforeEach
   void setup() {
     SecurityContextHolder.setContext(securityContext);
@@ -90,9 +128,9 @@ class UserServiceTest {
   @Test
   void checkForUserNotFoundInDBWhenFetchingProfile() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.empty());
+    when(userRepository.findById(1L)).thenReturn(Optional.empty());
 
     ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> userService.meEndpoint());
 
@@ -104,11 +142,11 @@ class UserServiceTest {
   @Test
   void successfullyFetchMeProfile() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     User user = mockUser();
 
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(userRepository.findById(1L)).thenReturn(Optional.of(user));
 
     UserResponse response = userService.meEndpoint();
 
@@ -136,12 +174,76 @@ class UserServiceTest {
   void successfullyFetchingSomebodyProfile() {
     User user = mockUser();
     when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+    UserStats stats = new UserStats();
+    stats.setPostCount(3);
+    stats.setCommentCount(12);
+    stats.setHelpfulCount(2);
+    stats.setCreditsEarned(10);
+    when(userStatsService.getStats(1L)).thenReturn(stats);
 
     PublicUserResponse response = userService.viewSomebodiesProfile(1L);
 
     assertEquals(user.getUsername(), response.username());
     assertEquals(user.getFirstName(), response.firstName());
     assertEquals(user.getLastName(), response.LastName());
+    assertEquals(3, response.totalPosts());
+    assertEquals(12, response.totalComments());
+    assertEquals(2, response.helpfulComments());
+    assertEquals(10, response.creditsEarned());
+    verify(publicProfileCache).put(1L, response);
+  }
+
+  @Test
+  void cachedProfileSkipsTheDb() {
+    PublicUserResponse cached = publicProfile("JohnDoe123");
+    when(publicProfileCache.get(1L)).thenReturn(cached);
+
+    assertEquals(cached, userService.viewSomebodiesProfile(1L));
+
+    verify(userRepository, never()).findById(any());
+    verify(userStatsService, never()).getStats(any());
+  }
+
+  // batch profiles (too many ids, cached + one query for the rest)
+  private PublicUserResponse publicProfile(String username) {
+    return new PublicUserResponse(username, "John", "Doe", null, null, LocalDate.now(), 0, 0, 0, 0);
+  }
+
+  private PublicProfileView profileView(Long id, String username) {
+    PublicProfileView view = mock(PublicProfileView.class);
+    lenient().when(view.getId()).thenReturn(id);
+    lenient().when(view.getUsername()).thenReturn(username);
+    lenient().when(view.getPostCount()).thenReturn(4L);
+    return view;
+  }
+
+  @Test
+  void moreThanHundredIdsIsBadRequest() {
+    List<Long> ids = LongStream.rangeClosed(1, 101).boxed().toList();
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> userService.viewProfiles(ids));
+
+    assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+    verify(userRepository, never()).findPublicProfilesByIds(any());
+  }
+
+  @Test
+  void batchOnlyQueriesCacheMissesAndKeepsRequestOrder() {
+    PublicUserResponse cached = publicProfile("cached");
+    when(publicProfileCache.get(any())).thenAnswer(invocation -> invocation.getArgument(0).equals(2L) ? cached : null);
+    List<PublicProfileView> views = List.of(profileView(3L, "three"), profileView(1L, "one"));
+    when(userRepository.findPublicProfilesByIds(List.of(3L, 1L, 9L))).thenReturn(views);
+
+    // duplicates collapse, 9 doesn't exist
+    Map<Long, PublicUserResponse> profiles = userService.viewProfiles(List.of(3L, 2L, 1L, 3L, 9L));
+
+    assertEquals(List.of(3L, 2L, 1L), List.copyOf(profiles.keySet()));
+    assertEquals("three", profiles.get(3L).username());
+    assertEquals(cached, profiles.get(2L));
+    assertEquals(4L, profiles.get(1L).totalPosts());
+    verify(publicProfileCache).put(3L, profiles.get(3L));
+    verify(publicProfileCache).put(1L, profiles.get(1L));
+    verify(userRepository, never()).findById(any());
   }
 
   // update profile endpoint tests:
@@ -161,8 +263,8 @@ class UserServiceTest {
   @Test
   void userNotFoundInDBWhenUpdatingProfile() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.empty());
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
+    when(userRepository.findById(1L)).thenReturn(Optional.empty());
 
     ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> userService.updateMyProfile(null));
 
@@ -174,11 +276,12 @@ class UserServiceTest {
   @Test
   void emailAlreadyInUseWhenUpdatingProfile() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
     User user = mockUser();
 
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
-    when(userRepository.existsByEmail("newemail@gmail.com")).thenReturn(true);
+    when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+    when(userRepository.findIdentitiesByUsernameOrEmail(null, "newemail@gmail.com"))
+        .thenReturn(List.of(identity(7L, "SomebodyElse", "newemail@gmail.com")));
 
     ProfileRequest request = new ProfileRequest();
     request.setEmail("newemail@gmail.com");
@@ -196,11 +299,12 @@ class UserServiceTest {
   @Test
   void usernameAlreadyInUseWhenUpdatingProfile() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
     User user = mockUser();
 
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
-    when(userRepository.existsByUsername("NewUsername")).thenReturn(true);
+    when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+    when(userRepository.findIdentitiesByUsernameOrEmail("NewUsername", null))
+        .thenReturn(List.of(identity(7L, "NewUsername", "other@gmail.com")));
 
     ProfileRequest request = new ProfileRequest();
     request.setUsername("NewUsername");
@@ -218,11 +322,11 @@ class UserServiceTest {
   @Test
   void avatarUrlNotStartWithHttpsWhenUpdatingProfile() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     User user = mockUser();
 
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(userRepository.findById(1L)).thenReturn(Optional.of(user));
 
     ProfileRequest request = new ProfileRequest();
     request.setAvatarUrl("GIGANIGGA");
@@ -240,11 +344,11 @@ class UserServiceTest {
   @Test
   void avatarUrlTooLongWhenUpdatingProfile() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     User user = mockUser();
 
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(userRepository.findById(1L)).thenReturn(Optional.of(user));
 
     ProfileRequest request = new ProfileRequest();
     String longurl = "https://" + "a".repeat(2050);
@@ -262,11 +366,11 @@ class UserServiceTest {
   @Test
   void successfullPartialUpdate() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     User user = mockUser();
 
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(userRepository.findById(1L)).thenReturn(Optional.of(user));
     when(userRepository.save(any())).thenReturn(user);
 
     ProfileRequest request = new ProfileRequest();
@@ -280,17 +384,43 @@ class UserServiceTest {
     assertEquals("Jonnhy", response.firstName());
 
     verify(userRepository, times(1)).save(any());
+    verify(publicProfileCache).invalidate(1L);
+  }
+
+  // changing both is still one query
+  @Test
+  void usernameAndEmailAreCheckedInOneQuery() {
+    when(securityContext.getAuthentication()).thenReturn(authentication);
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
+
+    User user = mockUser();
+
+    when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+    when(userRepository.findIdentitiesByUsernameOrEmail("JohnnyD", "johnnyd@gmail.com")).thenReturn(List.of());
+    when(userRepository.save(any())).thenReturn(user);
+
+    ProfileRequest request = new ProfileRequest();
+    request.setUsername("JohnnyD");
+    request.setEmail(" JohnnyD@gmail.com ");
+
+    UserResponse response = userService.updateMyProfile(request);
+
+    assertEquals("JohnnyD", response.username());
+    assertEquals("johnnyd@gmail.com", response.email());
+    verify(userRepository).findIdentitiesByUsernameOrEmail("JohnnyD", "johnnyd@gmail.com");
+    verify(userRepository, never()).existsByEmail(any());
+    verify(userRepository, never()).existsByUsername(any());
   }
 
   // 8. given email is same as current email (make sure this don't hit db)
   @Test
   void updatedEmailSameAsCurrentEmail() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     User user = mockUser();
 
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(userRepository.findById(1L)).thenReturn(Optional.of(user));
     when(userRepository.save(any())).thenReturn(user);
 
     ProfileRequest request = new ProfileRequest();
@@ -298,7 +428,7 @@ class UserServiceTest {
 
     userService.updateMyProfile(request);
 
-    verify(userRepository, never()).existsByEmail(any());
+    verify(userRepository, never()).findIdentitiesByUsernameOrEmail(any(), any());
     verify(userRepository, times(1)).save(any());
   }
 
@@ -307,11 +437,11 @@ class UserServiceTest {
   @Test
   void updatedUsernameSameAsCurrentUsername() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     User user = mockUser();
 
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(userRepository.findById(1L)).thenReturn(Optional.of(user));
     when(userRepository.save(any())).thenReturn(user);
 
     ProfileRequest request = new ProfileRequest();
@@ -319,7 +449,7 @@ class UserServiceTest {
 
     userService.updateMyProfile(request);
 
-    verify(userRepository, never()).existsByUsername(any());
+    verify(userRepository, never()).findIdentitiesByUsernameOrEmail(any(), any());
     verify(userRepository, times(1)).save(any());
   }
 
@@ -327,11 +457,11 @@ class UserServiceTest {
   @Test
   void bioBlankSpace() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     User user = mockUser();
 
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(userRepository.findById(1L)).thenReturn(Optional.of(user));
     when(userRepository.save(any())).thenReturn(user);
 
     ProfileRequest request = new ProfileRequest();
@@ -348,10 +478,10 @@ class UserServiceTest {
   @Test
   void userNameAndEmailTrimmedAndEmailLowercased() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     User user = mockUser();
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(userRepository.findById(1L)).thenReturn(Optional.of(user));
     when(userRepository.save(any())).thenReturn(user);
 
     ProfileRequest request = new ProfileRequest();
@@ -391,9 +521,9 @@ class UserServiceTest {
   @Test
   void userNotFoundinDBWhenTryingToUpdatePassword() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.empty());
+    when(userRepository.findById(1L)).thenReturn(Optional.empty());
 
     UpdatePasswordRequest request = new UpdatePasswordRequest();
     request.setOldPassword("oldPass");
@@ -413,13 +543,13 @@ class UserServiceTest {
   @Test
   void incorrectOldPassWhenUpdatingProfile() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     User user = mockUser();
     user.setPassword("$2a$10$hashedPassword");
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(userRepository.findById(1L)).thenReturn(Optional.of(user));
 
-    when(passwordEncoder.matches("bomboclaat", user.getPassword())).thenReturn(false);
+    when(passwordHashingService.matches("bomboclaat", user.getPassword())).thenReturn(false);
 
     UpdatePasswordRequest request = new UpdatePasswordRequest();
     request.setOldPassword("bomboclaat");
@@ -439,14 +569,14 @@ class UserServiceTest {
   @Test
   void oldPassEqualsNewPassEdgeCaseWhenUpdatingPassword() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     User user = mockUser();
     user.setPassword("$2a$10$hashedPassword");
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(userRepository.findById(1L)).thenReturn(Optional.of(user));
 
-    when(passwordEncoder.matches("hashedPass", user.getPassword())).thenReturn(true);
-    when(passwordEncoder.matches("hashedPass", user.getPassword())).thenReturn(true);
+    when(passwordHashingService.matches("hashedPass", user.getPassword())).thenReturn(true);
+    when(passwordHashingService.matches("hashedPass", user.getPassword())).thenReturn(true);
 
     UpdatePasswordRequest request = new UpdatePasswordRequest();
     request.setOldPassword("hashedPass");
@@ -466,14 +596,13 @@ class UserServiceTest {
   @Test
   void newPassConfirmPassMismatchWhenUpdatingPassword() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     User user = mockUser();
     user.setPassword("$2a$10$hashedPassword");
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(userRepository.findById(1L)).thenReturn(Optional.of(user));
 
-    when(passwordEncoder.matches("hashedPass", user.getPassword())).thenReturn(true);
-    when(passwordEncoder.matches("password123", user.getPassword())).thenReturn(false);
+    when(passwordHashingService.matches("hashedPass", user.getPassword())).thenReturn(true);
 
     UpdatePasswordRequest request = new UpdatePasswordRequest();
     request.setOldPassword("hashedPass");
@@ -493,17 +622,16 @@ class UserServiceTest {
   @Test
   void successfullyUpdatedPassword() {
     when(securityContext.getAuthentication()).thenReturn(authentication);
-    when(authentication.getName()).thenReturn("JohnDoe123");
+    when(authentication.getPrincipal()).thenReturn(new AuthenticatedUser(1L, "JohnDoe123"));
 
     User user = mockUser();
     user.setPassword("$2a$10$oldHashedPassword");
-    when(userRepository.findByUsername("JohnDoe123")).thenReturn(Optional.of(user));
+    when(userRepository.findById(1L)).thenReturn(Optional.of(user));
     when(userRepository.save(any())).thenReturn(user);
 
-    when(passwordEncoder.matches("hashedPass", user.getPassword())).thenReturn(true);
-    when(passwordEncoder.matches("password123", user.getPassword())).thenReturn(false);
-    when(passwordEncoder.encode("password123")).thenReturn("$2a$10$newHashedPassword");
-    when(passwordEncoder.matches("password123", "$2a$10$newHashedPassword")).thenReturn(true);
+    when(passwordHashingService.matches("hashedPass", user.getPassword())).thenReturn(true);
+    when(passwordHashingService.encode("password123")).thenReturn("$2a$10$newHashedPassword");
+    when(passwordHashingService.matches("password123", "$2a$10$newHashedPassword")).thenReturn(true);
 
     UpdatePasswordRequest request = new UpdatePasswordRequest();
     request.setOldPassword("hashedPass");
@@ -518,9 +646,9 @@ class UserServiceTest {
 
     User savedUser = captor.getValue();
 
-    assertTrue(passwordEncoder.matches("password123", savedUser.getPassword()));
+    assertTrue(passwordHashingService.matches("password123", savedUser.getPassword()));
 
-    verify(passwordEncoder).encode("password123");
+    verify(passwordHashingService).encode("password123");
     verify(refreshTokenRepository, times(1)).deleteByUserId(1L);
   }
 }
@@ -0,0 +1,89 @@
+package com.verifico.server.user.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+
+import com.verifico.server.user.UserRepository;
+import com.verifico.server.user.UserStats;
+import com.verifico.server.user.UserStatsRepair;
+import com.verifico.server.user.UserStatsRepository;
+import com.verifico.server.user.UserStatsService;
+
+@ExtendWith(MockitoExtension.class)
+class UserStatsServiceTest {
+
+  @Mock
+  UserStatsRepository userStatsRepository;
+
+  @Mock
+  UserRepository userRepository;
+
+  @InjectMocks
+  UserStatsService userStatsService;
+
+  // the usual case, row is already there
+  @Test
+  void incrementIsSingleUpdate() {
+    when(userStatsRepository.increment(1L, 1, 0, 0, 0)).thenReturn(1);
+
+    userStatsService.postsChanged(1L, 1);
+
+    verify(userStatsRepository, never()).insertIfMissing(1L);
+  }
+
+  // first counter for a user creates the row, then retries the update
+  @Test
+  void firstIncrementCreatesRow() {
+    when(userStatsRepository.increment(1L, 0, 0, 0, 5)).thenReturn(0, 1);
+
+    userStatsService.creditsEarned(1L, 5);
+
+    InOrder order = inOrder(userStatsRepository);
+    order.verify(userStatsRepository).increment(1L, 0, 0, 0, 5);
+    order.verify(userStatsRepository).insertIfMissing(1L);
+    order.verify(userStatsRepository).increment(1L, 0, 0, 0, 5);
+  }
+
+  @Test
+  void usersWithoutStatsGetZeros() {
+    when(userStatsRepository.findById(9L)).thenReturn(Optional.empty());
+
+    UserStats stats = userStatsService.getStats(9L);
+
+    assertEquals(9L, stats.getUserId());
+    assertEquals(0, stats.getPostCount());
+    assertEquals(0, stats.getCreditsEarned());
+  }
+
+  // walks users by id, every batch is created + recounted
+  @Test
+  void repairRecountsAllUsersInIdBatches() {
+    UserStatsRepair repair = new UserStatsRepair(userRepository, userStatsRepository, 2, 2);
+    when(userRepository.findIdsAfter(0L, PageRequest.of(0, 2))).thenReturn(List.of(1L, 2L));
+    when(userRepository.findIdsAfter(2L, PageRequest.of(0, 2))).thenReturn(List.of(3L, 4L));
+    when(userRepository.findIdsAfter(4L, PageRequest.of(0, 2))).thenReturn(List.of(7L));
+
+    repair.recountStats();
+    repair.shutdown();
+
+    verify(userStatsRepository).insertMissing(List.of(1L, 2L));
+    verify(userStatsRepository).recount(List.of(1L, 2L));
+    verify(userStatsRepository).recount(List.of(3L, 4L));
+    verify(userStatsRepository).insertMissing(List.of(7L));
+    verify(userStatsRepository).recount(List.of(7L));
+  }
+}